@@ -3,19 +3,32 @@ package com.fatty.smarthome.cli;
 import com.fatty.smarthome.concurrent.monitoring.DeviceMonitor;
 import com.fatty.smarthome.concurrent.monitoring.PowerMonitoringService;
 import com.fatty.smarthome.concurrent.automation.AutomationEngine;
+import com.fatty.smarthome.concurrent.automation.dsl.DslRule;
+import com.fatty.smarthome.concurrent.automation.dsl.RuleReloader;
+import com.fatty.smarthome.concurrent.automation.dsl.RuleSyntax;
+import com.fatty.smarthome.concurrent.bridge.EventBridge;
 import com.fatty.smarthome.concurrent.devices.ConcurrentDeviceFactory;
 import com.fatty.smarthome.concurrent.devices.ConcurrentSecurityCamera;
 import com.fatty.smarthome.concurrent.devices.ConcurrentSmartDevice;
 import com.fatty.smarthome.concurrent.devices.ConcurrentThermostat;
+import com.fatty.smarthome.concurrent.events.DeadLetterQueue;
 import com.fatty.smarthome.concurrent.events.EventSystem;
 import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.concurrent.events.SegmentedEventLog;
+import com.fatty.smarthome.concurrent.replay.IncidentReplay;
 import com.fatty.smarthome.devices.*;
+import com.fatty.smarthome.core.DatabaseService;
 import com.fatty.smarthome.core.FacadeSmartHome;
+import com.fatty.smarthome.core.PersistenceService;
 import com.fatty.smarthome.util.SmartHomeException;
 import com.fatty.smarthome.concurrent.automation.TemperatureRule;
 import com.fatty.smarthome.concurrent.automation.SecurityRule;
 import com.fatty.smarthome.concurrent.automation.ConcurrentRule;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -33,10 +46,25 @@ public class ConcurrentCLICommands {
     // Thread pool for async operations
     private final ExecutorService asyncExecutor;
 
+    // Optional durable event log ("events log start")
+    private static final String DEFAULT_EVENT_LOG_DIR = "event_log";
+    private SegmentedEventLog eventLog;
+
+    // Optional link to the event systems of other local processes ("events bridge")
+    private EventBridge eventBridge;
+
+    // Rules written in the rule language ("automate add"), saved in automation_rules and
+    // kept in the engine by the reloader once automation has started
+    private static final Duration RULE_RELOAD_PERIOD = Duration.ofSeconds(1);
+    private RuleReloader ruleReloader;
+
     public ConcurrentCLICommands(FacadeSmartHome facade) throws SmartHomeException {
         this.facade = facade;
         this.eventSystem = new EventSystem(3);
         this.automationEngine = new AutomationEngine(facade);
+        this.automationEngine.attach(eventSystem);
+        // Facade devices do not publish events; a slow sweep still covers them
+        this.automationEngine.setFallbackSweep(Duration.ofSeconds(30));
         this.deviceMonitor = new DeviceMonitor(facade, 5000);
         this.powerMonitor = new PowerMonitoringService(facade, eventSystem);
         this.deviceFactory = new ConcurrentDeviceFactory(eventSystem);
@@ -71,7 +99,7 @@ public class ConcurrentCLICommands {
         try {
             return switch (cmd) {
                 case "monitor" -> handleMonitorCommand(parts);
-                case "automate" -> handleAutomateCommand(parts);
+                case "automate" -> handleAutomateCommand(parts, command);
                 case "power" -> handlePowerCommand(parts);
                 case "events" -> handleEventsCommand(parts);
                 case "concurrent" -> handleConcurrentCommand(parts);
@@ -125,9 +153,9 @@ public class ConcurrentCLICommands {
     /**
      * Handle automation commands
      */
-    private boolean handleAutomateCommand(String[] parts) {
+    private boolean handleAutomateCommand(String[] parts, String command) {
         if (parts.length < 2) {
-            System.out.println("Usage: automate <start|stop|add|status|rules|light|run>");
+            System.out.println("Usage: automate <start|stop|add|remove|reload|status|stats|graph|budget|release|rules|light|run>");
             return true;
         }
 
@@ -135,23 +163,100 @@ public class ConcurrentCLICommands {
             case "start":
                 automationEngine.start();
                 setupDefaultRules();
+                loadStoredRules();
                 return true;
 
             case "stop":
+                if (ruleReloader != null) {
+                    ruleReloader.stop();
+                }
                 automationEngine.stop();
                 return true;
 
             case "add":
                 if (parts.length > 2) {
-                    addAutomationRule(Arrays.copyOfRange(parts, 2, parts.length));
+                    // Device names are case sensitive, so take the rule from the original text
+                    addAutomationRule(command.trim().split("\\s+", 3)[2]);
                 } else {
-                    System.out.println("Usage: automate add <rule-type> [parameters]");
+                    System.out.println("Usage: automate add [name] when <condition> then <actions>");
+                    System.out.println("  e.g. automate add CoolKitchen when Kitchen_Thermostat.temperature > 26 then Kitchen_Fan on");
+                }
+                return true;
+
+            case "remove":
+                if (parts.length < 3) {
+                    System.out.println("Usage: automate remove <rule>");
+                    return true;
+                }
+                removeAutomationRule(command.trim().split("\\s+", 3)[2]);
+                return true;
+
+            case "reload":
+                if (ruleReloader == null) {
+                    System.out.println("Stored rules are loaded by 'automate start'");
+                    return true;
+                }
+                try {
+                    if (ruleReloader.reloadIfChanged() == null) {
+                        System.out.println("Automation rules are up to date");
+                    }
+                } catch (SmartHomeException | IllegalArgumentException e) {
+                    System.out.println("❌ Could not reload automation rules: " + e.getMessage());
                 }
                 return true;
 
             case "status":
                 System.out.println(automationEngine.getStatus());
+                if (ruleReloader != null) {
+                    System.out.println("  " + ruleReloader.getStatistics());
+                }
+                return true;
+
+            case "stats":
+                List<AutomationEngine.RuleStats> stats = automationEngine.getRuleStats();
+                if (stats.isEmpty()) {
+                    System.out.println("No automation rules");
+                }
+                stats.forEach(rule -> System.out.println(rule.format()));
                 return true;
+
+            case "graph":
+                automationEngine.getDependencies().forEach((rule, dependents) -> {
+                    if (!dependents.isEmpty()) {
+                        System.out.println(rule + " -> " + String.join(", ", dependents));
+                    }
+                });
+                return true;
+
+            case "budget":
+                if (parts.length < 4) {
+                    System.out.println("Usage: automate budget <rule> <milliseconds>");
+                    return true;
+                }
+                try {
+                    String rule = String.join(" ", Arrays.copyOfRange(parts, 2, parts.length - 1));
+                    long millis = Long.parseLong(parts[parts.length - 1]);
+                    if (automationEngine.setTimeBudget(rule, Duration.ofMillis(millis))) {
+                        System.out.println("⏱️  Time budget of " + rule + " set to " + millis + " ms");
+                    } else {
+                        System.out.println("❌ No automation rule named " + rule);
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.out.println("❌ Invalid time budget: " + e.getMessage());
+                }
+                return true;
+
+            case "release":
+                if (parts.length < 3) {
+                    System.out.println("Usage: automate release <rule>");
+                    return true;
+                }
+                String released = String.join(" ", Arrays.copyOfRange(parts, 2, parts.length));
+                if (!automationEngine.releaseQuarantine(released)) {
+                    System.out.println("❌ No quarantined automation rule named " + released);
+                }
+                return true;
+
             case "rules":
             case "light":
             case "run":
@@ -159,7 +264,7 @@ public class ConcurrentCLICommands {
 
             default:
                 System.out.println("Unknown automate command: " + parts[1]);
-                System.out.println("Available: start, stop, add, status, rules, light, run");
+                System.out.println("Available: start, stop, add, remove, reload, status, stats, graph, budget, release, rules, light, run");
                 return true;
         }
     }
@@ -232,7 +337,7 @@ public class ConcurrentCLICommands {
      */
     private boolean handleEventsCommand(String[] parts) {
         if (parts.length < 2) {
-            System.out.println("Usage: events <start|stop|stats>");
+            System.out.println("Usage: events <start|stop|stats|log|replay|dlq|bridge>");
             return true;
         }
 
@@ -247,7 +352,28 @@ public class ConcurrentCLICommands {
                 break;
 
             case "stats":
-                System.out.println(eventSystem.getStatistics());
+                if (parts.length > 2 && parts[2].equals("reset")) {
+                    eventSystem.clearStatistics();
+                    System.out.println("✅ Event statistics reset");
+                } else {
+                    System.out.println(eventSystem.getStatistics());
+                }
+                break;
+
+            case "log":
+                handleEventLogCommand(parts);
+                break;
+
+            case "replay":
+                replayEventLog(parts);
+                break;
+
+            case "dlq":
+                handleDeadLetterCommand(parts);
+                break;
+
+            case "bridge":
+                handleBridgeCommand(parts);
                 break;
 
             default:
@@ -256,6 +382,152 @@ public class ConcurrentCLICommands {
         return true;
     }
 
+    /**
+     * Handle "events dlq [replay [id]|clear]": inspect and redeliver undelivered events
+     */
+    private void handleDeadLetterCommand(String[] parts) {
+        String action = parts.length > 2 ? parts[2] : "list";
+        switch (action) {
+            case "list" -> {
+                List<DeadLetterQueue.DeadLetter> letters = eventSystem.getDeadLetters();
+                if (letters.isEmpty()) {
+                    System.out.println("✅ No dead letters");
+                    return;
+                }
+                System.out.println("\n=== DEAD LETTERS (" + letters.size() + ") ===");
+                letters.stream().skip(Math.max(0, letters.size() - 20)).forEach(l -> System.out.println("  " + l));
+                if (letters.size() > 20) {
+                    System.out.println("  ... " + (letters.size() - 20) + " older entries not shown");
+                }
+            }
+            case "replay" -> {
+                if (parts.length > 3) {
+                    try {
+                        long id = Long.parseLong(parts[3]);
+                        System.out.println(eventSystem.replayDeadLetter(id)
+                                ? "🔁 Replayed dead letter #" + id
+                                : "❌ No dead letter #" + id);
+                    } catch (NumberFormatException e) {
+                        System.out.println("Usage: events dlq replay [id]");
+                    }
+                } else {
+                    System.out.println("🔁 Replayed " + eventSystem.replayDeadLetters() + " dead letters");
+                }
+            }
+            case "clear" -> {
+                eventSystem.clearDeadLetters();
+                System.out.println("✅ Dead letters cleared");
+            }
+            default -> System.out.println("Usage: events dlq [replay [id]|clear]");
+        }
+    }
+
+    /**
+     * Handle "events bridge [listen|connect <port|socket-path>|stop]": share device events
+     * with the GUI and other local processes
+     */
+    private void handleBridgeCommand(String[] parts) {
+        String action = parts.length > 2 ? parts[2] : "status";
+        switch (action) {
+            case "status" -> System.out.println(eventBridge != null
+                    ? eventBridge.getStatistics()
+                    : "Event bridge is not running. Use: events bridge <listen|connect> <port|socket-path>");
+            case "listen", "connect" -> {
+                if (parts.length < 4) {
+                    System.out.println("Usage: events bridge " + action + " <port|socket-path>");
+                    return;
+                }
+                if (eventBridge == null) {
+                    eventBridge = new EventBridge(eventSystem, "cli-" + ProcessHandle.current().pid());
+                }
+                try {
+                    if (action.equals("listen")) {
+                        eventBridge.listen(EventBridge.address(parts[3]));
+                    } else {
+                        eventBridge.connect(EventBridge.address(parts[3]));
+                        System.out.println("🌉 Connecting to " + parts[3] + " (retries until it is up)");
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("❌ Bridge " + action + " failed: " + e.getMessage());
+                }
+            }
+            case "stop" -> {
+                if (eventBridge != null) {
+                    eventBridge.close();
+                    eventBridge = null;
+                }
+            }
+            default -> System.out.println("Usage: events bridge [listen|connect <port|socket-path>|stop]");
+        }
+    }
+
+    /**
+     * Handle "events log start [dir]" / "events log stop"
+     */
+    private void handleEventLogCommand(String[] parts) {
+        if (parts.length < 3) {
+            System.out.println("Usage: events log <start [dir]|stop>");
+            return;
+        }
+
+        switch (parts[2]) {
+            case "start" -> {
+                if (eventLog != null) {
+                    System.out.println("ℹ️  " + eventLog.getStatistics());
+                    return;
+                }
+                String dir = parts.length > 3 ? parts[3] : DEFAULT_EVENT_LOG_DIR;
+                try {
+                    eventLog = new SegmentedEventLog(Path.of(dir));
+                    eventSystem.setEventLog(eventLog);
+                } catch (IOException e) {
+                    System.err.println("❌ Could not open event log: " + e.getMessage());
+                }
+            }
+            case "stop" -> {
+                if (eventLog != null) {
+                    eventSystem.setEventLog(null);
+                    eventLog.close();
+                    eventLog = null;
+                    System.out.println("📼 Event log closed");
+                }
+            }
+            default -> System.out.println("Unknown events log command: " + parts[2]);
+        }
+    }
+
+    /**
+     * Handle "events replay [from-offset] [speed|max]": re-run the recorded events against
+     * fresh devices with the default rules and report where the outcome differs
+     */
+    private void replayEventLog(String[] parts) {
+        if (eventLog == null) {
+            System.out.println("Event log is not running. Use: events log start [dir]");
+            return;
+        }
+
+        try {
+            long fromOffset = parts.length > 2 ? Long.parseLong(parts[2]) : eventLog.getFirstOffset();
+            IncidentReplay replay = new IncidentReplay(List.of(), (events, engine, devices) -> {
+                engine.addRule(new TemperatureRule("Comfort Maintenance", 22, 2));
+                SecurityRule securityRule = new SecurityRule("Security Response");
+                engine.addRule(securityRule);
+                events.subscribe(EventType.MOTION_DETECTED, event -> securityRule.triggerMotion());
+            });
+            if (parts.length > 3 && !parts[3].equals("max")) {
+                replay.setSpeed(Double.parseDouble(parts[3]));
+            }
+
+            System.out.println("⏪ Replaying event log from offset " + fromOffset + "...");
+            IncidentReplay.Result result = replay.run(eventLog, fromOffset, Long.MAX_VALUE);
+            System.out.println(result.getSummary());
+        } catch (NumberFormatException e) {
+            System.out.println("Usage: events replay [from-offset] [speed|max]");
+        } catch (IOException | SmartHomeException e) {
+            System.err.println("❌ Replay failed: " + e.getMessage());
+        }
+    }
+
     /**
      * Handle concurrent operations
      */
@@ -336,9 +608,116 @@ public class ConcurrentCLICommands {
         automationEngine.addRule(new SecurityRule("Security Response"));
     }
 
-    private void addAutomationRule(String[] params) {
-        // Implementation for adding custom rules
-        System.out.println("✅ Rule added (feature demonstration)");
+    /**
+     * Compile a rule written in the rule language and save it; the reloader then puts it
+     * into the engine. Without the database it only goes into the engine.
+     */
+    private void addAutomationRule(String text) {
+        // Stored rules are keyed by name, so a name may only be used once
+        Set<String> taken = takenRuleNames();
+        String name;
+        String source;
+        if (text.regionMatches(true, 0, "when ", 0, 5)) {
+            int number = 1;
+            while (taken.contains(("Rule-" + number).toLowerCase())) {
+                number++;
+            }
+            name = "Rule-" + number;
+            source = text;
+        } else {
+            String[] nameAndRule = text.split("\\s+", 2);
+            if (nameAndRule.length < 2) {
+                System.out.println("Usage: automate add [name] when <condition> then <actions>");
+                return;
+            }
+            name = nameAndRule[0];
+            source = nameAndRule[1];
+            if (taken.contains(name.toLowerCase())) {
+                System.out.println("❌ There is already an automation rule named " + name +
+                        "; remove it first or pick another name");
+                return;
+            }
+        }
+
+        DslRule rule;
+        try {
+            rule = new DslRule(name, source);
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ " + e.getMessage());
+            return;
+        }
+        RuleSyntax.Rule syntax = rule.getSyntax();
+        try {
+            new PersistenceService().saveAutomationRule(rule.getName(),
+                    syntax.condition().devices().iterator().next(), syntax.conditionText(),
+                    syntax.actions().get(0).device(), syntax.actionText());
+        } catch (SQLException | SmartHomeException e) {
+            System.out.println("⚠️  Rule " + name + " not saved: " + e.getMessage());
+            automationEngine.addRule(rule);
+            return;
+        }
+        reloadStoredRules();
+    }
+
+    /**
+     * Names of the rules in the engine and the active stored rules, in lower case
+     */
+    private Set<String> takenRuleNames() {
+        Set<String> taken = new HashSet<>();
+        automationEngine.getRuleStats().forEach(stats -> taken.add(stats.name().toLowerCase()));
+        try {
+            DatabaseService.getInstance().loadAutomationRules()
+                    .forEach(row -> taken.add(row.getRuleName().toLowerCase()));
+        } catch (SQLException | SmartHomeException e) {
+            // Without the database only the engine's rules are in use
+        }
+        return taken;
+    }
+
+    /**
+     * Deactivate a stored rule, or remove a rule that only lives in the engine
+     */
+    private void removeAutomationRule(String name) {
+        int deactivated = 0;
+        try {
+            deactivated = DatabaseService.getInstance().deactivateAutomationRule(name);
+        } catch (SQLException | SmartHomeException e) {
+            System.out.println("⚠️  Could not update stored rules: " + e.getMessage());
+        }
+        if (deactivated > 0 && ruleReloader != null) {
+            reloadStoredRules();
+        } else if (!automationEngine.removeRule(name) && deactivated == 0) {
+            System.out.println("❌ No automation rule named " + name);
+            return;
+        }
+        System.out.println("➖ Removed automation rule: " + name);
+    }
+
+    /**
+     * Load the rules saved in automation_rules and keep watching them for changes
+     */
+    private void loadStoredRules() {
+        if (ruleReloader != null) return;
+        try {
+            ruleReloader = RuleReloader.fromDatabase(automationEngine);
+        } catch (SQLException e) {
+            System.out.println("⚠️  Could not load stored rules: " + e.getMessage());
+            return;
+        }
+        reloadStoredRules();
+        ruleReloader.start(RULE_RELOAD_PERIOD);
+    }
+
+    /**
+     * Apply stored rule changes now instead of at the next poll
+     */
+    private void reloadStoredRules() {
+        if (ruleReloader == null) return;
+        try {
+            ruleReloader.reloadIfChanged();
+        } catch (SmartHomeException | IllegalArgumentException e) {
+            System.out.println("⚠️  Could not load stored rules: " + e.getMessage());
+        }
     }
 
     private void runConcurrentTest() {
@@ -436,9 +815,18 @@ public class ConcurrentCLICommands {
      */
     public void shutdown() {
         deviceMonitor.stopMonitoring();
+        if (ruleReloader != null) {
+            ruleReloader.stop();
+        }
         automationEngine.stop();
         powerMonitor.stopMonitoring();
+        if (eventBridge != null) {
+            eventBridge.close();
+        }
         eventSystem.stop();
+        if (eventLog != null) {
+            eventLog.close();
+        }
         asyncExecutor.shutdown();
 
         try {
@@ -462,8 +850,17 @@ public class ConcurrentCLICommands {
           monitor stats <device>       Show device statistics
           
           automate start/stop          Start/stop automation engine
-          automate add <rule>          Add automation rule
+          automate add [name] when <condition> then <actions>
+                                       Add (and save) a rule, e.g. when
+                                       Kitchen_Thermostat.temperature > 26
+                                       then Kitchen_Fan on
+          automate remove <rule>       Deactivate a rule; running engines drop it at once
+          automate reload              Apply changes to the stored rules now
           automate status              Show automation status
+          automate stats               Show per-rule executions, latency and overruns
+          automate graph               Show which rules trigger which through derived events
+          automate budget <rule> <ms>  Set a rule's time budget per execution
+          automate release <rule>      Let a quarantined rule run again
           automate rules               Show available automation rules (new)
           automate light               Run light automation (new)
           automate run <rule>          Run specific automation rule (new)
@@ -474,7 +871,12 @@ public class ConcurrentCLICommands {
           power stats                  Show power statistics
           
           events start/stop            Start/stop event system
-          events stats                 Show event statistics
+          events stats [reset]         Show (or reset) event counters and latencies
+          events log start [dir]/stop  Record events to a durable log
+          events replay [offset] [x]   Replay recorded events (speed x or max)
+          events dlq [replay|clear]    Show, redeliver or clear undelivered events
+          events bridge listen|connect <port|path>
+                                       Share device events with other local processes
           
           concurrent test              Run concurrent test
           concurrent control <action>  Control all devices concurrently
@@ -0,0 +1,156 @@
+package com.fatty.smarthome.concurrent.automation;
+
+import com.fatty.smarthome.concurrent.devices.ConcurrentLight;
+import com.fatty.smarthome.concurrent.devices.ConcurrentSecurityCamera;
+import com.fatty.smarthome.concurrent.devices.ConcurrentThermostat;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.devices.Thermostat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Device changes a SnapshotRule intends to make. The rule only records them while it
+ * reads its snapshot; the engine applies the batches of a round together once every
+ * rule in it has finished, and drops the batch of a rule that overran its budget.
+ */
+public final class ActionBatch {
+    public enum Command { TURN_ON, TURN_OFF, SET_TEMPERATURE, SET_BRIGHTNESS, START_RECORDING, STOP_RECORDING }
+
+    /**
+     * One change; position is the device's place in the snapshot's device list
+     */
+    public record Action(int position, String device, Command command, int value) {}
+
+    private final DeviceSnapshot snapshot;
+    private final List<Action> actions = new ArrayList<>();
+
+    public ActionBatch(DeviceSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public ActionBatch turnOn(int index) {
+        return add(index, Command.TURN_ON, 0);
+    }
+
+    public ActionBatch turnOff(int index) {
+        return add(index, Command.TURN_OFF, 0);
+    }
+
+    public ActionBatch setTemperature(int index, int temperature) {
+        return add(index, Command.SET_TEMPERATURE, temperature);
+    }
+
+    public ActionBatch setBrightness(int index, int brightness) {
+        return add(index, Command.SET_BRIGHTNESS, brightness);
+    }
+
+    public ActionBatch startRecording(int index) {
+        return add(index, Command.START_RECORDING, 0);
+    }
+
+    public ActionBatch stopRecording(int index) {
+        return add(index, Command.STOP_RECORDING, 0);
+    }
+
+    public List<Action> getActions() {
+        return List.copyOf(actions);
+    }
+
+    public boolean isEmpty() {
+        return actions.isEmpty();
+    }
+
+    public int size() {
+        return actions.size();
+    }
+
+    /**
+     * Apply every action
+     * @return number of devices whose state differs from the snapshot afterwards
+     */
+    public int apply() {
+        return apply(null, "");
+    }
+
+    /**
+     * Apply the actions on devices at allowed positions; the others are refused
+     * @param allowed positions the rule may write, or null for all
+     * @return number of devices changed; refused actions are not counted
+     */
+    int apply(BitSet allowed, String ruleName) {
+        BitSet changed = new BitSet();
+        for (Action action : actions) {
+            if (allowed != null && !allowed.get(action.position())) {
+                System.err.println("⚠️  Rule " + ruleName + " may not change " + action.device()
+                        + ", ignoring " + action.command());
+                continue;
+            }
+            try {
+                if (apply(action)) changed.set(action.position());
+            } catch (Exception e) {
+                System.err.println("❌ " + action.command() + " on " + action.device() + " failed: " + e.getMessage());
+            }
+        }
+        return changed.cardinality();
+    }
+
+    /**
+     * Count the actions a rule was not allowed to make
+     */
+    int refused(BitSet allowed) {
+        int refused = 0;
+        for (Action action : actions) {
+            if (!allowed.get(action.position())) refused++;
+        }
+        return refused;
+    }
+
+    private ActionBatch add(int index, Command command, int value) {
+        actions.add(new Action(snapshot.position(index), snapshot.name(index), command, value));
+        return this;
+    }
+
+    /**
+     * @return true if the action changed the device compared with the snapshot
+     */
+    private boolean apply(Action action) throws Exception {
+        int index = action.position();
+        SmartDevice device = snapshot.deviceAt(index);
+        switch (action.command()) {
+            case TURN_ON -> {
+                device.turnOn();
+                return !snapshot.isOnAt(index);
+            }
+            case TURN_OFF -> {
+                device.turnOff();
+                return snapshot.isOnAt(index);
+            }
+            case SET_TEMPERATURE -> {
+                switch (device) {
+                    case ConcurrentThermostat thermostat -> thermostat.setTemperature(action.value());
+                    case Thermostat thermostat -> thermostat.setTemperature(action.value());
+                    default -> throw new IllegalArgumentException(device.getName() + " has no temperature");
+                }
+                return snapshot.temperatureAt(index) != action.value();
+            }
+            case SET_BRIGHTNESS -> {
+                if (!(device instanceof ConcurrentLight light)) {
+                    throw new IllegalArgumentException(device.getName() + " has no brightness");
+                }
+                light.setBrightness(action.value());
+                return snapshot.brightnessAt(index) != action.value();
+            }
+            case START_RECORDING, STOP_RECORDING -> {
+                if (!(device instanceof ConcurrentSecurityCamera camera)) {
+                    throw new IllegalArgumentException(device.getName() + " cannot record");
+                }
+                boolean start = action.command() == Command.START_RECORDING;
+                if (start) camera.startRecording(); else camera.stopRecording();
+                return snapshot.isRecordingAt(index) != start;
+            }
+        }
+        return false;
+    }
+}
@@ -1,116 +1,1153 @@
 package com.fatty.smarthome.concurrent.automation;
 
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventFilter;
+import com.fatty.smarthome.concurrent.events.EventListener;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.concurrent.events.SubscriptionIndex;
+import com.fatty.smarthome.concurrent.monitoring.LatencyHistogram;
+import com.fatty.smarthome.concurrent.scheduling.Schedule;
+import com.fatty.smarthome.concurrent.scheduling.ScheduledTask;
+import com.fatty.smarthome.concurrent.scheduling.SchedulerService;
 import com.fatty.smarthome.core.FacadeSmartHome;
 import com.fatty.smarthome.devices.SmartDevice;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * AutomationEngine runs automation rules concurrently.
  * Each rule can be executed in its own thread for parallel processing.
+ *
+ * Rules run when one of their triggers fires (an event, a schedule, or a derived event
+ * from another rule), with an optional periodic sweep as a fallback. Ready rules run in
+ * rounds by priority; rules whose written devices overlap never share a round. Each
+ * rule has a time budget and per-rule statistics, and a rule that keeps overrunning is
+ * quarantined. The rule set is an immutable RuleTable swapped in on every change, so
+ * rules can be reloaded while the engine runs.
  */
 public class AutomationEngine {
-    private final FacadeSmartHome facade;
-    private final ScheduledExecutorService scheduler;
+    /**
+     * What happens to a rule that wants to write a device a higher priority rule writes
+     */
+    public enum ConflictPolicy {
+        /** Run it in the next round, after the winner has finished */
+        RETRY,
+        /** Skip it; it runs again on its next trigger or sweep */
+        DROP
+    }
+
+    /**
+     * A rule plus its trigger bookkeeping. Triggers arriving while an evaluation is
+     * already queued are coalesced into it, and a rule never runs concurrently with itself.
+     */
+    private static final class RuleState {
+        final ConcurrentRule rule;
+        final List<RuleTrigger> triggers;
+        final DeviceSelector inputs;
+        final DeviceSelector outputs;
+        final boolean changeDriven;
+        final SnapshotRule snapshotRule;
+        // Derived events emitted and consumed, the rules upstream of this one, and the events of the current run
+        final Set<String> emits;
+        final Set<String> consumes;
+        volatile Set<RuleState> upstream = Set.of();
+        final Queue<Event> emitted = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean pending = new AtomicBoolean(false);
+        volatile long pendingSince;
+        // Input devices from the index, their positions there, and whether one changed since the last run
+        volatile List<SmartDevice> view = List.of();
+        volatile int[] positions = new int[0];
+        final AtomicBoolean inputsChanged = new AtomicBoolean(true);
+        // Positions in the indexed device list this rule may write, and those devices
+        volatile BitSet writes = new BitSet();
+        volatile List<SmartDevice> written = List.of();
+
+        // Accounting and budget; consecutiveOverruns is only touched under roundLock
+        final AtomicLong executions = new AtomicLong(0);
+        final AtomicLong failures = new AtomicLong(0);
+        final AtomicLong overruns = new AtomicLong(0);
+        final AtomicLong devicesTouched = new AtomicLong(0);
+        final AtomicLong totalNanos = new AtomicLong(0);
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicBoolean executing = new AtomicBoolean(false);
+        volatile long budgetMillis;
+        int consecutiveOverruns = 0;
+        volatile boolean quarantined = false;
+        // Removed from the rule table; timer keys to cancel then
+        volatile boolean retired = false;
+        final List<String> timerKeys = new CopyOnWriteArrayList<>();
+
+        RuleState(ConcurrentRule rule) {
+            this.rule = rule;
+            this.triggers = List.copyOf(rule.getTriggers());
+            this.inputs = rule.getInputs();
+            this.outputs = rule.getOutputs();
+            this.changeDriven = rule.isChangeDriven();
+            this.snapshotRule = rule instanceof SnapshotRule snapshot ? snapshot : null;
+            this.emits = Set.copyOf(rule.getEmits());
+            this.consumes = triggers.stream()
+                    .filter(trigger -> trigger instanceof RuleTrigger.OnDerived)
+                    .map(trigger -> ((RuleTrigger.OnDerived) trigger).name())
+                    .collect(Collectors.toUnmodifiableSet());
+            this.budgetMillis = rule.getTimeBudgetMillis();
+            if (budgetMillis <= 0) {
+                throw new IllegalArgumentException("Time budget of rule " + rule.getName() + " must be positive");
+            }
+        }
+    }
+
+    /**
+     * Accounting for one rule, as reported by getRuleStats()
+     */
+    public record RuleStats(String name, long executions, long failures, long overruns, long devicesTouched,
+                            long totalNanos, LatencyHistogram.Snapshot latency, long budgetMillis,
+                            boolean quarantined) {
+        public String format() {
+            return String.format("%-24s runs=%d failures=%d overruns=%d touched=%d total=%.1fms budget=%dms%s %s",
+                    name, executions, failures, overruns, devicesTouched, totalNanos / 1e6, budgetMillis,
+                    quarantined ? " QUARANTINED" : "", latency.format());
+        }
+    }
+
+    /**
+     * A rule to run in a round, with the nanoTime of its trigger (0 for sweeps)
+     */
+    private record Candidate(RuleState state, long triggeredNanos) {
+    }
+
+    /**
+     * A rule submitted in a round, with the nanoTime its budget runs out
+     */
+    private record Running(RuleState state, Future<ActionBatch> future, long deadlineNanos) {
+    }
+
+    private static final Comparator<RuleState> BY_PRIORITY = Comparator
+            .comparingInt((RuleState state) -> -state.rule.getPriority())
+            .thenComparing(state -> state.rule.getName());
+
+    private final Supplier<List<SmartDevice>> deviceSource;
+    private final Clock clock;
+    private final SchedulerService scheduler;
     private final ExecutorService ruleExecutor;
-    private final List<ConcurrentRule> rules = new CopyOnWriteArrayList<>();
-    private final Map<String, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
+    private final Map<String, ScheduledTask> scheduledTasks = new ConcurrentHashMap<>();
     private volatile boolean running = false;
 
+    /**
+     * The rules, their event triggers by type and the consumers of each derived event.
+     * Never changed once published; writers serialize on tableLock.
+     */
+    private record RuleTable(List<RuleState> rules, Map<EventType, SubscriptionIndex<RuleState>> triggers,
+                             Map<String, List<RuleState>> consumers, long version) {
+    }
+
+    private volatile RuleTable table;
+    private final Object tableLock = new Object();
+    private final AtomicLong retiredRules = new AtomicLong(0);
+    private volatile long lastUpdateNanos = 0;
+    private final EventListener triggerListener = new EventListener() {
+        @Override
+        public void onEvent(Event event) {
+            onTriggerEvent(event);
+        }
+
+        @Override
+        public String getName() {
+            return "AutomationTriggers";
+        }
+    };
+    private volatile EventSystem eventSystem;
+    private volatile Duration fallbackSweep;
+
+    // Device index, rebuilt when the device set changes; null devices = stale
+    private final Object indexLock = new Object();
+    private volatile List<SmartDevice> indexedDevices;
+    private volatile DeviceSnapshot.Layout layout;
+    private volatile Map<String, List<RuleState>> readers = Map.of();
+    private volatile List<SmartDevice> watched = List.of();
+    private int[] fingerprints = new int[0];
+    private final AtomicLong skippedEvaluations = new AtomicLong(0);
+
+    // Round scheduling; rounds run one at a time under roundLock
+    private final Object roundLock = new Object();
+    private final Queue<RuleState> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private volatile ConflictPolicy conflictPolicy = ConflictPolicy.RETRY;
+    private final AtomicLong rounds = new AtomicLong(0);
+    private final AtomicLong conflicts = new AtomicLong(0);
+    private final AtomicLong retried = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    // Rules quarantined after this many budget overruns in a row
+    private volatile int quarantineThreshold = 3;
+    private final AtomicLong quarantines = new AtomicLong(0);
+    // Rules cancelled for their budget that have not stopped yet keep their writes claimed;
+    // rules needing those devices are held, with their trigger time, until one stops
+    private final Set<RuleState> overrunning = ConcurrentHashMap.newKeySet();
+    private final Map<RuleState, Long> held = new ConcurrentHashMap<>();
+    private final AtomicLong overrunsStopped = new AtomicLong(0);
+    private final AtomicLong heldBack = new AtomicLong(0);
+
+    // Snapshot rounds and the actions applied from their batches
+    private final AtomicLong snapshots = new AtomicLong(0);
+    private final AtomicLong batchedActions = new AtomicLong(0);
+    private final AtomicLong refusedActions = new AtomicLong(0);
+    // Rule chaining
+    private volatile int maxFanOut = 8;
+    private final AtomicLong derivedEvents = new AtomicLong(0);
+    private final AtomicLong chainedEvaluations = new AtomicLong(0);
+    private final AtomicLong deferred = new AtomicLong(0);
+    private final AtomicLong refusedEvents = new AtomicLong(0);
 
+    private final AtomicLong eventTriggers = new AtomicLong(0);
+    private final AtomicLong timedTriggers = new AtomicLong(0);
+    private final AtomicLong sweeps = new AtomicLong(0);
+    private final AtomicLong executions = new AtomicLong(0);
+    private final LatencyHistogram reactionLatency = new LatencyHistogram();
 
+    private static final Set<EventType> DEVICE_EVENTS = EnumSet.of(EventType.DEVICE_STATE_CHANGED,
+            EventType.TEMPERATURE_ALERT, EventType.MOTION_DETECTED, EventType.DEVICE_MALFUNCTION);
 
     public AutomationEngine(FacadeSmartHome facade) {
-        this.facade = facade;
-        this.scheduler = Executors.newScheduledThreadPool(2, r -> {
-            Thread t = new Thread(r);
-            t.setName("AutomationScheduler-" + t.getId());
-            t.setDaemon(true);
-            return t;
-        });
+        this(facade::getDevices, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Create an engine over an arbitrary device set
+     * @param deviceSource Supplies the devices rules run against
+     * @param clock Clock handed to every rule (a virtual clock when replaying incidents)
+     */
+    public AutomationEngine(Supplier<List<SmartDevice>> deviceSource, Clock clock) {
+        this.deviceSource = deviceSource;
+        this.clock = clock;
+        // Timer callbacks only queue rules, so they run on the scheduler's driver thread
+        this.scheduler = new SchedulerService("Automation", clock, Runnable::run);
         this.ruleExecutor = Executors.newCachedThreadPool(r -> {
             Thread t = new Thread(r);
             t.setName("RuleExecutor-" + t.getId());
             t.setDaemon(true);
             return t;
         });
+        Map<EventType, SubscriptionIndex<RuleState>> triggers = new EnumMap<>(EventType.class);
+        for (EventType type : EventType.values()) {
+            triggers.put(type, SubscriptionIndex.empty());
+        }
+        this.table = new RuleTable(List.of(), Collections.unmodifiableMap(triggers), Map.of(), 0);
     }
 
     /**
      * Add a rule to the automation engine
+     * @throws IllegalArgumentException if its derived events would form a cycle or
+     *         exceed the fan-out limit; the rule is not added then
      */
     public void addRule(ConcurrentRule rule) {
-        rules.add(rule);
+        replaceRules(List.of(), List.of(rule));
         System.out.println("➕ Added automation rule: " + rule.getName());
     }
 
     /**
-     * Start the automation engine with periodic rule checking
+     * Remove every rule with this name
+     * @return false if there was none
+     */
+    public boolean removeRule(String ruleName) {
+        return replaceRules(List.of(ruleName), List.of()) > 0;
+    }
+
+    /**
+     * Remove the named rules and add new ones in one update of the rule table. Readers
+     * see either the old rule set or the new one, never a mix, and are never blocked.
+     * @return number of rules removed
+     * @throws IllegalArgumentException if the new rule set fails the dependency check;
+     *         nothing changes then
+     */
+    public int replaceRules(Collection<String> removed, Collection<? extends ConcurrentRule> added) {
+        long start = System.nanoTime();
+        List<RuleState> addedStates = added.stream().map(RuleState::new).toList();
+        Set<String> removedNames = Set.copyOf(removed);
+        synchronized (tableLock) {
+            RuleTable current = table;
+            Set<RuleState> retired = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<RuleState> next = new ArrayList<>(current.rules().size() + addedStates.size());
+            for (RuleState state : current.rules()) {
+                if (removedNames.contains(state.rule.getName())) retired.add(state); else next.add(state);
+            }
+            next.addAll(addedStates);
+            Map<String, List<RuleState>> byEvent = consumersByEvent(next);
+            Map<RuleState, List<RuleState>> graph = dependencies(next, byEvent);
+
+            // Event triggers: each changed index is rebuilt once, however many rules changed
+            Map<EventType, List<Map.Entry<EventFilter, RuleState>>> subscriptions = new EnumMap<>(EventType.class);
+            for (RuleState state : addedStates) {
+                state.rule.setClock(clock);
+                state.rule.setEmitter((name, data) -> emit(state, name, data));
+                for (RuleTrigger trigger : state.triggers) {
+                    if (trigger instanceof RuleTrigger.OnEvent on) {
+                        subscriptions.computeIfAbsent(on.type(), t -> new ArrayList<>()).add(Map.entry(on.filter(), state));
+                    }
+                }
+            }
+            Map<EventType, SubscriptionIndex<RuleState>> triggers = new EnumMap<>(current.triggers());
+            for (EventType type : EventType.values()) {
+                SubscriptionIndex<RuleState> index = triggers.get(type);
+                if (!retired.isEmpty()) index = index.withoutAll(retired);
+                triggers.put(type, index.withAll(subscriptions.getOrDefault(type, List.of())));
+            }
+            setUpstream(next, graph);
+
+            RuleTable updated = new RuleTable(List.copyOf(next), Collections.unmodifiableMap(triggers),
+                    byEvent, current.version() + 1);
+            // Under indexLock so no index rebuild of the old rule set can land after the swap
+            synchronized (indexLock) {
+                indexedDevices = null;
+                table = updated;
+            }
+
+            for (RuleState state : retired) {
+                state.retired = true;
+                for (String key : state.timerKeys) {
+                    ScheduledTask task = scheduledTasks.remove(key);
+                    if (task != null) task.cancel();
+                }
+            }
+            retiredRules.addAndGet(retired.size());
+            if (running) {
+                addedStates.forEach(this::scheduleTimedTriggers);
+            }
+            lastUpdateNanos = System.nanoTime() - start;
+            return retired.size();
+        }
+    }
+
+    /**
+     * Version of the rule table, incremented by every update
+     */
+    public long getRuleTableVersion() {
+        return table.version();
+    }
+
+    /**
+     * Receive trigger events from an event system; only rules with a matching
+     * OnEvent trigger are evaluated for each event
+     */
+    public void attach(EventSystem eventSystem) {
+        if (this.eventSystem != null) return;
+        this.eventSystem = eventSystem;
+        eventSystem.subscribeToAll(triggerListener);
+    }
+
+    /**
+     * Also evaluate every rule at this period (null to disable, the default).
+     * Takes effect immediately when the engine is running.
+     */
+    public void setFallbackSweep(Duration period) {
+        if (period != null && (period.isNegative() || period.isZero())) {
+            throw new IllegalArgumentException("Sweep period must be positive");
+        }
+        this.fallbackSweep = period;
+        if (running) {
+            scheduleSweep();
+        }
+    }
+
+    public void setConflictPolicy(ConflictPolicy policy) {
+        this.conflictPolicy = policy;
+    }
+
+    /**
+     * Override a rule's time budget
+     * @return false if there is no rule with that name
+     */
+    public boolean setTimeBudget(String ruleName, Duration budget) {
+        if (budget.isNegative() || budget.isZero()) {
+            throw new IllegalArgumentException("Time budget must be positive");
+        }
+        RuleState state = findRule(ruleName);
+        if (state == null) return false;
+        state.budgetMillis = budget.toMillis();
+        return true;
+    }
+
+    /**
+     * Quarantine rules after this many budget overruns in a row
+     */
+    public void setQuarantineThreshold(int overruns) {
+        if (overruns < 1) {
+            throw new IllegalArgumentException("Quarantine threshold must be at least 1");
+        }
+        this.quarantineThreshold = overruns;
+    }
+
+    /**
+     * Let a quarantined rule run again
+     * @return false if there is no such rule or it was not quarantined
+     */
+    public boolean releaseQuarantine(String ruleName) {
+        RuleState state = findRule(ruleName);
+        if (state == null || !state.quarantined) return false;
+        synchronized (roundLock) {
+            state.consecutiveOverruns = 0;
+            state.quarantined = false;
+        }
+        state.inputsChanged.set(true);
+        System.out.println("✅ Rule " + ruleName + " released from quarantine");
+        return true;
+    }
+
+    /**
+     * Reject rules that would give a rule more than this many dependents
+     */
+    public void setMaxFanOut(int dependents) {
+        if (dependents < 1) {
+            throw new IllegalArgumentException("Fan-out limit must be at least 1");
+        }
+        this.maxFanOut = dependents;
+    }
+
+    /**
+     * The rules each rule triggers through derived events, by name
+     */
+    public Map<String, List<String>> getDependencies() {
+        RuleTable current = table;
+        Map<String, List<RuleState>> byEvent = current.consumers();
+        Map<String, List<String>> dependencies = new LinkedHashMap<>();
+        for (RuleState state : current.rules()) {
+            dependencies.put(state.rule.getName(), state.emits.stream()
+                    .flatMap(name -> byEvent.getOrDefault(name, List.of()).stream())
+                    .map(consumer -> consumer.rule.getName())
+                    .distinct()
+                    .sorted()
+                    .toList());
+        }
+        return dependencies;
+    }
+
+    /**
+     * Per-rule accounting, most total execution time first
+     */
+    public List<RuleStats> getRuleStats() {
+        return table.rules().stream()
+                .map(state -> new RuleStats(state.rule.getName(), state.executions.get(), state.failures.get(),
+                        state.overruns.get(), state.devicesTouched.get(), state.totalNanos.get(),
+                        state.latency.snapshot(), state.budgetMillis, state.quarantined))
+                .sorted(Comparator.comparingLong(RuleStats::totalNanos).reversed())
+                .toList();
+    }
+
+    private RuleState findRule(String ruleName) {
+        for (RuleState state : table.rules()) {
+            if (state.rule.getName().equalsIgnoreCase(ruleName)) return state;
+        }
+        return null;
+    }
+
+    /**
+     * Start the automation engine: event triggers, timed triggers and the optional sweep
      */
     public void start() {
-        // Schedule rule evaluation every 5 seconds
-        ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(
-                this::evaluateRules, 0, 5, TimeUnit.SECONDS);
+        running = true;
+        scheduler.start();
+        List<RuleState> rules = table.rules();
+        rules.forEach(this::scheduleTimedTriggers);
+        scheduleSweep();
 
-        scheduledTasks.put("rule-evaluation", future);
+        if (fallbackSweep == null && rules.stream().anyMatch(s -> s.triggers.isEmpty())) {
+            System.out.println("⚠️  Rules without triggers only run on evaluateNow() (no fallback sweep)");
+        }
         System.out.println("🤖 Automation engine started");
     }
 
+    /**
+     * Run one evaluation pass immediately and wait for it (each rule up to its time budget).
+     * Lets callers such as the replay tool drive the engine from their own clock.
+     */
+    public void evaluateNow() {
+        evaluateRules();
+    }
+
+    /**
+     * Re-read the device set and rebuild the device index if it changed. Sweeps do this
+     * on their own; call it after adding or removing devices when running without one.
+     */
+    public void refreshDevices() {
+        List<SmartDevice> devices = deviceSource.get();
+        synchronized (indexLock) {
+            if (!sameDevices(devices)) {
+                rebuildIndex(devices);
+            }
+        }
+    }
+
     /**
      * Evaluate all rules concurrently
      */
     private void evaluateRules() {
-        List<SmartDevice> devices = facade.getDevices();
-
-        // Submit each rule for concurrent execution
-        List<CompletableFuture<Void>> futures = rules.stream()
-                .filter(ConcurrentRule::shouldExecute)
-                .map(rule -> CompletableFuture.runAsync(() -> {
-                    try {
-                        rule.execute(devices);
-                    } catch (Exception e) {
-                        System.err.println("❌ Error executing rule " +
-                                rule.getName() + ": " + e.getMessage());
-                    }
-                }, ruleExecutor))
-                .toList();
+        sweeps.incrementAndGet();
+        refreshDevices();
+        detectChanges();
+
+        runRounds(table.rules().stream().map(state -> new Candidate(state, 0)).toList());
+    }
+
+    /**
+     * Run the candidates, and the losers they leave behind, one round after another
+     */
+    private void runRounds(List<Candidate> candidates) {
+        synchronized (roundLock) {
+            List<Candidate> round = candidates;
+            while (!round.isEmpty()) {
+                round = runRound(round);
+            }
+        }
+    }
+
+    /**
+     * One round: ready rules claim the devices they write in priority order, rules
+     * that got all their devices run in parallel
+     * @return losers to run in the next round
+     */
+    private List<Candidate> runRound(List<Candidate> candidates) {
+        if (indexedDevices == null) {
+            refreshDevices();
+        }
+        rounds.incrementAndGet();
+        List<Candidate> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator.comparing(Candidate::state, BY_PRIORITY));
+
+        // Read before pruning, so a rule stopping during the round is noticed at its end
+        long stoppedBefore = overrunsStopped.get();
+        overrunning.removeIf(state -> !state.executing.get());
+        BitSet stillRunning = new BitSet();
+        overrunning.forEach(state -> stillRunning.or(state.writes));
+        boolean holding = false;
+
+        BitSet claimed = (BitSet) stillRunning.clone();
+        Set<RuleState> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Candidate> losers = new ArrayList<>(0);
+        List<Candidate> toRun = new ArrayList<>();
+        List<Candidate> eligible = new ArrayList<>(ordered.size());
+        Set<RuleState> present = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Candidate candidate : ordered) {
+            if (seen.add(candidate.state()) && isReady(candidate.state())) {
+                eligible.add(candidate);
+                present.add(candidate.state());
+            }
+        }
+        for (Candidate candidate : eligible) {
+            RuleState state = candidate.state();
+            // Rules run after the rules they depend on, seeing what those did
+            if (!state.upstream.isEmpty() && !Collections.disjoint(state.upstream, present)) {
+                deferred.incrementAndGet();
+                losers.add(candidate);
+                continue;
+            }
+
+            if (overrunning.contains(state) || state.writes.intersects(stillRunning)) {
+                heldBack.incrementAndGet();
+                held.putIfAbsent(state, candidate.triggeredNanos());
+                holding = true;
+                continue;
+            }
+            if (state.writes.intersects(claimed)) {
+                conflicts.incrementAndGet();
+                if (conflictPolicy == ConflictPolicy.RETRY) {
+                    retried.incrementAndGet();
+                    losers.add(candidate);
+                } else {
+                    dropped.incrementAndGet();
+                }
+                continue;
+            }
+            claimed.or(state.writes);
+            toRun.add(candidate);
+        }
+
+        // One snapshot for every snapshot rule in the round, cut into their views
+        Map<RuleState, DeviceSnapshot> views = new IdentityHashMap<>();
+        if (toRun.stream().anyMatch(candidate -> candidate.state().snapshotRule != null)) {
+            synchronized (indexLock) {
+                DeviceSnapshot snapshot = DeviceSnapshot.capture(layout);
+                for (Candidate candidate : toRun) {
+                    RuleState state = candidate.state();
+                    if (state.snapshotRule != null) views.put(state, snapshot.view(state.positions));
+                }
+            }
+            snapshots.incrementAndGet();
+        }
+
+        List<Running> started = new ArrayList<>();
+        for (Candidate candidate : toRun) {
+            RuleState state = candidate.state();
+            DeviceSnapshot view = views.get(state);
+            state.emitted.clear();
+            try {
+                started.add(new Running(state,
+                        ruleExecutor.submit(() -> evaluate(state, candidate.triggeredNanos(), view)),
+                        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(state.budgetMillis)));
+            } catch (RejectedExecutionException e) {
+                // Engine stopped
+                return List.of();
+            }
+        }
+
+        // Wait for each rule until its budget runs out, then apply the batches in priority order
+        Map<RuleState, ActionBatch> batches = new LinkedHashMap<>();
+        List<RuleState> finished = new ArrayList<>(started.size());
+        for (Running running : started) {
+            try {
+                ActionBatch batch = running.future().get(
+                        Math.max(0, running.deadlineNanos() - System.nanoTime()), TimeUnit.NANOSECONDS);
+                running.state().consecutiveOverruns = 0;
+                finished.add(running.state());
+                if (batch != null && !batch.isEmpty()) {
+                    batches.put(running.state(), batch);
+                }
+            } catch (TimeoutException e) {
+                overrun(running);
+            } catch (InterruptedException e) {
+                started.forEach(r -> r.future().cancel(true));
+                Thread.currentThread().interrupt();
+                return List.of();
+            } catch (ExecutionException | CancellationException e) {
+                // evaluate() reports its own errors
+            }
+        }
+        batches.forEach(this::apply);
+        if (holding && overrunsStopped.get() != stoppedBefore) {
+            releaseHeld();
+        }
+        // Derived events of the finished rules trigger their consumers in the next round
+        for (RuleState state : finished) {
+            losers.addAll(deliver(state));
+        }
+        return losers;
+    }
+
+    private void apply(RuleState state, ActionBatch batch) {
+        int refused = batch.refused(state.writes);
+        refusedActions.addAndGet(refused);
+        batchedActions.addAndGet(batch.size() - refused);
+        state.devicesTouched.addAndGet(batch.apply(state.writes, state.rule.getName()));
+    }
+
+    /**
+     * Hand the events a rule emitted in its run to the rules consuming them
+     * @return the consumers, to run in the next round
+     */
+    private List<Candidate> deliver(RuleState state) {
+        List<Candidate> chained = new ArrayList<>(0);
+        Event event;
+        while ((event = state.emitted.poll()) != null) {
+            derivedEvents.incrementAndGet();
+            EventSystem events = eventSystem;
+            if (events != null) {
+                events.publishEvent(event);
+            }
+            for (RuleState consumer : table.consumers().getOrDefault(String.valueOf(event.getData().get("name")), List.of())) {
+                if (!consumer.rule.isEnabled()) continue;
+                try {
+                    consumer.rule.onTrigger(event);
+                } catch (Exception e) {
+                    System.err.println("❌ Error in trigger of rule " +
+                            consumer.rule.getName() + ": " + e.getMessage());
+                }
+                // What it depends on may have changed its inputs
+                consumer.inputsChanged.set(true);
+                chainedEvaluations.incrementAndGet();
+                chained.add(new Candidate(consumer, event.getNanoTime()));
+            }
+        }
+        return chained;
+    }
+
+    /**
+     * Keep a derived event of a rule until its round ends; undeclared ones are refused
+     */
+    private void emit(RuleState state, String name, Map<String, Object> data) {
+        if (!state.emits.contains(name)) {
+            refusedEvents.incrementAndGet();
+            System.err.println("⚠️  Rule " + state.rule.getName() + " did not declare derived event "
+                    + name + ", ignoring it");
+            return;
+        }
+        Map<String, Object> payload = new HashMap<>(data != null ? data : Map.of());
+        payload.put("name", name);
+        state.emitted.add(new Event(EventType.RULE_DERIVED, state.rule.getName(), payload));
+    }
+
+    private static Map<String, List<RuleState>> consumersByEvent(List<RuleState> all) {
+        Map<String, List<RuleState>> byEvent = new HashMap<>();
+        for (RuleState state : all) {
+            for (String name : state.consumes) {
+                byEvent.computeIfAbsent(name, n -> new ArrayList<>()).add(state);
+            }
+        }
+        return byEvent;
+    }
+
+    /**
+     * The rules each rule triggers through derived events
+     * @throws IllegalArgumentException if they form a cycle or a rule has more than maxFanOut dependents
+     */
+    private Map<RuleState, List<RuleState>> dependencies(List<RuleState> all, Map<String, List<RuleState>> byEvent) {
+        Map<RuleState, List<RuleState>> graph = new IdentityHashMap<>();
+        for (RuleState state : all) {
+            List<RuleState> dependents = new ArrayList<>();
+            for (String name : state.emits) {
+                for (RuleState consumer : byEvent.getOrDefault(name, List.of())) {
+                    if (!dependents.contains(consumer)) dependents.add(consumer);
+                }
+            }
+            if (dependents.size() > maxFanOut) {
+                throw new IllegalArgumentException("Rule " + state.rule.getName() + " would trigger "
+                        + dependents.size() + " rules through derived events, the limit is " + maxFanOut);
+            }
+            graph.put(state, dependents);
+        }
+        Map<RuleState, Boolean> visited = new IdentityHashMap<>();
+        for (RuleState state : all) {
+            findCycle(state, graph, visited, new ArrayList<>());
+        }
+        return graph;
+    }
+
+    /**
+     * Depth first search; a rule met again while it is still on the path closes a cycle
+     * @param visited false while a rule is on the path, true once all its dependents are done
+     */
+    private static void findCycle(RuleState state, Map<RuleState, List<RuleState>> graph,
+                                  Map<RuleState, Boolean> visited, List<RuleState> path) {
+        Boolean done = visited.get(state);
+        if (Boolean.TRUE.equals(done)) return;
+        if (done != null) {
+            String cycle = path.subList(path.indexOf(state), path.size()).stream()
+                    .map(s -> s.rule.getName())
+                    .collect(Collectors.joining(" -> "));
+            throw new IllegalArgumentException("Derived events form a cycle: " + cycle + " -> " + state.rule.getName());
+        }
+        visited.put(state, false);
+        path.add(state);
+        for (RuleState dependent : graph.get(state)) {
+            findCycle(dependent, graph, visited, path);
+        }
+        path.remove(path.size() - 1);
+        visited.put(state, true);
+    }
 
-        // Wait for all rules to complete (with timeout)
+    /**
+     * Record for every rule the rules it depends on, directly or further up
+     */
+    private static void setUpstream(List<RuleState> all, Map<RuleState, List<RuleState>> graph) {
+        Map<RuleState, List<RuleState>> producers = new IdentityHashMap<>();
+        graph.forEach((producer, dependents) -> dependents.forEach(
+                dependent -> producers.computeIfAbsent(dependent, d -> new ArrayList<>()).add(producer)));
+        for (RuleState state : all) {
+            if (!producers.containsKey(state)) {
+                state.upstream = Set.of();
+                continue;
+            }
+            Set<RuleState> upstream = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<RuleState> todo = new ArrayList<>(producers.get(state));
+            while (!todo.isEmpty()) {
+                RuleState producer = todo.remove(todo.size() - 1);
+                if (upstream.add(producer)) {
+                    todo.addAll(producers.getOrDefault(producer, List.of()));
+                }
+            }
+            state.upstream = Collections.unmodifiableSet(upstream);
+        }
+    }
+
+    /**
+     * Interrupt a rule that exceeded its budget and quarantine it if it keeps doing so
+     */
+    private void overrun(Running running) {
+        RuleState state = running.state();
+        running.future().cancel(true);
+        // Until it actually stops, nothing else may write its devices
+        overrunning.add(state);
+        // Like its batch, what it emitted is dropped
+        state.emitted.clear();
+        state.overruns.incrementAndGet();
+        state.consecutiveOverruns++;
+        System.err.println("⏱️  Rule " + state.rule.getName() + " exceeded its " + state.budgetMillis
+                + " ms budget (" + state.consecutiveOverruns + " in a row), cancelled");
+        if (state.consecutiveOverruns >= quarantineThreshold && !state.quarantined) {
+            state.quarantined = true;
+            quarantines.incrementAndGet();
+            System.err.println("🚫 Rule " + state.rule.getName() + " quarantined after "
+                    + state.consecutiveOverruns + " budget overruns; release it with 'automate release "
+                    + state.rule.getName() + "'");
+        }
+    }
+
+    /**
+     * Queue the rules held behind overrunning rules again, now that one of those stopped
+     */
+    private void releaseHeld() {
+        for (RuleState state : held.keySet()) {
+            Long triggeredNanos = held.remove(state);
+            if (triggeredNanos != null) {
+                dispatch(state, triggeredNanos);
+            }
+        }
+    }
+
+    /**
+     * Whether a rule would do anything now; rules that would not claim no devices
+     */
+    private boolean isReady(RuleState state) {
+        if (state.retired || state.quarantined || !state.rule.shouldExecute()) return false;
+        if (state.changeDriven && !state.inputsChanged.get()) {
+            skippedEvaluations.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private void onTriggerEvent(Event event) {
+        if (!running) return;
+        if (DEVICE_EVENTS.contains(event.getType())) {
+            markReaders(event.getSource());
+        } else if (event.getType() == EventType.SCENE_APPLIED
+                && event.getData().get("devices") instanceof List<?> devices) {
+            // One event for all devices a DeviceTransaction changed
+            devices.forEach(device -> markReaders(String.valueOf(device)));
+        }
+        List<RuleState> matched = table.triggers().get(event.getType()).match(event);
+        for (RuleState state : matched) {
+            if (!state.rule.isEnabled()) continue;
+            eventTriggers.incrementAndGet();
+            try {
+                state.rule.onTrigger(event);
+            } catch (Exception e) {
+                System.err.println("❌ Error in trigger of rule " +
+                        state.rule.getName() + ": " + e.getMessage());
+            }
+            dispatch(state, event.getNanoTime());
+        }
+    }
+
+    /**
+     * Mark the rules reading this device as having changed inputs
+     */
+    private void markReaders(String device) {
+        List<RuleState> deviceReaders = readers.get(device);
+        if (deviceReaders != null) {
+            deviceReaders.forEach(state -> state.inputsChanged.set(true));
+        } else if (!readers.isEmpty() && device != null) {
+            // A device the index has not seen yet, unless a rebuild added it meanwhile
+            synchronized (indexLock) {
+                deviceReaders = readers.get(device);
+                if (deviceReaders != null) {
+                    deviceReaders.forEach(state -> state.inputsChanged.set(true));
+                } else {
+                    indexedDevices = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue one evaluation of the rule unless one is already queued
+     */
+    private void dispatch(RuleState state, long triggeredNanos) {
+        if (!running || state.retired || !state.pending.compareAndSet(false, true)) return;
+        state.pendingSince = triggeredNanos;
+        ready.add(state);
+        if (draining.compareAndSet(false, true)) {
+            try {
+                ruleExecutor.execute(this::drainReady);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+            }
+        }
+    }
+
+    /**
+     * Run queued rules in rounds until the queue stays empty
+     */
+    private void drainReady() {
+        while (true) {
+            List<Candidate> batch = new ArrayList<>();
+            RuleState state;
+            while ((state = ready.poll()) != null) {
+                batch.add(new Candidate(state, state.pendingSince));
+                state.pending.set(false);
+            }
+            if (!batch.isEmpty()) {
+                runRounds(batch);
+                continue;
+            }
+            draining.set(false);
+            // Something queued between the last poll and clearing the flag
+            if (ready.isEmpty() || !draining.compareAndSet(false, true)) return;
+        }
+    }
+
+    /**
+     * Evaluate one rule, serialized per rule
+     * @param triggeredNanos nanoTime of the trigger, or 0 for sweeps
+     * @param snapshot the rule's view of the round's snapshot, for snapshot rules
+     * @return the actions of a snapshot rule, applied by the round; null otherwise
+     */
+    private ActionBatch evaluate(RuleState state, long triggeredNanos, DeviceSnapshot snapshot) {
+        ConcurrentRule rule = state.rule;
+        // Only a rule that overran and ignored its interrupt can still be running
+        if (!state.executing.compareAndSet(false, true)) return null;
         try {
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                    .get(2, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-            System.err.println("⏱️  Some automation rules took too long to execute");
+            if (!rule.shouldExecute()) return null;
+            // Clear before running, so changes made meanwhile cause another run
+            if (state.changeDriven && !state.inputsChanged.getAndSet(false)) {
+                skippedEvaluations.incrementAndGet();
+                return null;
+            }
+            if (triggeredNanos != 0) {
+                reactionLatency.record(System.nanoTime() - triggeredNanos);
+            }
+            executions.incrementAndGet();
+            state.executions.incrementAndGet();
+
+            if (snapshot != null) {
+                // Devices are changed when the round applies the batch
+                ActionBatch actions = new ActionBatch(snapshot);
+                long start = System.nanoTime();
+                try {
+                    state.snapshotRule.evaluate(snapshot, actions);
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    state.latency.record(elapsed);
+                    state.totalNanos.addAndGet(elapsed);
+                }
+                return actions;
+            }
+
+            List<SmartDevice> written = state.written;
+            int[] before = new int[written.size()];
+            for (int i = 0; i < before.length; i++) {
+                before[i] = DeviceSnapshot.fingerprint(written.get(i));
+            }
+            long start = System.nanoTime();
+            try {
+                rule.execute(state.view);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                state.latency.record(elapsed);
+                state.totalNanos.addAndGet(elapsed);
+                int touched = 0;
+                for (int i = 0; i < before.length; i++) {
+                    if (DeviceSnapshot.fingerprint(written.get(i)) != before[i]) touched++;
+                }
+                state.devicesTouched.addAndGet(touched);
+            }
         } catch (Exception e) {
-            System.err.println("❌ Error in rule execution: " + e.getMessage());
+            // An interrupted rule was cancelled for its budget and is counted as an overrun
+            state.emitted.clear();
+            if (!Thread.currentThread().isInterrupted()) {
+                state.failures.incrementAndGet();
+                System.err.println("❌ Error executing rule " +
+                        rule.getName() + ": " + e.getMessage());
+            }
+        } finally {
+            state.executing.set(false);
+            if (overrunning.remove(state)) {
+                overrunsStopped.incrementAndGet();
+                releaseHeld();
+            }
         }
+        return null;
     }
+
+    private boolean sameDevices(List<SmartDevice> devices) {
+        List<SmartDevice> indexed = indexedDevices;
+        if (indexed == null || indexed.size() != devices.size()) return false;
+        for (int i = 0; i < devices.size(); i++) {
+            if (indexed.get(i) != devices.get(i)) return false;
+        }
+        return true;
+    }
+
     /**
-     * Stop the automation engine
+     * Work out each rule's view and each device's readers. Type matches are resolved
+     * once per device class, not per device.
      */
+    private void rebuildIndex(List<SmartDevice> devices) {
+        List<RuleState> rules = table.rules();
+        Map<Class<?>, List<RuleState>> byType = new HashMap<>();
+        Map<String, List<RuleState>> byName = new HashMap<>();
+        for (RuleState state : rules) {
+            if (state.inputs.isAll()) continue;
+            for (String name : state.inputs.names()) {
+                byName.computeIfAbsent(name, n -> new ArrayList<>(1)).add(state);
+            }
+        }
+
+        Map<RuleState, List<SmartDevice>> views = new IdentityHashMap<>();
+        Map<RuleState, List<Integer>> viewPositions = new IdentityHashMap<>();
+        Map<String, List<RuleState>> newReaders = new HashMap<>();
+        List<SmartDevice> newWatched = new ArrayList<>();
+        for (int position = 0; position < devices.size(); position++) {
+            SmartDevice device = devices.get(position);
+            List<RuleState> deviceReaders = new ArrayList<>(byType.computeIfAbsent(device.getClass(),
+                    c -> rules.stream().filter(state -> state.inputs.matchesType(c)).toList()));
+            for (RuleState state : byName.getOrDefault(device.getName(), List.of())) {
+                if (!deviceReaders.contains(state)) deviceReaders.add(state);
+            }
+            if (deviceReaders.isEmpty()) continue;
+
+            for (RuleState state : deviceReaders) {
+                views.computeIfAbsent(state, s -> new ArrayList<>()).add(device);
+                viewPositions.computeIfAbsent(state, s -> new ArrayList<>()).add(position);
+            }
+            newReaders.put(device.getName(), List.copyOf(deviceReaders));
+            if (deviceReaders.stream().anyMatch(state -> state.changeDriven)) {
+                newWatched.add(device);
+            }
+        }
+
+        // Write sets as positions in the device list, for conflict checks
+        Map<Class<?>, List<RuleState>> writersByType = new HashMap<>();
+        Map<String, List<RuleState>> writersByName = new HashMap<>();
+        for (RuleState state : rules) {
+            if (state.outputs.isAll()) continue;
+            for (String name : state.outputs.names()) {
+                writersByName.computeIfAbsent(name, n -> new ArrayList<>(1)).add(state);
+            }
+        }
+        Map<RuleState, BitSet> writes = new IdentityHashMap<>();
+        for (int i = 0; i < devices.size(); i++) {
+            SmartDevice device = devices.get(i);
+            for (RuleState state : writersByType.computeIfAbsent(device.getClass(),
+                    c -> rules.stream().filter(s -> s.outputs.matchesType(c)).toList())) {
+                writes.computeIfAbsent(state, s -> new BitSet()).set(i);
+            }
+            for (RuleState state : writersByName.getOrDefault(device.getName(), List.of())) {
+                writes.computeIfAbsent(state, s -> new BitSet()).set(i);
+            }
+        }
+
+        for (RuleState state : rules) {
+            state.writes = writes.getOrDefault(state, new BitSet());
+            List<SmartDevice> written = new ArrayList<>();
+            for (int i = state.writes.nextSetBit(0); i >= 0; i = state.writes.nextSetBit(i + 1)) {
+                written.add(devices.get(i));
+            }
+            state.written = List.copyOf(written);
+            state.positions = viewPositions.getOrDefault(state, List.of()).stream().mapToInt(Integer::intValue).toArray();
+            List<SmartDevice> view = List.copyOf(views.getOrDefault(state, List.of()));
+            if (!view.equals(state.view)) {
+                state.view = view;
+                state.inputsChanged.set(true);
+            }
+        }
+        readers = newReaders;
+        watched = newWatched;
+        fingerprints = newWatched.stream().mapToInt(DeviceSnapshot::fingerprint).toArray();
+        layout = new DeviceSnapshot.Layout(devices);
+        indexedDevices = List.copyOf(devices);
+    }
+
+    /**
+     * Mark the readers of watched devices whose state changed since the last sweep.
+     * Catches changes on devices that do not publish events.
+     */
+    private void detectChanges() {
+        synchronized (indexLock) {
+            for (int i = 0; i < watched.size(); i++) {
+                SmartDevice device = watched.get(i);
+                int fingerprint = DeviceSnapshot.fingerprint(device);
+                if (fingerprint != fingerprints[i]) {
+                    fingerprints[i] = fingerprint;
+                    readers.get(device.getName()).forEach(state -> state.inputsChanged.set(true));
+                }
+            }
+        }
+    }
+
+    private void scheduleTimedTriggers(RuleState state) {
+        for (int i = 0; i < state.triggers.size(); i++) {
+            Schedule schedule = switch (state.triggers.get(i)) {
+                case RuleTrigger.Every every -> Schedule.every(every.period());
+                case RuleTrigger.DailyAt daily -> Schedule.daily(daily.time());
+                case RuleTrigger.OnSchedule on -> on.schedule();
+                case RuleTrigger.OnEvent on -> null;
+                case RuleTrigger.OnDerived derived -> null;
+            };
+            if (schedule != null) {
+                String key = "trigger:" + state.rule.getName() + ":" + i;
+                scheduledTasks.put(key, scheduler.schedule(key, schedule, () -> fireTimed(state)));
+                state.timerKeys.add(key);
+            }
+        }
+    }
+
+    private void fireTimed(RuleState state) {
+        if (!state.rule.isEnabled()) return;
+        timedTriggers.incrementAndGet();
+        dispatch(state, System.nanoTime());
+    }
+
+    private void scheduleSweep() {
+        ScheduledTask previous = scheduledTasks.remove("rule-evaluation");
+        if (previous != null) {
+            previous.cancel();
+        }
+        Duration period = fallbackSweep;
+        if (period != null) {
+            Runnable sweep = () -> {
+                try {
+                    ruleExecutor.execute(this::evaluateRules);
+                } catch (RejectedExecutionException e) {
+                    // Engine stopped
+                }
+            };
+            sweep.run();
+            scheduledTasks.put("rule-evaluation", scheduler.schedule("rule-evaluation", Schedule.every(period), sweep));
+        }
+    }
+
     /**
      * Stop the automation engine
      */
     public void stop() {
+        running = false;
+        if (eventSystem != null) {
+            eventSystem.unsubscribe(triggerListener);
+            eventSystem = null;
+        }
+
         // Cancel all scheduled tasks
-        scheduledTasks.values().forEach(future -> future.cancel(false));
+        scheduledTasks.values().forEach(ScheduledTask::cancel);
         scheduledTasks.clear();
 
         // Shutdown executors
-        scheduler.shutdown();
+        scheduler.close();
         ruleExecutor.shutdown();
 
         try {
-            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
-            }
             if (!ruleExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
                 ruleExecutor.shutdownNow();
             }
         } catch (InterruptedException e) {
-            scheduler.shutdownNow();
             ruleExecutor.shutdownNow();
             Thread.currentThread().interrupt();
         }
@@ -122,16 +1159,47 @@ public class AutomationEngine {
      * Get status of the automation engine
      */
     public String getStatus() {
+        RuleTable current = table;
+        List<RuleState> rules = current.rules();
         return String.format(
                 "Automation Engine Status:\n" +
                         "  Active rules: %d\n" +
                         "  Scheduled tasks: %d\n" +
-                        "  Scheduler active: %s\n" +
-                        "  Rule executor active: %s",
+                        "  Scheduler active: %s (%d timers)\n" +
+                        "  Rule executor active: %s\n" +
+                        "  Triggers: %d event, %d timed (%s)\n" +
+                        "  Fallback sweep: %s\n" +
+                        "  Evaluations: %d event triggered, %d timed, %d sweeps, %d executions\n" +
+                        "  Reaction latency: %s\n" +
+                        "  Device index: %d devices read, %d watched, %d evaluations skipped (inputs unchanged)\n" +
+                        "  Scheduling: %d rounds, %d write conflicts (%s: %d retried, %d dropped)\n" +
+                        "  Budgets: %d overruns, %d quarantined now, %d quarantines (after %d overruns in a row), " +
+                        "%d overran and still running, %d evaluations held behind them\n" +
+                        "  Snapshots: %d taken, %d actions applied in batches, %d refused (outside rule outputs)\n" +
+                        "  Chaining: %d derived events, %d chained evaluations, %d deferred behind upstream rules, %d refused (undeclared)\n" +
+                        "  Rule table: version %d, %d rules retired, last update took %.2f ms\n" +
+                        "  Rules by total time:%s",
                 rules.size(),
                 scheduledTasks.size(),
-                !scheduler.isShutdown(),
-                !ruleExecutor.isShutdown()
+                scheduler.isRunning(), scheduler.getScheduledCount(),
+                !ruleExecutor.isShutdown(),
+                current.triggers().values().stream().mapToInt(SubscriptionIndex::size).sum(),
+                rules.stream().mapToLong(s -> s.triggers.stream()
+                        .filter(t -> !(t instanceof RuleTrigger.OnEvent || t instanceof RuleTrigger.OnDerived)).count()).sum(),
+                eventSystem != null ? "attached" : "no event system",
+                fallbackSweep != null ? "every " + fallbackSweep.toMillis() + " ms" : "off",
+                eventTriggers.get(), timedTriggers.get(), sweeps.get(), executions.get(),
+                reactionLatency.snapshot().format(),
+                readers.size(), watched.size(), skippedEvaluations.get(),
+                rounds.get(), conflicts.get(), conflictPolicy, retried.get(), dropped.get(),
+                rules.stream().mapToLong(state -> state.overruns.get()).sum(),
+                rules.stream().filter(state -> state.quarantined).count(),
+                quarantines.get(), quarantineThreshold,
+                overrunning.stream().filter(state -> state.executing.get()).count(), heldBack.get(),
+                snapshots.get(), batchedActions.get(), refusedActions.get(),
+                derivedEvents.get(), chainedEvaluations.get(), deferred.get(), refusedEvents.get(),
+                current.version(), retiredRules.get(), lastUpdateNanos / 1e6,
+                getRuleStats().stream().map(stats -> "\n    " + stats.format()).collect(Collectors.joining())
         );
     }
 
@@ -1,11 +1,23 @@
 package com.fatty.smarthome.concurrent.automation;
 
+import com.fatty.smarthome.concurrent.events.Event;
 import com.fatty.smarthome.devices.SmartDevice;
 import com.fatty.smarthome.util.SmartHomeException;
 
+import java.time.Clock;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public interface ConcurrentRule {
+    /**
+     * Emits derived events for the rules chained after this one
+     */
+    @FunctionalInterface
+    interface Emitter {
+        void emit(String name, Map<String, Object> data);
+    }
+
     String getName();
     boolean shouldExecute();
     void execute(List<SmartDevice> devices) throws SmartHomeException;
@@ -13,4 +25,73 @@ public interface ConcurrentRule {
     int getPriority();
 
     boolean isEnabled();
+
+    /**
+     * Clock used for time based decisions (cooldowns, schedules).
+     * AutomationEngine passes its own clock so rules can run under a virtual clock during replay.
+     */
+    default void setClock(Clock clock) {}
+
+    /**
+     * Events and schedules that make the engine evaluate this rule. Rules without
+     * triggers only run in the engine's fallback sweep (or evaluateNow()).
+     */
+    default List<RuleTrigger> getTriggers() {
+        return List.of();
+    }
+
+    /**
+     * Devices this rule reads. execute() receives only these, so a rule never scans
+     * the whole fleet for the few devices it cares about.
+     */
+    default DeviceSelector getInputs() {
+        return DeviceSelector.ALL;
+    }
+
+    /**
+     * Devices this rule may change. Rules writing overlapping devices never run at the
+     * same time; the higher priority one goes first. Defaults to the inputs.
+     */
+    default DeviceSelector getOutputs() {
+        return getInputs();
+    }
+
+    /**
+     * True when execute() depends on nothing but the state of its input devices. The
+     * engine then skips the rule until one of them has changed since its last run.
+     */
+    default boolean isChangeDriven() {
+        return false;
+    }
+
+    /**
+     * How long one execution may take. When it is exceeded the engine stops waiting
+     * and interrupts the rule; long running rules should check
+     * Thread.currentThread().isInterrupted() and return. Rules that keep overrunning
+     * are quarantined.
+     */
+    default long getTimeBudgetMillis() {
+        return 1000;
+    }
+
+    /**
+     * Called with each matching event before the rule is evaluated, so the rule can
+     * remember what happened. Runs on the event delivery thread and must be quick.
+     */
+    default void onTrigger(Event event) {}
+
+    /**
+     * Names of the derived events this rule may emit. Rules with a matching
+     * RuleTrigger.OnDerived depend on this one; the engine rejects rules that would
+     * close a cycle or give a rule too many dependents.
+     */
+    default Set<String> getEmits() {
+        return Set.of();
+    }
+
+    /**
+     * Called once when the rule is added. Events emitted while the rule executes are
+     * delivered after its round, so the rules consuming them run in the same pass.
+     */
+    default void setEmitter(Emitter emitter) {}
 }
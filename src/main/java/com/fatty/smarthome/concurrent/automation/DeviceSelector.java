@@ -0,0 +1,41 @@
+package com.fatty.smarthome.concurrent.automation;
+
+import java.util.Set;
+
+/**
+ * A set of devices: instances of some device types and/or devices with some names.
+ * Rules use it to declare the devices they read (the AutomationEngine hands execute()
+ * only these and tracks their changes) and the devices they write (used to find
+ * conflicting rules).
+ * @param types device classes (subclasses included), null for every device
+ * @param names device names, null for every device
+ */
+public record DeviceSelector(Set<Class<?>> types, Set<String> names) {
+    public static final DeviceSelector ALL = new DeviceSelector(null, null);
+    public static final DeviceSelector NONE = new DeviceSelector(Set.of(), Set.of());
+
+    public DeviceSelector {
+        if ((types == null) != (names == null)) {
+            throw new IllegalArgumentException("Use DeviceSelector.ALL for every device");
+        }
+    }
+
+    public static DeviceSelector types(Class<?>... types) {
+        return new DeviceSelector(Set.of(types), Set.of());
+    }
+
+    public static DeviceSelector devices(String... names) {
+        return new DeviceSelector(Set.of(), Set.of(names));
+    }
+
+    public boolean isAll() {
+        return types == null;
+    }
+
+    /**
+     * Whether every device of this class is in the set
+     */
+    public boolean matchesType(Class<?> deviceClass) {
+        return isAll() || types.stream().anyMatch(t -> t.isAssignableFrom(deviceClass));
+    }
+}
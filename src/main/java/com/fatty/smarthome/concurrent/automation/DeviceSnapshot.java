@@ -0,0 +1,199 @@
+package com.fatty.smarthome.concurrent.automation;
+
+import com.fatty.smarthome.concurrent.devices.ConcurrentLight;
+import com.fatty.smarthome.concurrent.devices.ConcurrentSecurityCamera;
+import com.fatty.smarthome.concurrent.devices.ConcurrentThermostat;
+import com.fatty.smarthome.devices.Light;
+import com.fatty.smarthome.devices.SecurityCamera;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.devices.Thermostat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable copy of the state of a device list, held in flat primitive arrays.
+ *
+ * The engine captures one snapshot per evaluation round, reading each device once,
+ * and hands every SnapshotRule a view of it holding just its inputs. Rules read the
+ * arrays without taking device locks, and all rules in a round see the same state.
+ *
+ * Values a device does not have read as NONE (temperature, brightness) or false.
+ */
+public final class DeviceSnapshot {
+    public static final int NONE = Integer.MIN_VALUE;
+
+    public enum Kind { LIGHT, THERMOSTAT, CAMERA, OTHER }
+
+    /**
+     * The devices themselves, shared by every snapshot of the same device list
+     */
+    static final class Layout {
+        final SmartDevice[] devices;
+        final String[] names;
+        final Kind[] kinds;
+        final Map<String, Integer> index = new HashMap<>();
+
+        Layout(List<SmartDevice> devices) {
+            this.devices = devices.toArray(SmartDevice[]::new);
+            this.names = new String[this.devices.length];
+            this.kinds = new Kind[this.devices.length];
+            for (int i = 0; i < this.devices.length; i++) {
+                names[i] = this.devices[i].getName();
+                kinds[i] = kindOf(this.devices[i]);
+                index.putIfAbsent(names[i], i);
+            }
+        }
+    }
+
+    private final Layout layout;
+    // Positions of a view's devices in the arrays, ascending; null for the whole list
+    private final int[] positions;
+    private final boolean[] on;
+    private final int[] temperature;
+    private final int[] brightness;
+    private final boolean[] recording;
+
+    private DeviceSnapshot(Layout layout, int[] positions, boolean[] on, int[] temperature,
+                           int[] brightness, boolean[] recording) {
+        this.layout = layout;
+        this.positions = positions;
+        this.on = on;
+        this.temperature = temperature;
+        this.brightness = brightness;
+        this.recording = recording;
+    }
+
+    /**
+     * Snapshot of a device list
+     */
+    public static DeviceSnapshot of(List<SmartDevice> devices) {
+        return capture(new Layout(devices));
+    }
+
+    static DeviceSnapshot capture(Layout layout) {
+        int size = layout.devices.length;
+        boolean[] on = new boolean[size];
+        int[] temperature = new int[size];
+        int[] brightness = new int[size];
+        boolean[] recording = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            SmartDevice device = layout.devices[i];
+            on[i] = device.isOn();
+            temperature[i] = temperatureOf(device);
+            brightness[i] = brightnessOf(device);
+            recording[i] = isRecording(device);
+        }
+        return new DeviceSnapshot(layout, null, on, temperature, brightness, recording);
+    }
+
+    /**
+     * Hash of the state a snapshot captures for a device; it moves only when a rule could see a change
+     */
+    static int fingerprint(SmartDevice device) {
+        int hash = Boolean.hashCode(device.isOn());
+        hash = 31 * hash + temperatureOf(device);
+        hash = 31 * hash + brightnessOf(device);
+        return 31 * hash + Boolean.hashCode(isRecording(device));
+    }
+
+    private static int temperatureOf(SmartDevice device) {
+        return switch (device) {
+            case ConcurrentThermostat thermostat -> thermostat.getTemperature();
+            case Thermostat thermostat -> thermostat.getTemperature();
+            default -> NONE;
+        };
+    }
+
+    private static int brightnessOf(SmartDevice device) {
+        return device instanceof ConcurrentLight light ? light.getBrightness() : NONE;
+    }
+
+    private static boolean isRecording(SmartDevice device) {
+        return device instanceof ConcurrentSecurityCamera camera && camera.isRecording();
+    }
+
+    /**
+     * The same state restricted to the devices at these positions (ascending)
+     */
+    DeviceSnapshot view(int[] positions) {
+        return new DeviceSnapshot(layout, positions, on, temperature, brightness, recording);
+    }
+
+    public int size() {
+        return positions == null ? layout.devices.length : positions.length;
+    }
+
+    /**
+     * Index of the named device, or -1 if it is not in this snapshot
+     */
+    public int indexOf(String name) {
+        Integer position = layout.index.get(name);
+        if (position == null) return -1;
+        if (positions == null) return position;
+        int index = Arrays.binarySearch(positions, position);
+        return index >= 0 ? index : -1;
+    }
+
+    public String name(int index) {
+        return layout.names[position(index)];
+    }
+
+    public Kind kind(int index) {
+        return layout.kinds[position(index)];
+    }
+
+    public boolean isOn(int index) {
+        return on[position(index)];
+    }
+
+    public int temperature(int index) {
+        return temperature[position(index)];
+    }
+
+    public int brightness(int index) {
+        return brightness[position(index)];
+    }
+
+    public boolean isRecording(int index) {
+        return recording[position(index)];
+    }
+
+    /**
+     * Position of a device in the snapshot's device list, for applying actions
+     */
+    int position(int index) {
+        return positions == null ? index : positions[index];
+    }
+
+    // By position in the device list, for ActionBatch
+
+    SmartDevice deviceAt(int position) {
+        return layout.devices[position];
+    }
+
+    boolean isOnAt(int position) {
+        return on[position];
+    }
+
+    int temperatureAt(int position) {
+        return temperature[position];
+    }
+
+    int brightnessAt(int position) {
+        return brightness[position];
+    }
+
+    boolean isRecordingAt(int position) {
+        return recording[position];
+    }
+
+    private static Kind kindOf(SmartDevice device) {
+        if (device instanceof Light || device instanceof ConcurrentLight) return Kind.LIGHT;
+        if (device instanceof Thermostat || device instanceof ConcurrentThermostat) return Kind.THERMOSTAT;
+        if (device instanceof SecurityCamera || device instanceof ConcurrentSecurityCamera) return Kind.CAMERA;
+        return Kind.OTHER;
+    }
+}
@@ -0,0 +1,96 @@
+package com.fatty.smarthome.concurrent.automation;
+
+import com.fatty.smarthome.concurrent.events.EventFilter;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.concurrent.scheduling.Schedule;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.Objects;
+
+/**
+ * What makes the AutomationEngine evaluate a rule: matching events, a fixed period, a
+ * time of day or any other Schedule (e.g. cron). Rules declare these through {@link ConcurrentRule#getTriggers()}.
+ */
+public sealed interface RuleTrigger {
+    /**
+     * Events of a type (optionally only from one device or matching a filter)
+     */
+    record OnEvent(EventType type, EventFilter filter) implements RuleTrigger {
+        public OnEvent {
+            Objects.requireNonNull(type);
+            Objects.requireNonNull(filter);
+        }
+    }
+
+    /**
+     * Every period, for rules that watch something no event reports
+     */
+    record Every(Duration period) implements RuleTrigger {
+        public Every {
+            if (period.isNegative() || period.isZero()) {
+                throw new IllegalArgumentException("Trigger period must be positive");
+            }
+        }
+    }
+
+    /**
+     * Once a day at the given local time
+     */
+    record DailyAt(LocalTime time) implements RuleTrigger {
+        public DailyAt {
+            Objects.requireNonNull(time);
+        }
+    }
+
+    /**
+     * Each occurrence of a schedule
+     */
+    record OnSchedule(Schedule schedule) implements RuleTrigger {
+        public OnSchedule {
+            Objects.requireNonNull(schedule);
+        }
+    }
+
+    /**
+     * A derived event another rule emits (see {@link ConcurrentRule#getEmits()}); the
+     * rule then runs in the same evaluation pass, after the emitting rule
+     */
+    record OnDerived(String name) implements RuleTrigger {
+        public OnDerived {
+            Objects.requireNonNull(name);
+        }
+    }
+
+    static RuleTrigger on(EventType type) {
+        return new OnEvent(type, EventFilter.ALL);
+    }
+
+    static RuleTrigger on(EventType type, String device) {
+        return new OnEvent(type, EventFilter.source(device));
+    }
+
+    static RuleTrigger on(EventType type, EventFilter filter) {
+        return new OnEvent(type, filter);
+    }
+
+    static RuleTrigger derived(String name) {
+        return new OnDerived(name);
+    }
+
+    static RuleTrigger every(Duration period) {
+        return new Every(period);
+    }
+
+    static RuleTrigger dailyAt(LocalTime time) {
+        return new DailyAt(time);
+    }
+
+    static RuleTrigger cron(String expression) {
+        return new OnSchedule(Schedule.cron(expression));
+    }
+
+    static RuleTrigger at(Schedule schedule) {
+        return new OnSchedule(schedule);
+    }
+}
@@ -1,19 +1,24 @@
 package com.fatty.smarthome.concurrent.automation;
 
+import com.fatty.smarthome.concurrent.cep.CepEngine;
+import com.fatty.smarthome.concurrent.cep.Pattern;
 import com.fatty.smarthome.concurrent.devices.ConcurrentLight;
+import com.fatty.smarthome.concurrent.devices.ConcurrentSecurityCamera;
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventType;
 import com.fatty.smarthome.devices.Light;
 import com.fatty.smarthome.devices.SecurityCamera;
-import com.fatty.smarthome.devices.SmartDevice;
-import com.fatty.smarthome.util.SmartHomeException;
 
+import java.time.Clock;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class SecurityRule implements ConcurrentRule{
+public class SecurityRule implements SnapshotRule {
     private final String name;
     private final AtomicBoolean motionDetected = new AtomicBoolean(false);
     private final AtomicBoolean enabled = new AtomicBoolean(true);
     private volatile long lastTriggered = 0;
+    private volatile Clock clock = Clock.systemDefaultZone();
     private static final long COOLDOWN_MS = 30000; // 30 second cooldown
 
     public SecurityRule(String name) {
@@ -27,17 +32,43 @@ public class SecurityRule implements ConcurrentRule{
         motionDetected.set(true);
     }
 
+    /**
+     * Arm the rule on a complex pattern instead of single motion events,
+     * e.g. front door camera then backyard camera within 10 seconds
+     */
+    public void triggerOn(CepEngine engine, Pattern pattern) {
+        engine.register(name, pattern, match -> triggerMotion());
+    }
+
     @Override
     public String getName() {
         return name;
     }
 
+    @Override
+    public List<RuleTrigger> getTriggers() {
+        return List.of(RuleTrigger.on(EventType.MOTION_DETECTED));
+    }
+
+    @Override
+    public void onTrigger(Event event) {
+        if (event.getType() == EventType.MOTION_DETECTED) {
+            triggerMotion();
+        }
+    }
+
+    @Override
+    public DeviceSelector getInputs() {
+        return DeviceSelector.types(Light.class, ConcurrentLight.class,
+                SecurityCamera.class, ConcurrentSecurityCamera.class);
+    }
+
     @Override
     public boolean shouldExecute() {
         if (!isEnabled()) return false;
 
         // Check cooldown period
-        if (System.currentTimeMillis() - lastTriggered < COOLDOWN_MS) {
+        if (clock.millis() - lastTriggered < COOLDOWN_MS) {
             return false;
         }
 
@@ -45,30 +76,26 @@ public class SecurityRule implements ConcurrentRule{
     }
 
     @Override
-    public void execute(List<SmartDevice> devices) throws SmartHomeException {
+    public void evaluate(DeviceSnapshot devices, ActionBatch actions) {
         if (motionDetected.compareAndSet(true, false)) {
             System.out.println("🚨 " + getName() + " activated! Securing home...");
-            lastTriggered = System.currentTimeMillis();
+            lastTriggered = clock.millis();
 
-            // Turn on all lights
+            // Lights to full brightness and cameras on, in one pass over the rule's inputs
             int lightsOn = 0;
-            for (SmartDevice device : devices) {
-                if (device instanceof Light && !device.isOn()) {
-                    device.turnOn();
-                    lightsOn++;
-
-                    // Set brightness to maximum if it's a concurrent light
-                    if (device instanceof ConcurrentLight) {
-                        ((ConcurrentLight) device).setBrightness(100);
-                    }
-                }
-            }
-
-            // Activate all cameras
             int camerasOn = 0;
-            for (SmartDevice device : devices) {
-                if (device instanceof SecurityCamera && !device.isOn()) {
-                    device.turnOn();
+            for (int i = 0; i < devices.size(); i++) {
+                DeviceSnapshot.Kind kind = devices.kind(i);
+                boolean light = kind == DeviceSnapshot.Kind.LIGHT;
+                if ((!light && kind != DeviceSnapshot.Kind.CAMERA) || devices.isOn(i)) continue;
+
+                actions.turnOn(i);
+                if (devices.brightness(i) != DeviceSnapshot.NONE) {
+                    actions.setBrightness(i, 100);
+                }
+                if (light) {
+                    lightsOn++;
+                } else {
                     camerasOn++;
                 }
             }
@@ -87,6 +114,11 @@ public class SecurityRule implements ConcurrentRule{
         return enabled.get();
     }
 
+    @Override
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
     public void setEnabled(boolean enabled) {
         this.enabled.set(enabled);
     }
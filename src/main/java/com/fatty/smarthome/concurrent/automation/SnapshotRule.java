@@ -0,0 +1,29 @@
+package com.fatty.smarthome.concurrent.automation;
+
+import com.fatty.smarthome.devices.SmartDevice;
+
+import java.util.List;
+
+/**
+ * A rule that reads an immutable DeviceSnapshot and records the changes it wants in
+ * an ActionBatch instead of calling devices itself. The engine evaluates all snapshot
+ * rules of a round against one snapshot without device locks, then applies their
+ * batches together. Actions on devices outside getOutputs() are refused.
+ */
+public interface SnapshotRule extends ConcurrentRule {
+    /**
+     * Decide what to do from the snapshot, which holds only the rule's inputs
+     */
+    void evaluate(DeviceSnapshot devices, ActionBatch actions);
+
+    /**
+     * Run the rule outside the engine: snapshot the devices, evaluate and apply
+     */
+    @Override
+    default void execute(List<SmartDevice> devices) {
+        DeviceSnapshot snapshot = DeviceSnapshot.of(devices);
+        ActionBatch actions = new ActionBatch(snapshot);
+        evaluate(snapshot, actions);
+        actions.apply();
+    }
+}
@@ -1,47 +1,88 @@
 package com.fatty.smarthome.concurrent.automation;
 
-import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.concurrent.devices.ConcurrentThermostat;
+import com.fatty.smarthome.concurrent.events.EventFilter;
+import com.fatty.smarthome.concurrent.events.EventType;
 import com.fatty.smarthome.devices.Thermostat;
 
+import java.time.Clock;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class TemperatureRule implements ConcurrentRule {
+/**
+ * Keeps thermostats near a target temperature. Whether and how far a setpoint moves is
+ * left to a ThermostatController. Give it one with Settings.hysteresis so drift around
+ * the target does not make the thermostats flip between heating and cooling.
+ */
+public class TemperatureRule implements SnapshotRule {
     private final String name;
     private final int targetTemp;
-    private final int tolerance;
+    private final ThermostatController controller;
     private final AtomicBoolean enabled = new AtomicBoolean(true);
+    private volatile Clock clock = Clock.systemDefaultZone();
 
+    /**
+     * @param tolerance degrees the temperature may be off before it is corrected; there
+     *                  is no dwell or rate limit, so every correction is applied at once
+     */
     public TemperatureRule(String name, int targetTemp, int tolerance) {
+        this(name, targetTemp, new ThermostatController(ThermostatController.Settings.immediate(tolerance)));
+    }
+
+    public TemperatureRule(String name, int targetTemp, ThermostatController controller) {
         this.name = name;
         this.targetTemp = targetTemp;
-        this.tolerance = tolerance;
+        this.controller = controller;
+    }
+
+    public ThermostatController getController() {
+        return controller;
     }
+
     @Override
     public String getName() {
         return name;
     }
 
+    @Override
+    public List<RuleTrigger> getTriggers() {
+        // Temperatures only move through alerts or thermostat state changes
+        return List.of(
+                RuleTrigger.on(EventType.TEMPERATURE_ALERT),
+                RuleTrigger.on(EventType.DEVICE_STATE_CHANGED,
+                        EventFilter.payload("deviceType", ConcurrentThermostat.class.getSimpleName())));
+    }
+
+    @Override
+    public DeviceSelector getInputs() {
+        return DeviceSelector.types(Thermostat.class, ConcurrentThermostat.class);
+    }
+
+    // Not change driven: a correction held back by dwell or rate limit is due later
+    // even if the temperature has not moved since
+
     @Override
     public boolean shouldExecute() {
         return isEnabled();
     }
     @Override
-    public void execute(List<SmartDevice> devices) {
-        devices.stream()
-                .filter(d -> d instanceof Thermostat && d.isOn())
-                .map(d -> (Thermostat) d)
-                .forEach(thermostat -> {
-                    int currentTemp = thermostat.getTemperature();
-                    int diff = Math.abs(currentTemp - targetTemp);
+    public void evaluate(DeviceSnapshot devices, ActionBatch actions) {
+        for (int i = 0; i < devices.size(); i++) {
+            if (devices.kind(i) != DeviceSnapshot.Kind.THERMOSTAT) continue;
+            if (!devices.isOn(i)) {
+                controller.reset(devices.name(i));
+                continue;
+            }
 
-                    if (diff > tolerance) {
-                        System.out.println("🌡️  " + getName() + " adjusting " +
-                                thermostat.getName() + " from " + currentTemp +
-                                "°C to " + targetTemp + "°C");
-                        thermostat.setTemperature(targetTemp);
-                    }
-                });
+            int currentTemp = devices.temperature(i);
+            int setpoint = controller.decide(devices.name(i), currentTemp, targetTemp, clock.millis());
+            if (setpoint != ThermostatController.NO_CHANGE) {
+                System.out.println("🌡️  " + getName() + " adjusting " +
+                        devices.name(i) + " from " + currentTemp +
+                        "°C to " + setpoint + "°C");
+                actions.setTemperature(i, setpoint);
+            }
+        }
     }
     @Override
     public int getPriority() {
@@ -53,6 +94,11 @@ public class TemperatureRule implements ConcurrentRule {
         return enabled.get();
     }
 
+    @Override
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
     public void setEnabled(boolean enabled) {
         this.enabled.set(enabled);
     }
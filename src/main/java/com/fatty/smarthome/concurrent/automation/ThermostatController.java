@@ -0,0 +1,173 @@
+package com.fatty.smarthome.concurrent.automation;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a thermostat's setpoint should really change, so a temperature that
+ * wanders around the target does not make it flip between heating and cooling.
+ *
+ * - Deadband hysteresis: a correction starts only when the temperature is more than
+ *   the deadband away from the target, and runs until the target is reached.
+ * - Minimum dwell: after a correction ends the thermostat stays idle for at least the
+ *   dwell time before the next one starts, so heating is never followed straight
+ *   by cooling or the other way round.
+ * - Rate limit: setpoint changes are at least the given interval apart and move at
+ *   most maxStep degrees at a time (0 for no limit).
+ *
+ * Settings are per thermostat (configure), falling back to the defaults.
+ */
+public class ThermostatController {
+    public static final int NO_CHANGE = Integer.MIN_VALUE;
+
+    public enum Mode { IDLE, HEATING, COOLING }
+
+    /**
+     * @param deadband degrees the temperature may be off before a correction starts
+     * @param minDwell shortest idle time between two corrections
+     * @param minInterval shortest time between two setpoint changes
+     * @param maxStep largest setpoint change at once, 0 for unlimited
+     */
+    public record Settings(int deadband, Duration minDwell, Duration minInterval, int maxStep) {
+        public Settings {
+            if (deadband < 0 || maxStep < 0) {
+                throw new IllegalArgumentException("Deadband and step must not be negative");
+            }
+            if (minDwell.isNegative() || minInterval.isNegative()) {
+                throw new IllegalArgumentException("Dwell and interval must not be negative");
+            }
+        }
+
+        /**
+         * Correct as soon as the temperature leaves the band, with no time limits
+         */
+        public static Settings immediate(int deadband) {
+            return new Settings(deadband, Duration.ZERO, Duration.ZERO, 0);
+        }
+
+        /**
+         * Hysteresis with a 15 minute dwell between corrections and setpoint changes
+         * at least 5 minutes apart
+         */
+        public static Settings hysteresis(int deadband) {
+            return new Settings(deadband, Duration.ofMinutes(15), Duration.ofMinutes(5), 0);
+        }
+    }
+
+    /**
+     * Control state of one thermostat; only touched by one rule evaluation at a time
+     */
+    private static final class Loop {
+        Mode mode = Mode.IDLE;
+        long modeSince = Long.MIN_VALUE;
+        long lastChange = Long.MIN_VALUE;
+    }
+
+    private volatile Settings defaults;
+    private final Map<String, Settings> settings = new ConcurrentHashMap<>();
+    private final Map<String, Loop> loops = new ConcurrentHashMap<>();
+
+    private final AtomicLong decisions = new AtomicLong(0);
+    private final AtomicLong changes = new AtomicLong(0);
+    private final AtomicLong modeChanges = new AtomicLong(0);
+    private final AtomicLong heldByDeadband = new AtomicLong(0);
+    private final AtomicLong heldByDwell = new AtomicLong(0);
+    private final AtomicLong heldByRate = new AtomicLong(0);
+
+    public ThermostatController(Settings defaults) {
+        this.defaults = defaults;
+    }
+
+    /**
+     * Use these settings for one thermostat instead of the defaults
+     */
+    public void configure(String thermostat, Settings settings) {
+        this.settings.put(thermostat, settings);
+    }
+
+    public void setDefaults(Settings defaults) {
+        this.defaults = defaults;
+    }
+
+    public Settings getSettings(String thermostat) {
+        return settings.getOrDefault(thermostat, defaults);
+    }
+
+    public Mode getMode(String thermostat) {
+        Loop loop = loops.get(thermostat);
+        return loop != null ? loop.mode : Mode.IDLE;
+    }
+
+    /**
+     * Decide the next setpoint of a thermostat
+     * @param current temperature now
+     * @param target temperature wanted
+     * @param nowMillis current time
+     * @return the setpoint to apply, or NO_CHANGE
+     */
+    public int decide(String thermostat, int current, int target, long nowMillis) {
+        decisions.incrementAndGet();
+        Settings s = getSettings(thermostat);
+        Loop loop = loops.computeIfAbsent(thermostat, t -> new Loop());
+
+        boolean reached = switch (loop.mode) {
+            case HEATING -> current >= target;
+            case COOLING -> current <= target;
+            case IDLE -> false;
+        };
+        if (reached) {
+            setMode(loop, Mode.IDLE, nowMillis);
+        } else if (loop.mode == Mode.IDLE) {
+            if (Math.abs(current - target) <= s.deadband()) {
+                if (current != target) heldByDeadband.incrementAndGet();
+                return NO_CHANGE;
+            }
+            if (loop.modeSince != Long.MIN_VALUE && nowMillis - loop.modeSince < s.minDwell().toMillis()) {
+                heldByDwell.incrementAndGet();
+                return NO_CHANGE;
+            }
+            setMode(loop, current < target ? Mode.HEATING : Mode.COOLING, nowMillis);
+        }
+        if (loop.mode == Mode.IDLE) {
+            return NO_CHANGE;
+        }
+
+        if (loop.lastChange != Long.MIN_VALUE && nowMillis - loop.lastChange < s.minInterval().toMillis()) {
+            heldByRate.incrementAndGet();
+            return NO_CHANGE;
+        }
+        int setpoint = target;
+        if (s.maxStep() > 0) {
+            setpoint = current + Math.max(-s.maxStep(), Math.min(s.maxStep(), target - current));
+        }
+        loop.lastChange = nowMillis;
+        changes.incrementAndGet();
+        return setpoint;
+    }
+
+    private void setMode(Loop loop, Mode mode, long nowMillis) {
+        loop.mode = mode;
+        loop.modeSince = nowMillis;
+        modeChanges.incrementAndGet();
+    }
+
+    /**
+     * Forget a thermostat's control state (e.g. after it was switched off)
+     */
+    public void reset(String thermostat) {
+        loops.remove(thermostat);
+    }
+
+    public long getChangeCount() {
+        return changes.get();
+    }
+
+    public String getStatistics() {
+        return String.format("Thermostat control: %d decisions, %d setpoint changes, %d mode changes, " +
+                        "held %d by deadband, %d by dwell, %d by rate limit",
+                decisions.get(), changes.get(), modeChanges.get(),
+                heldByDeadband.get(), heldByDwell.get(), heldByRate.get());
+    }
+}
@@ -1,7 +1,14 @@
 package com.fatty.smarthome.concurrent.automation;
 
+import com.fatty.smarthome.concurrent.scheduling.Schedule;
+import com.fatty.smarthome.concurrent.scheduling.ScheduledTask;
+import com.fatty.smarthome.concurrent.scheduling.SchedulerService;
 import com.fatty.smarthome.devices.SmartDevice;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -12,8 +19,10 @@ public class TimeBasedRule implements ConcurrentRule{
     private final String name;
     private final LocalTime executionTime;
     private final Runnable action;
-    private volatile LocalTime lastExecuted = null;
+    // Day of the occurrence of executionTime the rule last ran for
+    private volatile LocalDate lastExecutedOn = null;
     private final AtomicBoolean enabled = new AtomicBoolean(true);
+    private volatile Clock clock = Clock.systemDefaultZone();
 
     public TimeBasedRule(String name, LocalTime executionTime, Runnable action) {
         this.name = name;
@@ -24,28 +33,58 @@ public class TimeBasedRule implements ConcurrentRule{
     public String getName() {
         return name;
     }
+    @Override
+    public List<RuleTrigger> getTriggers() {
+        return List.of(RuleTrigger.dailyAt(executionTime));
+    }
+
+    @Override
+    public DeviceSelector getInputs() {
+        return DeviceSelector.NONE;
+    }
+
     @Override
     public boolean shouldExecute() {
         if (!isEnabled()) return false;
 
-        LocalTime now = LocalTime.now();
-        // Execute if we're within 1 minute of execution time and haven't executed today
-        boolean inWindow = now.isAfter(executionTime.minusMinutes(1)) &&
-                             now.isBefore(executionTime.plusMinutes(1));
+        // Execute if we're within 1 minute of execution time and haven't run for that occurrence yet
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime occurrence = nearestOccurrence(now);
+        boolean inWindow = Duration.between(occurrence, now).abs().compareTo(Duration.ofMinutes(1)) < 0;
 
-        if (inWindow) {
-            return true;
-        }
-        return false;
+        return inWindow && !occurrence.toLocalDate().equals(lastExecutedOn);
+    }
 
+    /**
+     * executionTime on the day closest to now; around midnight that can be yesterday or tomorrow
+     */
+    private LocalDateTime nearestOccurrence(LocalDateTime now) {
+        LocalDateTime occurrence = now.toLocalDate().atTime(executionTime);
+        Duration offset = Duration.between(occurrence, now);
+        if (offset.compareTo(Duration.ofHours(12)) > 0) return occurrence.plusDays(1);
+        if (offset.compareTo(Duration.ofHours(-12)) < 0) return occurrence.minusDays(1);
+        return occurrence;
     }
     @Override
     public void execute(List<SmartDevice> devices) {
         System.out.println("⏰ Executing " + name + " at " +
-                LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")));
+                LocalTime.now(clock).format(DateTimeFormatter.ofPattern("HH:mm:ss")));
 
+        lastExecutedOn = nearestOccurrence(LocalDateTime.now(clock)).toLocalDate();
         action.run();
-        lastExecuted = LocalTime.now();
+    }
+
+    /**
+     * Run this rule on its own at executionTime every day, without an AutomationEngine
+     * @return the timer, to cancel when the rule is removed
+     */
+    public ScheduledTask schedule(SchedulerService scheduler) {
+        setClock(scheduler.getClock());
+        return scheduler.schedule(name, Schedule.daily(executionTime), () -> {
+            if (isEnabled()) {
+                execute(List.of());
+            }
+        });
     }
 
     @Override
@@ -58,6 +97,11 @@ public class TimeBasedRule implements ConcurrentRule{
         return enabled.get();
     }
 
+    @Override
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
     public void setEnabled(boolean enabled) {
         this.enabled.set(enabled);
     }
@@ -0,0 +1,329 @@
+package com.fatty.smarthome.concurrent.automation.dsl;
+
+import com.fatty.smarthome.concurrent.automation.ConcurrentRule;
+import com.fatty.smarthome.concurrent.automation.DeviceSelector;
+import com.fatty.smarthome.concurrent.automation.RuleTrigger;
+import com.fatty.smarthome.concurrent.automation.dsl.RuleSyntax.*;
+import com.fatty.smarthome.concurrent.devices.ConcurrentLight;
+import com.fatty.smarthome.concurrent.devices.ConcurrentThermostat;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.devices.Thermostat;
+import com.fatty.smarthome.util.SmartHomeException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+
+/**
+ * A rule written in the rule language, e.g.
+ * "when Kitchen_Thermostat.temperature > 26 then Kitchen_Fan on".
+ *
+ * The text is parsed once. Whenever the rule sees a different device list, its syntax
+ * tree is linked into a tree of closures that hold the device objects and constants
+ * directly: each comparison is a lambda specialized for its operator and the
+ * device's class, each action a bound method call. Evaluating the rule is then plain
+ * calls with no name lookups, type checks or tree walking.
+ *
+ * Device lists are treated as snapshots, like the engine's views: passing the same
+ * list object again reuses the closures without comparing its contents.
+ *
+ * Actions run when the condition becomes true, not on every evaluation while it
+ * stays true, so a device switched back by hand is left alone until the condition
+ * clears and holds again.
+ */
+public class DslRule implements ConcurrentRule {
+    private static final BooleanSupplier FALSE = () -> false;
+
+    private final String name;
+    private final String source;
+    private final Rule syntax;
+    private final int priority;
+    private final DeviceSelector inputs;
+    private final DeviceSelector outputs;
+    private final List<RuleTrigger> triggers;
+    private final AtomicBoolean enabled = new AtomicBoolean(true);
+
+    /**
+     * Closures bound to one device list; source is the list as passed in, devices a copy
+     */
+    private record Linked(List<SmartDevice> source, List<SmartDevice> devices,
+                          BooleanSupplier condition, Runnable[] actions) {}
+
+    private volatile Linked linked;
+    private volatile boolean conditionHeld = false;
+
+    public DslRule(String name, String source) {
+        this(name, source, 3);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text is not a valid rule
+     */
+    public DslRule(String name, String source, int priority) {
+        this.name = name;
+        this.source = source.trim();
+        this.syntax = RuleParser.parse(this.source);
+        this.priority = priority;
+
+        List<String> read = new ArrayList<>(syntax.condition().devices());
+        List<String> all = new ArrayList<>(read);
+        for (String device : syntax.actionDevices()) {
+            if (!all.contains(device)) all.add(device);
+        }
+        // Actions need their devices in the view too
+        this.inputs = DeviceSelector.devices(all.toArray(String[]::new));
+        this.outputs = DeviceSelector.devices(syntax.actionDevices().toArray(String[]::new));
+
+        List<RuleTrigger> triggers = new ArrayList<>();
+        for (String device : read) {
+            triggers.add(RuleTrigger.on(EventType.DEVICE_STATE_CHANGED, device));
+            triggers.add(RuleTrigger.on(EventType.TEMPERATURE_ALERT, device));
+        }
+        this.triggers = List.copyOf(triggers);
+    }
+
+    /**
+     * Rebuild a rule saved in the automation_rules table. Rows written by the CLI hold
+     * the full condition and action texts; older rows that leave the device out of
+     * them ("temperature > 26", "on") get the trigger / action device put in front.
+     */
+    public static DslRule fromStored(String ruleName, String triggerDevice, String triggerCondition,
+                                     String actionDevice, String actionCommand) {
+        String condition = triggerCondition.contains(triggerDevice)
+                ? triggerCondition : triggerDevice + "." + triggerCondition.trim();
+        String action = actionCommand.contains(actionDevice)
+                ? actionCommand : actionDevice + " " + actionCommand.trim();
+        return new DslRule(ruleName, "when " + condition + " then " + action);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Rule getSyntax() {
+        return syntax;
+    }
+
+    @Override
+    public boolean shouldExecute() {
+        return isEnabled();
+    }
+
+    @Override
+    public void execute(List<SmartDevice> devices) {
+        Linked current = linked(devices);
+
+        boolean holds = current.condition().getAsBoolean();
+        boolean fire = holds && !conditionHeld;
+        conditionHeld = holds;
+        if (fire) {
+            System.out.println("📜 Rule " + name + ": " + syntax.conditionText() + " → " + syntax.actionText());
+            for (Runnable action : current.actions()) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * Evaluate only the condition against these devices, without running actions
+     */
+    public boolean test(List<SmartDevice> devices) {
+        Linked current = linked(devices);
+        return current.condition().getAsBoolean();
+    }
+
+    @Override
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.get();
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled.set(enabled);
+    }
+
+    @Override
+    public List<RuleTrigger> getTriggers() {
+        return triggers;
+    }
+
+    @Override
+    public DeviceSelector getInputs() {
+        return inputs;
+    }
+
+    @Override
+    public DeviceSelector getOutputs() {
+        return outputs;
+    }
+
+    @Override
+    public boolean isChangeDriven() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + source;
+    }
+
+    private Linked linked(List<SmartDevice> devices) {
+        Linked current = linked;
+        if (current != null && current.source() == devices) return current;
+        if (current == null || !sameDevices(current.devices(), devices)) {
+            current = link(devices);
+        } else {
+            current = new Linked(devices, current.devices(), current.condition(), current.actions());
+        }
+        linked = current;
+        return current;
+    }
+
+    private static boolean sameDevices(List<SmartDevice> linked, List<SmartDevice> devices) {
+        if (linked.size() != devices.size()) return false;
+        for (int i = 0; i < devices.size(); i++) {
+            if (linked.get(i) != devices.get(i)) return false;
+        }
+        return true;
+    }
+
+    private Linked link(List<SmartDevice> devices) {
+        Map<String, SmartDevice> byName = new HashMap<>();
+        for (SmartDevice device : devices) {
+            byName.putIfAbsent(device.getName(), device);
+        }
+        Runnable[] actions = syntax.actions().stream()
+                .map(action -> link(action, byName))
+                .toArray(Runnable[]::new);
+        return new Linked(devices, List.copyOf(devices), link(syntax.condition(), byName), actions);
+    }
+
+    private BooleanSupplier link(Condition condition, Map<String, SmartDevice> devices) {
+        return switch (condition) {
+            case And and -> {
+                BooleanSupplier[] operands = and.operands().stream()
+                        .map(c -> link(c, devices)).toArray(BooleanSupplier[]::new);
+                if (operands.length == 2) {
+                    BooleanSupplier left = operands[0];
+                    BooleanSupplier right = operands[1];
+                    yield () -> left.getAsBoolean() && right.getAsBoolean();
+                }
+                yield () -> {
+                    for (BooleanSupplier operand : operands) {
+                        if (!operand.getAsBoolean()) return false;
+                    }
+                    return true;
+                };
+            }
+            case Or or -> {
+                BooleanSupplier[] operands = or.operands().stream()
+                        .map(c -> link(c, devices)).toArray(BooleanSupplier[]::new);
+                if (operands.length == 2) {
+                    BooleanSupplier left = operands[0];
+                    BooleanSupplier right = operands[1];
+                    yield () -> left.getAsBoolean() || right.getAsBoolean();
+                }
+                yield () -> {
+                    for (BooleanSupplier operand : operands) {
+                        if (operand.getAsBoolean()) return true;
+                    }
+                    return false;
+                };
+            }
+            case Not not -> {
+                BooleanSupplier operand = link(not.operand(), devices);
+                yield () -> !operand.getAsBoolean();
+            }
+            case IsOn isOn -> {
+                SmartDevice device = devices.get(isOn.device());
+                if (device == null) yield missing(isOn.device());
+                yield isOn.on() ? device::isOn : () -> !device.isOn();
+            }
+            case Compare compare -> compare(compare, devices.get(compare.device()));
+        };
+    }
+
+    private BooleanSupplier compare(Compare compare, SmartDevice device) {
+        if (device == null) return missing(compare.device());
+        IntSupplier reader = reader(device, compare.attribute());
+        if (reader == null) {
+            System.out.println("⚠️  Rule " + name + ": " + device.getName() + " has no " + compare.attribute());
+            return FALSE;
+        }
+        int value = compare.value();
+        return switch (compare.operator()) {
+            case GREATER -> () -> reader.getAsInt() > value;
+            case GREATER_OR_EQUAL -> () -> reader.getAsInt() >= value;
+            case LESS -> () -> reader.getAsInt() < value;
+            case LESS_OR_EQUAL -> () -> reader.getAsInt() <= value;
+            case EQUAL -> () -> reader.getAsInt() == value;
+            case NOT_EQUAL -> () -> reader.getAsInt() != value;
+        };
+    }
+
+    private static IntSupplier reader(SmartDevice device, String attribute) {
+        return switch (attribute) {
+            case "temperature" -> switch (device) {
+                case ConcurrentThermostat thermostat -> thermostat::getTemperature;
+                case Thermostat thermostat -> thermostat::getTemperature;
+                default -> null;
+            };
+            case "target" -> device instanceof ConcurrentThermostat thermostat
+                    ? thermostat::getTargetTemperature : null;
+            case "brightness" -> device instanceof ConcurrentLight light ? light::getBrightness : null;
+            default -> null;
+        };
+    }
+
+    private Runnable link(Action action, Map<String, SmartDevice> devices) {
+        SmartDevice device = devices.get(action.device());
+        if (device == null) {
+            System.out.println("⚠️  Rule " + name + ": device " + action.device() + " not found");
+            return () -> { };
+        }
+        int value = action.value();
+        Runnable bound = switch (action.command()) {
+            case ON -> device::turnOn;
+            case OFF -> device::turnOff;
+            case SET -> switch (action.attribute()) {
+                case "temperature" -> switch (device) {
+                    case ConcurrentThermostat thermostat -> () -> thermostat.setTemperature(value);
+                    case Thermostat thermostat -> () -> thermostat.setTemperature(value);
+                    default -> null;
+                };
+                case "brightness" -> device instanceof ConcurrentLight light ? () -> {
+                    try {
+                        light.setBrightness(value);
+                    } catch (SmartHomeException e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                } : null;
+                default -> null;
+            };
+        };
+        if (bound == null) {
+            System.out.println("⚠️  Rule " + name + ": cannot set " + action.attribute() + " on " + device.getName());
+            return () -> { };
+        }
+        return bound;
+    }
+
+    private BooleanSupplier missing(String device) {
+        System.out.println("⚠️  Rule " + name + ": device " + device + " not found");
+        return FALSE;
+    }
+}
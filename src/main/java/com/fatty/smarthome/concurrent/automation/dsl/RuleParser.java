@@ -0,0 +1,237 @@
+package com.fatty.smarthome.concurrent.automation.dsl;
+
+import com.fatty.smarthome.concurrent.automation.dsl.RuleSyntax.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recursive descent parser for the rule language:
+ *
+ * <pre>
+ * rule      := "when" condition "then" action (("," | "and") action)*
+ * condition := term ("or" term)*
+ * term      := factor ("and" factor)*
+ * factor    := "not" factor | "(" condition ")" | device "." attribute op number
+ *            | device "is" ("on" | "off")
+ * action    := device ("on" | "off") | device "." attribute "=" number
+ * </pre>
+ *
+ * Keywords are case-insensitive; device names are identifiers (letters, digits, _ and -)
+ * or double-quoted. Attributes are temperature, target and brightness.
+ * Errors are IllegalArgumentExceptions naming the column.
+ */
+public final class RuleParser {
+    private enum Kind { WORD, QUOTED, NUMBER, SYMBOL, END }
+
+    private record Token(Kind kind, String text, int column) {
+        boolean is(String keyword) {
+            return kind == Kind.WORD && text.equalsIgnoreCase(keyword);
+        }
+
+        boolean isSymbol(String symbol) {
+            return kind == Kind.SYMBOL && text.equals(symbol);
+        }
+    }
+
+    private final String source;
+    private final List<Token> tokens;
+    private int position = 0;
+
+    private RuleParser(String source) {
+        this.source = source;
+        this.tokens = tokenize(source);
+    }
+
+    public static Rule parse(String source) {
+        return new RuleParser(source).rule();
+    }
+
+    private Rule rule() {
+        expectKeyword("when");
+        int conditionStart = peek().column();
+        Condition condition = condition();
+        Token then = expectKeyword("then");
+        int actionStart = peek().column();
+
+        List<Action> actions = new ArrayList<>();
+        actions.add(action());
+        while (peek().isSymbol(",") || peek().is("and")) {
+            next();
+            actions.add(action());
+        }
+        if (peek().kind() != Kind.END) {
+            throw error(peek(), "unexpected '" + peek().text() + "'");
+        }
+        return new Rule(condition, List.copyOf(actions),
+                source.substring(conditionStart, then.column()).trim(),
+                source.substring(actionStart).trim());
+    }
+
+    private Condition condition() {
+        List<Condition> operands = new ArrayList<>();
+        operands.add(term());
+        while (peek().is("or")) {
+            next();
+            operands.add(term());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Or(List.copyOf(operands));
+    }
+
+    private Condition term() {
+        List<Condition> operands = new ArrayList<>();
+        operands.add(factor());
+        while (peek().is("and")) {
+            next();
+            operands.add(factor());
+        }
+        return operands.size() == 1 ? operands.get(0) : new And(List.copyOf(operands));
+    }
+
+    private Condition factor() {
+        if (peek().is("not")) {
+            next();
+            return new Not(factor());
+        }
+        if (peek().isSymbol("(")) {
+            next();
+            Condition inner = condition();
+            expectSymbol(")");
+            return inner;
+        }
+
+        String device = device();
+        if (peek().is("is")) {
+            next();
+            return new IsOn(device, onOff());
+        }
+        expectSymbol(".");
+        String attribute = attribute(RuleSyntax.ATTRIBUTES);
+        Token op = next();
+        Operator operator = null;
+        for (Operator candidate : Operator.values()) {
+            if (op.isSymbol(candidate.symbol)) operator = candidate;
+        }
+        if (operator == null) {
+            throw error(op, "expected a comparison (> >= < <= == !=) but found '" + op.text() + "'");
+        }
+        return new Compare(device, attribute, operator, number());
+    }
+
+    private Action action() {
+        String device = device();
+        if (peek().isSymbol(".")) {
+            next();
+            String attribute = attribute(RuleSyntax.SETTABLE);
+            expectSymbol("=");
+            return new Action(device, Command.SET, attribute, number());
+        }
+        return new Action(device, onOff() ? Command.ON : Command.OFF, null, 0);
+    }
+
+    private String device() {
+        Token token = next();
+        if (token.kind() == Kind.QUOTED || token.kind() == Kind.WORD) {
+            return token.text();
+        }
+        throw error(token, "expected a device name but found '" + token.text() + "'");
+    }
+
+    private String attribute(Set<String> allowed) {
+        Token token = next();
+        String attribute = token.text().toLowerCase();
+        if (token.kind() != Kind.WORD || !allowed.contains(attribute)) {
+            throw error(token, "unknown attribute '" + token.text() + "', expected one of " + allowed);
+        }
+        return attribute;
+    }
+
+    private boolean onOff() {
+        Token token = next();
+        if (token.is("on")) return true;
+        if (token.is("off")) return false;
+        throw error(token, "expected 'on' or 'off' but found '" + token.text() + "'");
+    }
+
+    private int number() {
+        Token token = next();
+        if (token.kind() != Kind.NUMBER) {
+            throw error(token, "expected a number but found '" + token.text() + "'");
+        }
+        return Integer.parseInt(token.text());
+    }
+
+    private Token expectKeyword(String keyword) {
+        Token token = next();
+        if (!token.is(keyword)) {
+            throw error(token, "expected '" + keyword + "' but found '" + token.text() + "'");
+        }
+        return token;
+    }
+
+    private void expectSymbol(String symbol) {
+        Token token = next();
+        if (!token.isSymbol(symbol)) {
+            throw error(token, "expected '" + symbol + "' but found '" + token.text() + "'");
+        }
+    }
+
+    private Token peek() {
+        return tokens.get(position);
+    }
+
+    private Token next() {
+        Token token = tokens.get(position);
+        if (token.kind() != Kind.END) position++;
+        return token;
+    }
+
+    private IllegalArgumentException error(Token token, String message) {
+        return new IllegalArgumentException("Rule syntax error at column " + (token.column() + 1)
+                + ": " + message + " in '" + source + "'");
+    }
+
+    private static List<Token> tokenize(String source) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                while (i < source.length() && isNameChar(source.charAt(i))) i++;
+                tokens.add(new Token(Kind.WORD, source.substring(start, i), start));
+            } else if (Character.isDigit(c) || (c == '-' && i + 1 < source.length()
+                    && Character.isDigit(source.charAt(i + 1)))) {
+                i++;
+                while (i < source.length() && Character.isDigit(source.charAt(i))) i++;
+                tokens.add(new Token(Kind.NUMBER, source.substring(start, i), start));
+            } else if (c == '"') {
+                int end = source.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Rule syntax error at column " + (start + 1)
+                            + ": unterminated device name in '" + source + "'");
+                }
+                tokens.add(new Token(Kind.QUOTED, source.substring(i + 1, end), start));
+                i = end + 1;
+            } else if ("<>!=".indexOf(c) >= 0 && i + 1 < source.length() && source.charAt(i + 1) == '=') {
+                tokens.add(new Token(Kind.SYMBOL, source.substring(i, i + 2), start));
+                i += 2;
+            } else if ("().,=<>".indexOf(c) >= 0) {
+                tokens.add(new Token(Kind.SYMBOL, String.valueOf(c), start));
+                i++;
+            } else {
+                throw new IllegalArgumentException("Rule syntax error at column " + (start + 1)
+                        + ": unexpected character '" + c + "' in '" + source + "'");
+            }
+        }
+        tokens.add(new Token(Kind.END, "end of rule", source.length()));
+        return tokens;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+    }
+}
@@ -0,0 +1,191 @@
+package com.fatty.smarthome.concurrent.automation.dsl;
+
+import com.fatty.smarthome.concurrent.automation.AutomationEngine;
+import com.fatty.smarthome.concurrent.scheduling.Schedule;
+import com.fatty.smarthome.concurrent.scheduling.SchedulerService;
+import com.fatty.smarthome.core.DatabaseService;
+import com.fatty.smarthome.util.SmartHomeException;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the rules saved in automation_rules running in an AutomationEngine, without
+ * restarting it.
+ *
+ * The store's version counter (bumped by database triggers on every change to the
+ * table) is polled, and the rules are only read again when it moved. Rows whose text
+ * did not change keep their compiled rule and its statistics; new and changed rows
+ * are compiled, and all additions and removals reach the engine in one replaceRules
+ * call, which swaps its rule table atomically. Evaluation never pauses for a reload
+ * and never sees half of one.
+ *
+ * Rules are identified by name: a later row with the same name replaces the earlier one.
+ */
+public class RuleReloader {
+    /**
+     * Where the rules are stored
+     */
+    public interface Source {
+        /**
+         * Changes whenever the stored rules change
+         */
+        long version() throws SmartHomeException;
+
+        /**
+         * The active rules, oldest first
+         */
+        List<DatabaseService.StoredRule> load() throws SmartHomeException;
+    }
+
+    /**
+     * What one reload changed
+     */
+    public record Result(long version, int added, int changed, int removed, int unchanged, int rejected,
+                         long nanos) {
+        public String format() {
+            return String.format("version %d: %d added, %d changed, %d removed, %d unchanged, %d rejected in %.2f ms",
+                    version, added, changed, removed, unchanged, rejected, nanos / 1e6);
+        }
+    }
+
+    private final AutomationEngine engine;
+    private final Source source;
+    // Rules this reloader put into the engine, by name, with the row text they were compiled from
+    private Map<String, String> loaded = new HashMap<>();
+    private long version = Long.MIN_VALUE;
+    private SchedulerService scheduler;
+
+    private final AtomicLong checks = new AtomicLong(0);
+    private final AtomicLong reloads = new AtomicLong(0);
+
+    public RuleReloader(AutomationEngine engine, Source source) {
+        this.engine = engine;
+        this.source = source;
+    }
+
+    /**
+     * Reloader for the rules in the database
+     */
+    public static RuleReloader fromDatabase(AutomationEngine engine) throws SQLException {
+        DatabaseService db = DatabaseService.getInstance();
+        return new RuleReloader(engine, new Source() {
+            public long version() throws SmartHomeException {
+                return db.getAutomationRulesVersion();
+            }
+
+            public List<DatabaseService.StoredRule> load() throws SmartHomeException {
+                return db.loadAutomationRules();
+            }
+        });
+    }
+
+    /**
+     * Bring the engine up to date if the stored rules changed since the last call
+     * @return what changed, or null if the version did not move
+     */
+    public synchronized Result reloadIfChanged() throws SmartHomeException {
+        checks.incrementAndGet();
+        // Read before the rows: a change in between is picked up by the next call
+        long current = source.version();
+        if (current == version) return null;
+
+        long start = System.nanoTime();
+        Map<String, DatabaseService.StoredRule> byName = new LinkedHashMap<>();
+        for (DatabaseService.StoredRule row : source.load()) {
+            byName.put(row.getRuleName(), row);
+        }
+
+        Map<String, String> next = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+        List<DslRule> added = new ArrayList<>();
+        int changed = 0;
+        int unchanged = 0;
+        int rejected = 0;
+        for (DatabaseService.StoredRule row : byName.values()) {
+            String name = row.getRuleName();
+            String text = text(row);
+            String previous = loaded.get(name);
+            if (text.equals(previous)) {
+                next.put(name, text);
+                unchanged++;
+                continue;
+            }
+            try {
+                added.add(DslRule.fromStored(name, row.getTriggerDevice(), row.getTriggerCondition(),
+                        row.getActionDevice(), row.getActionCommand()));
+                next.put(name, text);
+                if (previous != null) {
+                    removed.add(name);
+                    changed++;
+                }
+            } catch (IllegalArgumentException e) {
+                // Keep the version that is running, if any
+                rejected++;
+                if (previous != null) next.put(name, previous);
+                System.out.println("⚠️  Skipping stored rule " + name + ": " + e.getMessage());
+            }
+        }
+        for (String name : loaded.keySet()) {
+            if (!byName.containsKey(name)) removed.add(name);
+        }
+
+        if (!removed.isEmpty() || !added.isEmpty()) {
+            engine.replaceRules(removed, added);
+        }
+        loaded = next;
+        version = current;
+        reloads.incrementAndGet();
+
+        Result result = new Result(current, added.size() - changed, changed, removed.size() - changed,
+                unchanged, rejected, System.nanoTime() - start);
+        System.out.println("🔄 Automation rules reloaded, " + result.format());
+        return result;
+    }
+
+    /**
+     * Check for changes at this period until stop()
+     */
+    public synchronized void start(Duration period) {
+        if (scheduler != null) return;
+        scheduler = new SchedulerService("RuleReloader");
+        scheduler.start();
+        scheduler.schedule("rule-reload", Schedule.every(period), this::poll);
+        System.out.println("🔄 Watching automation rules every " + period.toMillis() + " ms");
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.close();
+            scheduler = null;
+        }
+    }
+
+    private void poll() {
+        try {
+            reloadIfChanged();
+        } catch (SmartHomeException | RuntimeException e) {
+            System.err.println("❌ Reloading automation rules failed: " + e.getMessage());
+        }
+    }
+
+    public synchronized List<String> getLoadedRules() {
+        return loaded.keySet().stream().sorted().toList();
+    }
+
+    public synchronized String getStatistics() {
+        return String.format("Rule reloader: version %d, %d rules, %d checks, %d reloads",
+                version == Long.MIN_VALUE ? 0 : version, loaded.size(), checks.get(), reloads.get());
+    }
+
+    private static String text(DatabaseService.StoredRule row) {
+        return String.join("\n", row.getTriggerDevice(), row.getTriggerCondition(),
+                row.getActionDevice(), row.getActionCommand());
+    }
+}
@@ -0,0 +1,80 @@
+package com.fatty.smarthome.concurrent.automation.dsl;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Syntax tree of a parsed rule, before it is linked against devices
+ */
+public final class RuleSyntax {
+    private RuleSyntax() {}
+
+    public enum Operator {
+        GREATER(">"), GREATER_OR_EQUAL(">="), LESS("<"), LESS_OR_EQUAL("<="), EQUAL("=="), NOT_EQUAL("!=");
+
+        final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    /**
+     * Numeric device attributes conditions can read; SETTABLE ones actions can write
+     */
+    static final Set<String> ATTRIBUTES = Set.of("temperature", "target", "brightness");
+    static final Set<String> SETTABLE = Set.of("temperature", "brightness");
+
+    public sealed interface Condition {
+        default Set<String> devices() {
+            Set<String> devices = new LinkedHashSet<>();
+            collect(this, devices);
+            return devices;
+        }
+
+        private static void collect(Condition condition, Set<String> devices) {
+            switch (condition) {
+                case And and -> and.operands().forEach(c -> collect(c, devices));
+                case Or or -> or.operands().forEach(c -> collect(c, devices));
+                case Not not -> collect(not.operand(), devices);
+                case Compare compare -> devices.add(compare.device());
+                case IsOn isOn -> devices.add(isOn.device());
+            }
+        }
+    }
+
+    public record And(List<Condition> operands) implements Condition {}
+
+    public record Or(List<Condition> operands) implements Condition {}
+
+    public record Not(Condition operand) implements Condition {}
+
+    /**
+     * device.attribute operator value, e.g. Kitchen_Thermostat.temperature > 26
+     */
+    public record Compare(String device, String attribute, Operator operator, int value) implements Condition {}
+
+    /**
+     * device is on / device is off
+     */
+    public record IsOn(String device, boolean on) implements Condition {}
+
+    public enum Command { ON, OFF, SET }
+
+    /**
+     * device on / device off / device.attribute = value
+     */
+    public record Action(String device, Command command, String attribute, int value) {}
+
+    /**
+     * A whole rule; the condition and action texts are kept for storage
+     */
+    public record Rule(Condition condition, List<Action> actions, String conditionText, String actionText) {
+        public Set<String> actionDevices() {
+            Set<String> devices = new LinkedHashSet<>();
+            actions.forEach(action -> devices.add(action.device()));
+            return devices;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.fatty.smarthome.concurrent.automation.rete;
+
+/**
+ * A rule whose conditions all hold for a device
+ * @param rule rule name from its AutomationRuleConfig
+ * @param device device the conditions hold for
+ */
+public record Activation(String rule, String device) {
+}
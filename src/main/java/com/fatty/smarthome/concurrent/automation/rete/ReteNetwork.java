@@ -0,0 +1,613 @@
+package com.fatty.smarthome.concurrent.automation.rete;
+
+import com.fatty.smarthome.concurrent.devices.ConcurrentThermostat;
+import com.fatty.smarthome.core.AutomationRuleConfig;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.devices.Thermostat;
+
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * Rete-style discrimination network compiled from AutomationRuleConfig conditions.
+ *
+ * A rule is activated for a device when every DEVICE_STATE and TEMPERATURE condition
+ * holds for that device, every TIME condition holds for the current time, and the
+ * device is one of the rule's target devices (all devices when none are listed).
+ *
+ * Each distinct condition test becomes one alpha node with a memory of the devices
+ * passing it, shared by every rule that uses the test. A rule's device conditions are
+ * put in canonical order and joined through a chain of beta nodes, whose memories hold
+ * the devices passing every test so far; rules with the same conditions share the
+ * whole chain and only differ in their terminal production. A device change only
+ * re-tests the alpha nodes whose result can flip (thresholds between the old and the
+ * new temperature are found with range queries) and walks down the beta nodes below
+ * them, so its cost follows the number of affected tests and activations, not
+ * rules x devices. Activations and deactivations are reported to listeners as they
+ * happen.
+ */
+public class ReteNetwork {
+    /**
+     * Receives activations incrementally, outside the network lock
+     */
+    public interface Listener {
+        void onActivated(Activation activation);
+
+        default void onDeactivated(Activation activation) {}
+    }
+
+    private enum Attribute { DEVICE_STATE, TEMPERATURE, TIME }
+
+    private enum Operator { EQUAL, GREATER_THAN, LESS_THAN }
+
+    /**
+     * One compiled condition; states are 0/1, times are minutes of the day
+     */
+    private record Test(Attribute attribute, Operator operator, int value) {
+        static final Comparator<Test> ORDER = Comparator.comparing(Test::attribute)
+                .thenComparing(Test::operator)
+                .thenComparingInt(Test::value);
+
+        boolean holds(int actual) {
+            return switch (operator) {
+                case EQUAL -> actual == value;
+                case GREATER_THAN -> actual > value;
+                case LESS_THAN -> actual < value;
+            };
+        }
+    }
+
+    private static final class AlphaNode {
+        final Test test;
+        final BitSet memory = new BitSet();
+        final List<BetaNode> successors = new ArrayList<>(1);
+
+        AlphaNode(Test test) {
+            this.test = test;
+        }
+    }
+
+    private static final class TimeNode {
+        final Test test;
+        boolean holds;
+        final List<Production> successors = new ArrayList<>(1);
+
+        TimeNode(Test test) {
+            this.test = test;
+        }
+    }
+
+    private static final class BetaNode {
+        final BetaNode parent;
+        final AlphaNode alpha;
+        final int depth;
+        final BitSet memory = new BitSet();
+        final Map<AlphaNode, BetaNode> children = new HashMap<>(2);
+        final List<Production> untargeted = new ArrayList<>(0);
+        final Map<String, List<Production>> targeted = new HashMap<>(0);
+
+        BetaNode(BetaNode parent, AlphaNode alpha) {
+            this.parent = parent;
+            this.alpha = alpha;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+
+        boolean isUnused() {
+            return children.isEmpty() && untargeted.isEmpty() && targeted.isEmpty();
+        }
+    }
+
+    private static final class Production {
+        final String name;
+        final BetaNode node;
+        final Set<String> targets;
+        final List<TimeNode> timeTests;
+        int timeTestsHolding;
+
+        Production(String name, BetaNode node, Set<String> targets, List<TimeNode> timeTests) {
+            this.name = name;
+            this.node = node;
+            this.targets = targets;
+            this.timeTests = timeTests;
+        }
+
+        boolean timeHolds() {
+            return timeTestsHolding == timeTests.size();
+        }
+    }
+
+    private record Change(Activation activation, boolean active) {
+    }
+
+    private static final int NO_TEMPERATURE = Integer.MIN_VALUE;
+    private static final Comparator<BetaNode> BY_DEPTH = Comparator.comparingInt(n -> n.depth);
+
+    private final Clock clock;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Network and working memory, guarded by this
+    private final BetaNode root = new BetaNode(null, null);
+    private final Map<String, Production> productions = new LinkedHashMap<>();
+    private final Map<Test, AlphaNode> alphaNodes = new HashMap<>();
+    private final AlphaNode[] stateNodes = new AlphaNode[2];
+    private final Map<Integer, AlphaNode> temperatureEqual = new HashMap<>();
+    private final NavigableMap<Integer, AlphaNode> temperatureAbove = new TreeMap<>();
+    private final NavigableMap<Integer, AlphaNode> temperatureBelow = new TreeMap<>();
+    private final Map<Test, TimeNode> timeNodes = new HashMap<>();
+    private int betaNodes = 0;
+
+    private final Map<String, Integer> deviceIds = new HashMap<>();
+    private final List<String> deviceNames = new ArrayList<>();
+    private final BitSet deviceOn = new BitSet();
+    private int[] temperatures = new int[1024];
+    private int minuteOfDay;
+
+    private final AtomicLong deviceUpdates = new AtomicLong(0);
+    private final AtomicLong alphaFlips = new AtomicLong(0);
+    private final AtomicLong betaUpdates = new AtomicLong(0);
+    private final AtomicLong activations = new AtomicLong(0);
+    private final AtomicLong deactivations = new AtomicLong(0);
+
+    public ReteNetwork() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock time source for TIME conditions (a virtual clock when replaying)
+     */
+    public ReteNetwork(Clock clock) {
+        this.clock = clock;
+        this.minuteOfDay = minuteOf(LocalTime.now(clock));
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Compile a rule into the network. Inactive rules are ignored.
+     * @return false if the rule is inactive
+     * @throws IllegalArgumentException on a duplicate name or a condition that does not compile
+     */
+    public boolean addRule(AutomationRuleConfig config) {
+        if (!config.isActive()) return false;
+
+        List<Change> changes = new ArrayList<>();
+        synchronized (this) {
+            String name = config.getRuleName();
+            if (productions.containsKey(name)) {
+                throw new IllegalArgumentException("Rule already compiled: " + name);
+            }
+
+            // Compile every condition before touching the network
+            SortedSet<Test> deviceTests = new TreeSet<>(Test.ORDER);
+            Set<Test> timeTests = new LinkedHashSet<>();
+            List<AutomationRuleConfig.Condition> conditions =
+                    config.getConditions() != null ? config.getConditions() : List.of();
+            for (AutomationRuleConfig.Condition condition : conditions) {
+                Test test = compile(name, condition);
+                (test.attribute() == Attribute.TIME ? timeTests : deviceTests).add(test);
+            }
+
+            BetaNode node = root;
+            for (Test test : deviceTests) {
+                node = child(node, alpha(test));
+            }
+            List<TimeNode> times = timeTests.stream().map(this::timeNode).toList();
+            List<String> targetDevices = config.getTargetDevices();
+            Production production = new Production(name, node,
+                    targetDevices == null || targetDevices.isEmpty() ? null : Set.copyOf(targetDevices), times);
+
+            for (TimeNode time : times) {
+                time.successors.add(production);
+                if (time.holds) production.timeTestsHolding++;
+            }
+            if (production.targets == null) {
+                node.untargeted.add(production);
+            } else {
+                for (String device : production.targets) {
+                    node.targeted.computeIfAbsent(device, d -> new ArrayList<>(1)).add(production);
+                }
+            }
+            productions.put(name, production);
+
+            if (production.timeHolds()) {
+                activeDevices(production, id -> changes.add(change(production, id, true)));
+            }
+        }
+        notifyListeners(changes);
+        return true;
+    }
+
+    /**
+     * Remove a rule, deactivating it and dropping the nodes no other rule uses
+     */
+    public boolean removeRule(String name) {
+        List<Change> changes = new ArrayList<>();
+        synchronized (this) {
+            Production production = productions.remove(name);
+            if (production == null) return false;
+
+            if (production.timeHolds()) {
+                activeDevices(production, id -> changes.add(change(production, id, false)));
+            }
+            BetaNode node = production.node;
+            if (production.targets == null) {
+                node.untargeted.remove(production);
+            } else {
+                for (String device : production.targets) {
+                    List<Production> list = node.targeted.get(device);
+                    list.remove(production);
+                    if (list.isEmpty()) node.targeted.remove(device);
+                }
+            }
+            for (TimeNode time : production.timeTests) {
+                time.successors.remove(production);
+                if (time.successors.isEmpty()) timeNodes.remove(time.test);
+            }
+            while (node != root && node.isUnused()) {
+                node.parent.children.remove(node.alpha);
+                node.alpha.successors.remove(node);
+                if (node.alpha.successors.isEmpty()) {
+                    dropAlpha(node.alpha);
+                }
+                betaNodes--;
+                node = node.parent;
+            }
+        }
+        notifyListeners(changes);
+        return true;
+    }
+
+    /**
+     * Insert or update a device in working memory
+     * @param temperature current temperature, or null for devices without one
+     */
+    public void updateDevice(String name, boolean on, Integer temperature) {
+        List<Change> changes = new ArrayList<>(0);
+        synchronized (this) {
+            Integer id = deviceIds.get(name);
+            if (id == null) {
+                id = deviceNames.size();
+                deviceIds.put(name, id);
+                deviceNames.add(name);
+                if (id == temperatures.length) {
+                    temperatures = Arrays.copyOf(temperatures, id * 2);
+                }
+                temperatures[id] = NO_TEMPERATURE;
+            }
+            apply(id, true, on, temperature != null ? temperature : NO_TEMPERATURE, changes);
+        }
+        notifyListeners(changes);
+    }
+
+    /**
+     * Insert or update a device from its current state
+     */
+    public void update(SmartDevice device) {
+        Integer temperature = null;
+        if (device instanceof Thermostat thermostat) {
+            temperature = thermostat.getTemperature();
+        } else if (device instanceof ConcurrentThermostat thermostat) {
+            temperature = thermostat.getTemperature();
+        }
+        updateDevice(device.getName(), device.isOn(), temperature);
+    }
+
+    /**
+     * Retract a device, deactivating every rule activated for it
+     */
+    public void removeDevice(String name) {
+        List<Change> changes = new ArrayList<>(0);
+        synchronized (this) {
+            Integer id = deviceIds.get(name);
+            if (id == null) return;
+            apply(id, false, false, NO_TEMPERATURE, changes);
+        }
+        notifyListeners(changes);
+    }
+
+    /**
+     * Re-read the clock for TIME conditions; call at least once a minute
+     */
+    public void tick() {
+        setTime(LocalTime.now(clock));
+    }
+
+    /**
+     * Set the time TIME conditions are tested against
+     */
+    public void setTime(LocalTime time) {
+        List<Change> changes = new ArrayList<>(0);
+        synchronized (this) {
+            int minute = minuteOf(time);
+            if (minute == minuteOfDay) return;
+            minuteOfDay = minute;
+
+            for (TimeNode node : timeNodes.values()) {
+                boolean holds = node.test.holds(minute);
+                if (holds == node.holds) continue;
+                node.holds = holds;
+                alphaFlips.incrementAndGet();
+                for (Production production : node.successors) {
+                    boolean before = production.timeHolds();
+                    production.timeTestsHolding += holds ? 1 : -1;
+                    if (before != production.timeHolds()) {
+                        activeDevices(production, id -> changes.add(change(production, id, !before)));
+                    }
+                }
+            }
+        }
+        notifyListeners(changes);
+    }
+
+    /**
+     * Devices a rule is currently activated for
+     */
+    public synchronized List<String> getActivations(String rule) {
+        Production production = productions.get(rule);
+        if (production == null || !production.timeHolds()) return List.of();
+        List<String> devices = new ArrayList<>();
+        activeDevices(production, id -> devices.add(deviceNames.get(id)));
+        return devices;
+    }
+
+    public synchronized boolean isActivated(String rule, String device) {
+        Production production = productions.get(rule);
+        Integer id = deviceIds.get(device);
+        return production != null && id != null && production.timeHolds()
+                && (production.targets == null || production.targets.contains(device))
+                && production.node.memory.get(id);
+    }
+
+    public synchronized int getRuleCount() {
+        return productions.size();
+    }
+
+    /**
+     * Distinct condition tests, each evaluated once per device change however many rules use it
+     */
+    public synchronized int getAlphaNodeCount() {
+        return alphaNodes.size() + timeNodes.size();
+    }
+
+    public synchronized int getBetaNodeCount() {
+        return betaNodes;
+    }
+
+    public synchronized String getStatistics() {
+        return String.format("Rete Network Statistics:\n" +
+                        "  Rules: %d, alpha nodes: %d, beta nodes: %d, devices: %d\n" +
+                        "  Device updates: %d, alpha flips: %d, beta updates: %d\n" +
+                        "  Activations: %d, deactivations: %d",
+                productions.size(), getAlphaNodeCount(), betaNodes, root.memory.cardinality(),
+                deviceUpdates.get(), alphaFlips.get(), betaUpdates.get(),
+                activations.get(), deactivations.get());
+    }
+
+    // ----------------------------------------------------------------------------------
+
+    private static int minuteOf(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    private static Test compile(String rule, AutomationRuleConfig.Condition condition) {
+        try {
+            Attribute attribute = Attribute.valueOf(condition.getType().trim().toUpperCase());
+            Operator operator = Operator.valueOf(condition.getOperator().trim().toUpperCase());
+            String value = condition.getValue().trim();
+            return switch (attribute) {
+                case DEVICE_STATE -> {
+                    if (operator != Operator.EQUAL) {
+                        throw new IllegalArgumentException("device state only supports EQUAL");
+                    }
+                    yield new Test(attribute, operator, switch (value.toUpperCase()) {
+                        case "ON", "TRUE" -> 1;
+                        case "OFF", "FALSE" -> 0;
+                        default -> throw new IllegalArgumentException("unknown state " + value);
+                    });
+                }
+                case TEMPERATURE -> new Test(attribute, operator, Integer.parseInt(value));
+                case TIME -> new Test(attribute, operator, minuteOf(LocalTime.parse(value)));
+            };
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid condition in rule " + rule + ": " +
+                    condition.getType() + " " + condition.getOperator() + " " + condition.getValue() +
+                    " (" + e.getMessage() + ")", e);
+        }
+    }
+
+    private AlphaNode alpha(Test test) {
+        AlphaNode existing = alphaNodes.get(test);
+        if (existing != null) return existing;
+
+        AlphaNode node = new AlphaNode(test);
+        alphaNodes.put(test, node);
+        switch (test.attribute()) {
+            case DEVICE_STATE -> stateNodes[test.value()] = node;
+            case TEMPERATURE -> (switch (test.operator()) {
+                case EQUAL -> temperatureEqual;
+                case GREATER_THAN -> temperatureAbove;
+                case LESS_THAN -> temperatureBelow;
+            }).put(test.value(), node);
+            default -> throw new IllegalStateException("Not a device test: " + test);
+        }
+        root.memory.stream().filter(id -> holds(test, id)).forEach(node.memory::set);
+        return node;
+    }
+
+    private void dropAlpha(AlphaNode node) {
+        Test test = node.test;
+        alphaNodes.remove(test);
+        switch (test.attribute()) {
+            case DEVICE_STATE -> stateNodes[test.value()] = null;
+            case TEMPERATURE -> (switch (test.operator()) {
+                case EQUAL -> temperatureEqual;
+                case GREATER_THAN -> temperatureAbove;
+                case LESS_THAN -> temperatureBelow;
+            }).remove(test.value());
+            default -> throw new IllegalStateException("Not a device test: " + test);
+        }
+    }
+
+    private TimeNode timeNode(Test test) {
+        return timeNodes.computeIfAbsent(test, t -> {
+            TimeNode node = new TimeNode(t);
+            node.holds = t.holds(minuteOfDay);
+            return node;
+        });
+    }
+
+    private BetaNode child(BetaNode parent, AlphaNode alpha) {
+        BetaNode existing = parent.children.get(alpha);
+        if (existing != null) return existing;
+
+        BetaNode node = new BetaNode(parent, alpha);
+        node.memory.or(parent.memory);
+        node.memory.and(alpha.memory);
+        parent.children.put(alpha, node);
+        alpha.successors.add(node);
+        betaNodes++;
+        return node;
+    }
+
+    private boolean holds(Test test, int id) {
+        return switch (test.attribute()) {
+            case DEVICE_STATE -> test.holds(deviceOn.get(id) ? 1 : 0);
+            case TEMPERATURE -> temperatures[id] != NO_TEMPERATURE && test.holds(temperatures[id]);
+            case TIME -> test.holds(minuteOfDay);
+        };
+    }
+
+    /**
+     * Move one device to its new facts and propagate the alpha tests that flipped
+     */
+    private void apply(int id, boolean present, boolean on, int temperature, List<Change> changes) {
+        boolean wasPresent = root.memory.get(id);
+        boolean wasOn = deviceOn.get(id);
+        int oldTemperature = temperatures[id];
+        if (present == wasPresent && on == wasOn && temperature == oldTemperature) return;
+        deviceUpdates.incrementAndGet();
+
+        // Alpha nodes whose result may differ between the old and the new facts
+        List<AlphaNode> candidates = new ArrayList<>();
+        if (present != wasPresent || on != wasOn) {
+            for (AlphaNode node : stateNodes) {
+                if (node != null) candidates.add(node);
+            }
+        }
+        if (present != wasPresent || temperature != oldTemperature) {
+            int from = wasPresent ? oldTemperature : NO_TEMPERATURE;
+            int to = present ? temperature : NO_TEMPERATURE;
+            temperatureCandidates(from, to, candidates);
+        }
+
+        deviceOn.set(id, on);
+        temperatures[id] = temperature;
+        if (present != wasPresent) {
+            root.memory.set(id, present);
+            emit(root, id, present, changes);
+        }
+
+        List<BetaNode> affected = new ArrayList<>();
+        for (AlphaNode node : candidates) {
+            boolean holds = present && holds(node.test, id);
+            if (holds == node.memory.get(id)) continue;
+            node.memory.set(id, holds);
+            alphaFlips.incrementAndGet();
+            affected.addAll(node.successors);
+        }
+        // Parents first, so no beta node is recomputed against a stale parent memory
+        affected.sort(BY_DEPTH);
+        for (BetaNode node : affected) {
+            recompute(node, id, changes);
+        }
+    }
+
+    private void temperatureCandidates(int from, int to, List<AlphaNode> out) {
+        if (from == to) return;
+        AlphaNode equal;
+        if (from != NO_TEMPERATURE && (equal = temperatureEqual.get(from)) != null) out.add(equal);
+        if (to != NO_TEMPERATURE && (equal = temperatureEqual.get(to)) != null) out.add(equal);
+
+        if (from == NO_TEMPERATURE || to == NO_TEMPERATURE) {
+            int value = from == NO_TEMPERATURE ? to : from;
+            out.addAll(temperatureAbove.headMap(value, false).values());
+            out.addAll(temperatureBelow.tailMap(value, false).values());
+        } else {
+            // Only thresholds between the two temperatures can flip
+            int low = Math.min(from, to);
+            int high = Math.max(from, to);
+            out.addAll(temperatureAbove.subMap(low, true, high, false).values());
+            out.addAll(temperatureBelow.subMap(low, false, high, true).values());
+        }
+    }
+
+    private void recompute(BetaNode node, int id, List<Change> changes) {
+        boolean member = node.parent.memory.get(id) && node.alpha.memory.get(id);
+        if (member == node.memory.get(id)) return;
+
+        node.memory.set(id, member);
+        betaUpdates.incrementAndGet();
+        emit(node, id, member, changes);
+        for (BetaNode child : node.children.values()) {
+            recompute(child, id, changes);
+        }
+    }
+
+    private void emit(BetaNode node, int id, boolean active, List<Change> changes) {
+        for (Production production : node.untargeted) {
+            if (production.timeHolds()) changes.add(change(production, id, active));
+        }
+        if (node.targeted.isEmpty()) return;
+        List<Production> targeted = node.targeted.get(deviceNames.get(id));
+        if (targeted != null) {
+            for (Production production : targeted) {
+                if (production.timeHolds()) changes.add(change(production, id, active));
+            }
+        }
+    }
+
+    private void activeDevices(Production production, IntConsumer action) {
+        BitSet memory = production.node.memory;
+        if (production.targets == null) {
+            memory.stream().forEach(action);
+            return;
+        }
+        for (String device : production.targets) {
+            Integer id = deviceIds.get(device);
+            if (id != null && memory.get(id)) action.accept(id);
+        }
+    }
+
+    private Change change(Production production, int id, boolean active) {
+        (active ? activations : deactivations).incrementAndGet();
+        return new Change(new Activation(production.name, deviceNames.get(id)), active);
+    }
+
+    private void notifyListeners(List<Change> changes) {
+        if (changes.isEmpty() || listeners.isEmpty()) return;
+        for (Listener listener : listeners) {
+            for (Change change : changes) {
+                try {
+                    if (change.active()) {
+                        listener.onActivated(change.activation());
+                    } else {
+                        listener.onDeactivated(change.activation());
+                    }
+                } catch (Exception e) {
+                    System.err.println("❌ Rule activation listener failed for " +
+                            change.activation().rule() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.fatty.smarthome.concurrent.automation.rete;
+
+import com.fatty.smarthome.concurrent.automation.ConcurrentRule;
+import com.fatty.smarthome.concurrent.automation.DeviceSelector;
+import com.fatty.smarthome.concurrent.automation.RuleTrigger;
+import com.fatty.smarthome.concurrent.devices.ConcurrentLight;
+import com.fatty.smarthome.concurrent.devices.ConcurrentThermostat;
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.core.AutomationRuleConfig;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.devices.Thermostat;
+import com.fatty.smarthome.util.SmartHomeException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a set of AutomationRuleConfig rules in the AutomationEngine through one ReteNetwork.
+ *
+ * Device events mark their device; when the engine runs the set, only the marked devices
+ * are fed into the network (every device on a sweep or timer run), and each new
+ * activation runs its config's actions on the device it was activated for. A device has
+ * to stop matching a rule before the rule's actions run for it again.
+ *
+ * Actions are "TURN_ON", "TURN_OFF", "SET_TEMPERATURE n" or "SET_BRIGHTNESS n".
+ */
+public class ReteRuleSet implements ConcurrentRule {
+    private enum Command { TURN_ON, TURN_OFF, SET_TEMPERATURE, SET_BRIGHTNESS }
+
+    private record Action(Command command, int value) {
+    }
+
+    /**
+     * Activations reported by the network and not yet acted on
+     */
+    private static final class Agenda implements ReteNetwork.Listener {
+        private final Set<Activation> pending = new LinkedHashSet<>();
+
+        @Override
+        public synchronized void onActivated(Activation activation) {
+            pending.add(activation);
+        }
+
+        @Override
+        public synchronized void onDeactivated(Activation activation) {
+            pending.remove(activation);
+        }
+
+        synchronized List<Activation> drain() {
+            List<Activation> activations = List.copyOf(pending);
+            pending.clear();
+            return activations;
+        }
+    }
+
+    private final String name;
+    private final int priority;
+    private final ReteNetwork network = new ReteNetwork();
+    private final Agenda agenda = new Agenda();
+    private final Map<String, List<Action>> actions = new HashMap<>();
+    private final DeviceSelector devices;
+    private final List<RuleTrigger> triggers;
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean enabled = new AtomicBoolean(true);
+    private volatile Clock clock = Clock.systemDefaultZone();
+    private boolean loaded = false;
+
+    public ReteRuleSet(String name, Collection<AutomationRuleConfig> configs) {
+        this(name, configs, 3);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a condition or action does not compile, or two rules share a name
+     */
+    public ReteRuleSet(String name, Collection<AutomationRuleConfig> configs, int priority) {
+        this.name = name;
+        this.priority = priority;
+
+        boolean everyDevice = false;
+        boolean timed = false;
+        Set<String> targets = new LinkedHashSet<>();
+        for (AutomationRuleConfig config : configs) {
+            if (!network.addRule(config)) continue;
+            actions.put(config.getRuleName(), compile(config));
+            if (config.getTargetDevices() == null || config.getTargetDevices().isEmpty()) {
+                everyDevice = true;
+            } else {
+                targets.addAll(config.getTargetDevices());
+            }
+            if (config.getConditions() != null && config.getConditions().stream()
+                    .anyMatch(condition -> condition.getType().trim().equalsIgnoreCase("TIME"))) {
+                timed = true;
+            }
+        }
+        network.addListener(agenda);
+
+        // Actions only touch the device a rule was activated for, so reads and writes coincide
+        this.devices = everyDevice ? DeviceSelector.ALL : DeviceSelector.devices(targets.toArray(String[]::new));
+        List<RuleTrigger> triggers = new ArrayList<>();
+        for (EventType type : List.of(EventType.DEVICE_STATE_CHANGED, EventType.TEMPERATURE_ALERT)) {
+            if (everyDevice) {
+                triggers.add(RuleTrigger.on(type));
+            } else {
+                targets.forEach(device -> triggers.add(RuleTrigger.on(type, device)));
+            }
+        }
+        if (timed) {
+            triggers.add(RuleTrigger.every(Duration.ofMinutes(1)));
+        }
+        this.triggers = List.copyOf(triggers);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean shouldExecute() {
+        return isEnabled();
+    }
+
+    @Override
+    public synchronized void execute(List<SmartDevice> devices) throws SmartHomeException {
+        network.setTime(LocalTime.now(clock));
+        // Events name the devices that changed; anything else (first run, sweep, timer) re-reads all
+        Set<String> marked = new HashSet<>();
+        for (Iterator<String> it = changed.iterator(); it.hasNext(); ) {
+            marked.add(it.next());
+            it.remove();
+        }
+        boolean all = !loaded || marked.isEmpty();
+        for (SmartDevice device : devices) {
+            if (all || marked.contains(device.getName())) {
+                network.update(device);
+            }
+        }
+        loaded = true;
+
+        Map<String, SmartDevice> byName = null;
+        for (Activation activation : agenda.drain()) {
+            if (byName == null) {
+                byName = new HashMap<>();
+                for (SmartDevice device : devices) {
+                    byName.putIfAbsent(device.getName(), device);
+                }
+            }
+            SmartDevice device = byName.get(activation.device());
+            if (device == null) continue;
+            System.out.println("🕸️ Rule " + activation.rule() + " activated for " + device.getName());
+            for (Action action : actions.get(activation.rule())) {
+                apply(action, device);
+            }
+            // The network sees what the actions did; what that activates runs next time
+            network.update(device);
+        }
+    }
+
+    @Override
+    public void onTrigger(Event event) {
+        changed.add(event.getSource());
+    }
+
+    @Override
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled.get();
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled.set(enabled);
+    }
+
+    @Override
+    public List<RuleTrigger> getTriggers() {
+        return triggers;
+    }
+
+    @Override
+    public DeviceSelector getInputs() {
+        return devices;
+    }
+
+    public ReteNetwork getNetwork() {
+        return network;
+    }
+
+    private static List<Action> compile(AutomationRuleConfig config) {
+        List<Action> compiled = new ArrayList<>();
+        List<String> texts = config.getActions() != null ? config.getActions() : List.of();
+        for (String text : texts) {
+            String[] parts = text.trim().split("\\s+");
+            try {
+                Command command = Command.valueOf(parts[0].toUpperCase());
+                boolean takesValue = command == Command.SET_TEMPERATURE || command == Command.SET_BRIGHTNESS;
+                if (parts.length != (takesValue ? 2 : 1)) {
+                    throw new IllegalArgumentException(takesValue ? "expected a value" : "unexpected value");
+                }
+                compiled.add(new Action(command, takesValue ? Integer.parseInt(parts[1]) : 0));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid action in rule " + config.getRuleName() + ": " +
+                        text + " (" + e.getMessage() + ")", e);
+            }
+        }
+        return List.copyOf(compiled);
+    }
+
+    private void apply(Action action, SmartDevice device) throws SmartHomeException {
+        switch (action.command()) {
+            case TURN_ON -> device.turnOn();
+            case TURN_OFF -> device.turnOff();
+            case SET_TEMPERATURE -> {
+                switch (device) {
+                    case ConcurrentThermostat thermostat -> thermostat.setTemperature(action.value());
+                    case Thermostat thermostat -> thermostat.setTemperature(action.value());
+                    default -> System.out.println("⚠️  Rule set " + name + ": " + device.getName() +
+                            " has no temperature");
+                }
+            }
+            case SET_BRIGHTNESS -> {
+                if (device instanceof ConcurrentLight light) {
+                    light.setBrightness(action.value());
+                } else {
+                    System.out.println("⚠️  Rule set " + name + ": " + device.getName() + " has no brightness");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package com.fatty.smarthome.concurrent.bridge;
+
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventCodec;
+import com.fatty.smarthome.concurrent.events.BatchEventListener;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.events.EventType;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards selected event types between the EventSystems of processes on the same
+ * host (CLI, GUI, helpers) over a Unix domain socket or loopback TCP. The bridge is a
+ * batch listener without linger, so bursts reach it as lists and a lone event at once.
+ *
+ * One process listens, the others connect; every connection carries events both ways.
+ * Frames are length-prefixed: length (4, bytes that follow), kind (1), body. A HELLO
+ * frame (node id, accepted types) opens each connection, after which EVENTS frames
+ * carry a count and that many {@link EventCodec} records. Each peer has a bounded queue
+ * drained by its own writer, which sends whatever has piled up as one frame, so a
+ * lone event goes out immediately and a burst is batched. When a connected peer falls
+ * behind, publishers wait briefly for queue space and then drop; while a peer is
+ * disconnected its queue fills up to capacity and outgoing connections reconnect with
+ * exponential backoff.
+ *
+ * Events received from a peer are published locally, in one batch per frame, and carry
+ * the peer's node id as their origin. While the local queue is full the reader waits, so
+ * a peer sending faster than this process dispatches is held back through the socket.
+ * Events with an origin are not forwarded again, so events travel one hop: connect
+ * every process to the ones it needs to hear from.
+ */
+public final class EventBridge implements BatchEventListener, AutoCloseable {
+    /**
+     * Device level events; derived events (automation, aggregates, patterns) stay local
+     */
+    public static final Set<EventType> DEFAULT_TYPES = Collections.unmodifiableSet(EnumSet.of(
+            EventType.DEVICE_STATE_CHANGED, EventType.TEMPERATURE_ALERT, EventType.MOTION_DETECTED,
+            EventType.POWER_THRESHOLD_EXCEEDED, EventType.DEVICE_MALFUNCTION, EventType.USER_COMMAND));
+
+    /**
+     * Snapshot of one connection
+     */
+    public record PeerStats(String name, boolean outgoing, boolean connected, String remoteNode,
+                            long sent, long received, long dropped, int queued, long reconnects) {
+        @Override
+        public String toString() {
+            return String.format("%s %s %s%s: sent %d, received %d, dropped %d, queued %d%s",
+                    outgoing ? "->" : "<-", name, connected ? "connected" : "disconnected",
+                    remoteNode != null ? " (" + remoteNode + ")" : "",
+                    sent, received, dropped, queued, outgoing ? ", reconnects " + reconnects : "");
+        }
+    }
+
+    private static final byte FRAME_HELLO = 1;
+    private static final byte FRAME_EVENTS = 2;
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_BATCH_EVENTS = 1024;
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+    private static final long OFFER_WAIT_MILLIS = 50;
+    private static final long MIN_BACKOFF_MILLIS = 50;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    private static final AtomicInteger PEER_IDS = new AtomicInteger(0);
+
+    private final EventSystem eventSystem;
+    private final String nodeId;
+    private final Set<EventType> types;
+    private final long typeMask;
+    private final int queueCapacity;
+    private final List<Peer> peers = new CopyOnWriteArrayList<>();
+    private final List<ServerSocketChannel> servers = new CopyOnWriteArrayList<>();
+    private final List<Path> socketFiles = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+
+    public EventBridge(EventSystem eventSystem, String nodeId) {
+        this(eventSystem, nodeId, DEFAULT_TYPES, 10_000);
+    }
+
+    /**
+     * @param eventSystem   local event system
+     * @param nodeId        name of this process, shown to peers
+     * @param types         event types sent to and accepted from peers
+     * @param queueCapacity events held per peer before dropping
+     */
+    public EventBridge(EventSystem eventSystem, String nodeId, Set<EventType> types, int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.eventSystem = eventSystem;
+        this.nodeId = Objects.requireNonNull(nodeId);
+        this.types = EnumSet.copyOf(types);
+        this.typeMask = maskOf(this.types);
+        this.queueCapacity = queueCapacity;
+        for (EventType type : this.types) {
+            eventSystem.subscribeBatch(type, this);
+        }
+    }
+
+    /**
+     * Parse a bridge address: a port number means loopback TCP, anything else is a socket file path
+     */
+    public static SocketAddress address(String spec) {
+        if (spec.chars().allMatch(Character::isDigit)) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+        }
+        return UnixDomainSocketAddress.of(spec);
+    }
+
+    /**
+     * Accept peers on the address; returns the bound address (useful with TCP port 0)
+     */
+    public SocketAddress listen(SocketAddress address) throws IOException {
+        ServerSocketChannel server;
+        if (address instanceof UnixDomainSocketAddress unix) {
+            // A socket file left behind by a crashed process would make bind fail
+            Files.deleteIfExists(unix.getPath());
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            socketFiles.add(unix.getPath());
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        server.bind(address);
+        servers.add(server);
+
+        SocketAddress bound = server.getLocalAddress();
+        Thread.ofVirtual().name("BridgeAcceptor-" + nodeId).start(() -> acceptLoop(server));
+        System.out.println("🌉 Event bridge " + nodeId + " listening on " + bound);
+        return bound;
+    }
+
+    /**
+     * Connect to a listening bridge, reconnecting whenever the connection drops
+     */
+    public void connect(SocketAddress address) {
+        Peer peer = new Peer(address.toString(), true);
+        peers.add(peer);
+        Thread.ofVirtual().name("BridgePeer-" + peer.id).start(() -> connectLoop(peer, address));
+    }
+
+    @Override
+    public void onEvents(List<Event> events) {
+        for (Event event : events) {
+            if (event.getOrigin() != null) {
+                continue;
+            }
+            for (Peer peer : peers) {
+                peer.offer(event);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "EventBridge-" + nodeId;
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return MAX_BATCH_EVENTS;
+    }
+
+    @Override
+    public long getMaxLingerMillis() {
+        // Peer writers batch on their own; waiting here would only add latency
+        return 0;
+    }
+
+    public List<PeerStats> getPeerStats() {
+        return peers.stream().map(Peer::stats).toList();
+    }
+
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Event Bridge '%s' Statistics:\n" +
+                        "  Types: %s\n" +
+                        "  Listening: %d, peers: %d (%d connected)",
+                nodeId, types.equals(DEFAULT_TYPES) ? "default" : types, servers.size(), peers.size(),
+                peers.stream().filter(p -> p.connected).count()));
+        for (Peer peer : peers) {
+            sb.append("\n  ").append(peer.stats());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        eventSystem.unsubscribeBatch(this);
+        for (ServerSocketChannel server : servers) {
+            closeQuietly(server);
+        }
+        for (Peer peer : peers) {
+            peer.disconnect();
+        }
+        for (Path socketFile : socketFiles) {
+            try {
+                Files.deleteIfExists(socketFile);
+            } catch (IOException ignored) {
+            }
+        }
+        servers.clear();
+        peers.clear();
+        System.out.println("🌉 Event bridge " + nodeId + " closed");
+    }
+
+    // ----------------------------------------------------------------------------------
+
+    private void acceptLoop(ServerSocketChannel server) {
+        while (running && server.isOpen()) {
+            try {
+                SocketChannel channel = server.accept();
+                Peer peer = new Peer(String.valueOf(channel.getRemoteAddress()), false);
+                peers.add(peer);
+                Thread.ofVirtual().name("BridgePeer-" + peer.id).start(() -> {
+                    try {
+                        peer.session(channel);
+                    } catch (IOException e) {
+                        if (running) {
+                            System.err.println("⚠️  Bridge peer " + peer.name + " disconnected: " + e.getMessage());
+                        }
+                    } finally {
+                        peers.remove(peer);
+                    }
+                });
+            } catch (IOException e) {
+                if (running && server.isOpen()) {
+                    System.err.println("❌ Bridge accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void connectLoop(Peer peer, SocketAddress address) {
+        long backoff = MIN_BACKOFF_MILLIS;
+        while (running) {
+            try {
+                SocketChannel channel = address instanceof UnixDomainSocketAddress
+                        ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                        : SocketChannel.open();
+                channel.connect(address);
+                backoff = MIN_BACKOFF_MILLIS;
+                peer.session(channel);
+            } catch (IOException e) {
+                // Refused while the other side is down, or the session broke; retry below
+            }
+            if (!running) return;
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            peer.reconnects.incrementAndGet();
+        }
+    }
+
+    private static long maskOf(Set<EventType> types) {
+        long mask = 0;
+        for (EventType type : types) {
+            mask |= 1L << type.ordinal();
+        }
+        return mask;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Byte buffer whose backing array can be written to the channel without copying
+     */
+    private static final class FrameBuffer extends ByteArrayOutputStream {
+        FrameBuffer(int size) {
+            super(size);
+        }
+
+        ByteBuffer frame() {
+            // Patch the length prefix now that the body size is known
+            int length = count - 4;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * One connection (or, for outgoing peers, the series of connections to one address)
+     */
+    private final class Peer {
+        final int id = PEER_IDS.incrementAndGet();
+        final String name;
+        final boolean outgoing;
+        final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(queueCapacity);
+        final AtomicLong sent = new AtomicLong(0);
+        final AtomicLong received = new AtomicLong(0);
+        final AtomicLong dropped = new AtomicLong(0);
+        final AtomicLong reconnects = new AtomicLong(0);
+        // Types the remote side accepts; until it says, queue everything we bridge
+        volatile long remoteMask = -1L;
+        volatile String remoteNode;
+        volatile boolean connected = false;
+        volatile SocketChannel channel;
+
+        Peer(String name, boolean outgoing) {
+            this.name = name;
+            this.outgoing = outgoing;
+        }
+
+        void offer(Event event) {
+            if ((remoteMask & (1L << event.getType().ordinal())) == 0) return;
+            try {
+                // Back-pressure a live peer briefly; a disconnected one just fills up
+                boolean queued = connected
+                        ? queue.offer(event, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)
+                        : queue.offer(event);
+                if (!queued) {
+                    dropped.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                dropped.incrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Run one connection until it breaks: handshake, then read on a second thread while this one writes
+         */
+        void session(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            try {
+                if (channel.getRemoteAddress() instanceof InetSocketAddress) {
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+                FrameBuffer out = new FrameBuffer(64 * 1024);
+
+                writeHello(channel, out);
+                readHello(in);
+                connected = true;
+                System.out.println("🌉 Bridge " + nodeId + " connected to " + remoteNode + " (" + name + ")");
+
+                Thread reader = Thread.ofVirtual().name("BridgeReader-" + id).start(() -> readLoop(in));
+                try {
+                    writeLoop(channel, out);
+                } finally {
+                    reader.interrupt();
+                }
+            } finally {
+                connected = false;
+                closeQuietly(channel);
+            }
+        }
+
+        void disconnect() {
+            SocketChannel current = channel;
+            if (current != null) {
+                closeQuietly(current);
+            }
+        }
+
+        PeerStats stats() {
+            return new PeerStats(name, outgoing, connected, remoteNode, sent.get(), received.get(),
+                    dropped.get(), queue.size(), reconnects.get());
+        }
+
+        private void writeHello(SocketChannel channel, FrameBuffer out) throws IOException {
+            out.reset();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(0);
+            data.writeByte(FRAME_HELLO);
+            data.writeUTF(nodeId);
+            data.writeLong(typeMask);
+            writeFully(channel, out.frame());
+        }
+
+        private void readHello(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            byte kind = in.readByte();
+            if (kind != FRAME_HELLO || length > MAX_FRAME_BYTES) {
+                throw new IOException("Expected HELLO frame, got kind " + kind);
+            }
+            remoteNode = in.readUTF();
+            remoteMask = in.readLong() & typeMask;
+            // Anything queued while disconnected that the peer does not want
+            queue.removeIf(event -> (remoteMask & (1L << event.getType().ordinal())) == 0);
+        }
+
+        private void writeLoop(SocketChannel channel, FrameBuffer out) throws IOException {
+            List<Event> batch = new ArrayList<>(MAX_BATCH_EVENTS);
+            DataOutputStream data = new DataOutputStream(out);
+            while (running && channel.isOpen()) {
+                Event first;
+                try {
+                    first = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (first == null) continue;
+
+                batch.clear();
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_EVENTS - 1);
+
+                int written = 0;
+                int delivered = 0;
+                try {
+                    while (written < batch.size()) {
+                        out.reset();
+                        data.writeInt(0);
+                        data.writeByte(FRAME_EVENTS);
+                        data.writeInt(0);
+                        int start = written;
+                        while (written < batch.size() && out.size() < MAX_BATCH_BYTES) {
+                            EventCodec.write(data, batch.get(written++));
+                        }
+                        ByteBuffer frame = out.frame();
+                        frame.putInt(5, written - start);
+                        writeFully(channel, frame);
+                        sent.addAndGet(written - start);
+                        delivered = written;
+                    }
+                } catch (IOException e) {
+                    dropped.addAndGet(batch.size() - delivered);
+                    throw e;
+                }
+            }
+        }
+
+        private void readLoop(DataInputStream in) {
+            try {
+                while (running) {
+                    int length = in.readInt();
+                    if (length < 1 || length > MAX_FRAME_BYTES) {
+                        throw new IOException("Bad frame length " + length);
+                    }
+                    byte kind = in.readByte();
+                    if (kind != FRAME_EVENTS) {
+                        in.skipNBytes(length - 1);
+                        continue;
+                    }
+                    int count = in.readInt();
+                    List<Event> batch = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        Event event = EventCodec.read(in, remoteNode);
+                        if ((typeMask & (1L << event.getType().ordinal())) != 0) {
+                            batch.add(event);
+                        }
+                    }
+                    received.addAndGet(count);
+                    eventSystem.publishEvents(batch);
+                }
+            } catch (IOException e) {
+                // Peer went away; closing the channel ends the write loop too
+            } finally {
+                disconnect();
+            }
+        }
+
+        private void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.fatty.smarthome.concurrent.cep;
+
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventListener;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.concurrent.events.SubscriptionIndex;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Complex event processing on top of EventSystem: registered patterns (sequence,
+ * absence, repetition, time windows) are compiled into NFAs that consume events one
+ * at a time and keep only their partial matches.
+ *
+ * Every pattern step is put into a routing index by event type, source and payload,
+ * so an event only touches the patterns that have a step for it, no matter how many
+ * patterns are registered. Windows use event timestamps; absence patterns complete
+ * when time passes their window end, driven by later events, advanceTo() or the
+ * optional ticker started with start().
+ */
+public class CepEngine implements EventListener {
+    private record StepRef(Nfa nfa, int step) {
+    }
+
+    private record Registration(Nfa nfa, Consumer<PatternMatch> action, List<StepRef> refs) {
+    }
+
+    private record Timer(long deadline, Nfa nfa, Nfa.Partial partial) {
+    }
+
+    private record Fired(PatternMatch match, Consumer<PatternMatch> action) {
+    }
+
+    private final String name;
+    private final Clock clock;
+
+    // Pattern state, guarded by this
+    private final Map<String, Registration> registrations = new LinkedHashMap<>();
+    private final Map<EventType, SubscriptionIndex<StepRef>> index = new EnumMap<>(EventType.class);
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>(Comparator.comparingLong(Timer::deadline));
+    private long now = Long.MIN_VALUE;
+
+    private final AtomicLong eventsProcessed = new AtomicLong(0);
+    private final AtomicLong matches = new AtomicLong(0);
+    private final AtomicLong actionFailures = new AtomicLong(0);
+    private volatile EventSystem resultSink;
+    private ScheduledExecutorService ticker;
+
+    public CepEngine(String name) {
+        this(name, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock time source for the ticker (a virtual clock when replaying)
+     */
+    public CepEngine(String name, Clock clock) {
+        this.name = name;
+        this.clock = clock;
+        for (EventType type : EventType.values()) {
+            index.put(type, SubscriptionIndex.empty());
+        }
+    }
+
+    /**
+     * Compile and register a pattern; the action runs for every match, outside the engine lock
+     */
+    public synchronized void register(String patternName, Pattern pattern, Consumer<PatternMatch> action) {
+        if (registrations.containsKey(patternName)) {
+            throw new IllegalArgumentException("Pattern already registered: " + patternName);
+        }
+        Nfa nfa = new Nfa(patternName, pattern);
+        List<StepRef> refs = new ArrayList<>();
+        for (int i = 0; i < nfa.steps.length; i++) {
+            StepRef ref = new StepRef(nfa, i);
+            Pattern.Step step = nfa.steps[i];
+            index.put(step.type(), index.get(step.type()).with(step.filter(), ref));
+            refs.add(ref);
+        }
+        registrations.put(patternName, new Registration(nfa, Objects.requireNonNull(action), refs));
+    }
+
+    /**
+     * Remove a pattern and its partial matches
+     */
+    public synchronized boolean unregister(String patternName) {
+        Registration registration = registrations.remove(patternName);
+        if (registration == null) return false;
+
+        for (StepRef ref : registration.refs()) {
+            EventType type = ref.nfa().steps[ref.step()].type();
+            index.put(type, index.get(type).without(ref));
+        }
+        registration.nfa().reset();
+        return true;
+    }
+
+    /**
+     * Receive every event of the event system
+     */
+    public void attach(EventSystem eventSystem) {
+        eventSystem.subscribeToAll(this);
+    }
+
+    /**
+     * Publish every match as a PATTERN_MATCHED event (null to stop)
+     */
+    public void setResultSink(EventSystem eventSystem) {
+        this.resultSink = eventSystem;
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        eventsProcessed.incrementAndGet();
+        List<Fired> fired = new ArrayList<>(0);
+        synchronized (this) {
+            advance(event.getTimestampMillis(), fired);
+
+            List<StepRef> refs = index.get(event.getType()).match(event);
+            if (refs.size() == 1) {
+                StepRef ref = refs.get(0);
+                if (ref.nfa().steps[ref.step()].accepts(event)) {
+                    feed(ref.nfa(), event, 1L << ref.step(), fired);
+                }
+            } else if (!refs.isEmpty()) {
+                // Steps of the same pattern that this event matches, combined into one mask
+                Map<Nfa, Long> masks = new IdentityHashMap<>();
+                for (StepRef ref : refs) {
+                    if (ref.nfa().steps[ref.step()].accepts(event)) {
+                        masks.merge(ref.nfa(), 1L << ref.step(), (a, b) -> a | b);
+                    }
+                }
+                masks.forEach((nfa, mask) -> feed(nfa, event, mask, fired));
+            }
+        }
+        fire(fired);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Move time forward without an event, expiring windows and completing absence patterns
+     */
+    public void advanceTo(long millis) {
+        List<Fired> fired = new ArrayList<>(0);
+        synchronized (this) {
+            advance(millis, fired);
+        }
+        fire(fired);
+    }
+
+    /**
+     * Advance time from the clock periodically, so absence patterns fire on a quiet stream
+     */
+    public synchronized void start(Duration tick) {
+        if (ticker != null) return;
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r);
+            t.setName("CepTicker-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(() -> advanceTo(clock.millis()),
+                tick.toMillis(), tick.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    public synchronized int getPatternCount() {
+        return registrations.size();
+    }
+
+    /**
+     * Partial matches currently held across all patterns
+     */
+    public synchronized int getPartialMatchCount() {
+        return registrations.values().stream().mapToInt(r -> r.nfa().getActiveRuns()).sum();
+    }
+
+    public long getMatchCount() {
+        return matches.get();
+    }
+
+    public synchronized String getStatistics() {
+        int partitions = registrations.values().stream().mapToInt(r -> r.nfa().getPartitionCount()).sum();
+        return String.format("CEP Engine '%s' Statistics:\n" +
+                        "  Patterns: %d\n" +
+                        "  Partial matches: %d in %d partitions, timers: %d\n" +
+                        "  Events: %d, matches: %d, action failures: %d",
+                name, registrations.size(), getPartialMatchCount(), partitions, timers.size(),
+                eventsProcessed.get(), matches.get(), actionFailures.get());
+    }
+
+    // ----------------------------------------------------------------------------------
+
+    private void feed(Nfa nfa, Event event, long stepMask, List<Fired> fired) {
+        PatternMatch match = nfa.onEvent(event, stepMask);
+        if (match != null) {
+            fired.add(new Fired(match, registrations.get(nfa.name).action()));
+        }
+        if (!nfa.hasWindow()) return;
+
+        Nfa.Partial partial = nfa.partial(nfa.pattern.isPerSource() ? event.getSource() : "");
+        if (partial != null && partial.nextDeadline < partial.scheduledDeadline) {
+            schedule(nfa, partial);
+        }
+    }
+
+    private void advance(long millis, List<Fired> fired) {
+        if (millis <= now) return;
+        now = millis;
+
+        while (!timers.isEmpty() && timers.peek().deadline() <= now) {
+            Timer timer = timers.poll();
+            Nfa.Partial partial = timer.partial();
+            // Superseded by an earlier timer, or the partial is gone
+            if (partial.scheduledDeadline != timer.deadline() || !timer.nfa().isLive(partial)) continue;
+
+            partial.scheduledDeadline = Long.MAX_VALUE;
+            PatternMatch match = timer.nfa().expire(partial, now);
+            if (match != null) {
+                fired.add(new Fired(match, registrations.get(timer.nfa().name).action()));
+            }
+            if (partial.runs > 0) {
+                schedule(timer.nfa(), partial);
+            }
+        }
+    }
+
+    private void schedule(Nfa nfa, Nfa.Partial partial) {
+        partial.scheduledDeadline = partial.nextDeadline;
+        timers.add(new Timer(partial.nextDeadline, nfa, partial));
+    }
+
+    private void fire(List<Fired> fired) {
+        if (fired.isEmpty()) return;
+
+        EventSystem sink = resultSink;
+        for (Fired f : fired) {
+            matches.incrementAndGet();
+            try {
+                f.action().accept(f.match());
+            } catch (Exception e) {
+                actionFailures.incrementAndGet();
+                System.err.println("❌ Pattern action failed for " + f.match().pattern() + ": " + e.getMessage());
+            }
+            if (sink != null) {
+                PatternMatch match = f.match();
+                Map<String, Object> data = new HashMap<>();
+                data.put("engine", name);
+                data.put("partition", match.partition() != null ? match.partition() : "");
+                data.put("events", match.events().size());
+                data.put("startMillis", match.startMillis());
+                data.put("endMillis", match.endMillis());
+                sink.publishEvent(new Event(EventType.PATTERN_MATCHED, match.pattern(), data));
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.fatty.smarthome.concurrent.cep;
+
+import com.fatty.smarthome.concurrent.events.Event;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pattern compiled to a linear NFA. State k means k positive steps have matched
+ * (a repeated step contributes one state per repetition); absence steps become guards
+ * that kill a run while it waits in the state they follow.
+ *
+ * Only partial matches are stored, never event history: per partition at most one run
+ * per state. Two runs in the same state accept exactly the same future events, so the
+ * one with the later start (more time left) dominates and the other is dropped. For the
+ * final state of an absence pattern it is the other way round, the earlier start fires
+ * first. A run takes the next event that matches its step (skip till next match), and
+ * after a match all runs of the partition are cleared so one burst reports once.
+ *
+ * Not thread-safe; CepEngine guards it.
+ */
+final class Nfa {
+    static final long NONE = Long.MIN_VALUE;
+
+    /**
+     * Runs of one partition; index k holds the run that has matched k positive steps
+     */
+    static final class Partial {
+        final String key;
+        final long[] starts;
+        final Event[][] events;
+        int runs = 0;
+        long nextDeadline = Long.MAX_VALUE;
+        // Deadline of this partial's live timer in the engine, MAX_VALUE when none
+        long scheduledDeadline = Long.MAX_VALUE;
+
+        Partial(String key, int states) {
+            this.key = key;
+            this.starts = new long[states + 1];
+            this.events = new Event[states + 1][];
+            Arrays.fill(starts, NONE);
+        }
+    }
+
+    final String name;
+    final Pattern pattern;
+    final Pattern.Step[] steps;
+    private final int[] positives;   // step awaited in state k, for k < length
+    private final long[] guards;     // absence steps (bit per step) that kill a run in state k
+    private final int length;
+    private final long window;
+    private final boolean trailingAbsence;
+    private final Map<String, Partial> partials = new HashMap<>();
+    private int activeRuns = 0;
+
+    Nfa(String name, Pattern pattern) {
+        this.name = name;
+        this.pattern = pattern;
+        this.steps = pattern.steps().toArray(new Pattern.Step[0]);
+        this.window = pattern.windowMillis();
+        if (steps.length > Long.SIZE) {
+            throw new IllegalArgumentException("Pattern " + name + " has more than " + Long.SIZE + " steps");
+        }
+
+        int states = 0;
+        for (Pattern.Step step : steps) {
+            if (!step.negated()) states += step.times();
+        }
+        this.length = states;
+        this.positives = new int[states];
+        this.guards = new long[states + 1];
+
+        int state = 0;
+        for (int i = 0; i < steps.length; i++) {
+            if (steps[i].negated()) {
+                guards[state] |= 1L << i;
+            } else {
+                for (int r = 0; r < steps[i].times(); r++) {
+                    positives[state++] = i;
+                }
+            }
+        }
+        this.trailingAbsence = guards[length] != 0;
+        if (trailingAbsence && window == Pattern.UNBOUNDED) {
+            throw new IllegalArgumentException("Pattern " + name + " ends with an absence step and needs a window");
+        }
+    }
+
+    /**
+     * Feed an event that matched the steps in stepMask.
+     *
+     * @return the completed match, or null
+     */
+    PatternMatch onEvent(Event event, long stepMask) {
+        String key = pattern.isPerSource() ? event.getSource() : "";
+        boolean starts = (stepMask & (1L << positives[0])) != 0;
+        Partial partial = partials.get(key);
+        if (partial == null) {
+            if (!starts) return null;
+            partial = new Partial(key, length);
+        }
+
+        long time = event.getTimestampMillis();
+        PatternMatch match = null;
+        // Highest state first, so one event moves a run forward by at most one state
+        for (int k = length; k >= 1 && match == null; k--) {
+            long start = partial.starts[k];
+            if (start == NONE || time < start) continue;
+
+            if (time - start >= window || (stepMask & guards[k]) != 0) {
+                drop(partial, k);
+            } else if (k < length && (stepMask & (1L << positives[k])) != 0) {
+                Event[] captured = append(partial.events[k], event);
+                drop(partial, k);
+                match = place(partial, k + 1, start, captured, time);
+            }
+        }
+        if (match == null && starts) {
+            match = place(partial, 1, time, new Event[]{event}, time);
+        }
+
+        if (partial.runs > 0) {
+            partials.putIfAbsent(key, partial);
+        } else {
+            partials.remove(key);
+        }
+        return match;
+    }
+
+    /**
+     * Expire the partial's runs whose window ended at or before now.
+     *
+     * @return the absence match that completed, or null
+     */
+    PatternMatch expire(Partial partial, long now) {
+        PatternMatch match = null;
+        long next = Long.MAX_VALUE;
+        for (int k = 1; k <= length; k++) {
+            long start = partial.starts[k];
+            if (start == NONE) continue;
+            if (start + window <= now) {
+                if (k == length && trailingAbsence) {
+                    match = new PatternMatch(name, partitionOf(partial), List.of(partial.events[k]),
+                            start, start + window);
+                }
+                drop(partial, k);
+            } else {
+                next = Math.min(next, start + window);
+            }
+        }
+        if (match != null) {
+            clear(partial);
+        }
+        partial.nextDeadline = partial.runs > 0 ? next : Long.MAX_VALUE;
+        if (partial.runs == 0) {
+            partials.remove(partial.key);
+        }
+        return match;
+    }
+
+    Partial partial(String key) {
+        return partials.get(key);
+    }
+
+    boolean isLive(Partial partial) {
+        return partials.get(partial.key) == partial;
+    }
+
+    boolean hasWindow() {
+        return window != Pattern.UNBOUNDED;
+    }
+
+    int getActiveRuns() {
+        return activeRuns;
+    }
+
+    int getPartitionCount() {
+        return partials.size();
+    }
+
+    void reset() {
+        partials.values().forEach(this::clear);
+        partials.clear();
+    }
+
+    private PatternMatch place(Partial partial, int state, long start, Event[] captured, long time) {
+        if (state == length && !trailingAbsence) {
+            clear(partial);
+            return new PatternMatch(name, partitionOf(partial), List.of(captured), start, time);
+        }
+
+        long existing = partial.starts[state];
+        if (existing != NONE) {
+            boolean keepExisting = state == length ? existing <= start : existing >= start;
+            if (keepExisting) return null;
+        } else {
+            partial.runs++;
+            activeRuns++;
+        }
+        partial.starts[state] = start;
+        partial.events[state] = captured;
+        if (hasWindow()) {
+            partial.nextDeadline = Math.min(partial.nextDeadline, start + window);
+        }
+        return null;
+    }
+
+    private void drop(Partial partial, int state) {
+        if (partial.starts[state] == NONE) return;
+        partial.starts[state] = NONE;
+        partial.events[state] = null;
+        partial.runs--;
+        activeRuns--;
+    }
+
+    private void clear(Partial partial) {
+        for (int k = 1; k <= length; k++) {
+            drop(partial, k);
+        }
+    }
+
+    private String partitionOf(Partial partial) {
+        return pattern.isPerSource() ? partial.key : null;
+    }
+
+    private static Event[] append(Event[] events, Event event) {
+        Event[] next = Arrays.copyOf(events, events.length + 1);
+        next[events.length] = event;
+        return next;
+    }
+}
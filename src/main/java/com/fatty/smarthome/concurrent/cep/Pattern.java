@@ -0,0 +1,182 @@
+package com.fatty.smarthome.concurrent.cep;
+
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventFilter;
+import com.fatty.smarthome.concurrent.events.EventType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Immutable description of an event pattern, built fluently and compiled by CepEngine.
+ *
+ * <pre>
+ * // Motion at the front door, then in the backyard, within 10 seconds
+ * Pattern.begin("front", EventType.MOTION_DETECTED, EventFilter.source("FrontDoorCam"))
+ *        .followedBy("back", EventType.MOTION_DETECTED, EventFilter.source("BackyardCam"))
+ *        .within(Duration.ofSeconds(10));
+ *
+ * // Temperature alert not followed by a recovery for 5 minutes
+ * Pattern.begin("alert", EventType.TEMPERATURE_ALERT)
+ *        .notFollowedBy("recovered", EventType.DEVICE_STATE_CHANGED)
+ *        .within(Duration.ofMinutes(5))
+ *        .perSource();
+ *
+ * // Three malfunctions of the same device within an hour
+ * Pattern.begin("malfunction", EventType.DEVICE_MALFUNCTION).times(3)
+ *        .within(Duration.ofHours(1))
+ *        .perSource();
+ * </pre>
+ *
+ * Steps are matched in order, skipping unrelated events in between. The window is
+ * measured from the first matched event.
+ */
+public final class Pattern {
+    /**
+     * One step: the events it accepts and how often in a row it must match
+     */
+    record Step(String name, EventType type, EventFilter filter, Predicate<Event> condition,
+                boolean negated, int times) {
+        boolean accepts(Event event) {
+            return condition == null || condition.test(event);
+        }
+
+        @Override
+        public String toString() {
+            String target = type + (filter.equals(EventFilter.ALL) ? "" : " " + filter);
+            return (negated ? "!" : "") + name + "(" + target + (condition != null ? " where ..." : "") + ")"
+                    + (times > 1 ? "{" + times + "}" : "");
+        }
+    }
+
+    static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private final List<Step> steps;
+    private final long windowMillis;
+    private final boolean perSource;
+
+    private Pattern(List<Step> steps, long windowMillis, boolean perSource) {
+        this.steps = List.copyOf(steps);
+        this.windowMillis = windowMillis;
+        this.perSource = perSource;
+    }
+
+    public static Pattern begin(String name, EventType type) {
+        return begin(name, type, EventFilter.ALL);
+    }
+
+    public static Pattern begin(String name, EventType type, EventFilter filter) {
+        return new Pattern(List.of(step(name, type, filter, false)), UNBOUNDED, false);
+    }
+
+    /**
+     * Next event that must match, any number of other events may come in between
+     */
+    public Pattern followedBy(String name, EventType type) {
+        return followedBy(name, type, EventFilter.ALL);
+    }
+
+    public Pattern followedBy(String name, EventType type, EventFilter filter) {
+        return append(step(name, type, filter, false));
+    }
+
+    /**
+     * An event that must not occur before the next step. As the last step it needs a
+     * window, and the pattern matches once the window passes without it.
+     */
+    public Pattern notFollowedBy(String name, EventType type) {
+        return notFollowedBy(name, type, EventFilter.ALL);
+    }
+
+    public Pattern notFollowedBy(String name, EventType type, EventFilter filter) {
+        return append(step(name, type, filter, true));
+    }
+
+    /**
+     * The last step must match this many times
+     */
+    public Pattern times(int count) {
+        Step last = last();
+        if (count < 1) {
+            throw new IllegalArgumentException("Repetition count must be positive");
+        }
+        if (last.negated()) {
+            throw new IllegalArgumentException("Cannot repeat an absence step: " + last.name());
+        }
+        return replaceLast(new Step(last.name(), last.type(), last.filter(), last.condition(), false, count));
+    }
+
+    /**
+     * Extra condition on the last step, for what a filter cannot express (e.g. temperature above 28)
+     */
+    public Pattern where(Predicate<Event> condition) {
+        Step last = last();
+        Predicate<Event> combined = last.condition() == null ? condition : last.condition().and(condition);
+        return replaceLast(new Step(last.name(), last.type(), last.filter(), combined, last.negated(), last.times()));
+    }
+
+    /**
+     * Maximum time from the first to the last matched event
+     */
+    public Pattern within(Duration window) {
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Pattern window must be positive");
+        }
+        return new Pattern(steps, window.toMillis(), perSource);
+    }
+
+    /**
+     * Track matches separately for every event source, e.g. three malfunctions of the same device
+     */
+    public Pattern perSource() {
+        return new Pattern(steps, windowMillis, true);
+    }
+
+    List<Step> steps() {
+        return steps;
+    }
+
+    long windowMillis() {
+        return windowMillis;
+    }
+
+    boolean isPerSource() {
+        return perSource;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Step step : steps) {
+            if (!sb.isEmpty()) sb.append(" -> ");
+            sb.append(step);
+        }
+        if (windowMillis != UNBOUNDED) sb.append(" within ").append(Duration.ofMillis(windowMillis));
+        if (perSource) sb.append(" per source");
+        return sb.toString();
+    }
+
+    private static Step step(String name, EventType type, EventFilter filter, boolean negated) {
+        return new Step(Objects.requireNonNull(name), Objects.requireNonNull(type),
+                Objects.requireNonNull(filter), null, negated, 1);
+    }
+
+    private Pattern append(Step step) {
+        List<Step> next = new ArrayList<>(steps);
+        next.add(step);
+        return new Pattern(next, windowMillis, perSource);
+    }
+
+    private Pattern replaceLast(Step step) {
+        List<Step> next = new ArrayList<>(steps);
+        next.set(next.size() - 1, step);
+        return new Pattern(next, windowMillis, perSource);
+    }
+
+    private Step last() {
+        return steps.get(steps.size() - 1);
+    }
+}
@@ -0,0 +1,22 @@
+package com.fatty.smarthome.concurrent.cep;
+
+import com.fatty.smarthome.concurrent.events.Event;
+
+import java.util.List;
+
+/**
+ * A completed pattern.
+ *
+ * @param pattern     registered pattern name
+ * @param partition   event source the match belongs to for per-source patterns, otherwise null
+ * @param events      the events that matched the positive steps, in order
+ * @param startMillis timestamp of the first matched event
+ * @param endMillis   timestamp of the last matched event, or the window end for absence patterns
+ */
+public record PatternMatch(String pattern, String partition, List<Event> events, long startMillis, long endMillis) {
+    @Override
+    public String toString() {
+        return pattern + (partition != null ? "[" + partition + "]" : "") + ": " + events.size()
+                + " events over " + (endMillis - startMillis) + "ms";
+    }
+}
@@ -1,10 +1,9 @@
 package com.fatty.smarthome.concurrent.devices;
 
+import com.fatty.smarthome.concurrent.events.EventPayload;
 import com.fatty.smarthome.concurrent.events.EventType;
 import com.fatty.smarthome.util.SmartHomeException;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ConcurrentLight extends ConcurrentSmartDevice{
@@ -36,14 +35,8 @@ public class ConcurrentLight extends ConcurrentSmartDevice{
         System.out.println("💡 " + name + " brightness: " + oldBrightness + "% → " + level + "%");
         // Emit event if brightness changed significantly
         if (Math.abs(oldBrightness - level) > SIGNIFICANT_BRIGHTNESS_CHANGE && eventSystem != null) {
-            Map<String, Object> data = new HashMap<>();
-            data.put("device", name);
-            data.put("deviceType", "Light");
-            data.put("oldBrightness", oldBrightness);
-            data.put("newBrightness", level);
-            data.put("timestamp", System.currentTimeMillis());
-
-            emitEvent(EventType.DEVICE_STATE_CHANGED, data);
+            emitEvent(EventType.DEVICE_STATE_CHANGED, new EventPayload.Brightness(
+                    name, oldBrightness, level, System.currentTimeMillis()));
         }
     }
 
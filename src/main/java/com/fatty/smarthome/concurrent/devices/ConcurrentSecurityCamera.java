@@ -1,13 +1,12 @@
 package com.fatty.smarthome.concurrent.devices;
 
+import com.fatty.smarthome.concurrent.events.EventPayload;
 import com.fatty.smarthome.concurrent.events.EventType;
-import com.fatty.smarthome.devices.SecurityCamera;
+import com.fatty.smarthome.concurrent.scheduling.Schedule;
+import com.fatty.smarthome.concurrent.scheduling.ScheduledTask;
+import com.fatty.smarthome.concurrent.scheduling.SchedulerService;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.time.Instant;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -19,12 +18,10 @@ public class ConcurrentSecurityCamera extends ConcurrentSmartDevice {
 
     // Motion detection settings
     private static final long MOTION_TIMEOUT_MS = 5000; // 5 seconds
-    private final ScheduledExecutorService motionScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-        Thread t = new Thread(r);
-        t.setName("MotionTimeout-" + getName());
-        t.setDaemon(true);
-        return t;
-    });
+    // Motion timeouts of all cameras that were not given a scheduler, on the system clock
+    private static SchedulerService defaultScheduler;
+    private volatile SchedulerService motionScheduler;
+    private ScheduledTask motionTimeout; // Guarded by lock
     /**
      * Create a new concurrent security camera
      * @param name The name of the camera
@@ -33,6 +30,26 @@ public class ConcurrentSecurityCamera extends ConcurrentSmartDevice {
         super(name);
     }
 
+    /**
+     * Time motion timeouts with this scheduler and its clock, e.g. a replay's virtual clock.
+     * Without one, cameras share a scheduler on the system clock.
+     */
+    public void setScheduler(SchedulerService scheduler) {
+        this.motionScheduler = scheduler;
+    }
+
+    private SchedulerService scheduler() {
+        SchedulerService scheduler = motionScheduler;
+        if (scheduler != null) return scheduler;
+        synchronized (ConcurrentSecurityCamera.class) {
+            if (defaultScheduler == null) {
+                defaultScheduler = new SchedulerService("MotionTimeout");
+                defaultScheduler.start();
+            }
+            return defaultScheduler;
+        }
+    }
+
 
     public boolean isRecording() {
         lock.readLock().lock();
@@ -59,13 +76,8 @@ public class ConcurrentSecurityCamera extends ConcurrentSmartDevice {
 
                 // Emit recording started event
                 if (eventSystem != null) {
-                    Map<String, Object> data = new HashMap<>();
-                    data.put("camera", name);
-                    data.put("action", "RECORDING_STARTED");
-                    data.put("sessionNumber", recordingCount.get());
-                    data.put("timestamp", System.currentTimeMillis());
-
-                    emitEvent(EventType.DEVICE_STATE_CHANGED, data);
+                    emitEvent(EventType.DEVICE_STATE_CHANGED, new EventPayload.Recording(
+                            name, "RECORDING_STARTED", recordingCount.get(), System.currentTimeMillis()));
                 }
             }
         } finally {
@@ -82,12 +94,8 @@ public class ConcurrentSecurityCamera extends ConcurrentSmartDevice {
 
                 // Emit recording stopped event
                 if (eventSystem != null) {
-                    Map<String, Object> data = new HashMap<>();
-                    data.put("camera", name);
-                    data.put("action", "RECORDING_STOPPED");
-                    data.put("timestamp", System.currentTimeMillis());
-
-                    emitEvent(EventType.DEVICE_STATE_CHANGED, data);
+                    emitEvent(EventType.DEVICE_STATE_CHANGED, new EventPayload.Recording(
+                            name, "RECORDING_STOPPED", recordingCount.get(), System.currentTimeMillis()));
                 }
             }
         } finally {
@@ -106,10 +114,11 @@ public class ConcurrentSecurityCamera extends ConcurrentSmartDevice {
             }
 
             boolean wasMotionDetected = motionDetected.get();
+            SchedulerService scheduler = scheduler();
+            lastMotionTime = scheduler.getClock().millis();
 
             if (!wasMotionDetected) {
                 motionDetected.set(true);
-                lastMotionTime = System.currentTimeMillis();
 
                 System.out.println("🚨 " + name + " detected motion!");
 
@@ -120,20 +129,18 @@ public class ConcurrentSecurityCamera extends ConcurrentSmartDevice {
 
                 // Emit motion event
                 if (eventSystem != null) {
-                    Map<String, Object> data = new HashMap<>();
-                    data.put("camera", name);
-                    data.put("location", name.replace("Cam", "").replace("Camera", ""));
-                    data.put("timestamp", System.currentTimeMillis());
-
-                    emitEvent(EventType.MOTION_DETECTED, data);
+                    emitEvent(EventType.MOTION_DETECTED, new EventPayload.Motion(
+                            name, name.replace("Cam", "").replace("Camera", ""),
+                            System.currentTimeMillis()));
                 }
 
-                // Schedule motion clear after timeout
-                motionScheduler.schedule(this::clearMotion, MOTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            } else {
-                // Motion still active, update last motion time
-                lastMotionTime = System.currentTimeMillis();
             }
+            // Clear motion once none was seen for the timeout
+            if (motionTimeout != null) {
+                motionTimeout.cancel();
+            }
+            motionTimeout = scheduler.schedule("motion-" + name,
+                    Schedule.at(Instant.ofEpochMilli(lastMotionTime + MOTION_TIMEOUT_MS)), this::clearMotion);
         } finally {
             lock.writeLock().unlock();
         }
@@ -144,7 +151,7 @@ public class ConcurrentSecurityCamera extends ConcurrentSmartDevice {
     private void clearMotion() {
         lock.writeLock().lock();
         try {
-            if (System.currentTimeMillis() - lastMotionTime >= MOTION_TIMEOUT_MS) {
+            if (motionDetected.get() && scheduler().getClock().millis() - lastMotionTime >= MOTION_TIMEOUT_MS) {
                 motionDetected.set(false);
                 System.out.println("✅ " + name + " motion cleared");
             }
@@ -224,14 +231,14 @@ public class ConcurrentSecurityCamera extends ConcurrentSmartDevice {
      * Cleanup resources when camera is no longer needed
      */
     public void shutdown() {
-        motionScheduler.shutdown();
+        lock.writeLock().lock();
         try {
-            if (!motionScheduler.awaitTermination(1, TimeUnit.SECONDS)) {
-                motionScheduler.shutdownNow();
+            if (motionTimeout != null) {
+                motionTimeout.cancel();
+                motionTimeout = null;
             }
-        } catch (InterruptedException e) {
-            motionScheduler.shutdownNow();
-            Thread.currentThread().interrupt();
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -1,12 +1,12 @@
 package com.fatty.smarthome.concurrent.devices;
 
 import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventPayload;
 import com.fatty.smarthome.concurrent.events.EventSystem;
 import com.fatty.smarthome.concurrent.events.EventType;
 import com.fatty.smarthome.devices.SmartDevice;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -16,6 +16,9 @@ public class ConcurrentSmartDevice extends SmartDevice {
     protected final ReadWriteLock lock = new ReentrantReadWriteLock();
     protected EventSystem eventSystem;
 
+    // Set while a DeviceTransaction changes devices on this thread; it publishes one event for all of them
+    private static final ThreadLocal<Boolean> stateEventsMuted = ThreadLocal.withInitial(() -> false);
+
     // Track device metrics
     protected volatile long lastStateChangeTime = System.currentTimeMillis();
     protected volatile int stateChangeCount = 0;
@@ -107,6 +110,22 @@ public class ConcurrentSmartDevice extends SmartDevice {
         }
     }
 
+    /**
+     * Write lock guarding this device's state. DeviceTransaction holds it while it
+     * changes several devices, so nobody sees a half applied scene; the device's own
+     * methods take it again (it is reentrant).
+     */
+    public Lock writeLock() {
+        return lock.writeLock();
+    }
+
+    /**
+     * Stop (or resume) DEVICE_STATE_CHANGED events of changes made by the calling thread
+     */
+    public static void setStateEventsMuted(boolean muted) {
+        stateEventsMuted.set(muted);
+    }
+
     /**
      * Get the number of state changes
      */
@@ -135,28 +154,22 @@ public class ConcurrentSmartDevice extends SmartDevice {
      * Emit a state change event
      */
     protected void emitStateChangeEvent(String newState) {
-        if (eventSystem != null) {
-            Map<String, Object> data = new HashMap<>();
-            data.put("device", name);
-            data.put("deviceType", this.getClass().getSimpleName());
-            data.put("newState", newState);
-            data.put("changeCount", stateChangeCount);
-            data.put("timestamp", System.currentTimeMillis());
-
+        if (eventSystem != null && !stateEventsMuted.get()) {
             eventSystem.publishEvent(new Event(
                     EventType.DEVICE_STATE_CHANGED,
                     name,
-                    data
+                    new EventPayload.StateChange(name, this.getClass().getSimpleName(),
+                            newState, stateChangeCount, System.currentTimeMillis())
             ));
         }
     }
 
     /**
-     * Emit a custom event
+     * Emit a custom event with a typed payload
      */
-    protected void emitEvent(EventType type, Map<String, Object> data) {
-        if (eventSystem != null) {
-            eventSystem.publishEvent(new Event(type, name, data));
+    protected void emitEvent(EventType type, EventPayload payload) {
+        if (eventSystem != null && !(type == EventType.DEVICE_STATE_CHANGED && stateEventsMuted.get())) {
+            eventSystem.publishEvent(new Event(type, name, payload));
         }
     }
 
@@ -165,16 +178,11 @@ public class ConcurrentSmartDevice extends SmartDevice {
      */
     public void simulateMalfunction() {
         if (eventSystem != null) {
-            Map<String, Object> data = new HashMap<>();
-            data.put("device", name);
-            data.put("deviceType", this.getClass().getSimpleName());
-            data.put("error", "Device not responding");
-            data.put("timestamp", System.currentTimeMillis());
-
             eventSystem.publishEvent(new Event(
                     EventType.DEVICE_MALFUNCTION,
                     name,
-                    data
+                    new EventPayload.Malfunction(name, this.getClass().getSimpleName(),
+                            "Device not responding", System.currentTimeMillis())
             ));
 
             System.out.println("⚠️  MALFUNCTION: " + name + " is not responding!");
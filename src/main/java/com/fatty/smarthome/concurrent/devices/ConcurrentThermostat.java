@@ -1,10 +1,9 @@
 package com.fatty.smarthome.concurrent.devices;
 
+import com.fatty.smarthome.concurrent.events.EventPayload;
 import com.fatty.smarthome.concurrent.events.EventType;
 import com.fatty.smarthome.devices.Thermostat;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -26,7 +25,7 @@ public class ConcurrentThermostat extends ConcurrentSmartDevice {
     private static final int HOT_THRESHOLD = 28;
 
     // For temperature simulation
-    private final Random random = new Random();
+    private final Random random;
     private Object name;
 
     /**
@@ -34,7 +33,16 @@ public class ConcurrentThermostat extends ConcurrentSmartDevice {
      * @param name The name of the thermostat
      */
     public ConcurrentThermostat(String name) {
+        this(name, new Random());
+    }
+
+    /**
+     * Create a thermostat whose drift comes from the given random source,
+     * so simulations can be repeated
+     */
+    public ConcurrentThermostat(String name, Random random) {
         super(name);
+        this.random = random;
     }
 
 
@@ -47,8 +55,11 @@ public class ConcurrentThermostat extends ConcurrentSmartDevice {
         int oldTemp = temperature.getAndSet(temp);
 
         // Update heating/cooling state
+        String oldMode;
+        String newMode;
         lock.writeLock().lock();
         try {
+            oldMode = mode();
             targetTemperature = temp;
 
             if (temp > oldTemp) {
@@ -63,26 +74,36 @@ public class ConcurrentThermostat extends ConcurrentSmartDevice {
                 heating = false;
                 cooling = false;
             }
+            newMode = mode();
         } finally {
             lock.writeLock().unlock();
         }
 
+        // Switching between heating, cooling and idle is a state change of its own
+        if (!newMode.equals(oldMode)) {
+            emitStateChangeEvent(newMode);
+        }
+
         // Emit temperature alert if needed
         if (eventSystem != null) {
             if (temp < COLD_THRESHOLD || temp > HOT_THRESHOLD) {
-                Map<String, Object> data = new HashMap<>();
-                data.put("device", name);
-                data.put("temperature", temp);
-                data.put("previousTemperature", oldTemp);
-                data.put("alert", temp < COLD_THRESHOLD ? "TOO_COLD" : "TOO_HOT");
-                data.put("timestamp", System.currentTimeMillis());
-
-                emitEvent(EventType.TEMPERATURE_ALERT, data);
+                emitEvent(EventType.TEMPERATURE_ALERT, new EventPayload.Temperature(
+                        getName(), temp, oldTemp,
+                        temp < COLD_THRESHOLD ? "TOO_COLD" : "TOO_HOT",
+                        System.currentTimeMillis()));
             }
         }
     }
 
 
+    /**
+     * HEATING, COOLING or IDLE; callers hold the lock
+     */
+    private String mode() {
+        return heating ? "HEATING" : cooling ? "COOLING" : "IDLE";
+    }
+
+
     public int getTemperature() {
         return temperature.get();
     }
@@ -0,0 +1,316 @@
+package com.fatty.smarthome.concurrent.devices;
+
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.core.DatabaseService;
+import com.fatty.smarthome.core.FacadeSmartHome;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.devices.Thermostat;
+import com.fatty.smarthome.util.SmartHomeException;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+/**
+ * Changes several devices as one unit, e.g. a scene or "all lights off".
+ *
+ * Commands are collected first. commit() then validates all of them before touching a
+ * device, write-locks the concurrent devices in name order (so two transactions never
+ * deadlock), applies the commands and saves the changed devices and their log entries
+ * in one database transaction. If a command or the save fails, every device goes back
+ * to the state it had before and nothing is written. Instead of one state change event
+ * per device, one SCENE_APPLIED event lists all changed devices.
+ */
+public class DeviceTransaction {
+    public enum Operation { TURN_ON, TURN_OFF, SET_TEMPERATURE, SET_BRIGHTNESS }
+
+    public record Command(String device, Operation operation, int value) {}
+
+    /**
+     * What a committed transaction changed
+     */
+    public record Result(String name, int commands, List<String> changedDevices, long nanos) {
+        public String format() {
+            return String.format("%s: %d commands, %d devices changed in %.1f ms",
+                    name, commands, changedDevices.size(), nanos / 1e6);
+        }
+    }
+
+    /**
+     * Persists changed devices and their log entries, all or nothing
+     */
+    @FunctionalInterface
+    public interface Store {
+        void save(List<SmartDevice> devices, List<DatabaseService.EventLog> entries) throws SmartHomeException;
+    }
+
+    private static final int MIN_TEMP = 10;
+    private static final int MAX_TEMP = 32;
+
+    /**
+     * Device state that commands can change, for rollback
+     */
+    private record Saved(boolean on, int temperature, int brightness) {
+        static final int NONE = Integer.MIN_VALUE;
+
+        static Saved of(SmartDevice device) {
+            return new Saved(device.isOn(), DeviceTransaction.temperature(device),
+                    device instanceof ConcurrentLight light ? light.getBrightness() : NONE);
+        }
+
+        String describe() {
+            String state = on ? "ON" : "OFF";
+            if (temperature != NONE) state += ", " + temperature + "°C";
+            if (brightness != NONE) state += ", " + brightness + "%";
+            return state;
+        }
+    }
+
+    private final String name;
+    private final Function<String, Optional<SmartDevice>> lookup;
+    private final Store store;
+    private final List<Command> commands = new ArrayList<>();
+    private volatile EventSystem eventSystem;
+    private boolean committed = false;
+
+    /**
+     * @param lookup finds devices by name
+     * @param store where changes are saved, or null to keep them in memory only
+     */
+    public DeviceTransaction(String name, Function<String, Optional<SmartDevice>> lookup, Store store) {
+        this.name = name;
+        this.lookup = lookup;
+        this.store = store;
+    }
+
+    /**
+     * Transaction over the facade's devices, saved to the database
+     */
+    public static DeviceTransaction on(FacadeSmartHome facade, String name) throws SmartHomeException {
+        try {
+            return new DeviceTransaction(name, facade::getDevice, DatabaseService.getInstance()::saveDeviceChanges);
+        } catch (SQLException e) {
+            throw new SmartHomeException("Database unavailable: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Publish the SCENE_APPLIED event of the commit here
+     */
+    public DeviceTransaction publishTo(EventSystem eventSystem) {
+        this.eventSystem = eventSystem;
+        return this;
+    }
+
+    public DeviceTransaction turnOn(String device) {
+        return add(device, Operation.TURN_ON, 0);
+    }
+
+    public DeviceTransaction turnOff(String device) {
+        return add(device, Operation.TURN_OFF, 0);
+    }
+
+    public DeviceTransaction setTemperature(String device, int temperature) {
+        return add(device, Operation.SET_TEMPERATURE, temperature);
+    }
+
+    public DeviceTransaction setBrightness(String device, int brightness) {
+        return add(device, Operation.SET_BRIGHTNESS, brightness);
+    }
+
+    public List<Command> getCommands() {
+        return List.copyOf(commands);
+    }
+
+    /**
+     * Validate, apply and save all commands, or none of them
+     * @throws SmartHomeException if a command is invalid (nothing was changed), or
+     *         applying or saving failed (every device was rolled back)
+     */
+    public Result commit() throws SmartHomeException {
+        if (committed) {
+            throw new IllegalStateException("Transaction " + name + " was already committed");
+        }
+        committed = true;
+        long start = System.nanoTime();
+
+        // Resolve and validate everything before changing anything
+        List<SmartDevice> targets = new ArrayList<>(commands.size());
+        List<String> problems = new ArrayList<>();
+        for (Command command : commands) {
+            SmartDevice device = lookup.apply(command.device()).orElse(null);
+            String problem = device == null ? "device not found" : validate(device, command);
+            if (problem != null) {
+                problems.add(command.device() + " " + command.operation() + ": " + problem);
+            }
+            targets.add(device);
+        }
+        if (!problems.isEmpty()) {
+            throw new SmartHomeException("Transaction " + name + " rejected, nothing changed: "
+                    + String.join("; ", problems));
+        }
+
+        Set<SmartDevice> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(targets);
+        List<SmartDevice> ordered = new ArrayList<>(distinct);
+        ordered.sort(Comparator.comparing(SmartDevice::getName)
+                .thenComparingInt(System::identityHashCode));
+
+        Map<SmartDevice, Saved> before = new IdentityHashMap<>();
+        List<String> changed = new ArrayList<>();
+        List<String> states = new ArrayList<>();
+        List<Lock> locks = new ArrayList<>();
+        ConcurrentSmartDevice.setStateEventsMuted(true);
+        try {
+            for (SmartDevice device : ordered) {
+                if (device instanceof ConcurrentSmartDevice concurrent) {
+                    Lock lock = concurrent.writeLock();
+                    lock.lock();
+                    locks.add(lock);
+                }
+            }
+            // State to roll back to, taken now that nobody else can change it
+            ordered.forEach(device -> before.put(device, Saved.of(device)));
+
+            for (int i = 0; i < commands.size(); i++) {
+                try {
+                    apply(targets.get(i), commands.get(i));
+                } catch (Exception e) {
+                    rollback(before);
+                    throw new SmartHomeException("Transaction " + name + " failed at " + commands.get(i).device()
+                            + " " + commands.get(i).operation() + ", rolled back: " + e.getMessage());
+                }
+            }
+
+            List<SmartDevice> changedDevices = new ArrayList<>();
+            List<DatabaseService.EventLog> entries = new ArrayList<>();
+            for (SmartDevice device : ordered) {
+                Saved old = before.get(device);
+                Saved now = Saved.of(device);
+                if (now.equals(old)) continue;
+                changedDevices.add(device);
+                changed.add(device.getName());
+                states.add(now.on() ? "ON" : "OFF");
+                entries.add(new DatabaseService.EventLog(device.getName(), "SCENE " + name,
+                        old.describe(), now.describe(), null));
+            }
+
+            if (store != null && !changedDevices.isEmpty()) {
+                try {
+                    store.save(changedDevices, entries);
+                } catch (SmartHomeException e) {
+                    rollback(before);
+                    throw new SmartHomeException("Transaction " + name + " could not be saved, rolled back: "
+                            + e.getMessage());
+                }
+            }
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+            ConcurrentSmartDevice.setStateEventsMuted(false);
+        }
+
+        EventSystem events = eventSystem;
+        if (events != null && !changed.isEmpty()) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("scene", name);
+            data.put("devices", List.copyOf(changed));
+            data.put("states", List.copyOf(states));
+            data.put("commands", commands.size());
+            events.publishEvent(new Event(EventType.SCENE_APPLIED, name, data));
+        }
+
+        Result result = new Result(name, commands.size(), List.copyOf(changed), System.nanoTime() - start);
+        System.out.println("🎬 Scene " + result.format());
+        return result;
+    }
+
+    private DeviceTransaction add(String device, Operation operation, int value) {
+        if (committed) {
+            throw new IllegalStateException("Transaction " + name + " was already committed");
+        }
+        commands.add(new Command(device, operation, value));
+        return this;
+    }
+
+    /**
+     * @return why the command cannot be applied to this device, or null
+     */
+    private static String validate(SmartDevice device, Command command) {
+        return switch (command.operation()) {
+            case TURN_ON, TURN_OFF -> null;
+            case SET_TEMPERATURE -> {
+                if (!(device instanceof Thermostat || device instanceof ConcurrentThermostat)) {
+                    yield "not a thermostat";
+                }
+                yield command.value() < MIN_TEMP || command.value() > MAX_TEMP
+                        ? "temperature must be between " + MIN_TEMP + " and " + MAX_TEMP + "°C" : null;
+            }
+            case SET_BRIGHTNESS -> {
+                if (!(device instanceof ConcurrentLight)) yield "brightness cannot be set";
+                yield command.value() < 0 || command.value() > 100 ? "brightness must be between 0 and 100" : null;
+            }
+        };
+    }
+
+    private static void apply(SmartDevice device, Command command) throws SmartHomeException {
+        switch (command.operation()) {
+            case TURN_ON -> device.turnOn();
+            case TURN_OFF -> device.turnOff();
+            case SET_TEMPERATURE -> setTemperature(device, command.value());
+            case SET_BRIGHTNESS -> ((ConcurrentLight) device).setBrightness(command.value());
+        }
+    }
+
+    /**
+     * Put every device back as it was; keeps going if one of them fails
+     */
+    private void rollback(Map<SmartDevice, Saved> before) {
+        for (Map.Entry<SmartDevice, Saved> entry : before.entrySet()) {
+            SmartDevice device = entry.getKey();
+            Saved saved = entry.getValue();
+            try {
+                if (saved.temperature() != Saved.NONE && temperature(device) != saved.temperature()) {
+                    setTemperature(device, saved.temperature());
+                }
+                if (device instanceof ConcurrentLight light && light.getBrightness() != saved.brightness()) {
+                    light.setBrightness(saved.brightness());
+                }
+                if (device.isOn() != saved.on()) {
+                    if (saved.on()) device.turnOn(); else device.turnOff();
+                }
+            } catch (Exception e) {
+                System.err.println("❌ Could not roll back " + device.getName() + ": " + e.getMessage());
+            }
+        }
+        System.out.println("↩️  Scene " + name + " rolled back");
+    }
+
+    private static int temperature(SmartDevice device) {
+        return switch (device) {
+            case ConcurrentThermostat thermostat -> thermostat.getTemperature();
+            case Thermostat thermostat -> thermostat.getTemperature();
+            default -> Saved.NONE;
+        };
+    }
+
+    private static void setTemperature(SmartDevice device, int temperature) {
+        switch (device) {
+            case ConcurrentThermostat thermostat -> thermostat.setTemperature(temperature);
+            case Thermostat thermostat -> thermostat.setTemperature(temperature);
+            default -> throw new IllegalArgumentException(device.getName() + " is not a thermostat");
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.fatty.smarthome.concurrent.events;
+
+import java.util.List;
+
+/**
+ * Interface for listeners that prefer to receive events in batches,
+ * e.g. to write them to the database in one transaction instead of one I/O per event.
+ */
+@FunctionalInterface
+public interface BatchEventListener {
+    /**
+     * Called with a batch of events, oldest first
+     * @param events The accepted events, never empty
+     */
+    void onEvents(List<Event> events);
+
+    /**
+     * Get the name of this listener for debugging
+     * @return listener name
+     */
+    default String getName() {
+        return this.getClass().getSimpleName();
+    }
+
+    /**
+     * Filter to determine if this listener should receive the event
+     * @param event The event to check
+     * @return true if the event should be added to the next batch
+     */
+    default boolean accepts(Event event) {
+        return true;
+    }
+
+    /**
+     * Largest batch handed to onEvents
+     * @return max events per batch
+     */
+    default int getMaxBatchSize() {
+        return 100;
+    }
+
+    /**
+     * How long to wait for a batch to fill up once the first event arrived
+     * @return max linger time in milliseconds
+     */
+    default long getMaxLingerMillis() {
+        return 50;
+    }
+}
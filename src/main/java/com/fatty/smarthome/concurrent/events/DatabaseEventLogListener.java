@@ -0,0 +1,92 @@
+package com.fatty.smarthome.concurrent.events;
+
+import com.fatty.smarthome.core.DatabaseService;
+import com.fatty.smarthome.util.SmartHomeException;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Batch listener that writes events to the event_logs table.
+ * Each batch is inserted in a single transaction, so the cost is one commit per batch
+ * instead of one connection + commit per event.
+ */
+public class DatabaseEventLogListener implements BatchEventListener {
+    private final DatabaseService dbService;
+    private final int maxBatchSize;
+    private final long maxLingerMillis;
+
+    public DatabaseEventLogListener(DatabaseService dbService) {
+        this(dbService, 200, 250);
+    }
+
+    /**
+     * @param dbService Database to write to
+     * @param maxBatchSize Max events per transaction
+     * @param maxLingerMillis Max time an event waits for its batch to fill up
+     */
+    public DatabaseEventLogListener(DatabaseService dbService, int maxBatchSize, long maxLingerMillis) {
+        this.dbService = dbService;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerMillis = maxLingerMillis;
+    }
+
+    @Override
+    public void onEvents(List<Event> events) {
+        List<DatabaseService.EventLog> entries = new ArrayList<>(events.size());
+        for (Event event : events) {
+            entries.add(toLogEntry(event));
+        }
+
+        try {
+            dbService.logActions(entries);
+        } catch (SmartHomeException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Map an event onto the event_logs columns; the row keeps the time of the event
+     */
+    public static DatabaseService.EventLog toLogEntry(Event event) {
+        String newValue = switch (event.getPayload()) {
+            case EventPayload.StateChange s -> s.newState();
+            case EventPayload.Temperature t -> t.temperature() + "°C (" + t.alert() + ")";
+            case EventPayload.Motion m -> "MOTION " + m.location();
+            case EventPayload.Power p -> String.format(Locale.ROOT, "%.1fW > %dW", p.currentPower(), p.threshold());
+            case EventPayload.Brightness b -> b.newBrightness() + "%";
+            case EventPayload.Recording r -> r.action();
+            case EventPayload.Malfunction m -> m.error();
+            case null -> event.getData().toString();
+        };
+        String oldValue = switch (event.getPayload()) {
+            case EventPayload.Temperature t -> t.previousTemperature() + "°C";
+            case EventPayload.Brightness b -> b.oldBrightness() + "%";
+            case null, default -> null;
+        };
+
+        return new DatabaseService.EventLog(
+                event.getSource(),
+                event.getType().name(),
+                oldValue,
+                newValue,
+                new Timestamp(event.getTimestampMillis()));
+    }
+
+    @Override
+    public String getName() {
+        return "DatabaseEventLog";
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    public long getMaxLingerMillis() {
+        return maxLingerMillis;
+    }
+}
@@ -0,0 +1,109 @@
+package com.fatty.smarthome.concurrent.events;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded store of (event, listener) pairs the event system could not deliver.
+ * When full, the oldest entry is evicted. Entries can be inspected and handed
+ * back to the event system for another delivery attempt.
+ */
+public class DeadLetterQueue {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    public enum Reason {
+        FAILED,     // onEvent kept throwing after all retries
+        TIMED_OUT,  // delivery exceeded the listener's timeout and was cancelled
+        REJECTED    // listener's in-flight slots and backlog were all taken
+    }
+
+    /**
+     * One undelivered event
+     */
+    public record DeadLetter(long id, Event event, EventListener listener, Reason reason,
+                             int attempts, String error, long timestampMillis) {
+        @Override
+        public String toString() {
+            return String.format("#%d %s %s -> %s (%s after %d attempt%s: %s)",
+                    id,
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneId.systemDefault())
+                            .format(TIME_FORMAT),
+                    event.getType(), listener.getName(), reason, attempts, attempts == 1 ? "" : "s", error);
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Long, DeadLetter> letters = new LinkedHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private long evicted = 0;
+
+    public DeadLetterQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    public DeadLetter add(Event event, EventListener listener, Reason reason, int attempts, String error) {
+        DeadLetter letter = new DeadLetter(nextId.getAndIncrement(), event, listener, reason, attempts,
+                error, System.currentTimeMillis());
+        synchronized (letters) {
+            letters.put(letter.id(), letter);
+            if (letters.size() > capacity) {
+                Iterator<DeadLetter> oldest = letters.values().iterator();
+                oldest.next();
+                oldest.remove();
+                evicted++;
+            }
+        }
+        return letter;
+    }
+
+    /**
+     * All entries, oldest first
+     */
+    public List<DeadLetter> list() {
+        synchronized (letters) {
+            return new ArrayList<>(letters.values());
+        }
+    }
+
+    public Optional<DeadLetter> remove(long id) {
+        synchronized (letters) {
+            return Optional.ofNullable(letters.remove(id));
+        }
+    }
+
+    /**
+     * Remove and return all entries, oldest first
+     */
+    public List<DeadLetter> drain() {
+        synchronized (letters) {
+            List<DeadLetter> all = new ArrayList<>(letters.values());
+            letters.clear();
+            return all;
+        }
+    }
+
+    public int size() {
+        synchronized (letters) {
+            return letters.size();
+        }
+    }
+
+    public long getEvictedCount() {
+        synchronized (letters) {
+            return evicted;
+        }
+    }
+
+    public void clear() {
+        synchronized (letters) {
+            letters.clear();
+        }
+    }
+}
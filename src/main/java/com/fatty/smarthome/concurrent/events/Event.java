@@ -1,26 +1,39 @@
 package com.fatty.smarthome.concurrent.events;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
- * Immutable class representin
+ * Immutable class representing something that happened in the smart home.
+ * Events are identified by a monotonic sequence number and stamped with
+ * epoch millis plus System.nanoTime(), so creating one does not touch
+ * SecureRandom or the clock/zone machinery.
+ * Data is either a typed {@link EventPayload} or a legacy key/value map;
+ * the map view of a typed payload is built lazily on first access.
  */
 public class Event {
+    private static final AtomicLong SEQUENCE = new AtomicLong(0);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
     private final EventType type;
     private final String source;
-    private final Map<String, Object> data;
-    private final LocalDateTime timestamp;
-    private final String eventId;
+    private final EventPayload payload;
+    private final long sequence;
+    private final long timestampMillis;
+    private final long nanoTime;
+    // Node of the event bridge this event arrived through; null if it was raised in this process
+    private final String origin;
+    private volatile Map<String, Object> data;
 
     public Event(EventType type, String source, Map<String, Object> data) {
-        this.type = Objects.requireNonNull(type, "Event type cannot be null");
-        this.source = Objects.requireNonNull(source, "Event source cannot be null");
-        this.data = data != null ? new HashMap<>(data) : new HashMap<>();
-        this.timestamp = LocalDateTime.now();
-        this.eventId = UUID.randomUUID().toString();
+        this(type, source, null,
+                Collections.unmodifiableMap(data != null ? new HashMap<>(data) : new HashMap<>()),
+                System.currentTimeMillis());
     }
     /**
      * Create event with single key-value pair
@@ -29,6 +42,49 @@ public class Event {
         this(type, source, Map.of(key, value));
     }
 
+    /**
+     * Create event carrying a typed payload (no map is built until getData() is called)
+     */
+    public Event(EventType type, String source, EventPayload payload) {
+        this(type, source, Objects.requireNonNull(payload, "Event payload cannot be null"),
+                null, System.currentTimeMillis());
+    }
+
+    /**
+     * Create a typed event with an explicit wall clock time, e.g. when importing a recording
+     */
+    public Event(EventType type, String source, EventPayload payload, long timestampMillis) {
+        this(type, source, Objects.requireNonNull(payload, "Event payload cannot be null"),
+                null, timestampMillis);
+    }
+
+    private Event(EventType type, String source, EventPayload payload,
+                  Map<String, Object> data, long timestampMillis) {
+        this(type, source, payload, data, timestampMillis, null);
+    }
+
+    private Event(EventType type, String source, EventPayload payload,
+                  Map<String, Object> data, long timestampMillis, String origin) {
+        this.type = Objects.requireNonNull(type, "Event type cannot be null");
+        this.source = Objects.requireNonNull(source, "Event source cannot be null");
+        this.payload = payload;
+        this.data = data;
+        this.sequence = SEQUENCE.incrementAndGet();
+        this.timestampMillis = timestampMillis;
+        this.nanoTime = System.nanoTime();
+        this.origin = origin;
+    }
+
+    /**
+     * Rebuild an event read back from disk or the wire.
+     * It keeps its original wall clock timestamp but gets a new local sequence number.
+     */
+    static Event restore(EventType type, String source, EventPayload payload,
+                         Map<String, Object> data, long timestampMillis, String origin) {
+        return new Event(type, source, payload,
+                payload == null ? Collections.unmodifiableMap(data) : null, timestampMillis, origin);
+    }
+
     // Getters
     public EventType getType() {
         return type;
@@ -38,21 +94,80 @@ public class Event {
         return source;
     }
 
+    /**
+     * Get the legacy key/value view of this event's data
+     * @return an unmodifiable map, built once for typed payloads
+     */
     public Map<String, Object> getData() {
-        return Collections.unmodifiableMap(data);
+        Map<String, Object> view = data;
+        if (view == null) {
+            // Benign race: two threads may both build the view, both results are equal
+            view = Collections.unmodifiableMap(payload.toMap());
+            data = view;
+        }
+        return view;
+    }
+
+    /**
+     * Get the typed payload
+     * @return the payload, or null for map based events
+     */
+    public EventPayload getPayload() {
+        return payload;
+    }
+
+    /**
+     * Get the typed payload if it is of the requested kind
+     * @return the payload, or null if absent or of another kind
+     */
+    public <P extends EventPayload> P getPayload(Class<P> payloadType) {
+        return payloadType.isInstance(payload) ? payloadType.cast(payload) : null;
+    }
+
+    public boolean hasPayload() {
+        return payload != null;
     }
 
     public LocalDateTime getTimestamp() {
-        return timestamp;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneId.systemDefault());
+    }
+
+    /**
+     * Wall clock creation time in epoch milliseconds
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * Monotonic creation time from System.nanoTime(), only comparable within this JVM
+     */
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
+    /**
+     * Process wide monotonic sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Node this event was bridged from
+     * @return the remote node id, or null for events raised in this process
+     */
+    public String getOrigin() {
+        return origin;
     }
 
     public String getEventId() {
-        return eventId;
+        return Long.toString(sequence);
     }
 
     @SuppressWarnings("unchecked")
     public <T> T getDataValue(String key, Class<T> type) {
-        Object value = data.get(key);
+        Object value = getData().get(key);
 
         if (value != null && type.isInstance(value)) {
             return (T) value;
@@ -62,8 +177,8 @@ public class Event {
     @Override
     public String toString() {
         return String.format("[%s] %s from %s: %s",
-                timestamp.format(DateTimeFormatter.ofPattern("HH:mm:ss.SSS")),
-                type, source, data);
+                getTimestamp().format(TIME_FORMAT),
+                type, source, payload != null ? payload : data);
     }
 
     @Override
@@ -71,11 +186,11 @@ public class Event {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Event event = (Event) o;
-        return eventId.equals(event.eventId);
+        return sequence == event.sequence;
     }
     @Override
     public int hashCode() {
-        return Objects.hash(eventId);
+        return Long.hashCode(sequence);
     }
 
 }
@@ -0,0 +1,246 @@
+package com.fatty.smarthome.concurrent.events;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of events, used by the on-disk event log and the process bridge.
+ * Layout: version, type ordinal, epoch millis, source, payload kind, payload fields.
+ * Map based events store their values with a one byte type tag; unknown value types
+ * are written as their toString().
+ */
+public final class EventCodec {
+    private static final byte VERSION = 1;
+
+    // Payload kinds
+    private static final byte KIND_MAP = 0;
+    private static final byte KIND_STATE_CHANGE = 1;
+    private static final byte KIND_TEMPERATURE = 2;
+    private static final byte KIND_MOTION = 3;
+    private static final byte KIND_POWER = 4;
+    private static final byte KIND_BRIGHTNESS = 5;
+    private static final byte KIND_RECORDING = 6;
+    private static final byte KIND_MALFUNCTION = 7;
+
+    // Map value tags
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INT = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_BOOLEAN = 5;
+    private static final byte TAG_LIST = 6;
+
+    private static final EventType[] TYPES = EventType.values();
+
+    private EventCodec() {}
+
+    /**
+     * Encode an event into a new byte array
+     */
+    public static byte[] encode(Event event) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(out, event);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen for an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode an event produced by {@link #encode(Event)}
+     */
+    public static Event decode(byte[] data) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    public static void write(DataOutput out, Event event) throws IOException {
+        out.writeByte(VERSION);
+        out.writeByte(event.getType().ordinal());
+        out.writeLong(event.getTimestampMillis());
+        out.writeUTF(event.getSource());
+
+        switch (event.getPayload()) {
+            case EventPayload.StateChange s -> {
+                out.writeByte(KIND_STATE_CHANGE);
+                out.writeUTF(s.device());
+                out.writeUTF(s.deviceType());
+                out.writeUTF(s.newState());
+                out.writeInt(s.changeCount());
+                out.writeLong(s.timestamp());
+            }
+            case EventPayload.Temperature t -> {
+                out.writeByte(KIND_TEMPERATURE);
+                out.writeUTF(t.device());
+                out.writeInt(t.temperature());
+                out.writeInt(t.previousTemperature());
+                out.writeUTF(t.alert());
+                out.writeLong(t.timestamp());
+            }
+            case EventPayload.Motion m -> {
+                out.writeByte(KIND_MOTION);
+                out.writeUTF(m.camera());
+                out.writeUTF(m.location());
+                out.writeLong(m.timestamp());
+            }
+            case EventPayload.Power p -> {
+                out.writeByte(KIND_POWER);
+                out.writeDouble(p.currentPower());
+                out.writeInt(p.threshold());
+                out.writeInt(p.devices().size());
+                for (String device : p.devices()) {
+                    out.writeUTF(device);
+                }
+            }
+            case EventPayload.Brightness b -> {
+                out.writeByte(KIND_BRIGHTNESS);
+                out.writeUTF(b.device());
+                out.writeInt(b.oldBrightness());
+                out.writeInt(b.newBrightness());
+                out.writeLong(b.timestamp());
+            }
+            case EventPayload.Recording r -> {
+                out.writeByte(KIND_RECORDING);
+                out.writeUTF(r.camera());
+                out.writeUTF(r.action());
+                out.writeInt(r.sessionNumber());
+                out.writeLong(r.timestamp());
+            }
+            case EventPayload.Malfunction m -> {
+                out.writeByte(KIND_MALFUNCTION);
+                out.writeUTF(m.device());
+                out.writeUTF(m.deviceType());
+                out.writeUTF(m.error());
+                out.writeLong(m.timestamp());
+            }
+            case null -> {
+                out.writeByte(KIND_MAP);
+                Map<String, Object> data = event.getData();
+                out.writeInt(data.size());
+                for (Map.Entry<String, Object> entry : data.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    writeValue(out, entry.getValue());
+                }
+            }
+        }
+    }
+
+    public static Event read(DataInput in) throws IOException {
+        return read(in, null);
+    }
+
+    /**
+     * Read an event that arrived from another process
+     * @param origin node id the event came from, see {@link Event#getOrigin()}
+     */
+    public static Event read(DataInput in, String origin) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported event encoding version: " + version);
+        }
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= TYPES.length) {
+            throw new IOException("Unknown event type ordinal: " + ordinal);
+        }
+        EventType type = TYPES[ordinal];
+        long timestampMillis = in.readLong();
+        String source = in.readUTF();
+        byte kind = in.readByte();
+
+        EventPayload payload = switch (kind) {
+            case KIND_STATE_CHANGE -> new EventPayload.StateChange(
+                    in.readUTF(), in.readUTF(), in.readUTF(), in.readInt(), in.readLong());
+            case KIND_TEMPERATURE -> new EventPayload.Temperature(
+                    in.readUTF(), in.readInt(), in.readInt(), in.readUTF(), in.readLong());
+            case KIND_MOTION -> new EventPayload.Motion(in.readUTF(), in.readUTF(), in.readLong());
+            case KIND_POWER -> {
+                double currentPower = in.readDouble();
+                int threshold = in.readInt();
+                int count = in.readInt();
+                List<String> devices = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    devices.add(in.readUTF());
+                }
+                yield new EventPayload.Power(currentPower, threshold, devices);
+            }
+            case KIND_BRIGHTNESS -> new EventPayload.Brightness(in.readUTF(), in.readInt(), in.readInt(), in.readLong());
+            case KIND_RECORDING -> new EventPayload.Recording(in.readUTF(), in.readUTF(), in.readInt(), in.readLong());
+            case KIND_MALFUNCTION -> new EventPayload.Malfunction(
+                    in.readUTF(), in.readUTF(), in.readUTF(), in.readLong());
+            case KIND_MAP -> null;
+            default -> throw new IOException("Unknown payload kind: " + kind);
+        };
+
+        Map<String, Object> data = null;
+        if (payload == null) {
+            int size = in.readInt();
+            data = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                data.put(in.readUTF(), readValue(in));
+            }
+        }
+        return Event.restore(type, source, payload, data, timestampMillis, origin);
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        switch (value) {
+            case null -> out.writeByte(TAG_NULL);
+            case String s -> {
+                out.writeByte(TAG_STRING);
+                out.writeUTF(s);
+            }
+            case Integer i -> {
+                out.writeByte(TAG_INT);
+                out.writeInt(i);
+            }
+            case Long l -> {
+                out.writeByte(TAG_LONG);
+                out.writeLong(l);
+            }
+            case Double d -> {
+                out.writeByte(TAG_DOUBLE);
+                out.writeDouble(d);
+            }
+            case Boolean b -> {
+                out.writeByte(TAG_BOOLEAN);
+                out.writeBoolean(b);
+            }
+            case List<?> list -> {
+                out.writeByte(TAG_LIST);
+                out.writeInt(list.size());
+                for (Object item : list) {
+                    writeValue(out, item);
+                }
+            }
+            default -> {
+                out.writeByte(TAG_STRING);
+                out.writeUTF(value.toString());
+            }
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case TAG_NULL -> null;
+            case TAG_STRING -> in.readUTF();
+            case TAG_INT -> in.readInt();
+            case TAG_LONG -> in.readLong();
+            case TAG_DOUBLE -> in.readDouble();
+            case TAG_BOOLEAN -> in.readBoolean();
+            case TAG_LIST -> {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                yield list;
+            }
+            default -> throw new IOException("Unknown value tag: " + tag);
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package com.fatty.smarthome.concurrent.events;
+
+import java.util.Objects;
+
+/**
+ * Declarative subscription filter. Unlike EventListener.accepts(), the event system
+ * compiles these into a routing index, so a filtered listener costs nothing for
+ * events it does not match.
+ *
+ * @param source       exact source name, or null for any
+ * @param sourcePrefix source name prefix, or null for any (cannot be combined with source)
+ * @param payloadKey   event data key that must be present, or null for any
+ * @param payloadValue required value for payloadKey, compared by its string form
+ */
+public record EventFilter(String source, String sourcePrefix, String payloadKey, Object payloadValue) {
+    public static final EventFilter ALL = new EventFilter(null, null, null, null);
+
+    public EventFilter {
+        if (source != null && sourcePrefix != null) {
+            throw new IllegalArgumentException("Use either a source or a source prefix, not both");
+        }
+        if ((payloadKey == null) != (payloadValue == null)) {
+            throw new IllegalArgumentException("Payload key and value must be given together");
+        }
+    }
+
+    public static EventFilter source(String source) {
+        return new EventFilter(Objects.requireNonNull(source), null, null, null);
+    }
+
+    public static EventFilter sourcePrefix(String prefix) {
+        return new EventFilter(null, Objects.requireNonNull(prefix), null, null);
+    }
+
+    public static EventFilter payload(String key, Object value) {
+        return new EventFilter(null, null, Objects.requireNonNull(key), Objects.requireNonNull(value));
+    }
+
+    /**
+     * Same source constraint, additionally requiring a payload value
+     */
+    public EventFilter withPayload(String key, Object value) {
+        return new EventFilter(source, sourcePrefix, Objects.requireNonNull(key), Objects.requireNonNull(value));
+    }
+
+    public boolean hasSourceConstraint() {
+        return source != null || sourcePrefix != null;
+    }
+
+    public boolean hasPayloadConstraint() {
+        return payloadKey != null;
+    }
+
+    public boolean matches(Event event) {
+        if (source != null && !source.equals(event.getSource())) {
+            return false;
+        }
+        if (sourcePrefix != null && (event.getSource() == null || !event.getSource().startsWith(sourcePrefix))) {
+            return false;
+        }
+        return matchesPayload(event);
+    }
+
+    boolean matchesPayload(Event event) {
+        if (payloadKey == null) {
+            return true;
+        }
+        Object actual = event.getData().get(payloadKey);
+        return actual != null && String.valueOf(actual).equals(String.valueOf(payloadValue));
+    }
+
+    @Override
+    public String toString() {
+        if (this.equals(ALL)) {
+            return "all";
+        }
+        StringBuilder sb = new StringBuilder();
+        if (source != null) sb.append("source=").append(source);
+        if (sourcePrefix != null) sb.append("source=").append(sourcePrefix).append("*");
+        if (payloadKey != null) {
+            if (!sb.isEmpty()) sb.append(", ");
+            sb.append(payloadKey).append("=").append(payloadValue);
+        }
+        return sb.toString();
+    }
+}
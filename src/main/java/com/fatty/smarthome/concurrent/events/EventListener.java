@@ -35,4 +35,37 @@ public interface EventListener {
     default int getPriority() {
         return 0;
     }
+
+    /**
+     * Deliveries to this listener that may run at once. Further events wait in the
+     * listener's own backlog and are dead-lettered once that is full.
+     * @return maximum in-flight deliveries
+     */
+    default int getMaxInFlight() {
+        return 16;
+    }
+
+    /**
+     * Time one delivery may take before it is cancelled (interrupted) and dead-lettered
+     * @return timeout in milliseconds, or 0 to let every delivery run to completion
+     */
+    default long getTimeoutMillis() {
+        return 0;
+    }
+
+    /**
+     * Retries after onEvent throws, with exponential backoff, before the event is dead-lettered
+     * @return number of retries, none unless a listener opts in
+     */
+    default int getMaxRetries() {
+        return 0;
+    }
+
+    /**
+     * Delay before the first retry; doubled for every further retry
+     * @return backoff in milliseconds
+     */
+    default long getRetryBackoffMillis() {
+        return 50;
+    }
 }
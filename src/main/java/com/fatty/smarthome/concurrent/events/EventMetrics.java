@@ -0,0 +1,150 @@
+package com.fatty.smarthome.concurrent.events;
+
+import com.fatty.smarthome.concurrent.monitoring.LatencyHistogram;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the event system.
+ * Everything on the recording side is a LongAdder or a histogram increment;
+ * maps are only touched when a listener subscribes or a snapshot is taken.
+ */
+public class EventMetrics {
+    private static final EventType[] TYPES = EventType.values();
+
+    private final TypeMetrics[] types = new TypeMetrics[TYPES.length];
+    private final Map<Object, ListenerMetrics> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * Per event type counters; residence is the time from event creation until dispatch starts
+     */
+    static final class TypeMetrics {
+        final LongAdder published = new LongAdder();
+        final LongAdder delivered = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LatencyHistogram residence = new LatencyHistogram();
+    }
+
+    /**
+     * Per listener execution time and delivery outcomes.
+     * For batch listeners one execution is one batch.
+     */
+    static final class ListenerMetrics {
+        final String name;
+        final LatencyHistogram execution = new LatencyHistogram();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder deadLettered = new LongAdder();
+
+        ListenerMetrics(String name) {
+            this.name = name;
+        }
+    }
+
+    public record TypeSnapshot(EventType type, long published, long delivered, long dropped,
+                               LatencyHistogram.Snapshot residence) {
+    }
+
+    public record ListenerSnapshot(String name, long timeouts, long failures, long retries, long rejected,
+                                   long deadLettered, LatencyHistogram.Snapshot execution) {
+    }
+
+    /**
+     * Consistent-enough copy of all metrics for reporting
+     */
+    public record Snapshot(Map<EventType, TypeSnapshot> types, List<ListenerSnapshot> listeners) {
+        public long totalPublished() {
+            return types.values().stream().mapToLong(TypeSnapshot::published).sum();
+        }
+
+        public long totalDelivered() {
+            return types.values().stream().mapToLong(TypeSnapshot::delivered).sum();
+        }
+
+        public long totalDropped() {
+            return types.values().stream().mapToLong(TypeSnapshot::dropped).sum();
+        }
+
+        public String format() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("  Events: %d published, %d delivered, %d dropped",
+                    totalPublished(), totalDelivered(), totalDropped()));
+
+            types.values().stream()
+                    .filter(t -> t.published() > 0 || t.dropped() > 0)
+                    .forEach(t -> sb.append(String.format("\n    %-25s pub=%d del=%d drop=%d queue %s",
+                            t.type(), t.published(), t.delivered(), t.dropped(), t.residence().format())));
+
+            if (!listeners.isEmpty()) {
+                sb.append("\n  Listener execution:");
+                listeners.forEach(l -> sb.append(String.format(
+                        "\n    %-25s timeouts=%d failures=%d retries=%d rejected=%d dead=%d %s",
+                        l.name(), l.timeouts(), l.failures(), l.retries(), l.rejected(), l.deadLettered(),
+                        l.execution().format())));
+            }
+            return sb.toString();
+        }
+    }
+
+    public EventMetrics() {
+        for (int i = 0; i < types.length; i++) {
+            types[i] = new TypeMetrics();
+        }
+    }
+
+    TypeMetrics forType(EventType type) {
+        return types[type.ordinal()];
+    }
+
+    /**
+     * Metrics holder for a listener, shared across all types it subscribes to
+     */
+    ListenerMetrics forListener(Object listener, String name) {
+        return listeners.computeIfAbsent(listener, l -> new ListenerMetrics(name));
+    }
+
+    /**
+     * Drop a listener's metrics once it has unsubscribed
+     */
+    void forget(Object listener) {
+        listeners.remove(listener);
+    }
+
+    public Snapshot snapshot() {
+        Map<EventType, TypeSnapshot> typeSnapshots = new EnumMap<>(EventType.class);
+        for (EventType type : TYPES) {
+            TypeMetrics m = types[type.ordinal()];
+            typeSnapshots.put(type, new TypeSnapshot(type, m.published.sum(), m.delivered.sum(),
+                    m.dropped.sum(), m.residence.snapshot()));
+        }
+
+        List<ListenerSnapshot> listenerSnapshots = listeners.values().stream()
+                .map(m -> new ListenerSnapshot(m.name, m.timeouts.sum(), m.failures.sum(), m.retries.sum(),
+                        m.rejected.sum(), m.deadLettered.sum(), m.execution.snapshot()))
+                .sorted(Comparator.comparing(ListenerSnapshot::name))
+                .toList();
+
+        return new Snapshot(Collections.unmodifiableMap(typeSnapshots), listenerSnapshots);
+    }
+
+    public void reset() {
+        for (TypeMetrics m : types) {
+            m.published.reset();
+            m.delivered.reset();
+            m.dropped.reset();
+            m.residence.reset();
+        }
+        for (ListenerMetrics m : listeners.values()) {
+            m.execution.reset();
+            m.timeouts.reset();
+            m.failures.reset();
+            m.retries.reset();
+            m.rejected.reset();
+            m.deadLettered.reset();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.fatty.smarthome.concurrent.events;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed event payloads.
+ * Devices publish one of these records instead of building a HashMap of boxed values.
+ * The legacy key/value view is only built when somebody asks for it through {@link #toMap()}.
+ */
+public sealed interface EventPayload
+        permits EventPayload.StateChange, EventPayload.Temperature,
+                EventPayload.Motion, EventPayload.Power,
+                EventPayload.Brightness, EventPayload.Recording, EventPayload.Malfunction {
+
+    /**
+     * Build the legacy map representation of this payload
+     * @return a new mutable map using the same keys the map based events used
+     */
+    Map<String, Object> toMap();
+
+    /**
+     * Device turned on or off (DEVICE_STATE_CHANGED)
+     */
+    record StateChange(String device, String deviceType, String newState,
+                       int changeCount, long timestamp) implements EventPayload {
+        @Override
+        public Map<String, Object> toMap() {
+            Map<String, Object> data = new HashMap<>();
+            data.put("device", device);
+            data.put("deviceType", deviceType);
+            data.put("newState", newState);
+            data.put("changeCount", changeCount);
+            data.put("timestamp", timestamp);
+            return data;
+        }
+    }
+
+    /**
+     * Thermostat temperature outside the comfort band (TEMPERATURE_ALERT)
+     */
+    record Temperature(String device, int temperature, int previousTemperature,
+                       String alert, long timestamp) implements EventPayload {
+        @Override
+        public Map<String, Object> toMap() {
+            Map<String, Object> data = new HashMap<>();
+            data.put("device", device);
+            data.put("temperature", temperature);
+            data.put("previousTemperature", previousTemperature);
+            data.put("alert", alert);
+            data.put("timestamp", timestamp);
+            return data;
+        }
+    }
+
+    /**
+     * Camera detected motion (MOTION_DETECTED)
+     */
+    record Motion(String camera, String location, long timestamp) implements EventPayload {
+        @Override
+        public Map<String, Object> toMap() {
+            Map<String, Object> data = new HashMap<>();
+            data.put("camera", camera);
+            data.put("location", location);
+            data.put("timestamp", timestamp);
+            return data;
+        }
+    }
+
+    /**
+     * Total power above the configured threshold (POWER_THRESHOLD_EXCEEDED)
+     */
+    record Power(double currentPower, int threshold, List<String> devices) implements EventPayload {
+        public Power {
+            devices = devices != null ? List.copyOf(devices) : List.of();
+        }
+
+        @Override
+        public Map<String, Object> toMap() {
+            Map<String, Object> data = new HashMap<>();
+            data.put("currentPower", currentPower);
+            data.put("threshold", threshold);
+            data.put("devices", devices);
+            return data;
+        }
+    }
+
+    /**
+     * Light brightness changed noticeably (DEVICE_STATE_CHANGED)
+     */
+    record Brightness(String device, int oldBrightness, int newBrightness, long timestamp) implements EventPayload {
+        @Override
+        public Map<String, Object> toMap() {
+            Map<String, Object> data = new HashMap<>();
+            data.put("device", device);
+            data.put("deviceType", "Light");
+            data.put("oldBrightness", oldBrightness);
+            data.put("newBrightness", newBrightness);
+            data.put("timestamp", timestamp);
+            return data;
+        }
+    }
+
+    /**
+     * Camera started or stopped recording (DEVICE_STATE_CHANGED)
+     */
+    record Recording(String camera, String action, int sessionNumber, long timestamp) implements EventPayload {
+        @Override
+        public Map<String, Object> toMap() {
+            Map<String, Object> data = new HashMap<>();
+            data.put("camera", camera);
+            data.put("action", action);
+            data.put("sessionNumber", sessionNumber);
+            data.put("timestamp", timestamp);
+            return data;
+        }
+    }
+
+    /**
+     * Device stopped responding (DEVICE_MALFUNCTION)
+     */
+    record Malfunction(String device, String deviceType, String error, long timestamp) implements EventPayload {
+        @Override
+        public Map<String, Object> toMap() {
+            Map<String, Object> data = new HashMap<>();
+            data.put("device", device);
+            data.put("deviceType", deviceType);
+            data.put("error", error);
+            data.put("timestamp", timestamp);
+            return data;
+        }
+    }
+}
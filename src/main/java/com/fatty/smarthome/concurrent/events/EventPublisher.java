@@ -0,0 +1,259 @@
+package com.fatty.smarthome.concurrent.events;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exposes a filtered slice of the event system as a Flow.Publisher, so consumers such as
+ * the GUI or exporters can pull events at their own pace with request(n).
+ *
+ * Every subscriber gets its own bounded buffer and is signalled from its own drain task,
+ * never from the event system's threads, so a slow subscriber only ever fills its own
+ * buffer. When that buffer is full the overflow policy decides: DROP discards the new
+ * event, CANCEL cancels the subscriber with an error.
+ */
+public class EventPublisher implements Flow.Publisher<Event>, AutoCloseable {
+    public enum Overflow {
+        DROP,   // keep the buffered events, discard new ones until the subscriber catches up
+        CANCEL  // cut the subscriber off with an error
+    }
+
+    private static final AtomicInteger SUBSCRIBER_IDS = new AtomicInteger(0);
+
+    private final EventSystem eventSystem;
+    private final Set<EventType> types;
+    private final EventFilter filter;
+    private final int bufferSize;
+    private final Overflow overflow;
+    private final ExecutorService executor;
+    private final Set<EventSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    /**
+     * @param eventSystem source of events
+     * @param types       event types to publish; none means all types
+     * @param filter      source/payload filter, see EventFilter
+     * @param bufferSize  events held for a subscriber that it has not consumed yet
+     * @param overflow    what to do with a subscriber whose buffer is full
+     */
+    public EventPublisher(EventSystem eventSystem, Set<EventType> types, EventFilter filter,
+                          int bufferSize, Overflow overflow) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.eventSystem = eventSystem;
+        this.types = types.isEmpty() ? EnumSet.allOf(EventType.class) : EnumSet.copyOf(types);
+        this.filter = Objects.requireNonNull(filter);
+        this.bufferSize = bufferSize;
+        this.overflow = Objects.requireNonNull(overflow);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Event> subscriber) {
+        Objects.requireNonNull(subscriber);
+        EventSubscription subscription = new EventSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        if (closed) {
+            subscription.complete();
+            return;
+        }
+        subscriptions.add(subscription);
+        for (EventType type : types) {
+            eventSystem.subscribe(type, filter, subscription);
+        }
+    }
+
+    /**
+     * Complete all subscribers once they have drained their buffers and release the
+     * drain threads; what is still buffered is drained on the subscriber's own request()
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (EventSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+        subscriptions.clear();
+        executor.shutdown();
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    public String getStatistics() {
+        long delivered = 0, dropped = 0;
+        int buffered = 0;
+        for (EventSubscription subscription : subscriptions) {
+            delivered += subscription.delivered.get();
+            dropped += subscription.dropped.get();
+            buffered += subscription.buffered.get();
+        }
+        return String.format("Event Publisher Statistics:\n" +
+                        "  Types: %s, filter: %s\n" +
+                        "  Subscribers: %d (buffer %d, on overflow %s)\n" +
+                        "  Delivered: %d, buffered: %d, dropped: %d",
+                types.size() == EventType.values().length ? "all" : types, filter, subscriptions.size(),
+                bufferSize, overflow, delivered, buffered, dropped);
+    }
+
+    /**
+     * One subscriber: an event listener on the event system side and a Flow.Subscription
+     * on the consumer side, joined by a bounded buffer and a serial drain loop
+     */
+    private final class EventSubscription implements Flow.Subscription, EventListener {
+        private final Flow.Subscriber<? super Event> subscriber;
+        private final String name = "FlowSubscriber-" + SUBSCRIBER_IDS.incrementAndGet();
+        private final Queue<Event> buffer = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger buffered = new AtomicInteger(0);
+        private final AtomicLong demand = new AtomicLong(0);
+        // Drain requests; only the caller that moves it off zero runs the loop
+        private final AtomicInteger wip = new AtomicInteger(0);
+        private final AtomicLong delivered = new AtomicLong(0);
+        private final AtomicLong dropped = new AtomicLong(0);
+        private volatile boolean cancelled = false;
+        private volatile boolean completed = false;
+        private volatile Throwable failure;
+        // Only touched inside the drain loop
+        private boolean terminated = false;
+
+        EventSubscription(Flow.Subscriber<? super Event> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        // ---- Event system side ----
+
+        @Override
+        public void onEvent(Event event) {
+            if (cancelled || completed) return;
+
+            if (buffered.incrementAndGet() > bufferSize) {
+                buffered.decrementAndGet();
+                if (overflow == Overflow.DROP) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                fail(new IllegalStateException(name + " fell behind: " + bufferSize + " events buffered"));
+                return;
+            }
+            buffer.offer(event);
+            drain();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getMaxInFlight() {
+            // One at a time, so events are buffered in the order they were dispatched
+            return 1;
+        }
+
+        // ---- Subscriber side ----
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("request(" + n + "): demand must be positive"));
+                return;
+            }
+            demand.getAndAccumulate(n, (current, add) -> {
+                long sum = current + add;
+                return sum < 0 ? Long.MAX_VALUE : sum;
+            });
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            detach();
+        }
+
+        void complete() {
+            completed = true;
+            detach();
+            drain();
+        }
+
+        private void fail(Throwable error) {
+            if (failure == null) {
+                failure = error;
+            }
+            detach();
+            drain();
+        }
+
+        private void detach() {
+            subscriptions.remove(this);
+            eventSystem.unsubscribe(this);
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drainLoop);
+                } catch (RejectedExecutionException e) {
+                    // Publisher closed: finish the drain on the calling thread
+                    drainLoop();
+                }
+            }
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            do {
+                if (terminated) return;
+
+                if (cancelled) {
+                    clearBuffer();
+                    return;
+                }
+                if (failure != null) {
+                    terminated = true;
+                    clearBuffer();
+                    subscriber.onError(failure);
+                    return;
+                }
+
+                long requested = demand.get();
+                long emitted = 0;
+                while (emitted != requested && !cancelled) {
+                    Event event = buffer.poll();
+                    if (event == null) break;
+                    buffered.decrementAndGet();
+                    try {
+                        subscriber.onNext(event);
+                    } catch (Throwable t) {
+                        // Rule 2.13: a throwing subscriber is treated as cancelled
+                        System.err.println("❌ " + name + " failed in onNext: " + t.getMessage());
+                        cancel();
+                        return;
+                    }
+                    emitted++;
+                }
+                delivered.addAndGet(emitted);
+                if (emitted != 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+
+                if (completed && buffer.isEmpty() && !cancelled) {
+                    terminated = true;
+                    subscriber.onComplete();
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void clearBuffer() {
+            buffer.clear();
+            buffered.set(0);
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.fatty.smarthome.concurrent.events;
 
 import java.time.LocalDateTime;
+import java.io.IOException;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import com.fatty.smarthome.concurrent.events.Event;
@@ -12,16 +14,40 @@ import com.fatty.smarthome.concurrent.events.EventListener;
 
 
 public class EventSystem {
+    private static final int LANE_CAPACITY = 1000;
+    // Events a lane looks at before re-checking its dominant source and load share
+    private static final int HOT_KEY_WINDOW = 1024;
+    // A lane carrying more than this multiple of its fair share of events is reported as hot
+    private static final double HOT_LANE_FACTOR = 2.0;
+    // Deliveries a listener may have waiting for a free in-flight slot before new ones are rejected
+    private static final int LISTENER_BACKLOG = 1000;
+    // Events dispatched by one task of the processor pool; a burst pays one hand-off per chunk
+    private static final int DISPATCH_CHUNK = 64;
+    // How long dispatch waits for room in a batch listener's buffer before dropping
+    private static final long BATCH_OFFER_WAIT_MILLIS = 100;
+
     private final BlockingQueue<Event> eventQueue;
+    // Null in shared-queue mode
+    private final DispatchLane[] lanes;
     private final ExecutorService eventProcessors;
-    private final Map<EventType, List<EventListener>> listeners;
+    // One virtual thread per delivery, so a stuck listener cannot starve the others of threads
+    private final ExecutorService listenerExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService deliveryScheduler;
+    private final Map<EventType, SubscriptionIndex<ListenerHandle>> listeners;
+    private final Map<EventListener, ListenerHandle> handles = new ConcurrentHashMap<>();
+    private final DeadLetterQueue deadLetters = new DeadLetterQueue(1000);
+    private final Map<EventType, CopyOnWriteArrayList<BatchDispatcher>> batchListeners;
+    private final Map<BatchEventListener, BatchDispatcher> batchDispatchers = new ConcurrentHashMap<>();
     private volatile boolean running = false;
+    private volatile SegmentedEventLog eventLog;
     private final List<Thread> processorThreads;
 
     // Statistics
-    private final AtomicLong totalEvents = new AtomicLong(0);
-    private final Map<EventType, AtomicInteger> eventCounts = new ConcurrentHashMap<>();
-    private final AtomicInteger activeListeners = new AtomicInteger(0);
+    private final EventMetrics metrics = new EventMetrics();
+    // Published but not yet fully dispatched (queued or being delivered)
+    private final AtomicInteger inFlightEvents = new AtomicInteger(0);
+    // Notified whenever inFlightEvents drops to zero
+    private final Object idle = new Object();
 
 
 
@@ -67,15 +93,455 @@ public class EventSystem {
 
     }
 
+    /**
+     * Per-listener state shared by all of its subscriptions: metrics and the bulkhead.
+     * At most maxInFlight deliveries run at once; the rest wait in the listener's own
+     * backlog, so a slow listener only ever queues up its own work.
+     */
+    private static final class ListenerHandle {
+        final EventListener listener;
+        final EventMetrics.ListenerMetrics metrics;
+        // Guarded by this
+        private final ArrayDeque<Delivery> backlog = new ArrayDeque<>();
+        private int running = 0;
+        final int maxInFlight;
+        final long timeoutMillis;
+        final int maxRetries;
+        final long retryBackoffMillis;
+
+        ListenerHandle(EventListener listener, EventMetrics.ListenerMetrics metrics) {
+            this.listener = listener;
+            this.metrics = metrics;
+            this.maxInFlight = Math.max(1, listener.getMaxInFlight());
+            this.timeoutMillis = Math.max(0, listener.getTimeoutMillis());
+            this.maxRetries = Math.max(0, listener.getMaxRetries());
+            this.retryBackoffMillis = Math.max(0, listener.getRetryBackoffMillis());
+        }
+
+        /**
+         * @return true to run now, false if queued, null if the backlog is full
+         */
+        synchronized Boolean admit(Delivery delivery) {
+            if (running < maxInFlight) {
+                running++;
+                return true;
+            }
+            if (backlog.size() < LISTENER_BACKLOG) {
+                backlog.add(delivery);
+                return false;
+            }
+            return null;
+        }
+
+        /**
+         * Give up a slot; the next waiting delivery (if any) takes it over
+         */
+        synchronized Delivery release() {
+            Delivery next = backlog.poll();
+            if (next == null) {
+                running--;
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Delivery of one event to one listener, from the first attempt to its final outcome.
+     * Every attempt runs on its own virtual thread and is interrupted once it exceeds the
+     * listener's timeout, holding its slot until it actually returns; failures are retried with exponential backoff; whatever cannot
+     * be delivered ends up in the dead-letter queue.
+     */
+    private final class Delivery implements Runnable {
+        private final ListenerHandle handle;
+        private final Event event;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private int attempt = 0;
+        // Settled by whichever comes first: the attempt finishing or its timeout
+        private volatile AtomicBoolean settled;
+        // Claimed by whichever comes first: the attempt starting or its timeout
+        private volatile AtomicBoolean started;
+        private volatile Future<?> task;
+        private volatile ScheduledFuture<?> timer;
+
+        Delivery(ListenerHandle handle, Event event) {
+            this.handle = handle;
+            this.event = event;
+        }
+
+        /**
+         * @return false if the listener's backlog is full (the event is dead-lettered)
+         */
+        boolean start() {
+            Boolean runNow = handle.admit(this);
+            if (runNow == null) {
+                handle.metrics.rejected.increment();
+                deadLetter(DeadLetterQueue.Reason.REJECTED, 0, handle.maxInFlight + " in flight and " +
+                        LISTENER_BACKLOG + " waiting");
+                finished.countDown();
+                return false;
+            }
+            inFlightEvents.incrementAndGet();
+            if (runNow) {
+                nextAttempt();
+            }
+            return true;
+        }
+
+        private void nextAttempt() {
+            attempt++;
+            AtomicBoolean attemptSettled = new AtomicBoolean(false);
+            AtomicBoolean attemptStarted = new AtomicBoolean(false);
+            settled = attemptSettled;
+            started = attemptStarted;
+            try {
+                FutureTask<Void> attemptTask = new FutureTask<>(this, null);
+                task = attemptTask;
+                timer = handle.timeoutMillis == 0 ? null : deliveryScheduler.schedule(
+                        () -> timeout(attemptSettled, attemptStarted), handle.timeoutMillis, TimeUnit.MILLISECONDS);
+                listenerExecutor.execute(attemptTask);
+            } catch (RejectedExecutionException e) {
+                // Event system is shutting down
+                if (attemptSettled.compareAndSet(false, true)) {
+                    finish();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            AtomicBoolean attemptSettled = settled;
+            if (!started.compareAndSet(false, true)) {
+                return; // Timed out before it started; the timeout gave up the slot
+            }
+            long start = System.nanoTime();
+            Exception failure = null;
+            try {
+                handle.listener.onEvent(event);
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                handle.metrics.execution.record(System.nanoTime() - start);
+            }
+
+            if (!attemptSettled.compareAndSet(false, true)) {
+                // Timed out and already dead-lettered; only now is the slot free again
+                release();
+                return;
+            }
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            if (failure == null) {
+                finish();
+            } else {
+                failed(failure);
+            }
+        }
+
+        private void timeout(AtomicBoolean attemptSettled, AtomicBoolean attemptStarted) {
+            if (!attemptSettled.compareAndSet(false, true)) return;
+            task.cancel(true);
+            handle.metrics.timeouts.increment();
+            System.err.println("⏱️  Listener " + handle.listener.getName() + " timed out after " +
+                    handle.timeoutMillis + "ms on " + event.getType());
+            deadLetter(DeadLetterQueue.Reason.TIMED_OUT, attempt, "no result after " + handle.timeoutMillis + "ms");
+            if (attemptStarted.compareAndSet(false, true)) {
+                finish();
+            } else {
+                // Still running: a listener that ignores the interrupt keeps its slot until it returns
+                settle();
+            }
+        }
+
+        private void failed(Exception failure) {
+            handle.metrics.failures.increment();
+            if (attempt <= handle.maxRetries) {
+                handle.metrics.retries.increment();
+                long backoff = handle.retryBackoffMillis << (attempt - 1);
+                try {
+                    deliveryScheduler.schedule(this::nextAttempt, backoff, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // Shutting down, give up below
+                }
+            }
+            System.err.println("❌ Listener error (" + handle.listener.getName() + "): " + failure.getMessage());
+            deadLetter(DeadLetterQueue.Reason.FAILED, attempt, String.valueOf(failure));
+            finish();
+        }
+
+        private void deadLetter(DeadLetterQueue.Reason reason, int attempts, String error) {
+            handle.metrics.deadLettered.increment();
+            deadLetters.add(event, handle.listener, reason, attempts, error);
+        }
+
+        private void finish() {
+            settle();
+            release();
+        }
+
+        /**
+         * The event is done with, whether or not the listener still holds its slot
+         */
+        private void settle() {
+            eventDone();
+            finished.countDown();
+        }
+
+        private void release() {
+            Delivery next = handle.release();
+            if (next != null) {
+                next.nextAttempt();
+            }
+        }
+
+        void await() throws InterruptedException {
+            finished.await();
+        }
+    }
+
+    /**
+     * Buffers accepted events for one batch listener and hands them over
+     * in batches on its own thread, so a slow writer never blocks the processors.
+     */
+    private static class BatchDispatcher implements Runnable {
+        private final BatchEventListener listener;
+        private final EventMetrics metrics;
+        private final EventMetrics.ListenerMetrics listenerMetrics;
+        private final BlockingQueue<Event> buffer;
+        private final int maxBatchSize;
+        private final long maxLingerNanos;
+        private volatile boolean active = false;
+        // Set once a wait for buffer space timed out; cleared when an event fits again
+        private volatile boolean stalled = false;
+        private Thread thread;
+
+        BatchDispatcher(BatchEventListener listener, EventMetrics metrics) {
+            this.listener = listener;
+            this.metrics = metrics;
+            this.listenerMetrics = metrics.forListener(listener, listener.getName());
+            this.maxBatchSize = Math.max(1, listener.getMaxBatchSize());
+            this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, listener.getMaxLingerMillis()));
+            this.buffer = new LinkedBlockingQueue<>(Math.max(1000, maxBatchSize * 10));
+        }
+
+        synchronized void start() {
+            if (active) return;
+            active = true;
+            thread = new Thread(this, "BatchDispatcher-" + listener.getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        synchronized void stop() {
+            if (!active) return;
+            active = false;
+            thread.interrupt();
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void offer(Event event) {
+            if (!listener.accepts(event)) {
+                return;
+            }
+            boolean queued;
+            try {
+                // A burst waits for the listener to catch up; a stalled one does not hold up dispatch again
+                queued = stalled
+                        ? buffer.offer(event)
+                        : buffer.offer(event, BATCH_OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+            stalled = !queued;
+            if (!queued) {
+                listenerMetrics.rejected.increment();
+                metrics.forType(event.getType()).dropped.increment();
+                System.err.println("⚠️  Batch buffer full for " + listener.getName() + ", dropping event: " + event);
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Event> batch = new ArrayList<>(maxBatchSize);
+            while (active) {
+                try {
+                    Event first = buffer.poll(1, TimeUnit.SECONDS);
+                    if (first == null) continue;
+
+                    batch.add(first);
+                    long deadline = System.nanoTime() + maxLingerNanos;
+                    while (batch.size() < maxBatchSize) {
+                        buffer.drainTo(batch, maxBatchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= maxBatchSize || remaining <= 0) break;
+
+                        Event next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                    deliver(batch);
+                } catch (InterruptedException e) {
+                    if (!active) break;
+                }
+            }
+
+            // Flush whatever is left before shutting down
+            buffer.drainTo(batch);
+            while (!batch.isEmpty()) {
+                List<Event> chunk = batch.subList(0, Math.min(maxBatchSize, batch.size()));
+                deliver(chunk);
+            }
+        }
+
+        private void deliver(List<Event> batch) {
+            long start = System.nanoTime();
+            try {
+                listener.onEvents(List.copyOf(batch));
+            } catch (Exception e) {
+                listenerMetrics.failures.increment();
+                System.err.println("❌ Batch listener error (" + listener.getName() + "): " + e.getMessage());
+            } finally {
+                listenerMetrics.execution.record(System.nanoTime() - start);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Load and dominant source of one keyed dispatch lane
+     */
+    public record LaneStats(int lane, long processed, int queued, String topSource, double topShare, boolean hot) {
+    }
+
+    /**
+     * One keyed dispatch lane: a single thread delivering the events of the sources hashed to it,
+     * one at a time in publish order. Tracks which source dominates it to spot hot keys.
+     */
+    private class DispatchLane implements Runnable {
+        private final int index;
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(LANE_CAPACITY);
+        private final AtomicLong processed = new AtomicLong(0);
+        private final Map<String, Integer> window = new HashMap<>();
+        private int windowEvents = 0;
+        private volatile String topSource;
+        private volatile double topShare;
+        private volatile boolean hot = false;
+        private Thread thread;
+
+        DispatchLane(int index) {
+            this.index = index;
+        }
+
+        void start() {
+            thread = new Thread(this, "EventLane-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() {
+            if (thread == null) return;
+            thread.interrupt();
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    Event event = queue.poll(1, TimeUnit.SECONDS);
+                    if (event == null) continue;
+
+                    try {
+                        deliverInOrder(event);
+                    } finally {
+                        eventDone();
+                    }
+                    processed.incrementAndGet();
+                    track(event.getSource());
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+
+        private void track(String source) {
+            window.merge(String.valueOf(source), 1, Integer::sum);
+            if (++windowEvents < HOT_KEY_WINDOW) return;
+
+            Map.Entry<String, Integer> top = Collections.max(window.entrySet(), Map.Entry.comparingByValue());
+            topSource = top.getKey();
+            topShare = top.getValue() / (double) windowEvents;
+            window.clear();
+            windowEvents = 0;
+
+            boolean nowHot = isOverloaded();
+            if (nowHot && !hot) {
+                System.err.println("🔥 Hot dispatch lane " + index + ": " + String.format("%.0f%%", topShare * 100) +
+                        " of its events come from " + topSource);
+            }
+            hot = nowHot;
+        }
+
+        private boolean isOverloaded() {
+            if (lanes.length < 2) return false;
+            long total = 0;
+            for (DispatchLane lane : lanes) {
+                total += lane.processed.get();
+            }
+            return total > 0 && processed.get() > HOT_LANE_FACTOR * total / lanes.length;
+        }
+
+        LaneStats stats() {
+            return new LaneStats(index, processed.get(), queue.size(), topSource, topShare, hot);
+        }
+    }
+
     public EventSystem(int processorThreads) {
+        this(processorThreads, 0);
+    }
+
+    /**
+     * @param processorThreads threads in the shared listener pool
+     * @param keyedLanes number of keyed dispatch lanes, or 0 for the shared queue.
+     *                   With lanes, events from the same source are delivered strictly in
+     *                   publish order on one lane and different sources run in parallel.
+     */
+    public EventSystem(int processorThreads, int keyedLanes) {
+        if (keyedLanes < 0) {
+            throw new IllegalArgumentException("Lane count cannot be negative: " + keyedLanes);
+        }
+        this.lanes = keyedLanes == 0 ? null : new DispatchLane[keyedLanes];
+        for (int i = 0; i < keyedLanes; i++) {
+            lanes[i] = new DispatchLane(i);
+        }
         this.eventQueue = new LinkedBlockingQueue<>(1000); // Max 1000 pending events
-        this.eventProcessors = Executors.newFixedThreadPool(processorThreads);
+        // A bounded hand-off: when the pool is behind, processors dispatch themselves and stop
+        // draining eventQueue, so a full queue holds publishers back instead of the heap growing
+        this.eventProcessors = new ThreadPoolExecutor(processorThreads, processorThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(processorThreads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.deliveryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "EventDeliveryTimer");
+            thread.setDaemon(true);
+            return thread;
+        });
         this.listeners = new ConcurrentHashMap<>();
+        this.batchListeners = new ConcurrentHashMap<>();
         this.processorThreads = new ArrayList<>();
 
         // Initialize event type listeners
         for (EventType type : EventType.values()) {
-            listeners.put(type, new CopyOnWriteArrayList<>());
+            listeners.put(type, SubscriptionIndex.empty());
+            batchListeners.put(type, new CopyOnWriteArrayList<>());
         }
     }
 
@@ -86,6 +552,15 @@ public class EventSystem {
         if (running) return;
 
         running = true;
+        batchDispatchers.values().forEach(BatchDispatcher::start);
+
+        if (lanes != null) {
+            for (DispatchLane lane : lanes) {
+                lane.start();
+            }
+            System.out.println("📡 Event system started with " + lanes.length + " keyed lanes");
+            return;
+        }
 
         // Start processor threads
         for (int i = 0; i < 3; i++) {
@@ -110,12 +585,11 @@ public class EventSystem {
                 Event event = eventQueue.poll(1, TimeUnit.SECONDS);
 
                 if (event != null) {
-                    // Process event asynchronously
-                    CompletableFuture.runAsync(() -> notifyListeners(event), eventProcessors)
-                            .exceptionally(throwable -> {
-                                System.err.println("❌ Error processing event: " + throwable.getMessage());
-                                return null;
-                            });
+                    // Process the event, and whatever queued up behind it, asynchronously
+                    List<Event> chunk = new ArrayList<>(DISPATCH_CHUNK);
+                    chunk.add(event);
+                    eventQueue.drainTo(chunk, DISPATCH_CHUNK - 1);
+                    eventProcessors.execute(() -> notifyListeners(chunk));
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -130,24 +604,173 @@ public class EventSystem {
      * Publish an event to the system
      */
     public void publishEvent(Event event) {
+        // Durable copy first; append() only enqueues and never blocks
+        SegmentedEventLog log = eventLog;
+        if (log != null) {
+            log.append(event);
+        }
+
+        EventMetrics.TypeMetrics typeMetrics = metrics.forType(event.getType());
+        typeMetrics.published.increment();
+        inFlightEvents.incrementAndGet();
         try {
-            boolean added = eventQueue.offer(event, 100, TimeUnit.MILLISECONDS);
+            BlockingQueue<Event> queue = lanes == null ? eventQueue : laneFor(event.getSource()).queue;
+            boolean added = queue.offer(event, 100, TimeUnit.MILLISECONDS);
             if (!added) {
+                eventDone();
+                typeMetrics.dropped.increment();
                 System.err.println("⚠️  Event queue full, dropping event: " + event);
             }
         } catch (InterruptedException e) {
+            eventDone();
+            typeMetrics.dropped.increment();
             Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Publish a batch of events, such as a frame received by the event bridge, queued in list order.
+     * Unlike publishEvent this waits for room in a full queue instead of dropping, so a fast
+     * sender is held back. Several processors take from the shared queue, so listeners may
+     * still see the events out of order; keyed lanes keep the order per source.
+     */
+    public void publishEvents(List<Event> events) {
+        SegmentedEventLog log = eventLog;
+        for (Event event : events) {
+            if (log != null) {
+                log.append(event);
+            }
+            EventMetrics.TypeMetrics typeMetrics = metrics.forType(event.getType());
+            typeMetrics.published.increment();
+            inFlightEvents.incrementAndGet();
+            BlockingQueue<Event> queue = lanes == null ? eventQueue : laneFor(event.getSource()).queue;
+            try {
+                while (!queue.offer(event, 100, TimeUnit.MILLISECONDS)) {
+                    if (!running) {
+                        // Nothing takes from the queue any more
+                        eventDone();
+                        typeMetrics.dropped.increment();
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // The rest of the batch is not published
+                eventDone();
+                typeMetrics.dropped.increment();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private DispatchLane laneFor(String source) {
+        int h = Objects.hashCode(source);
+        return lanes[Math.floorMod(h ^ (h >>> 16), lanes.length)];
+    }
+
+    /**
+     * Wait until every published event has been handed to its listeners.
+     * Used by the replay tool to keep accelerated runs deterministic.
+     * @return true if the system went idle within the timeout
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (idle) {
+            while (inFlightEvents.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(idle, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One in-flight event is done; wake awaitIdle callers once none are left
+     */
+    private void eventDone() {
+        if (inFlightEvents.decrementAndGet() == 0) {
+            synchronized (idle) {
+                idle.notifyAll();
+            }
+        }
+    }
+
+
+
+    /**
+     * Record every published event in a durable segmented log.
+     * The caller owns the log and closes it.
+     * @param log the log to append to, or null to stop logging
+     */
+    public void setEventLog(SegmentedEventLog log) {
+        this.eventLog = log;
+        if (log != null) {
+            System.out.println("📼 Event system persisting events to log (next offset " + log.getNextOffset() + ")");
+        }
+    }
+
+    public SegmentedEventLog getEventLog() {
+        return eventLog;
+    }
 
+    /**
+     * Replay logged events straight to a listener, bypassing the live queue.
+     * Lets a late subscriber catch up from an offset at disk speed.
+     * @return the offset to continue from
+     */
+    public long replayFromLog(long fromOffset, EventListener listener) throws IOException {
+        SegmentedEventLog log = eventLog;
+        if (log == null) {
+            throw new IllegalStateException("Event log is not enabled");
+        }
+        return log.replay(fromOffset, logged -> {
+            if (listener.accepts(logged.event())) {
+                listener.onEvent(logged.event());
+            }
+        });
+    }
 
     /**
      * Subscribe to events of a specific type
      */
     public void subscribe(EventType type, EventListener listener) {
-        listeners.get(type).add(listener);
-        System.out.println("👂 " + listener.getName() + " subscribed to " + type + " events");
+        subscribe(type, EventFilter.ALL, listener);
+    }
+
+    /**
+     * Subscribe to events of a type that match a filter. The filter is compiled into the
+     * routing index, so the listener is never dispatched for events it does not match.
+     */
+    public void subscribe(EventType type, EventFilter filter, EventListener listener) {
+        ListenerHandle handle = handles.computeIfAbsent(listener,
+                l -> new ListenerHandle(l, metrics.forListener(l, l.getName())));
+        listeners.compute(type, (t, index) -> index.with(filter, handle));
+        System.out.println("👂 " + listener.getName() + " subscribed to " + type + " events" +
+                (filter.equals(EventFilter.ALL) ? "" : " (" + filter + ")"));
+    }
+
+    /**
+     * Stream events of the given types (all types if none given) that match the filter
+     * as a Flow.Publisher with demand-driven backpressure per subscriber
+     */
+    public EventPublisher publisher(EventFilter filter, int bufferSize, EventPublisher.Overflow overflow,
+                                    EventType... types) {
+        return new EventPublisher(this, Set.of(types), filter, bufferSize, overflow);
+    }
+
+    /**
+     * Remove a listener from every event type it is subscribed to.
+     * Deliveries already in progress still complete.
+     */
+    public void unsubscribe(EventListener listener) {
+        ListenerHandle handle = handles.remove(listener);
+        if (handle == null) return;
+        listeners.replaceAll((type, index) -> index.without(handle));
+        metrics.forget(listener);
+        System.out.println("🔕 " + listener.getName() + " unsubscribed");
     }
 
     /**
@@ -159,36 +782,165 @@ public class EventSystem {
         }
     }
 
+    /**
+     * Subscribe a batch listener to events of a specific type.
+     * A listener subscribed to several types still gets a single stream of batches.
+     */
+    public void subscribeBatch(EventType type, BatchEventListener listener) {
+        BatchDispatcher dispatcher = batchDispatchers.computeIfAbsent(listener, l -> new BatchDispatcher(l, metrics));
+        batchListeners.get(type).addIfAbsent(dispatcher);
+        if (running) {
+            dispatcher.start();
+        }
+        System.out.println("👂 " + listener.getName() + " subscribed to " + type + " events (batched, max " +
+                listener.getMaxBatchSize() + " / " + listener.getMaxLingerMillis() + "ms)");
+    }
+
+    /**
+     * Remove a batch listener from every event type; events already buffered for it are still flushed
+     */
+    public void unsubscribeBatch(BatchEventListener listener) {
+        BatchDispatcher dispatcher = batchDispatchers.remove(listener);
+        if (dispatcher == null) return;
+        batchListeners.values().forEach(dispatchers -> dispatchers.remove(dispatcher));
+        dispatcher.stop();
+        metrics.forget(listener);
+        System.out.println("🔕 " + listener.getName() + " unsubscribed");
+    }
+
+    /**
+     * Subscribe a batch listener to all event types
+     */
+    public void subscribeBatchToAll(BatchEventListener listener) {
+        for (EventType type : EventType.values()) {
+            subscribeBatch(type, listener);
+        }
+    }
+
+    /**
+     * Notify listeners of a chunk of events, one after another
+     */
+    private void notifyListeners(List<Event> chunk) {
+        for (Event event : chunk) {
+            try {
+                notifyListeners(event);
+            } catch (RuntimeException e) {
+                System.err.println("❌ Error processing event: " + e.getMessage());
+            } finally {
+                eventDone();
+            }
+        }
+    }
+
     /**
      * Notify all listeners of an event
      */
     private void notifyListeners(Event event) {
-        List<EventListener> typeListeners = listeners.get(event.getType());
+        beginDispatch(event);
 
-        if (typeListeners.isEmpty()) {
-            return;
+        // Each listener is isolated in its own delivery; nothing here waits for them
+        for (ListenerHandle handle : route(event)) {
+            new Delivery(handle, event).start();
         }
+    }
 
-        // Notify listeners in parallel
-        List<CompletableFuture<Void>> futures = typeListeners.stream()
-                .map(listener -> CompletableFuture.runAsync(() -> {
-                    try {
-                        listener.onEvent(event);
-                    } catch (Exception e) {
-                        System.err.println("❌ Listener error (" + listener.getName() + "): " + e.getMessage());
-                    }
-                }, eventProcessors))
-                .toList();
+    /**
+     * Keyed-lane delivery: listeners run in parallel, but the lane waits for all of them
+     * before its next event, so each listener sees a source's events in publish order.
+     * A stuck listener holds the lane for at most its timeout, if it sets one.
+     */
+    private void deliverInOrder(Event event) throws InterruptedException {
+        beginDispatch(event);
+        List<Delivery> deliveries = new ArrayList<>();
+        for (ListenerHandle handle : route(event)) {
+            Delivery delivery = new Delivery(handle, event);
+            if (delivery.start()) {
+                deliveries.add(delivery);
+            }
+        }
+        for (Delivery delivery : deliveries) {
+            delivery.await();
+        }
+    }
+
+    /**
+     * Subscriptions whose filter matches the event and whose listener accepts it
+     */
+    private List<ListenerHandle> route(Event event) {
+        List<ListenerHandle> matches = listeners.get(event.getType()).match(event);
+        matches.removeIf(handle -> !accepts(handle, event));
+        return matches;
+    }
 
-        // Wait for all listeners to process (with timeout)
+    private boolean accepts(ListenerHandle handle, Event event) {
         try {
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                    .get(500, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException e) {
-            System.err.println("⏱️  Some listeners took too long to process event");
+            return handle.listener.accepts(event);
         } catch (Exception e) {
-            System.err.println("❌ Error notifying listeners: " + e.getMessage());
+            handle.metrics.failures.increment();
+            System.err.println("❌ Listener filter error (" + handle.listener.getName() + "): " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Record dispatch metrics and hand the event to batch listeners,
+     * which only buffer here and deliver on their own threads
+     */
+    private void beginDispatch(Event event) {
+        EventMetrics.TypeMetrics typeMetrics = metrics.forType(event.getType());
+        typeMetrics.residence.record(System.nanoTime() - event.getNanoTime());
+        typeMetrics.delivered.increment();
+
+        for (BatchDispatcher dispatcher : batchListeners.get(event.getType())) {
+            dispatcher.offer(event);
+        }
+    }
+
+    /**
+     * Events that could not be delivered, oldest first
+     */
+    public List<DeadLetterQueue.DeadLetter> getDeadLetters() {
+        return deadLetters.list();
+    }
+
+    /**
+     * Deliver one dead letter again to its listener
+     * @return false if no dead letter has that id, or its listener has unsubscribed
+     * (the letter is then dropped)
+     */
+    public boolean replayDeadLetter(long id) {
+        return deadLetters.remove(id).map(this::redeliver).orElse(false);
+    }
+
+    /**
+     * Deliver all dead letters again; the ones that fail again are dead-lettered anew,
+     * the ones whose listener has unsubscribed are dropped
+     * @return number of dead letters replayed
+     */
+    public int replayDeadLetters() {
+        int replayed = 0;
+        for (DeadLetterQueue.DeadLetter letter : deadLetters.drain()) {
+            if (redeliver(letter)) {
+                replayed++;
+            }
         }
+        return replayed;
+    }
+
+    public void clearDeadLetters() {
+        deadLetters.clear();
+    }
+
+    private boolean redeliver(DeadLetterQueue.DeadLetter letter) {
+        // Only subscribed listeners get letters back; re-registering one here would leak it
+        ListenerHandle handle = handles.get(letter.listener());
+        if (handle == null) {
+            System.out.println("🗑️  Dropped dead letter #" + letter.id() + ": " +
+                    letter.listener().getName() + " has unsubscribed");
+            return false;
+        }
+        new Delivery(handle, letter.event()).start();
+        return true;
     }
 
     /**
@@ -199,6 +951,16 @@ public class EventSystem {
 
         // Interrupt processor threads
         processorThreads.forEach(Thread::interrupt);
+        if (lanes != null) {
+            for (DispatchLane lane : lanes) {
+                lane.stop();
+            }
+        }
+
+        // Flush and stop batch listeners
+        batchDispatchers.values().forEach(BatchDispatcher::stop);
+        deliveryScheduler.shutdownNow();
+        listenerExecutor.shutdown();
 
         // Shutdown executor
         eventProcessors.shutdown();
@@ -219,33 +981,99 @@ public class EventSystem {
      */
     public String getStatistics() {
         int totalListeners = listeners.values().stream()
-                .mapToInt(List::size)
+                .mapToInt(SubscriptionIndex::size)
                 .sum();
 
         return String.format(
                 "Event System Statistics:\n" +
-                        "  Queue size: %d / 1000\n" +
+                        "  Queue size: %d / %d\n" +
                         "  Processor threads: %d\n" +
                         "  Total listeners: %d\n" +
+                        "  Batch listeners: %d\n" +
+                        "  Dead letters: %d\n" +
                         "  Running: %s",
-                eventQueue.size(),
+                getQueueSize(),
+                lanes == null ? 1000 : lanes.length * LANE_CAPACITY,
                 processorThreads.size(),
                 totalListeners,
+                batchDispatchers.size(),
+                deadLetters.size(),
                 running
-        );
+        ) + "\n" + formatDispatchMode() + "\n" + metrics.snapshot().format()
+                + (eventLog != null ? "\n  " + eventLog.getStatistics() : "");
+    }
+
+    private String formatDispatchMode() {
+        if (lanes == null) {
+            return "  Dispatch: shared queue";
+        }
+        StringBuilder sb = new StringBuilder(String.format("  Dispatch: keyed, %d lanes, imbalance %.2fx",
+                lanes.length, getLaneImbalance()));
+        for (LaneStats lane : getLaneStats()) {
+            if (lane.hot()) {
+                sb.append(String.format("\n    🔥 Lane %d: %d events, %.0f%% from %s",
+                        lane.lane(), lane.processed(), lane.topShare() * 100, lane.topSource()));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Per-lane load in keyed mode; empty in shared-queue mode
+     */
+    public List<LaneStats> getLaneStats() {
+        if (lanes == null) {
+            return List.of();
+        }
+        List<LaneStats> stats = new ArrayList<>(lanes.length);
+        for (DispatchLane lane : lanes) {
+            stats.add(lane.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Busiest lane's event count divided by the average; 1.0 means perfectly even
+     */
+    public double getLaneImbalance() {
+        List<LaneStats> stats = getLaneStats();
+        long total = stats.stream().mapToLong(LaneStats::processed).sum();
+        if (total == 0) {
+            return 1.0;
+        }
+        long busiest = stats.stream().mapToLong(LaneStats::processed).max().orElse(0);
+        return busiest * stats.size() / (double) total;
+    }
+
+    /**
+     * Get a snapshot of per-type counters and listener latencies
+     */
+    public EventMetrics.Snapshot getMetricsSnapshot() {
+        return metrics.snapshot();
     }
     /**
      * Clear all statistics
      */
     public void clearStatistics() {
-        totalEvents.set(0);
-        eventCounts.values().forEach(count -> count.set(0));
+        metrics.reset();
+        if (lanes != null) {
+            for (DispatchLane lane : lanes) {
+                lane.processed.set(0);
+            }
+        }
     }
 
     /**
      * Get queue size
      */
     public int getQueueSize() {
+        if (lanes != null) {
+            int queued = 0;
+            for (DispatchLane lane : lanes) {
+                queued += lane.queue.size();
+            }
+            return queued;
+        }
         return eventQueue.size();
     }
 
@@ -7,5 +7,13 @@ public enum EventType {
     POWER_THRESHOLD_EXCEEDED,
     DEVICE_MALFUNCTION,
     AUTOMATION_TRIGGERED,
-    USER_COMMAND
+    USER_COMMAND,
+    // Result of a closed aggregation window (see WindowedAggregator)
+    WINDOW_AGGREGATE,
+    // Completed complex event pattern (see CepEngine)
+    PATTERN_MATCHED,
+    // Several devices changed together by one DeviceTransaction
+    SCENE_APPLIED,
+    // Emitted by an automation rule for the rules chained after it (see AutomationEngine)
+    RULE_DERIVED
 }
@@ -0,0 +1,694 @@
+package com.fatty.smarthome.concurrent.events;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of published events.
+ *
+ * Events are stored in segment files named after the offset of their first record
+ * ({@code 00000000000000000000.log}) and rolled once a segment reaches the configured size.
+ * Every segment has a sparse {@code .idx} file with one (offset, position, timestamp) entry
+ * roughly every 4 KB, so readers can seek close to an offset or timestamp and scan from there.
+ *
+ * Appending never blocks the caller: events go into a bounded in-memory queue that a
+ * single writer thread drains in batches. If the queue is full the event is counted as
+ * dropped instead of slowing down {@link EventSystem#publishEvent(Event)}.
+ *
+ * Record layout: offset (8), body length (4), CRC32 of body (4), body ({@link EventCodec}).
+ * On open the tail of each segment is verified and a torn last record is truncated.
+ * A write that fails is undone the same way right away: the segment is cut back to its
+ * last complete record and the offsets of the lost events are handed out again.
+ */
+public final class SegmentedEventLog implements AutoCloseable {
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int RECORD_HEADER_BYTES = 16;
+    private static final int INDEX_ENTRY_BYTES = 24;
+    private static final int INDEX_INTERVAL_BYTES = 4096;
+    private static final int WRITE_BATCH = 512;
+
+    /**
+     * An event read back from the log together with its offset
+     */
+    public record LoggedEvent(long offset, Event event) {}
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long retentionBytes;
+    private final long retentionMillis;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final BlockingQueue<Event> pending;
+    // Accepted by append() vs. taken through the writer (written or failed)
+    private final AtomicLong enqueued = new AtomicLong(0);
+    private final AtomicLong appended = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private volatile boolean fsyncEachBatch = false;
+
+    // Only touched by the writer thread (and by open/close)
+    private Segment active;
+    private long nextOffset;
+
+    /**
+     * Open a log with 16 MB segments and no retention limit
+     * @param directory Directory holding the segment files (created if missing)
+     */
+    public SegmentedEventLog(Path directory) throws IOException {
+        this(directory, 16 * 1024 * 1024, 0, 0);
+    }
+
+    /**
+     * Open (or create) a segmented event log
+     * @param directory Directory holding the segment files (created if missing)
+     * @param segmentBytes Roll to a new segment once the active one reaches this size
+     * @param retentionBytes Delete oldest segments once the log is bigger than this (0 = unlimited)
+     * @param retentionMillis Delete segments whose newest event is older than this (0 = unlimited)
+     */
+    public SegmentedEventLog(Path directory, long segmentBytes, long retentionBytes,
+                             long retentionMillis) throws IOException {
+        if (segmentBytes < 1024) {
+            throw new IllegalArgumentException("Segment size must be at least 1024 bytes");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        this.pending = new ArrayBlockingQueue<>(10_000);
+
+        Files.createDirectories(directory);
+        recover();
+
+        this.writerThread = new Thread(this::writeLoop, "EventLogWriter-" + directory.getFileName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queue an event for appending. Never blocks.
+     * @return false if the write queue was full and the event was dropped
+     */
+    public boolean append(Event event) {
+        if (!running) return false;
+        if (pending.offer(event)) {
+            enqueued.incrementAndGet();
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Force fsync after every written batch (default: rely on the OS page cache)
+     */
+    public void setFsyncEachBatch(boolean fsyncEachBatch) {
+        this.fsyncEachBatch = fsyncEachBatch;
+    }
+
+    /**
+     * Wait until everything queued so far has been written
+     * @return true if the queue drained within the timeout
+     */
+    public boolean awaitWritten(long timeout, TimeUnit unit) throws InterruptedException {
+        // Events already polled into the writer's batch are in neither the queue nor appended,
+        // so wait on the enqueue count rather than the queue size
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (appended.get() < target) {
+            if (System.nanoTime() > deadline) return false;
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Replay all events at or after the given offset
+     * @return the offset after the last replayed event (where a follow-up replay should start)
+     */
+    public long replay(long fromOffset, Consumer<LoggedEvent> consumer) throws IOException {
+        long[] next = {Math.max(fromOffset, getFirstOffset())};
+        scan(fromOffset, Long.MIN_VALUE, logged -> {
+            consumer.accept(logged);
+            next[0] = logged.offset() + 1;
+            return true;
+        });
+        return next[0];
+    }
+
+    /**
+     * Replay all events whose timestamp is at or after the given epoch millis
+     * @return the offset after the last replayed event
+     */
+    public long replayFromTimestamp(long epochMillis, Consumer<LoggedEvent> consumer) throws IOException {
+        long[] next = {getFirstOffset()};
+        scan(Long.MIN_VALUE, epochMillis, logged -> {
+            consumer.accept(logged);
+            next[0] = logged.offset() + 1;
+            return true;
+        });
+        return next[0];
+    }
+
+    /**
+     * Read at most maxEvents events starting at the given offset (for polling subscribers)
+     */
+    public List<LoggedEvent> read(long fromOffset, int maxEvents) throws IOException {
+        List<LoggedEvent> result = new ArrayList<>(Math.min(maxEvents, 1024));
+        if (maxEvents <= 0) return result;
+        scan(fromOffset, Long.MIN_VALUE, logged -> {
+            result.add(logged);
+            return result.size() < maxEvents;
+        });
+        return result;
+    }
+
+    /**
+     * @return offset of the oldest retained event
+     */
+    public long getFirstOffset() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        return first != null ? first.getKey() : 0;
+    }
+
+    /**
+     * @return offset the next appended event will get
+     */
+    public long getNextOffset() {
+        Map.Entry<Long, Segment> last = segments.lastEntry();
+        return last != null ? last.getValue().endOffset : 0;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public long getSizeBytes() {
+        return segments.values().stream().mapToLong(s -> s.size).sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public String getStatistics() {
+        return String.format("Event log: %s, offsets %d..%d, %d segments, %.1f KB, %d dropped",
+                directory, getFirstOffset(), getNextOffset(), getSegmentCount(),
+                getSizeBytes() / 1024.0, dropped.get());
+    }
+
+    /**
+     * Stop the writer after flushing queued events and close all files
+     */
+    @Override
+    public void close() {
+        if (!running) return;
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (active != null) {
+            active.closeForWrite();
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Writing
+    // ----------------------------------------------------------------------------------
+
+    private void writeLoop() {
+        List<Event> batch = new ArrayList<>(WRITE_BATCH);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+
+        while (running || !pending.isEmpty()) {
+            try {
+                Event first = pending.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    enforceRetention();
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                if (running) continue;
+            }
+            pending.drainTo(batch, WRITE_BATCH - batch.size());
+
+            long before = nextOffset;
+            try {
+                writeBatch(batch, buffer);
+            } catch (IOException e) {
+                System.err.println("❌ Event log write failed: " + e.getMessage());
+                dropped.addAndGet(batch.size() - (nextOffset - before));
+            } finally {
+                appended.addAndGet(batch.size());
+                batch.clear();
+                buffer.reset();
+            }
+        }
+    }
+
+    private void writeBatch(List<Event> batch, ByteArrayOutputStream buffer) throws IOException {
+        DataOutputStream out = new DataOutputStream(buffer);
+        CRC32 crc = new CRC32();
+        // Positions are relative to active.size until the buffer is written out
+        long batchStart = active.size;
+
+        for (Event event : batch) {
+            byte[] body = EventCodec.encode(event);
+            int recordBytes = RECORD_HEADER_BYTES + body.length;
+
+            if (batchStart + buffer.size() + recordBytes > segmentBytes
+                    && batchStart + buffer.size() > 0) {
+                flushBuffer(buffer);
+                roll();
+                batchStart = active.size;
+            }
+
+            long position = batchStart + buffer.size();
+            if (active.needsIndexEntry(position)) {
+                active.addIndexEntry(nextOffset, position, event.getTimestampMillis());
+            }
+
+            crc.reset();
+            crc.update(body);
+            out.writeLong(nextOffset);
+            out.writeInt(body.length);
+            out.writeInt((int) crc.getValue());
+            out.write(body);
+
+            active.pendingLastTimestamp = event.getTimestampMillis();
+            nextOffset++;
+        }
+        flushBuffer(buffer);
+    }
+
+    private void flushBuffer(ByteArrayOutputStream buffer) throws IOException {
+        if (buffer.size() == 0) return;
+        long start = active.size;
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                active.channel.write(bytes);
+            }
+            if (fsyncEachBatch) {
+                active.channel.force(false);
+            }
+        } catch (IOException e) {
+            undoWrite(start);
+            throw e;
+        } finally {
+            buffer.reset();
+        }
+        // Publish to readers only after the bytes are in the file
+        active.commitIndex();
+        active.lastTimestamp = active.pendingLastTimestamp;
+        active.endOffset = nextOffset;
+        active.size = active.channel.size();
+    }
+
+    /**
+     * Forget the records of a failed write: cut off whatever part of them reached the file,
+     * so readers do not stop at a torn record, and give their offsets out again
+     */
+    private void undoWrite(long position) {
+        nextOffset = active.endOffset;
+        active.pendingLastTimestamp = active.lastTimestamp;
+        active.discardIndex();
+        try {
+            active.channel.truncate(position);
+            active.channel.position(position);
+        } catch (IOException e) {
+            System.err.println("⚠️  Could not cut back event log segment " + active.logFile.getFileName()
+                    + " to " + position + ": " + e.getMessage());
+        }
+    }
+
+    private void roll() throws IOException {
+        // Open the next segment first, so a failure leaves the current one writable
+        Segment next = Segment.create(directory, nextOffset);
+        active.closeForWrite();
+        active = next;
+        segments.put(active.baseOffset, active);
+        enforceRetention();
+    }
+
+    private void enforceRetention() {
+        if (retentionBytes <= 0 && retentionMillis <= 0) return;
+
+        long now = System.currentTimeMillis();
+        long total = getSizeBytes();
+        while (segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            boolean tooBig = retentionBytes > 0 && total > retentionBytes;
+            boolean tooOld = retentionMillis > 0 && oldest.lastTimestamp > 0
+                    && now - oldest.lastTimestamp > retentionMillis;
+            if (!tooBig && !tooOld) break;
+
+            segments.remove(oldest.baseOffset);
+            total -= oldest.size;
+            oldest.delete();
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Reading
+    // ----------------------------------------------------------------------------------
+
+    @FunctionalInterface
+    private interface RecordHandler {
+        /** @return false to stop scanning */
+        boolean handle(LoggedEvent logged) throws IOException;
+    }
+
+    private void scan(long fromOffset, long fromTimestamp, RecordHandler handler) throws IOException {
+        Long startKey = fromOffset == Long.MIN_VALUE ? null : segments.floorKey(fromOffset);
+        NavigableMap<Long, Segment> view = startKey != null ? segments.tailMap(startKey, true) : segments;
+
+        boolean timestampReached = fromTimestamp == Long.MIN_VALUE;
+        for (Segment segment : view.values()) {
+            if (!timestampReached && segment.lastTimestamp < fromTimestamp) {
+                continue; // Whole segment is older than requested
+            }
+            long limit = segment.size;
+            long start = timestampReached
+                    ? segment.positionForOffset(fromOffset)
+                    : segment.positionForTimestamp(fromTimestamp);
+
+            final boolean[] reached = {timestampReached};
+            final boolean[] stop = {false};
+            try {
+                segment.scan(start, limit, (offset, body) -> {
+                    if (offset < fromOffset) return true;
+                    Event event = EventCodec.decode(body);
+                    if (!reached[0]) {
+                        if (event.getTimestampMillis() < fromTimestamp) return true;
+                        reached[0] = true;
+                    }
+                    if (!handler.handle(new LoggedEvent(offset, event))) {
+                        stop[0] = true;
+                        return false;
+                    }
+                    return true;
+                });
+            } catch (NoSuchFileException e) {
+                continue; // Deleted by retention while we were reading
+            }
+            timestampReached = reached[0];
+            if (stop[0]) return;
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Recovery
+    // ----------------------------------------------------------------------------------
+
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + LOG_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    long base = Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+                    segments.put(base, Segment.open(directory, base));
+                } catch (NumberFormatException e) {
+                    System.err.println("⚠️  Ignoring unexpected file in event log: " + name);
+                }
+            }
+        }
+
+        if (segments.isEmpty()) {
+            active = Segment.create(directory, 0);
+            segments.put(0L, active);
+        } else {
+            active = segments.lastEntry().getValue();
+            active.openForWrite();
+        }
+        nextOffset = active.endOffset;
+
+        System.out.println("📼 Event log opened at " + directory + " (next offset " + nextOffset + ")");
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Segment
+    // ----------------------------------------------------------------------------------
+
+    @FunctionalInterface
+    private interface RawRecordVisitor {
+        boolean visit(long offset, byte[] body) throws IOException;
+    }
+
+    private static final class Segment {
+        final long baseOffset;
+        final Path logFile;
+        final Path indexFile;
+
+        // Sparse index, guarded by "this"
+        private long[] indexOffsets = new long[16];
+        private long[] indexPositions = new long[16];
+        private long[] indexTimestamps = new long[16];
+        private int indexSize = 0;
+
+        // Visible to readers, published by the writer after each flushed batch
+        volatile long size;
+        volatile long endOffset;
+        volatile long lastTimestamp;
+
+        // Writer only; index entries wait in pendingIndex until their records are in the file
+        long pendingLastTimestamp;
+        FileChannel channel;
+        DataOutputStream indexOut;
+        private final List<long[]> pendingIndex = new ArrayList<>();
+
+        private Segment(Path directory, long baseOffset) {
+            this.baseOffset = baseOffset;
+            String name = String.format("%020d", baseOffset);
+            this.logFile = directory.resolve(name + LOG_SUFFIX);
+            this.indexFile = directory.resolve(name + INDEX_SUFFIX);
+            this.endOffset = baseOffset;
+        }
+
+        static Segment create(Path directory, long baseOffset) throws IOException {
+            Segment segment = new Segment(directory, baseOffset);
+            Files.deleteIfExists(segment.indexFile);
+            segment.openForWrite();
+            return segment;
+        }
+
+        /**
+         * Open an existing segment: load its index and verify the records after the last entry
+         */
+        static Segment open(Path directory, long baseOffset) throws IOException {
+            Segment segment = new Segment(directory, baseOffset);
+            long fileSize = Files.size(segment.logFile);
+            segment.loadIndex(fileSize);
+
+            long start = segment.indexSize > 0 ? segment.indexPositions[segment.indexSize - 1] : 0;
+            long[] expected = {segment.indexSize > 0 ? segment.indexOffsets[segment.indexSize - 1] : baseOffset};
+            long[] lastTimestamp = {segment.indexSize > 0 ? segment.indexTimestamps[segment.indexSize - 1] : 0};
+            long validEnd = segment.scan(start, fileSize, (offset, body) -> {
+                if (offset != expected[0]) return false;
+                expected[0]++;
+                lastTimestamp[0] = ByteBuffer.wrap(body).getLong(2);
+                return true;
+            });
+
+            if (validEnd < fileSize) {
+                System.err.println("⚠️  Truncating torn tail of " + segment.logFile.getFileName() +
+                        " at " + validEnd + " (was " + fileSize + ")");
+                try (FileChannel channel = FileChannel.open(segment.logFile, StandardOpenOption.WRITE)) {
+                    channel.truncate(validEnd);
+                }
+                segment.trimIndex(validEnd);
+            }
+            segment.size = validEnd;
+            segment.endOffset = expected[0];
+            segment.lastTimestamp = lastTimestamp[0];
+            segment.pendingLastTimestamp = lastTimestamp[0];
+            return segment;
+        }
+
+        private void loadIndex(long fileSize) throws IOException {
+            if (!Files.exists(indexFile)) return;
+            byte[] bytes = Files.readAllBytes(indexFile);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int entries = bytes.length / INDEX_ENTRY_BYTES;
+            for (int i = 0; i < entries; i++) {
+                long offset = buffer.getLong();
+                long position = buffer.getLong();
+                long timestamp = buffer.getLong();
+                if (position >= fileSize) break; // Points past a torn tail
+                addIndexEntryInMemory(offset, position, timestamp);
+            }
+            if (entries * INDEX_ENTRY_BYTES != bytes.length || indexSize != entries) {
+                rewriteIndex();
+            }
+        }
+
+        private synchronized void trimIndex(long validEnd) throws IOException {
+            int kept = indexSize;
+            while (kept > 0 && indexPositions[kept - 1] >= validEnd) kept--;
+            if (kept != indexSize) {
+                indexSize = kept;
+                rewriteIndex();
+            }
+        }
+
+        private void rewriteIndex() throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(indexFile)))) {
+                for (int i = 0; i < indexSize; i++) {
+                    out.writeLong(indexOffsets[i]);
+                    out.writeLong(indexPositions[i]);
+                    out.writeLong(indexTimestamps[i]);
+                }
+            }
+        }
+
+        void openForWrite() throws IOException {
+            channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            size = channel.size();
+            indexOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+
+        void closeForWrite() {
+            try {
+                if (indexOut != null) indexOut.close();
+                if (channel != null) {
+                    channel.force(true);
+                    channel.close();
+                }
+            } catch (IOException e) {
+                System.err.println("⚠️  Error closing event log segment: " + e.getMessage());
+            }
+            indexOut = null;
+            channel = null;
+        }
+
+        boolean needsIndexEntry(long position) {
+            if (!pendingIndex.isEmpty()) {
+                return position - pendingIndex.get(pendingIndex.size() - 1)[1] >= INDEX_INTERVAL_BYTES;
+            }
+            synchronized (this) {
+                return indexSize == 0 || position - indexPositions[indexSize - 1] >= INDEX_INTERVAL_BYTES;
+            }
+        }
+
+        void addIndexEntry(long offset, long position, long timestamp) {
+            pendingIndex.add(new long[]{offset, position, timestamp});
+        }
+
+        /**
+         * The records of the pending index entries were written: index them. The index
+         * file is only a hint (it is checked against the log on open), so failing to
+         * write it does not fail the records.
+         */
+        void commitIndex() {
+            try {
+                for (long[] entry : pendingIndex) {
+                    addIndexEntryInMemory(entry[0], entry[1], entry[2]);
+                    indexOut.writeLong(entry[0]);
+                    indexOut.writeLong(entry[1]);
+                    indexOut.writeLong(entry[2]);
+                }
+                indexOut.flush();
+            } catch (IOException e) {
+                System.err.println("⚠️  Could not write event log index " + indexFile.getFileName() + ": " + e.getMessage());
+            } finally {
+                pendingIndex.clear();
+            }
+        }
+
+        void discardIndex() {
+            pendingIndex.clear();
+        }
+
+        private synchronized void addIndexEntryInMemory(long offset, long position, long timestamp) {
+            if (indexSize == indexOffsets.length) {
+                indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+                indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+                indexTimestamps = Arrays.copyOf(indexTimestamps, indexSize * 2);
+            }
+            indexOffsets[indexSize] = offset;
+            indexPositions[indexSize] = position;
+            indexTimestamps[indexSize] = timestamp;
+            indexSize++;
+        }
+
+        /**
+         * Position of the last index entry at or before the offset
+         */
+        synchronized long positionForOffset(long offset) {
+            int i = Arrays.binarySearch(indexOffsets, 0, indexSize, offset);
+            if (i < 0) i = -i - 2;
+            return i >= 0 ? indexPositions[i] : 0;
+        }
+
+        /**
+         * Position of the last index entry older than the timestamp.
+         * Wall clock timestamps are not strictly ordered, so we step back one extra entry.
+         */
+        synchronized long positionForTimestamp(long timestamp) {
+            int i = 0;
+            while (i < indexSize && indexTimestamps[i] < timestamp) i++;
+            i -= 2;
+            return i >= 0 ? indexPositions[i] : 0;
+        }
+
+        /**
+         * Visit records between start and limit
+         * @return position after the last complete, valid record visited
+         */
+        long scan(long start, long limit, RawRecordVisitor visitor) throws IOException {
+            long position = start;
+            try (FileChannel read = FileChannel.open(logFile, StandardOpenOption.READ)) {
+                read.position(start);
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Channels.newInputStream(read), 64 * 1024));
+                CRC32 crc = new CRC32();
+                while (position + RECORD_HEADER_BYTES <= limit) {
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length < 0 || position + RECORD_HEADER_BYTES + length > limit) break;
+
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+                    crc.reset();
+                    crc.update(body);
+                    if ((int) crc.getValue() != checksum) break;
+
+                    if (!visitor.visit(offset, body)) break;
+                    position += RECORD_HEADER_BYTES + length;
+                }
+            } catch (EOFException e) {
+                // Torn record at the end of the file
+            }
+            return position;
+        }
+
+        void delete() {
+            closeForWrite();
+            try {
+                Files.deleteIfExists(logFile);
+                Files.deleteIfExists(indexFile);
+            } catch (IOException e) {
+                System.err.println("⚠️  Could not delete event log segment: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.fatty.smarthome.concurrent.events;
+
+import java.util.*;
+
+/**
+ * Immutable routing index for the subscriptions of one event type.
+ *
+ * Filters are compiled into a hash by exact source, a prefix trie over source names and
+ * a hash by payload key/value, so finding the targets for an event costs roughly the
+ * length of its source name plus the number of matches, not the number of subscriptions.
+ * A target subscribed through several filters that all match is returned once.
+ * Subscribing builds a new index; readers never lock. Also used by the CEP engine to
+ * route events to pattern steps.
+ */
+public final class SubscriptionIndex<T> {
+    private record Entry<T>(EventFilter filter, T target) {
+    }
+
+    private static final class TrieNode<T> {
+        final Map<Character, TrieNode<T>> children = new HashMap<>();
+        final List<Entry<T>> entries = new ArrayList<>();
+    }
+
+    private static final SubscriptionIndex<?> EMPTY = new SubscriptionIndex<>(List.of());
+
+    // All entries in subscription order; the index is rebuilt from these
+    private final List<Entry<T>> entries;
+    private final List<Entry<T>> unfiltered = new ArrayList<>();
+    private final Map<String, List<Entry<T>>> bySource = new HashMap<>();
+    private final TrieNode<T> prefixes = new TrieNode<>();
+    private final Map<String, Map<String, List<Entry<T>>>> byPayload = new HashMap<>();
+    private boolean hasPrefixes = false;
+    // Some target has more than one subscription, so its matches may need de-duplicating
+    private final boolean hasRepeatedTargets;
+
+    @SuppressWarnings("unchecked")
+    public static <T> SubscriptionIndex<T> empty() {
+        return (SubscriptionIndex<T>) EMPTY;
+    }
+
+    private SubscriptionIndex(List<Entry<T>> entries) {
+        this.entries = entries;
+        Set<T> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean repeated = false;
+        for (Entry<T> entry : entries) {
+            repeated |= !targets.add(entry.target());
+            EventFilter filter = entry.filter();
+            if (filter.source() != null) {
+                bySource.computeIfAbsent(filter.source(), s -> new ArrayList<>()).add(entry);
+            } else if (filter.sourcePrefix() != null) {
+                TrieNode<T> node = prefixes;
+                for (int i = 0; i < filter.sourcePrefix().length(); i++) {
+                    node = node.children.computeIfAbsent(filter.sourcePrefix().charAt(i), c -> new TrieNode<>());
+                }
+                node.entries.add(entry);
+                hasPrefixes = true;
+            } else if (filter.hasPayloadConstraint()) {
+                byPayload.computeIfAbsent(filter.payloadKey(), k -> new HashMap<>())
+                        .computeIfAbsent(String.valueOf(filter.payloadValue()), v -> new ArrayList<>())
+                        .add(entry);
+            } else {
+                unfiltered.add(entry);
+            }
+        }
+        hasRepeatedTargets = repeated;
+    }
+
+    /**
+     * New index with one more subscription
+     */
+    public SubscriptionIndex<T> with(EventFilter filter, T target) {
+        List<Entry<T>> next = new ArrayList<>(entries.size() + 1);
+        next.addAll(entries);
+        next.add(new Entry<>(filter, target));
+        return new SubscriptionIndex<>(List.copyOf(next));
+    }
+
+    /**
+     * New index with several more subscriptions, indexed once
+     */
+    public SubscriptionIndex<T> withAll(List<? extends Map.Entry<EventFilter, T>> subscriptions) {
+        if (subscriptions.isEmpty()) return this;
+        List<Entry<T>> next = new ArrayList<>(entries.size() + subscriptions.size());
+        next.addAll(entries);
+        subscriptions.forEach(subscription -> next.add(new Entry<>(subscription.getKey(), subscription.getValue())));
+        return new SubscriptionIndex<>(List.copyOf(next));
+    }
+
+    /**
+     * New index without any subscription of the given targets
+     */
+    public SubscriptionIndex<T> withoutAll(Set<T> targets) {
+        List<Entry<T>> next = entries.stream()
+                .filter(entry -> !targets.contains(entry.target()))
+                .toList();
+        return next.size() == entries.size() ? this : new SubscriptionIndex<>(next);
+    }
+
+    /**
+     * New index without any subscription of the given target
+     */
+    public SubscriptionIndex<T> without(T target) {
+        List<Entry<T>> next = entries.stream()
+                .filter(entry -> entry.target() != target)
+                .toList();
+        return next.size() == entries.size() ? this : new SubscriptionIndex<>(next);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Targets whose filter matches the event, in a new list the caller may modify
+     */
+    public List<T> match(Event event) {
+        if (entries.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        List<T> matches = new ArrayList<>(unfiltered.size() + 2);
+        for (Entry<T> entry : unfiltered) {
+            matches.add(entry.target());
+        }
+
+        String source = event.getSource();
+        if (source != null) {
+            addMatching(matches, bySource.get(source), event);
+
+            if (hasPrefixes) {
+                TrieNode<T> node = prefixes;
+                addMatching(matches, node.entries, event);
+                for (int i = 0; i < source.length() && node != null; i++) {
+                    node = node.children.get(source.charAt(i));
+                    if (node != null) {
+                        addMatching(matches, node.entries, event);
+                    }
+                }
+            }
+        }
+
+        if (!byPayload.isEmpty()) {
+            Map<String, Object> data = event.getData();
+            for (Map.Entry<String, Map<String, List<Entry<T>>>> byKey : byPayload.entrySet()) {
+                Object value = data.get(byKey.getKey());
+                if (value != null) {
+                    List<Entry<T>> found = byKey.getValue().get(String.valueOf(value));
+                    if (found != null) {
+                        found.forEach(entry -> matches.add(entry.target()));
+                    }
+                }
+            }
+        }
+        return hasRepeatedTargets && matches.size() > 1 ? distinct(matches) : matches;
+    }
+
+    /**
+     * Drop repeated targets by identity, keeping the first of each
+     */
+    private static <T> List<T> distinct(List<T> matches) {
+        Set<T> seen = Collections.newSetFromMap(new IdentityHashMap<>(matches.size()));
+        matches.removeIf(target -> !seen.add(target));
+        return matches;
+    }
+
+    /**
+     * Source already matched through the index; only the payload part is left to check
+     */
+    private static <T> void addMatching(List<T> matches, List<Entry<T>> candidates, Event event) {
+        if (candidates == null) return;
+        for (Entry<T> entry : candidates) {
+            if (entry.filter().matchesPayload(event)) {
+                matches.add(entry.target());
+            }
+        }
+    }
+}
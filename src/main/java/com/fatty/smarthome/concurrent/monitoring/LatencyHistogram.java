@@ -0,0 +1,123 @@
+package com.fatty.smarthome.concurrent.monitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram for latencies in nanoseconds.
+ *
+ * Values below 16 get their own bucket; above that every power of two is split into
+ * 16 linear sub-buckets, so any recorded value is reported within ~6% of its real value.
+ * Recording is a couple of shifts plus one atomic increment, cheap enough for the
+ * per-event hot path.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+
+    /**
+     * Point-in-time view of the histogram (values in nanoseconds)
+     */
+    public record Snapshot(long count, long mean, long p50, long p99, long p999, long max) {
+        public static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0);
+
+        /**
+         * Format as "p50=1.2ms p99=..." for console output
+         */
+        public String format() {
+            if (count == 0) return "no samples";
+            return String.format("n=%d mean=%s p50=%s p99=%s p999=%s max=%s",
+                    count, formatNanos(mean), formatNanos(p50), formatNanos(p99),
+                    formatNanos(p999), formatNanos(max));
+        }
+    }
+
+    /**
+     * Record one value; negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        sum.addAndGet(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        if (total == 0) {
+            return Snapshot.EMPTY;
+        }
+
+        long maxValue = max.get();
+        return new Snapshot(
+                total,
+                sum.get() / total,
+                Math.min(valueAtQuantile(copy, total, 0.50), maxValue),
+                Math.min(valueAtQuantile(copy, total, 0.99), maxValue),
+                Math.min(valueAtQuantile(copy, total, 0.999), maxValue),
+                maxValue);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Highest value that falls into the given bucket
+     */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    private static long valueAtQuantile(long[] buckets, long total, double quantile) {
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(buckets.length - 1);
+    }
+
+    static String formatNanos(long nanos) {
+        if (nanos < 1_000) return nanos + "ns";
+        if (nanos < 1_000_000) return String.format("%.1fµs", nanos / 1_000.0);
+        if (nanos < 1_000_000_000) return String.format("%.1fms", nanos / 1_000_000.0);
+        return String.format("%.2fs", nanos / 1_000_000_000.0);
+    }
+}
@@ -1,8 +1,12 @@
 package com.fatty.smarthome.concurrent.monitoring;
 
 import com.fatty.smarthome.concurrent.events.*;
+import com.fatty.smarthome.concurrent.scheduling.Schedule;
+import com.fatty.smarthome.concurrent.scheduling.ScheduledTask;
+import com.fatty.smarthome.concurrent.scheduling.SchedulerService;
 import com.fatty.smarthome.devices.*;
 import com.fatty.smarthome.core.FacadeSmartHome;
+import java.time.LocalTime;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -20,6 +24,8 @@ public class PowerMonitoringService {
     private final FacadeSmartHome facade;
     private final EventSystem eventSystem;
     private final ScheduledExecutorService scheduler;
+    private final SchedulerService timers;
+    private final boolean ownsTimers;
     private final Map<String, PowerMetrics> deviceMetrics;
     private final DoubleAdder totalPowerConsumed;
     private final AtomicInteger powerThreshold;
@@ -53,9 +59,19 @@ public class PowerMonitoringService {
     }
 
     public PowerMonitoringService(FacadeSmartHome facade, EventSystem eventSystem) {
+        this(facade, eventSystem, null);
+    }
+
+    /**
+     * @param timers shared scheduler for time-of-day work such as power saving mode;
+     *               null to create one owned (and closed) by this service
+     */
+    public PowerMonitoringService(FacadeSmartHome facade, EventSystem eventSystem, SchedulerService timers) {
         this.facade = facade;
         this.eventSystem = eventSystem;
         this.scheduler = Executors.newScheduledThreadPool(2);
+        this.ownsTimers = timers == null;
+        this.timers = timers != null ? timers : new SchedulerService("PowerMonitor");
         this.deviceMetrics = new ConcurrentHashMap<>();
         this.totalPowerConsumed = new DoubleAdder();
         this.powerThreshold = new AtomicInteger(500); // Default 500W threshold
@@ -110,15 +126,10 @@ public class PowerMonitoringService {
 
                 // Emit power threshold event
                 if (eventSystem != null) {
-                    Map<String, Object> data = new HashMap<>();
-                    data.put("currentPower", totalPower);
-                    data.put("threshold", powerThreshold.get());
-                    data.put("devices", getHighPowerDevices());
-
                     eventSystem.publishEvent(new Event(
                             EventType.POWER_THRESHOLD_EXCEEDED,
                             "PowerMonitor",
-                            data
+                            new EventPayload.Power(totalPower, powerThreshold.get(), getHighPowerDevices())
                     ));
                 }
             } else if (alertActive && totalPower <= powerThreshold.get()) {
@@ -348,24 +359,42 @@ public class PowerMonitoringService {
     }
 
     /**
-     * Schedule power-saving mode
+     * Schedule power-saving mode: at the top of every hour from startHour until endHour
+     * (wrapping past midnight when endHour is earlier), cut usage down to maxWatts.
+     * Also checks right away when called inside the window.
+     * @return the timer, to cancel power saving mode
      */
-    public void schedulePowerSavingMode(int startHour, int endHour, int maxWatts) {
-        scheduler.scheduleAtFixedRate(() -> {
-            Calendar cal = Calendar.getInstance();
-            int currentHour = cal.get(Calendar.HOUR_OF_DAY);
+    public ScheduledTask schedulePowerSavingMode(int startHour, int endHour, int maxWatts) {
+        if (startHour < 0 || startHour > 23 || endHour < 0 || endHour > 23 || startHour == endHour) {
+            throw new IllegalArgumentException("Invalid power saving window " + startHour + "-" + endHour);
+        }
+        StringJoiner hours = new StringJoiner(",");
+        for (int hour = startHour; hour != endHour; hour = (hour + 1) % 24) {
+            hours.add(String.valueOf(hour));
+        }
 
-            if (currentHour >= startHour && currentHour < endHour) {
-                double currentPower = deviceMetrics.values().stream()
-                        .mapToDouble(m -> m.currentPower)
-                        .sum();
+        Runnable check = () -> {
+            double currentPower = deviceMetrics.values().stream()
+                    .mapToDouble(m -> m.currentPower)
+                    .sum();
 
-                if (currentPower > maxWatts) {
-                    System.out.println("🌙 Power saving mode active (Hour: " + currentHour + ")");
-                    optimizePowerUsage(maxWatts);
-                }
+            if (currentPower > maxWatts) {
+                int currentHour = LocalTime.now(timers.getClock()).getHour();
+                System.out.println("🌙 Power saving mode active (Hour: " + currentHour + ")");
+                optimizePowerUsage(maxWatts);
             }
-        }, 0, 1, TimeUnit.HOURS);
+        };
+
+        int currentHour = LocalTime.now(timers.getClock()).getHour();
+        boolean inWindow = startHour < endHour
+                ? currentHour >= startHour && currentHour < endHour
+                : currentHour >= startHour || currentHour < endHour;
+        if (inWindow) {
+            scheduler.execute(check);
+        }
+
+        timers.start();
+        return timers.schedule("power-saving", Schedule.cron("0 " + hours + " * * *"), check);
     }
 
     /**
@@ -374,6 +403,9 @@ public class PowerMonitoringService {
     public void stopMonitoring() {
         monitoring = false;
         scheduler.shutdown();
+        if (ownsTimers) {
+            timers.close();
+        }
 
         try {
             if (!scheduler.awaitTermination(1, TimeUnit.SECONDS)) {
@@ -0,0 +1,436 @@
+package com.fatty.smarthome.concurrent.replay;
+
+import com.fatty.smarthome.concurrent.automation.AutomationEngine;
+import com.fatty.smarthome.concurrent.devices.*;
+import com.fatty.smarthome.concurrent.events.*;
+import com.fatty.smarthome.concurrent.scheduling.SchedulerService;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.util.SmartHomeException;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a recorded event stream against a fresh EventSystem, AutomationEngine and device set.
+ *
+ * Recorded inputs (motion, temperature readings, malfunctions, user commands) are applied to the
+ * fresh devices in order while a {@link VirtualClock} follows the recorded timestamps. The engine
+ * is evaluated every evaluation interval of virtual time, just like its 5 s schedule would do live.
+ * Device timers (a camera's motion timeout) run on a scheduler driven by the same virtual clock.
+ * Recorded DEVICE_STATE_CHANGED events are treated as the expected outcome: at the end the fresh
+ * device states are compared with the last recorded state of every device.
+ *
+ * Speed is a multiple of real time (1 = as recorded, 100 = 100x) or {@link #AS_FAST_AS_POSSIBLE}.
+ */
+public class IncidentReplay {
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    /**
+     * Hook to add rules and listeners to the fresh system before replay starts
+     */
+    @FunctionalInterface
+    public interface Setup {
+        void configure(EventSystem eventSystem, AutomationEngine engine, List<SmartDevice> devices)
+                throws Exception;
+    }
+
+    /**
+     * Observable state of one device at the end of a replay
+     */
+    public record DeviceSnapshot(String name, String type, boolean on, Integer temperature,
+                                 Integer brightness, Boolean recording) {
+        static DeviceSnapshot of(SmartDevice device) {
+            Integer temperature = device instanceof ConcurrentThermostat t ? t.getTemperature() : null;
+            Integer brightness = device instanceof ConcurrentLight l ? l.getBrightness() : null;
+            Boolean recording = device instanceof ConcurrentSecurityCamera c ? c.isRecording() : null;
+            return new DeviceSnapshot(device.getName(), device.getClass().getSimpleName(),
+                    device.isOn(), temperature, brightness, recording);
+        }
+    }
+
+    /**
+     * One field that ended up different
+     */
+    public record Difference(String device, String field, Object expected, Object actual) {
+        @Override
+        public String toString() {
+            return String.format("%s.%s: expected %s, got %s", device, field, expected, actual);
+        }
+    }
+
+    /**
+     * Outcome of a replay run
+     */
+    public static class Result {
+        private final Map<String, String> recordedStates;
+        private final Map<String, DeviceSnapshot> replayedStates;
+        private final int eventsReplayed;
+        private final int evaluations;
+        private final long virtualMillis;
+        private final long wallMillis;
+
+        Result(Map<String, String> recordedStates, Map<String, DeviceSnapshot> replayedStates,
+               int eventsReplayed, int evaluations, long virtualMillis, long wallMillis) {
+            this.recordedStates = recordedStates;
+            this.replayedStates = replayedStates;
+            this.eventsReplayed = eventsReplayed;
+            this.evaluations = evaluations;
+            this.virtualMillis = virtualMillis;
+            this.wallMillis = wallMillis;
+        }
+
+        /**
+         * Devices whose replayed on/off state differs from the last recorded state
+         */
+        public List<Difference> getDifferences() {
+            List<Difference> differences = new ArrayList<>();
+            recordedStates.forEach((device, expected) -> {
+                DeviceSnapshot actual = replayedStates.get(device);
+                String actualState = actual == null ? "MISSING" : (actual.on() ? "ON" : "OFF");
+                if (!expected.equals(actualState)) {
+                    differences.add(new Difference(device, "state", expected, actualState));
+                }
+            });
+            return differences;
+        }
+
+        /**
+         * Compare the end state of two replays, e.g. with and without a suspect rule
+         */
+        public List<Difference> diff(Result other) {
+            List<Difference> differences = new ArrayList<>();
+            Set<String> names = new TreeSet<>(replayedStates.keySet());
+            names.addAll(other.replayedStates.keySet());
+            for (String name : names) {
+                DeviceSnapshot a = replayedStates.get(name);
+                DeviceSnapshot b = other.replayedStates.get(name);
+                if (a == null || b == null) {
+                    differences.add(new Difference(name, "present", a != null, b != null));
+                    continue;
+                }
+                if (a.on() != b.on()) differences.add(new Difference(name, "on", a.on(), b.on()));
+                if (!Objects.equals(a.temperature(), b.temperature()))
+                    differences.add(new Difference(name, "temperature", a.temperature(), b.temperature()));
+                if (!Objects.equals(a.brightness(), b.brightness()))
+                    differences.add(new Difference(name, "brightness", a.brightness(), b.brightness()));
+                if (!Objects.equals(a.recording(), b.recording()))
+                    differences.add(new Difference(name, "recording", a.recording(), b.recording()));
+            }
+            return differences;
+        }
+
+        public Map<String, DeviceSnapshot> getReplayedStates() {
+            return replayedStates;
+        }
+
+        public Map<String, String> getRecordedStates() {
+            return recordedStates;
+        }
+
+        public int getEventsReplayed() {
+            return eventsReplayed;
+        }
+
+        public int getEvaluations() {
+            return evaluations;
+        }
+
+        public long getVirtualMillis() {
+            return virtualMillis;
+        }
+
+        public long getWallMillis() {
+            return wallMillis;
+        }
+
+        public String getSummary() {
+            StringBuilder summary = new StringBuilder(String.format(
+                    "Replay Summary:\n" +
+                            "  Events replayed: %d\n" +
+                            "  Rule evaluations: %d\n" +
+                            "  Virtual time: %.1fs in %.1fs wall time\n" +
+                            "  Devices: %d",
+                    eventsReplayed, evaluations, virtualMillis / 1000.0, wallMillis / 1000.0,
+                    replayedStates.size()));
+
+            List<Difference> differences = getDifferences();
+            if (differences.isEmpty()) {
+                summary.append("\n  ✅ Replayed states match the recording");
+            } else {
+                summary.append("\n  ⚠️  ").append(differences.size()).append(" difference(s):");
+                differences.forEach(d -> summary.append("\n    ").append(d));
+            }
+            return summary.toString();
+        }
+    }
+
+    private final List<String> deviceSpecs;
+    private final Setup setup;
+    private volatile double speed = AS_FAST_AS_POSSIBLE;
+    private volatile long evaluationIntervalMillis = 5000;
+
+    /**
+     * @param deviceSpecs Fresh devices as "name:type" (see ConcurrentDeviceFactory);
+     *                    empty to infer them from the recorded events
+     * @param setup Adds rules and listeners to the fresh system
+     */
+    public IncidentReplay(List<String> deviceSpecs, Setup setup) {
+        this.deviceSpecs = List.copyOf(deviceSpecs);
+        this.setup = setup;
+    }
+
+    /**
+     * @param speed Multiple of recorded time (1, 100, ...) or AS_FAST_AS_POSSIBLE
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive");
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * @param intervalMillis Virtual time between two rule evaluations (default 5000, like the live engine)
+     */
+    public void setEvaluationIntervalMillis(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Evaluation interval must be positive");
+        }
+        this.evaluationIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Replay the events of a log between two offsets
+     * @param toOffset exclusive end offset (Long.MAX_VALUE for everything)
+     */
+    public Result run(SegmentedEventLog log, long fromOffset, long toOffset)
+            throws IOException, SmartHomeException {
+        List<Event> recorded = new ArrayList<>();
+        log.replay(fromOffset, logged -> {
+            if (logged.offset() < toOffset) {
+                recorded.add(logged.event());
+            }
+        });
+        return run(recorded);
+    }
+
+    /**
+     * Replay a list of recorded events in order
+     */
+    public Result run(List<Event> recorded) throws SmartHomeException {
+        if (recorded.isEmpty()) {
+            throw new SmartHomeException("Nothing to replay");
+        }
+
+        long startMillis = recorded.get(0).getTimestampMillis();
+        VirtualClock clock = new VirtualClock(startMillis);
+        // Never started: advanced together with the clock
+        SchedulerService timers = new SchedulerService("Replay", clock, Runnable::run);
+        // Keyed lanes keep each device's events in recorded order
+        EventSystem eventSystem = new EventSystem(3, 4);
+        ConcurrentDeviceFactory factory = new ConcurrentDeviceFactory(eventSystem);
+
+        List<SmartDevice> devices = new CopyOnWriteArrayList<>(
+                factory.createMultipleDevices(resolveDeviceSpecs(recorded).toArray(new String[0])));
+        Map<String, SmartDevice> byName = new HashMap<>();
+        devices.forEach(d -> byName.put(d.getName(), d));
+        devices.stream()
+                .filter(d -> d instanceof ConcurrentSecurityCamera)
+                .forEach(d -> ((ConcurrentSecurityCamera) d).setScheduler(timers));
+
+        AutomationEngine engine = new AutomationEngine(() -> devices, clock);
+        Map<String, String> recordedStates = new TreeMap<>();
+        int evaluations = 0;
+        long wallStart = System.nanoTime();
+
+        eventSystem.start();
+        try {
+            setup.configure(eventSystem, engine, devices);
+
+            long nextEvaluation = startMillis + evaluationIntervalMillis;
+            long lastMillis = startMillis;
+            for (Event event : recorded) {
+                long t = Math.max(event.getTimestampMillis(), lastMillis);
+                while (nextEvaluation <= t) {
+                    evaluate(clock, timers, nextEvaluation, startMillis, wallStart, eventSystem, engine);
+                    evaluations++;
+                    nextEvaluation += evaluationIntervalMillis;
+                }
+
+                advance(clock, timers, t);
+                pace(t - startMillis, wallStart);
+                apply(event, byName, eventSystem, recordedStates);
+                lastMillis = t;
+            }
+
+            // One last pass so reactions to the final events are visible
+            evaluate(clock, timers, nextEvaluation, startMillis, wallStart, eventSystem, engine);
+            evaluations++;
+            eventSystem.awaitIdle(5, TimeUnit.SECONDS);
+
+            Map<String, DeviceSnapshot> replayedStates = new TreeMap<>();
+            devices.forEach(d -> replayedStates.put(d.getName(), DeviceSnapshot.of(d)));
+
+            return new Result(recordedStates, replayedStates, recorded.size(), evaluations,
+                    clock.millis() - startMillis, (System.nanoTime() - wallStart) / 1_000_000);
+        } catch (SmartHomeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SmartHomeException("Replay interrupted", e);
+        } catch (Exception e) {
+            throw new SmartHomeException("Replay failed: " + e.getMessage(), e);
+        } finally {
+            engine.stop();
+            eventSystem.stop();
+            devices.stream()
+                    .filter(d -> d instanceof ConcurrentSecurityCamera)
+                    .forEach(d -> ((ConcurrentSecurityCamera) d).shutdown());
+            timers.close();
+        }
+    }
+
+    /**
+     * Move virtual time forward and fire the device timers that became due
+     */
+    private static void advance(VirtualClock clock, SchedulerService timers, long millis) {
+        clock.advanceTo(millis);
+        timers.advanceTo(clock.millis());
+    }
+
+    private void evaluate(VirtualClock clock, SchedulerService timers, long at, long startMillis, long wallStart,
+                          EventSystem eventSystem, AutomationEngine engine) throws InterruptedException {
+        advance(clock, timers, at);
+        pace(at - startMillis, wallStart);
+        // Let listeners see everything published so far before rules look at the devices
+        eventSystem.awaitIdle(5, TimeUnit.SECONDS);
+        engine.evaluateNow();
+    }
+
+    /**
+     * Sleep until the wall clock catches up with the scaled virtual time
+     */
+    private void pace(long virtualElapsedMillis, long wallStart) throws InterruptedException {
+        if (speed == AS_FAST_AS_POSSIBLE) return;
+        long targetNanos = wallStart + (long) (virtualElapsedMillis * 1_000_000 / speed);
+        long sleepNanos = targetNanos - System.nanoTime();
+        if (sleepNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        }
+    }
+
+    /**
+     * Feed one recorded event into the fresh system
+     */
+    private void apply(Event event, Map<String, SmartDevice> devices, EventSystem eventSystem,
+                       Map<String, String> recordedStates) {
+        switch (event.getPayload()) {
+            case EventPayload.Motion m -> {
+                if (devices.get(m.camera()) instanceof ConcurrentSecurityCamera camera) {
+                    camera.turnOn();
+                    camera.detectMotion();
+                    return;
+                }
+            }
+            case EventPayload.Temperature t -> {
+                if (devices.get(t.device()) instanceof ConcurrentThermostat thermostat) {
+                    thermostat.turnOn();
+                    try {
+                        thermostat.setTemperature(t.temperature());
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("⚠️  Skipping recorded temperature: " + e.getMessage());
+                    }
+                    return;
+                }
+            }
+            case EventPayload.StateChange s -> {
+                // Outcome, not input: remember it as the expected state
+                recordedStates.put(s.device(), s.newState());
+                return;
+            }
+            case null, default -> {
+            }
+        }
+
+        switch (event.getType()) {
+            case DEVICE_STATE_CHANGED -> {
+                Object newState = event.getData().get("newState");
+                if (newState != null) {
+                    recordedStates.put(event.getSource(), newState.toString());
+                }
+            }
+            case SCENE_APPLIED -> {
+                // Outcome of a transaction: the state of each device it changed
+                if (event.getData().get("devices") instanceof List<?> names
+                        && event.getData().get("states") instanceof List<?> states) {
+                    for (int i = 0; i < Math.min(names.size(), states.size()); i++) {
+                        recordedStates.put(String.valueOf(names.get(i)), String.valueOf(states.get(i)));
+                    }
+                }
+            }
+            case AUTOMATION_TRIGGERED, WINDOW_AGGREGATE, PATTERN_MATCHED, RULE_DERIVED -> {
+                // Derived events, the fresh engine and aggregators will produce their own
+            }
+            case DEVICE_MALFUNCTION -> {
+                if (devices.get(event.getSource()) instanceof ConcurrentSmartDevice device) {
+                    device.simulateMalfunction();
+                } else {
+                    eventSystem.publishEvent(event);
+                }
+            }
+            case USER_COMMAND -> {
+                SmartDevice device = devices.get(String.valueOf(event.getData().get("device")));
+                String command = String.valueOf(event.getData().get("command")).toLowerCase();
+                if (device != null && (command.equals("on") || command.equals("turnon"))) {
+                    device.turnOn();
+                } else if (device != null && (command.equals("off") || command.equals("turnoff"))) {
+                    device.turnOff();
+                } else {
+                    eventSystem.publishEvent(event);
+                }
+            }
+            default -> eventSystem.publishEvent(event);
+        }
+    }
+
+    /**
+     * Use the configured specs, or infer device names and types from the recording
+     */
+    private List<String> resolveDeviceSpecs(List<Event> recorded) {
+        if (!deviceSpecs.isEmpty()) {
+            return deviceSpecs;
+        }
+
+        Map<String, String> types = new LinkedHashMap<>();
+        for (Event event : recorded) {
+            switch (event.getPayload()) {
+                case EventPayload.Motion m -> types.putIfAbsent(m.camera(), "camera");
+                case EventPayload.Temperature t -> types.putIfAbsent(t.device(), "thermostat");
+                case EventPayload.StateChange s -> {
+                    String type = typeOf(s.deviceType());
+                    if (type != null) types.putIfAbsent(s.device(), type);
+                }
+                case null, default -> {
+                    Object deviceType = event.getData().get("deviceType");
+                    String type = deviceType != null ? typeOf(deviceType.toString()) : null;
+                    if (event.getData().containsKey("camera")) type = "camera";
+                    if (type != null) types.putIfAbsent(event.getSource(), type);
+                }
+            }
+        }
+
+        List<String> specs = new ArrayList<>();
+        types.forEach((name, type) -> specs.add(name + ":" + type));
+        return specs;
+    }
+
+    private static String typeOf(String deviceType) {
+        String type = deviceType.toLowerCase();
+        if (type.contains("light")) return "light";
+        if (type.contains("thermostat")) return "thermostat";
+        if (type.contains("camera")) return "camera";
+        return null;
+    }
+}
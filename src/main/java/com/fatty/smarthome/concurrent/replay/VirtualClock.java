@@ -0,0 +1,80 @@
+package com.fatty.smarthome.concurrent.replay;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * Clock whose time only moves when the replay tells it to.
+ * Rules that read time through their Clock see recorded time instead of wall time.
+ */
+public class VirtualClock extends Clock {
+    private final ZoneId zone;
+    private volatile long millis;
+
+    public VirtualClock(long startMillis) {
+        this(startMillis, ZoneId.systemDefault());
+    }
+
+    public VirtualClock(long startMillis, ZoneId zone) {
+        this.millis = startMillis;
+        this.zone = zone;
+    }
+
+    /**
+     * Move the clock forward; moving backwards is ignored so time stays monotonic
+     */
+    public void advanceTo(long epochMillis) {
+        if (epochMillis > millis) {
+            millis = epochMillis;
+        }
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new VirtualClockView(this, zone);
+    }
+
+    /**
+     * Same virtual time seen in a different zone
+     */
+    private static class VirtualClockView extends Clock {
+        private final VirtualClock source;
+        private final ZoneId zone;
+
+        VirtualClockView(VirtualClock source, ZoneId zone) {
+            this.source = source;
+            this.zone = zone;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new VirtualClockView(source, zone);
+        }
+
+        @Override
+        public Instant instant() {
+            return source.instant();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.fatty.smarthome.concurrent.scheduling;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Cron-like schedule with five fields: minute (0-59), hour (0-23), day of month (1-31),
+ * month (1-12) and day of week (0-7, 0 and 7 are Sunday). Each field takes "*", a value,
+ * a range "a-b", a step "*&#47;s" or "a-b/s", or a comma separated list of those. As in
+ * cron, when both day fields are restricted a day matches if either of them does.
+ *
+ * Each field is kept as a bit mask, one bit per allowed value.
+ */
+public record CronSchedule(String expression, long minutes, long hours, long days, long months,
+                           long weekdays, boolean daysRestricted, boolean weekdaysRestricted)
+        implements Schedule {
+    // An expression like "0 0 30 2 *" never matches; give up rather than search forever
+    private static final int SEARCH_YEARS = 5;
+
+    public static CronSchedule parse(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Cron expression needs 5 fields (minute hour day month weekday): '"
+                    + expression + "'");
+        }
+        long weekdays = parseField(fields[4], 0, 7, expression);
+        if ((weekdays & (1L << 7)) != 0) {
+            weekdays = (weekdays | 1L) & ~(1L << 7);
+        }
+        return new CronSchedule(expression,
+                parseField(fields[0], 0, 59, expression),
+                parseField(fields[1], 0, 23, expression),
+                parseField(fields[2], 1, 31, expression),
+                parseField(fields[3], 1, 12, expression),
+                weekdays,
+                !fields[2].equals("*"),
+                !fields[4].equals("*"));
+    }
+
+    @Override
+    public long nextAfter(long millis, ZoneId zone) {
+        ZonedDateTime time = Instant.ofEpochMilli(millis).atZone(zone)
+                .truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        ZonedDateTime limit = time.plusYears(SEARCH_YEARS);
+
+        while (time.isBefore(limit)) {
+            if (!has(months, time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!dayMatches(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!has(hours, time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!has(minutes, time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time.toInstant().toEpochMilli();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private boolean dayMatches(ZonedDateTime time) {
+        boolean day = has(days, time.getDayOfMonth());
+        boolean weekday = has(weekdays, time.getDayOfWeek().getValue() % 7);
+        if (daysRestricted && weekdaysRestricted) {
+            return day || weekday;
+        }
+        return day && weekday;
+    }
+
+    private static boolean has(long mask, int value) {
+        return (mask & (1L << value)) != 0;
+    }
+
+    private static long parseField(String field, int min, int max, String expression) {
+        long mask = 0;
+        for (String part : field.split(",")) {
+            try {
+                int step = 1;
+                String range = part;
+                int slash = part.indexOf('/');
+                if (slash >= 0) {
+                    step = Integer.parseInt(part.substring(slash + 1));
+                    range = part.substring(0, slash);
+                }
+
+                int from;
+                int to;
+                if (range.equals("*")) {
+                    from = min;
+                    to = max;
+                } else if (range.contains("-")) {
+                    String[] bounds = range.split("-", 2);
+                    from = Integer.parseInt(bounds[0]);
+                    to = Integer.parseInt(bounds[1]);
+                } else {
+                    from = Integer.parseInt(range);
+                    to = slash >= 0 ? max : from;
+                }
+
+                if (step < 1 || from < min || to > max || from > to) {
+                    throw new IllegalArgumentException("Cron field '" + part + "' is outside "
+                            + min + "-" + max + " in '" + expression + "'");
+                }
+                for (int value = from; value <= to; value += step) {
+                    mask |= 1L << value;
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cron field '" + part + "' in '" + expression + "'");
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,80 @@
+package com.fatty.smarthome.concurrent.scheduling;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * When a scheduled task fires. SchedulerService asks for the next occurrence strictly
+ * after the previous one, so every occurrence fires exactly once even if the driver
+ * runs late.
+ */
+public interface Schedule {
+    /**
+     * @return next fire time strictly after millis, or -1 when there is none
+     */
+    long nextAfter(long millis, ZoneId zone);
+
+    static Schedule at(Instant instant) {
+        return new Once(instant.toEpochMilli());
+    }
+
+    static Schedule every(Duration period) {
+        return new Every(period.toMillis());
+    }
+
+    static Schedule daily(LocalTime time) {
+        return new Daily(time);
+    }
+
+    /**
+     * @param expression five fields "minute hour day-of-month month day-of-week"
+     * @see CronSchedule
+     */
+    static Schedule cron(String expression) {
+        return CronSchedule.parse(expression);
+    }
+
+    /**
+     * A single absolute fire time
+     */
+    record Once(long epochMillis) implements Schedule {
+        @Override
+        public long nextAfter(long millis, ZoneId zone) {
+            return millis < epochMillis ? epochMillis : -1;
+        }
+    }
+
+    /**
+     * A fixed period measured from the first occurrence
+     */
+    record Every(long periodMillis) implements Schedule {
+        public Every {
+            if (periodMillis <= 0) {
+                throw new IllegalArgumentException("Schedule period must be positive: " + periodMillis + "ms");
+            }
+        }
+
+        @Override
+        public long nextAfter(long millis, ZoneId zone) {
+            return millis + periodMillis;
+        }
+    }
+
+    /**
+     * The same local time every day
+     */
+    record Daily(LocalTime time) implements Schedule {
+        @Override
+        public long nextAfter(long millis, ZoneId zone) {
+            ZonedDateTime now = Instant.ofEpochMilli(millis).atZone(zone);
+            ZonedDateTime next = now.toLocalDate().atTime(time).atZone(zone);
+            if (!next.isAfter(now)) {
+                next = now.toLocalDate().plusDays(1).atTime(time).atZone(zone);
+            }
+            return next.toInstant().toEpochMilli();
+        }
+    }
+}
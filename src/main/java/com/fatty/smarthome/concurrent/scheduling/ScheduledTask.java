@@ -0,0 +1,84 @@
+package com.fatty.smarthome.concurrent.scheduling;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handle for a task registered with SchedulerService
+ */
+public final class ScheduledTask {
+    private final SchedulerService service;
+    private final String name;
+    private final Schedule schedule;
+    private final Runnable action;
+    private final AtomicLong fireCount = new AtomicLong(0);
+
+    // Guarded by the service
+    TimingWheel.Entry entry;
+    private volatile long nextFireMillis = -1;
+    private volatile boolean cancelled = false;
+
+    ScheduledTask(SchedulerService service, String name, Schedule schedule, Runnable action) {
+        this.service = service;
+        this.name = name;
+        this.schedule = schedule;
+        this.action = action;
+    }
+
+    /**
+     * Stop future occurrences; one already handed to the executor still runs
+     * @return false if the task was already cancelled or has no occurrences left
+     */
+    public boolean cancel() {
+        return service.cancel(this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Schedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * @return epoch millis of the next occurrence, or -1 once cancelled or finished
+     */
+    public long getNextFireMillis() {
+        return nextFireMillis;
+    }
+
+    public long getFireCount() {
+        return fireCount.get();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return cancelled || nextFireMillis < 0;
+    }
+
+    void setNextFireMillis(long nextFireMillis) {
+        this.nextFireMillis = nextFireMillis;
+    }
+
+    void markCancelled() {
+        cancelled = true;
+        nextFireMillis = -1;
+    }
+
+    void run() {
+        fireCount.incrementAndGet();
+        try {
+            action.run();
+        } catch (Exception e) {
+            System.err.println("❌ Scheduled task " + name + " failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + schedule + ")";
+    }
+}
@@ -0,0 +1,195 @@
+package com.fatty.smarthome.concurrent.scheduling;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical hashed timing wheel. Not thread safe; SchedulerService locks around it.
+ *
+ * Level 0 has wheelSize buckets of tickMillis each, and every further level covers the
+ * whole span of the level below with one bucket; levels are created when a timer is
+ * first placed that far out. Adding or cancelling a timer links or unlinks it in a
+ * bucket's list, O(1) however many timers there are. Buckets holding timers sit in a
+ * priority queue by expiration (only touched when a bucket gets a new expiration), so
+ * the driver can sleep until the next bucket is due instead of ticking. When a bucket
+ * of a higher level comes due its timers are re-added and cascade into finer buckets.
+ */
+final class TimingWheel {
+    /**
+     * One timer, linked into a bucket
+     */
+    static final class Entry {
+        final long expiration;
+        final ScheduledTask task;
+        private Bucket bucket;
+        private Entry prev;
+        private Entry next;
+
+        Entry(long expiration, ScheduledTask task) {
+            this.expiration = expiration;
+            this.task = task;
+        }
+    }
+
+    private static final class Bucket {
+        private final Entry head = new Entry(0, null);
+        private long expiration = -1;
+
+        Bucket() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        void add(Entry entry) {
+            entry.bucket = this;
+            entry.prev = head.prev;
+            entry.next = head;
+            head.prev.next = entry;
+            head.prev = entry;
+        }
+
+        void remove(Entry entry) {
+            entry.prev.next = entry.next;
+            entry.next.prev = entry.prev;
+            entry.prev = null;
+            entry.next = null;
+            entry.bucket = null;
+        }
+
+        /**
+         * @return true if the expiration changed, i.e. the bucket must be queued again
+         */
+        boolean setExpiration(long expiration) {
+            if (this.expiration == expiration) return false;
+            this.expiration = expiration;
+            return true;
+        }
+
+        void flush(Consumer<Entry> consumer) {
+            Entry entry = head.next;
+            while (entry != head) {
+                Entry next = entry.next;
+                remove(entry);
+                consumer.accept(entry);
+                entry = next;
+            }
+            expiration = -1;
+        }
+    }
+
+    private static final class Level {
+        final long tick;
+        final long span;
+        final Bucket[] buckets;
+        long currentTime;
+
+        Level(long tick, int wheelSize, long startMillis) {
+            this.tick = tick;
+            this.span = tick * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentTime = startMillis - Math.floorMod(startMillis, tick);
+        }
+    }
+
+    private final int wheelSize;
+    private final List<Level> levels = new ArrayList<>();
+    private final PriorityQueue<Bucket> queue = new PriorityQueue<>(Comparator.comparingLong(b -> b.expiration));
+    private int size = 0;
+
+    TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this.wheelSize = wheelSize;
+        levels.add(new Level(tickMillis, wheelSize, startMillis));
+    }
+
+    /**
+     * Place a timer in the finest level whose span covers it
+     * @return false if it is already due; the caller fires it
+     */
+    boolean add(Entry entry) {
+        Level first = levels.get(0);
+        if (entry.expiration < first.currentTime + first.tick) return false;
+
+        for (int i = 0; ; i++) {
+            Level level = level(i);
+            if (entry.expiration < level.currentTime + level.span) {
+                long slot = Math.floorDiv(entry.expiration, level.tick);
+                Bucket bucket = level.buckets[(int) Math.floorMod(slot, (long) wheelSize)];
+                bucket.add(entry);
+                if (bucket.setExpiration(slot * level.tick)) {
+                    queue.add(bucket);
+                }
+                size++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Unlink a timer; a bucket left empty stays queued and is skipped when it comes due
+     */
+    boolean cancel(Entry entry) {
+        if (entry.bucket == null) return false;
+        entry.bucket.remove(entry);
+        size--;
+        return true;
+    }
+
+    /**
+     * Move time forward, handing every timer that is due to the consumer
+     */
+    void advanceTo(long millis, Consumer<Entry> expired) {
+        Bucket bucket;
+        while ((bucket = queue.peek()) != null && bucket.expiration <= millis) {
+            queue.poll();
+            advanceClock(bucket.expiration);
+            bucket.flush(entry -> {
+                size--;
+                if (!add(entry)) {
+                    expired.accept(entry);
+                }
+            });
+        }
+        advanceClock(millis);
+    }
+
+    /**
+     * Expiration of the next bucket to come due, or -1 when there is none
+     */
+    long nextExpiration() {
+        // Drop buckets emptied by cancellations
+        while (!queue.isEmpty() && queue.peek().head.next == queue.peek().head) {
+            queue.poll().expiration = -1;
+        }
+        return queue.isEmpty() ? -1 : queue.peek().expiration;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int levelCount() {
+        return levels.size();
+    }
+
+    private Level level(int index) {
+        if (index == levels.size()) {
+            Level below = levels.get(index - 1);
+            levels.add(new Level(below.span, wheelSize, below.currentTime));
+        }
+        return levels.get(index);
+    }
+
+    private void advanceClock(long millis) {
+        for (Level level : levels) {
+            if (millis >= level.currentTime + level.tick) {
+                level.currentTime = millis - Math.floorMod(millis, level.tick);
+            }
+        }
+    }
+}
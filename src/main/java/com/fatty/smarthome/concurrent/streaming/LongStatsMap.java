@@ -0,0 +1,163 @@
+package com.fatty.smarthome.concurrent.streaming;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from a long key to count, sum and first/last timestamp,
+ * kept in parallel primitive arrays so a window costs a few bytes per key and
+ * nothing per event. Not thread-safe; the aggregator guards it.
+ */
+final class LongStatsMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] counts;
+    private double[] sums;
+    private long[] firsts;
+    private long[] lasts;
+    private int size;
+    private int mask;
+
+    /**
+     * Visitor over all entries
+     */
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long key, long count, double sum, long first, long last);
+    }
+
+    LongStatsMap(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedKeys * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        counts = new long[capacity];
+        sums = new double[capacity];
+        firsts = new long[capacity];
+        lasts = new long[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    /**
+     * Add one observation (count 1) for the key
+     */
+    void add(long key, double value, long timestamp) {
+        merge(key, 1, value, timestamp, timestamp);
+    }
+
+    /**
+     * Fold aggregated stats into the key's entry
+     */
+    void merge(long key, long count, double sum, long first, long last) {
+        int slot = slotFor(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            counts[slot] = count;
+            sums[slot] = sum;
+            firsts[slot] = first;
+            lasts[slot] = last;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return;
+        }
+        counts[slot] += count;
+        sums[slot] += sum;
+        firsts[slot] = Math.min(firsts[slot], first);
+        lasts[slot] = Math.max(lasts[slot], last);
+    }
+
+    /**
+     * Remove the key, shifting later entries of its probe run back so lookups stay correct
+     */
+    void remove(long key) {
+        int slot = slotFor(key);
+        if (keys[slot] == EMPTY) return;
+
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = mix(keys[next]) & mask;
+            // Move the entry into the gap unless its home slot lies cyclically in (gap, next]
+            boolean stays = gap <= next ? (gap < home && home <= next) : (gap < home || home <= next);
+            if (!stays) {
+                keys[gap] = keys[next];
+                counts[gap] = counts[next];
+                sums[gap] = sums[next];
+                firsts[gap] = firsts[next];
+                lasts[gap] = lasts[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        size--;
+    }
+
+    boolean contains(long key) {
+        return keys[slotFor(key)] != EMPTY;
+    }
+
+    long count(long key) {
+        int slot = slotFor(key);
+        return keys[slot] == EMPTY ? 0 : counts[slot];
+    }
+
+    double sum(long key) {
+        int slot = slotFor(key);
+        return keys[slot] == EMPTY ? 0 : sums[slot];
+    }
+
+    long first(long key) {
+        int slot = slotFor(key);
+        return keys[slot] == EMPTY ? 0 : firsts[slot];
+    }
+
+    long last(long key) {
+        int slot = slotFor(key);
+        return keys[slot] == EMPTY ? 0 : lasts[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], counts[i], sums[i], firsts[i], lasts[i]);
+            }
+        }
+    }
+
+    private int slotFor(long key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        double[] oldSums = sums;
+        long[] oldFirsts = firsts;
+        long[] oldLasts = lasts;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                merge(oldKeys[i], oldCounts[i], oldSums[i], oldFirsts[i], oldLasts[i]);
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,60 @@
+package com.fatty.smarthome.concurrent.streaming;
+
+import java.time.Duration;
+
+/**
+ * Shape of an aggregation window, in event time.
+ *
+ * @param kind         tumbling, sliding or session
+ * @param sizeMillis   window length (tumbling/sliding) or inactivity gap (session)
+ * @param slideMillis  how far a sliding window advances; equals sizeMillis for tumbling, 0 for session
+ */
+public record WindowSpec(Kind kind, long sizeMillis, long slideMillis) {
+    public enum Kind { TUMBLING, SLIDING, SESSION }
+
+    public WindowSpec {
+        if (sizeMillis <= 0) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+        if (kind == Kind.SLIDING && (slideMillis <= 0 || sizeMillis % slideMillis != 0)) {
+            throw new IllegalArgumentException("Sliding window size must be a positive multiple of the slide");
+        }
+    }
+
+    /**
+     * Fixed, non-overlapping windows, e.g. motion events per camera per minute
+     */
+    public static WindowSpec tumbling(Duration size) {
+        return new WindowSpec(Kind.TUMBLING, size.toMillis(), size.toMillis());
+    }
+
+    /**
+     * Overlapping windows of the given size, one ending every slide
+     */
+    public static WindowSpec sliding(Duration size, Duration slide) {
+        return new WindowSpec(Kind.SLIDING, size.toMillis(), slide.toMillis());
+    }
+
+    /**
+     * Per-key bursts of activity, closed once the key has been quiet for the gap
+     */
+    public static WindowSpec session(Duration gap) {
+        return new WindowSpec(Kind.SESSION, gap.toMillis(), 0);
+    }
+
+    /**
+     * Granularity events are bucketed at; a window is made of sizeMillis / paneMillis panes
+     */
+    long paneMillis() {
+        return kind == Kind.SLIDING ? slideMillis : sizeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case TUMBLING -> "tumbling " + Duration.ofMillis(sizeMillis);
+            case SLIDING -> "sliding " + Duration.ofMillis(sizeMillis) + " every " + Duration.ofMillis(slideMillis);
+            case SESSION -> "session gap " + Duration.ofMillis(sizeMillis);
+        };
+    }
+}
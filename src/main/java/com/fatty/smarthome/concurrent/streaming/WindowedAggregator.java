@@ -0,0 +1,366 @@
+package com.fatty.smarthome.concurrent.streaming;
+
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventListener;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.events.EventType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming count/sum per (event type, source) over tumbling, sliding or session windows,
+ * e.g. motion events per camera per minute or average temperature per thermostat per hour.
+ *
+ * Windows follow event time. The watermark trails the newest event time by the allowed
+ * lateness; a window closes once the watermark passes its end, and events that arrive
+ * for an already closed window are counted as late and dropped. State is one primitive
+ * stats table per open pane (or one for all sessions), so memory grows with keys x
+ * windows, never with the number of events. The latest closed result per key is kept in
+ * a hash map for constant-time queries and can be published as WINDOW_AGGREGATE events.
+ */
+public class WindowedAggregator implements EventListener {
+    /**
+     * Aggregate of one key over one window; end is exclusive
+     */
+    public record WindowResult(EventType type, String source, long windowStart, long windowEnd,
+                               long count, double sum) {
+        public double average() {
+            return count == 0 ? 0 : sum / count;
+        }
+    }
+
+    private record Pane(long start, LongStatsMap stats) {
+    }
+
+    private static final EventType[] TYPES = EventType.values();
+
+    private final String name;
+    private final WindowSpec window;
+    private final String valueField;
+    private final long allowedLatenessMillis;
+
+    // Source names are interned to ints so keys are plain longs: type ordinal << 32 | source id
+    private final Map<String, Integer> sourceIds = new ConcurrentHashMap<>();
+    private final List<String> sourceNames = new ArrayList<>();
+
+    // Window state, guarded by this
+    private final TreeMap<Long, LongStatsMap> openPanes = new TreeMap<>();
+    private final ArrayDeque<Pane> recentPanes = new ArrayDeque<>();
+    private final LongStatsMap sessions = new LongStatsMap(64);
+    private long nextPaneEnd = Long.MIN_VALUE;
+    private long nextSessionCheck = Long.MAX_VALUE;
+    private long maxEventTime = Long.MIN_VALUE;
+    private long watermark = Long.MIN_VALUE;
+
+    // Read without locking
+    private final Map<Long, WindowResult> latest = new ConcurrentHashMap<>();
+    private final AtomicLong eventsSeen = new AtomicLong(0);
+    private final AtomicLong lateEvents = new AtomicLong(0);
+    private final AtomicLong windowsClosed = new AtomicLong(0);
+    private volatile EventSystem resultSink;
+
+    /**
+     * @param name                  used as listener name and in emitted events
+     * @param window                window shape
+     * @param valueField            event data field to sum (e.g. "temperature"), or null to only count
+     * @param allowedLatenessMillis how far behind the newest event an event may be and still count
+     */
+    public WindowedAggregator(String name, WindowSpec window, String valueField, long allowedLatenessMillis) {
+        if (allowedLatenessMillis < 0) {
+            throw new IllegalArgumentException("Allowed lateness cannot be negative");
+        }
+        this.name = name;
+        this.window = Objects.requireNonNull(window);
+        this.valueField = valueField;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+    }
+
+    /**
+     * Subscribe to the given event types (all except window results if none given)
+     */
+    public void attach(EventSystem eventSystem, EventType... types) {
+        EventType[] selected = types.length > 0 ? types : TYPES;
+        for (EventType type : selected) {
+            if (type != EventType.WINDOW_AGGREGATE) {
+                eventSystem.subscribe(type, this);
+            }
+        }
+    }
+
+    /**
+     * Publish every closed window as a WINDOW_AGGREGATE event (null to stop)
+     */
+    public void setResultSink(EventSystem eventSystem) {
+        this.resultSink = eventSystem;
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        if (event.getType() == EventType.WINDOW_AGGREGATE) {
+            return;
+        }
+        List<WindowResult> closed = new ArrayList<>(0);
+        synchronized (this) {
+            record(event.getType(), event.getSource(), event.getTimestampMillis(), valueOf(event), closed);
+            advance(event.getTimestampMillis(), closed);
+        }
+        emit(closed);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Move event time forward without an event, closing windows on an idle stream
+     */
+    public void advanceTo(long eventTimeMillis) {
+        List<WindowResult> closed = new ArrayList<>(0);
+        synchronized (this) {
+            advance(eventTimeMillis, closed);
+        }
+        emit(closed);
+    }
+
+    /**
+     * Most recently closed window for the key, or null. Constant time, lock-free.
+     */
+    public WindowResult getLatest(EventType type, String source) {
+        Integer id = sourceIds.get(source);
+        return id == null ? null : latest.get(key(type, id));
+    }
+
+    /**
+     * Latest closed window of every key
+     */
+    public List<WindowResult> getLatestResults() {
+        List<WindowResult> results = new ArrayList<>(latest.values());
+        results.sort(Comparator.comparing(WindowResult::type).thenComparing(WindowResult::source));
+        return results;
+    }
+
+    /**
+     * Partial aggregate of the still-open window containing the newest event time, or null
+     */
+    public synchronized WindowResult getOpen(EventType type, String source) {
+        Integer id = sourceIds.get(source);
+        if (id == null || maxEventTime == Long.MIN_VALUE) return null;
+        long key = key(type, id);
+
+        if (window.kind() == WindowSpec.Kind.SESSION) {
+            return sessions.contains(key)
+                    ? new WindowResult(type, source, sessions.first(key), sessions.last(key) + window.sizeMillis(),
+                    sessions.count(key), sessions.sum(key))
+                    : null;
+        }
+
+        long end = paneStart(maxEventTime) + window.paneMillis();
+        long start = end - window.sizeMillis();
+        long count = 0;
+        double sum = 0;
+        for (LongStatsMap pane : openPanes.subMap(start, true, end, false).values()) {
+            count += pane.count(key);
+            sum += pane.sum(key);
+        }
+        for (Pane pane : recentPanes) {
+            if (pane.start() >= start) {
+                count += pane.stats().count(key);
+                sum += pane.stats().sum(key);
+            }
+        }
+        return count == 0 ? null : new WindowResult(type, source, start, end, count, sum);
+    }
+
+    public long getLateEvents() {
+        return lateEvents.get();
+    }
+
+    public synchronized String getStatistics() {
+        int paneKeys = openPanes.values().stream().mapToInt(LongStatsMap::size).sum()
+                + recentPanes.stream().mapToInt(p -> p.stats().size()).sum();
+        return String.format("Window Aggregator '%s' Statistics:\n" +
+                        "  Window: %s%s, allowed lateness %dms\n" +
+                        "  Events: %d (%d late)\n" +
+                        "  Keys: %d, open panes: %d (%d entries), open sessions: %d\n" +
+                        "  Windows closed: %d",
+                name, window, valueField != null ? " summing '" + valueField + "'" : "", allowedLatenessMillis,
+                eventsSeen.get(), lateEvents.get(),
+                sourceNames.size(), openPanes.size(), paneKeys, sessions.size(),
+                windowsClosed.get());
+    }
+
+    // ----------------------------------------------------------------------------------
+
+    private void record(EventType type, String source, long timestamp, double value, List<WindowResult> closed) {
+        eventsSeen.incrementAndGet();
+        long key = key(type, idOf(source));
+
+        if (window.kind() == WindowSpec.Kind.SESSION) {
+            recordSession(key, timestamp, value, closed);
+            return;
+        }
+
+        long paneStart = paneStart(timestamp);
+        if (watermark != Long.MIN_VALUE && paneStart + window.paneMillis() <= watermark) {
+            lateEvents.incrementAndGet();
+            return;
+        }
+        openPanes.computeIfAbsent(paneStart, start -> new LongStatsMap(16)).add(key, value, timestamp);
+    }
+
+    private void recordSession(long key, long timestamp, double value, List<WindowResult> closed) {
+        long gap = window.sizeMillis();
+        if (watermark != Long.MIN_VALUE && timestamp + gap <= watermark) {
+            lateEvents.incrementAndGet();
+            return;
+        }
+        if (sessions.contains(key)) {
+            if (timestamp >= sessions.last(key) + gap) {
+                // Quiet for longer than the gap: that session is over, this event starts the next
+                closeSession(key, closed);
+            } else if (timestamp + gap <= sessions.first(key)) {
+                // Belongs to an earlier session that has already been merged away
+                lateEvents.incrementAndGet();
+                return;
+            }
+        }
+        sessions.add(key, value, timestamp);
+        nextSessionCheck = Math.min(nextSessionCheck, sessions.last(key) + gap);
+    }
+
+    private void advance(long eventTime, List<WindowResult> closed) {
+        if (eventTime <= maxEventTime) return;
+        maxEventTime = eventTime;
+        long newWatermark = eventTime - allowedLatenessMillis;
+        if (newWatermark <= watermark) return;
+        watermark = newWatermark;
+
+        if (window.kind() == WindowSpec.Kind.SESSION) {
+            closeIdleSessions(closed);
+        } else {
+            closePanes(closed);
+        }
+    }
+
+    private void closePanes(List<WindowResult> closed) {
+        long pane = window.paneMillis();
+        while (true) {
+            if (recentPanes.isEmpty()) {
+                if (openPanes.isEmpty()) {
+                    nextPaneEnd = Long.MIN_VALUE;
+                    return;
+                }
+                // No window in progress: skip the empty stretch up to the earliest pane with data.
+                // That pane cannot end before a boundary already passed, it would have been late.
+                nextPaneEnd = openPanes.firstKey() + pane;
+            }
+            if (nextPaneEnd > watermark) return;
+
+            long start = nextPaneEnd - pane;
+            LongStatsMap stats = openPanes.remove(start);
+            if (stats != null) {
+                recentPanes.addLast(new Pane(start, stats));
+            }
+            closeWindow(nextPaneEnd, closed);
+            nextPaneEnd += pane;
+        }
+    }
+
+    /**
+     * Emit the window ending at end, built from the panes it covers
+     */
+    private void closeWindow(long end, List<WindowResult> closed) {
+        long start = end - window.sizeMillis();
+        while (!recentPanes.isEmpty() && recentPanes.peekFirst().start() < start) {
+            recentPanes.pollFirst();
+        }
+        if (recentPanes.isEmpty()) return;
+
+        LongStatsMap windowStats;
+        if (recentPanes.size() == 1) {
+            windowStats = recentPanes.peekFirst().stats();
+        } else {
+            windowStats = new LongStatsMap(recentPanes.peekLast().stats().size());
+            for (Pane pane : recentPanes) {
+                pane.stats().forEach(windowStats::merge);
+            }
+        }
+        windowStats.forEach((key, count, sum, first, last) -> publish(key, start, end, count, sum, closed));
+        windowsClosed.incrementAndGet();
+    }
+
+    private void closeIdleSessions(List<WindowResult> closed) {
+        if (watermark < nextSessionCheck) return;
+
+        long gap = window.sizeMillis();
+        List<Long> expired = new ArrayList<>();
+        long[] nextCheck = {Long.MAX_VALUE};
+        sessions.forEach((key, count, sum, first, last) -> {
+            if (last + gap <= watermark) {
+                expired.add(key);
+            } else {
+                nextCheck[0] = Math.min(nextCheck[0], last + gap);
+            }
+        });
+        for (long key : expired) {
+            closeSession(key, closed);
+        }
+        nextSessionCheck = nextCheck[0];
+    }
+
+    private void closeSession(long key, List<WindowResult> closed) {
+        publish(key, sessions.first(key), sessions.last(key) + window.sizeMillis(),
+                sessions.count(key), sessions.sum(key), closed);
+        sessions.remove(key);
+        windowsClosed.incrementAndGet();
+    }
+
+    private void publish(long key, long start, long end, long count, double sum, List<WindowResult> closed) {
+        WindowResult result = new WindowResult(TYPES[(int) (key >>> 32)], sourceNames.get((int) key),
+                start, end, count, sum);
+        latest.put(key, result);
+        closed.add(result);
+    }
+
+    private void emit(List<WindowResult> closed) {
+        EventSystem sink = resultSink;
+        if (sink == null || closed.isEmpty()) return;
+
+        for (WindowResult result : closed) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("aggregator", name);
+            data.put("type", result.type().name());
+            data.put("windowStart", result.windowStart());
+            data.put("windowEnd", result.windowEnd());
+            data.put("count", result.count());
+            data.put("sum", result.sum());
+            sink.publishEvent(new Event(EventType.WINDOW_AGGREGATE, result.source(), data));
+        }
+    }
+
+    private double valueOf(Event event) {
+        if (valueField == null) return 0;
+        return event.getData().get(valueField) instanceof Number number ? number.doubleValue() : 0;
+    }
+
+    private int idOf(String source) {
+        Integer id = sourceIds.get(source);
+        if (id == null) {
+            id = sourceNames.size();
+            sourceNames.add(source);
+            sourceIds.put(source, id);
+        }
+        return id;
+    }
+
+    private long paneStart(long timestamp) {
+        return Math.floorDiv(timestamp, window.paneMillis()) * window.paneMillis();
+    }
+
+    private static long key(EventType type, int sourceId) {
+        return ((long) type.ordinal() << 32) | sourceId;
+    }
+}
@@ -1,7 +1,8 @@
+package com.fatty.smarthome.core;
+
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.List;
-import java.util.concurrent.locks.Condition;
 
 public class AutomationRuleConfig implements Serializable {
     @Serial
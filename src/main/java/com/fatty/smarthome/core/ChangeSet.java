@@ -0,0 +1,96 @@
+package com.fatty.smarthome.core;
+
+import com.fatty.smarthome.devices.SmartDevice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The devices an AutomationRule actually changed, with their status before and after.
+ *
+ * visit() runs the rule over a device list and keeps only the devices whose status
+ * differs afterwards, so callers persist and log just those. Large lists are split
+ * into partitions that are visited in parallel; the rule must then be safe to call
+ * for different devices at the same time (LightAutomationRule is, it keeps no state).
+ */
+public final class ChangeSet {
+    // Below this many devices the partitions are not worth the threads
+    public static final int PARALLEL_THRESHOLD = 1000;
+    private static final int PARTITION_SIZE = 256;
+
+    public record Change(SmartDevice device, String before, String after) {}
+
+    private final List<Change> changes;
+    private final int visited;
+
+    private ChangeSet(List<Change> changes, int visited) {
+        this.changes = changes;
+        this.visited = visited;
+    }
+
+    /**
+     * Visit every device with the rule and collect the ones it changed, in list order
+     */
+    public static ChangeSet visit(List<? extends SmartDevice> devices, AutomationRule rule) {
+        int size = devices.size();
+        if (size < PARALLEL_THRESHOLD) {
+            return new ChangeSet(visit(devices, rule, 0, size), size);
+        }
+        int partitions = (size + PARTITION_SIZE - 1) / PARTITION_SIZE;
+        List<Change> changes = IntStream.range(0, partitions)
+                .parallel()
+                .mapToObj(p -> visit(devices, rule, p * PARTITION_SIZE, Math.min(size, (p + 1) * PARTITION_SIZE)))
+                .collect(ArrayList::new, List::addAll, List::addAll);
+        return new ChangeSet(changes, size);
+    }
+
+    private static List<Change> visit(List<? extends SmartDevice> devices, AutomationRule rule, int from, int to) {
+        List<Change> changes = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            SmartDevice device = devices.get(i);
+            String before = device.getStatus();
+            rule.visit(device);
+            String after = device.getStatus();
+            if (!before.equals(after)) {
+                changes.add(new Change(device, before, after));
+            }
+        }
+        return changes;
+    }
+
+    public List<Change> getChanges() {
+        return List.copyOf(changes);
+    }
+
+    public List<SmartDevice> getDevices() {
+        return changes.stream().map(Change::device).toList();
+    }
+
+    /**
+     * One log entry per change, for DatabaseService.saveDeviceChanges
+     */
+    public List<DatabaseService.EventLog> toEventLogs(String action) {
+        return changes.stream()
+                .map(change -> new DatabaseService.EventLog(change.device().getName(), action,
+                        change.before(), change.after(), null))
+                .toList();
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    public int size() {
+        return changes.size();
+    }
+
+    public int getVisited() {
+        return visited;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d devices changed", changes.size(), visited);
+    }
+}
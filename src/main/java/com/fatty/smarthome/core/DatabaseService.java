@@ -10,6 +10,7 @@ import com.fatty.smarthome.util.SmartHomeException;
 import java.io.*;
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -20,6 +21,9 @@ import java.util.Map;
 public class DatabaseService {
     private static final String LOG_FILE = "device_log.txt";
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // Same text form as CURRENT_TIMESTAMP (UTC), so datetime() comparisons still work
+    private static final DateTimeFormatter DB_TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneOffset.UTC);
 
     private  static DatabaseService instance;
 
@@ -86,18 +90,33 @@ public class DatabaseService {
      */
     @SuppressWarnings("SqlResolve")
     public void saveAllDevices(List<SmartDevice> devices) throws SmartHomeException {
-        Connection conn = null;
-        try {
-            conn = SQLiteConnector.connect();
-            conn.setAutoCommit(false); // Start transaction
-
+        inTransaction("Failed to save devices", conn -> {
             for (SmartDevice device : devices) {
                 saveDeviceInTransaction(conn, device);
             }
+        });
+        System.out.println("✅ Saved " + devices.size() + " devices to database");
+    }
 
-            conn.commit(); // Commit all changes at once
-            System.out.println("✅ Saved " + devices.size() + " devices to database");
+    /**
+     * Work done on one connection inside a transaction
+     */
+    @FunctionalInterface
+    private interface TransactionWork {
+        void run(Connection conn) throws SQLException;
+    }
 
+    /**
+     * Run the work in one transaction: committed if it completes, rolled back if a statement fails
+     * @param failure start of the SmartHomeException message on failure
+     */
+    private void inTransaction(String failure, TransactionWork work) throws SmartHomeException {
+        Connection conn = null;
+        try {
+            conn = SQLiteConnector.connect();
+            conn.setAutoCommit(false); // Start transaction
+            work.run(conn);
+            conn.commit();
         } catch (SQLException e) {
             if (conn != null) {
                 try {
@@ -106,7 +125,7 @@ public class DatabaseService {
                     // Ignore rollback errors
                 }
             }
-            throw new SmartHomeException("Failed to save devices: " + e.getMessage());
+            throw new SmartHomeException(failure + ": " + e.getMessage());
         } finally {
             if (conn != null) {
                 try {
@@ -144,6 +163,35 @@ public class DatabaseService {
         }
     }
 
+    /**
+     * Save changed devices and their log entries in one transaction (one commit for a
+     * whole scene); nothing is written if any statement fails
+     */
+    @SuppressWarnings("SqlResolve")
+    public void saveDeviceChanges(List<SmartDevice> devices, List<EventLog> entries) throws SmartHomeException {
+        if (devices.isEmpty() && entries.isEmpty()) return;
+
+        String deviceSql = """
+            INSERT OR REPLACE INTO devices (name, type, status, value, location, last_updated)
+            VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP)
+            """;
+
+        inTransaction("Failed to save device changes", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(deviceSql)) {
+                for (SmartDevice device : devices) {
+                    pstmt.setString(1, device.getName());
+                    pstmt.setString(2, device.getClass().getSimpleName());
+                    pstmt.setString(3, device.isOn() ? "ON" : "OFF");
+                    pstmt.setInt(4, device instanceof Thermostat thermostat ? thermostat.getTemperature() : 0);
+                    pstmt.setString(5, device.getLocation() != null ? device.getLocation() : "Unknown");
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            insertLogs(conn, entries);
+        });
+    }
+
     /**
      * Load all devices
      */
@@ -231,6 +279,40 @@ public class DatabaseService {
         }
     }
 
+    /**
+     * Log many device actions in one transaction (one commit instead of one per row)
+     * @param entries log entries; an entry without a timestamp gets the DB default like logAction()
+     */
+    @SuppressWarnings("SqlResolve")
+    public void logActions(List<EventLog> entries) throws SmartHomeException {
+        if (entries.isEmpty()) return;
+        inTransaction("Failed to log actions", conn -> insertLogs(conn, entries));
+    }
+
+    /**
+     * Insert log entries as one JDBC batch on the caller's connection
+     */
+    @SuppressWarnings("SqlResolve")
+    private void insertLogs(Connection conn, List<EventLog> entries) throws SQLException {
+        String sql = """
+            INSERT INTO event_logs (device_name, action, old_value, new_value, timestamp)
+            VALUES (?, ?, ?, ?, COALESCE(?, CURRENT_TIMESTAMP))
+            """;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (EventLog entry : entries) {
+                pstmt.setString(1, entry.getDeviceName());
+                pstmt.setString(2, entry.getAction());
+                pstmt.setString(3, entry.getOldValue());
+                pstmt.setString(4, entry.getNewValue());
+                pstmt.setString(5, entry.getTimestamp() != null
+                        ? DB_TIMESTAMP.format(entry.getTimestamp().toInstant()) : null);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
     /**
      * Get device statistics (aggregation example)
      */
@@ -437,6 +519,73 @@ public class DatabaseService {
         }
     }
 
+    /**
+     * Load the active automation rules, oldest first
+     */
+    @SuppressWarnings("SqlResolve")
+    public List<StoredRule> loadAutomationRules() throws SmartHomeException {
+        List<StoredRule> rules = new ArrayList<>();
+        String sql = """
+            SELECT rule_name, trigger_device, trigger_condition, action_device, action_command
+            FROM automation_rules
+            WHERE is_active = 1
+            ORDER BY id
+            """;
+
+        try (Connection conn = SQLiteConnector.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            while (rs.next()) {
+                rules.add(new StoredRule(
+                        rs.getString("rule_name"),
+                        rs.getString("trigger_device"),
+                        rs.getString("trigger_condition"),
+                        rs.getString("action_device"),
+                        rs.getString("action_command")
+                ));
+            }
+
+        } catch (SQLException e) {
+            throw new SmartHomeException("Failed to load automation rules: " + e.getMessage());
+        }
+
+        return rules;
+    }
+
+    /**
+     * Version of the automation rules; changes whenever a rule is added, changed or removed
+     */
+    @SuppressWarnings("SqlResolve")
+    public long getAutomationRulesVersion() throws SmartHomeException {
+        String sql = "SELECT version FROM automation_rules_version WHERE id = 1";
+
+        try (Connection conn = SQLiteConnector.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong("version") : 0;
+        } catch (SQLException e) {
+            throw new SmartHomeException("Failed to read automation rules version: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deactivate the automation rules with this name
+     * @return number of rules deactivated
+     */
+    @SuppressWarnings("SqlResolve")
+    public int deactivateAutomationRule(String ruleName) throws SmartHomeException {
+        String sql = "UPDATE automation_rules SET is_active = 0 WHERE rule_name = ? AND is_active = 1";
+
+        try (Connection conn = SQLiteConnector.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, ruleName);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new SmartHomeException("Failed to deactivate automation rule: " + e.getMessage());
+        }
+    }
+
     // Add these methods to your existing DatabaseService class:
 
     /**
@@ -547,4 +696,31 @@ public class DatabaseService {
         }
     }
 
+    /**
+     * Row of the automation_rules table
+     */
+    public static class StoredRule {
+        private final String ruleName;
+        private final String triggerDevice;
+        private final String triggerCondition;
+        private final String actionDevice;
+        private final String actionCommand;
+
+        public StoredRule(String ruleName, String triggerDevice, String triggerCondition,
+                          String actionDevice, String actionCommand) {
+            this.ruleName = ruleName;
+            this.triggerDevice = triggerDevice;
+            this.triggerCondition = triggerCondition;
+            this.actionDevice = actionDevice;
+            this.actionCommand = actionCommand;
+        }
+
+        // Getters
+        public String getRuleName() { return ruleName; }
+        public String getTriggerDevice() { return triggerDevice; }
+        public String getTriggerCondition() { return triggerCondition; }
+        public String getActionDevice() { return actionDevice; }
+        public String getActionCommand() { return actionCommand; }
+    }
+
 }
@@ -72,13 +72,17 @@ public class DeviceManager<T extends SmartDevice & Controllable> {
         report.append("Security status: ").append(securityService.checkSecurity(devices));
         return report.toString();
     }
-    public void runAutomation(AutomationRule rule) throws SmartHomeException {
-        for (T device : devices) {
-            rule.visit(device);
-        }
-        for (T device : devices) {
-            dbService.saveDevice(device);
+    /**
+     * Apply the rule to every device and save only the devices it changed, together
+     * with their log entries, in one transaction
+     * @return what the rule changed
+     */
+    public ChangeSet runAutomation(AutomationRule rule) throws SmartHomeException {
+        ChangeSet changes = ChangeSet.visit(devices, rule);
+        if (!changes.isEmpty()) {
+            dbService.saveDeviceChanges(changes.getDevices(), changes.toEventLogs("AUTOMATION"));
         }
+        return changes;
     }
     public void clearLogFile() throws SmartHomeException {
         dbService.clearEventLogs();
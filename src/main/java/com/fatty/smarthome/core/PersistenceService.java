@@ -395,6 +395,16 @@ public class PersistenceService {
         }
     }
 
+    /**
+     * NEW METHOD: Load the active automation rules from the database
+     */
+    public List<DatabaseService.StoredRule> loadAutomationRules() throws SmartHomeException {
+        if (dbService != null) {
+            return dbService.loadAutomationRules();
+        }
+        return List.of();
+    }
+
     /**
      * NEW METHOD: Save power usage data
      */
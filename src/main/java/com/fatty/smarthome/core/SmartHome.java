@@ -34,8 +34,8 @@ public class SmartHome {
         return deviceManager.reportStatus();
     }
 
-    public void runAutomation(AutomationRule rule) throws SmartHomeException {
-        deviceManager.runAutomation(rule);
+    public ChangeSet runAutomation(AutomationRule rule) throws SmartHomeException {
+        return deviceManager.runAutomation(rule);
     }
 
     public void clearLogFile() throws SmartHomeException {
@@ -1,6 +1,7 @@
 package com.fatty.smarthome.gui;
 
 import com.fatty.smarthome.cli.ConcurrentCLICommands;
+import com.fatty.smarthome.concurrent.devices.DeviceTransaction;
 import com.fatty.smarthome.core.*;
 import com.fatty.smarthome.core.DeviceAnalytics;
 import com.fatty.smarthome.core.DeviceState;
@@ -948,23 +949,22 @@ public class SmartHomeGUI extends Application {
      */
     private void bulkOperation(boolean turnOn) {
         try {
-            List<SmartDevice> devices = facade.getDevices();
-            int count = 0;
-
-            for (SmartDevice device : devices) {
-                try {
-                    String command = turnOn ? "turnon" : "turnoff";
-                    facade.smartHomeAccess(command, device.getName(), "");
-                    count++;
-                } catch (SmartHomeException e) {
-                    log("Failed to toggle " + device.getName() + ": " + e.getMessage());
+            // One transaction: all devices change, and are saved in one commit, or none do
+            DeviceTransaction transaction = DeviceTransaction.on(facade, turnOn ? "All on" : "All off");
+            for (SmartDevice device : facade.getDevices()) {
+                if (turnOn) {
+                    transaction.turnOn(device.getName());
+                } else {
+                    transaction.turnOff(device.getName());
                 }
             }
+            DeviceTransaction.Result result = transaction.commit();
 
-            log("Bulk operation completed: " + count + " devices " + (turnOn ? "turned ON" : "turned OFF"));
+            log("Bulk operation completed: " + result.changedDevices().size() + " devices " + (turnOn ? "turned ON" : "turned OFF"));
             updateDeviceTable();
             updateStatus("Bulk operation completed");
         } catch (Exception e) {
+            updateDeviceTable();
             showError("Bulk Operation Failed", e.getMessage());
         }
     }
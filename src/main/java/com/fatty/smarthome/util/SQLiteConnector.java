@@ -7,11 +7,13 @@ import java.sql.Statement;
 
 public class SQLiteConnector {
     private final static String URL = "jdbc:sqlite:databasesmart.db";
+    // Points the connector at another database, such as a scratch file for tests and benchmarks
+    public static final String URL_PROPERTY = "smarthome.db.url";
 
     public static Connection connect() {
         Connection conn = null;
         try {
-            conn = DriverManager.getConnection(URL);
+            conn = DriverManager.getConnection(System.getProperty(URL_PROPERTY, URL));
             // Removed the print statement to reduce verbosity
         } catch (SQLException e) {
             System.err.println("❌ Failed to connect to SQLite database: " + e.getMessage());
@@ -20,6 +22,30 @@ public class SQLiteConnector {
         return conn;
     }
 
+    // Version counter bumped by triggers on every change to automation_rules, so rule
+    // loaders can poll one row instead of re-reading the rules
+    private static final String[] AUTOMATION_RULES_VERSION_SQL = {
+            """
+            CREATE TABLE IF NOT EXISTS automation_rules_version (
+                id INTEGER PRIMARY KEY CHECK (id = 1),
+                version INTEGER NOT NULL
+            );
+            """,
+            "INSERT OR IGNORE INTO automation_rules_version (id, version) VALUES (1, 0);",
+            """
+            CREATE TRIGGER IF NOT EXISTS automation_rules_inserted AFTER INSERT ON automation_rules
+            BEGIN UPDATE automation_rules_version SET version = version + 1 WHERE id = 1; END;
+            """,
+            """
+            CREATE TRIGGER IF NOT EXISTS automation_rules_updated AFTER UPDATE ON automation_rules
+            BEGIN UPDATE automation_rules_version SET version = version + 1 WHERE id = 1; END;
+            """,
+            """
+            CREATE TRIGGER IF NOT EXISTS automation_rules_deleted AFTER DELETE ON automation_rules
+            BEGIN UPDATE automation_rules_version SET version = version + 1 WHERE id = 1; END;
+            """
+    };
+
     /**
      * Create all tables needed for the Smart Home system
      */
@@ -91,6 +117,9 @@ public class SQLiteConnector {
                 );
                 """;
             stmt.execute(automationRulesSql);
+            for (String versionSql : AUTOMATION_RULES_VERSION_SQL) {
+                stmt.execute(versionSql);
+            }
             System.out.println("✅ Automation rules table created");
 
             // Create indexes
@@ -214,6 +243,9 @@ public class SQLiteConnector {
         try (Connection conn = connect();
              Statement stmt = conn.createStatement()) {
             stmt.execute(sql);
+            for (String versionSql : AUTOMATION_RULES_VERSION_SQL) {
+                stmt.execute(versionSql);
+            }
             System.out.println("✅ Automation rules table created");
         } catch (SQLException e) {
             System.err.println("❌ Automation rules table creation failed: " + e.getMessage());
@@ -1,4 +1,743 @@
 package com.fatty.smarthome.concurrent.test.automation;
 
+import com.fatty.smarthome.concurrent.automation.ActionBatch;
+import com.fatty.smarthome.concurrent.automation.AutomationEngine;
+import com.fatty.smarthome.concurrent.automation.ConcurrentRule;
+import com.fatty.smarthome.concurrent.automation.DeviceSelector;
+import com.fatty.smarthome.concurrent.automation.DeviceSnapshot;
+import com.fatty.smarthome.concurrent.automation.RuleTrigger;
+import com.fatty.smarthome.concurrent.automation.SecurityRule;
+import com.fatty.smarthome.concurrent.automation.SnapshotRule;
+import com.fatty.smarthome.concurrent.automation.TemperatureRule;
+import com.fatty.smarthome.concurrent.devices.ConcurrentLight;
+import com.fatty.smarthome.concurrent.devices.ConcurrentThermostat;
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventListener;
+import com.fatty.smarthome.concurrent.events.EventPayload;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.devices.Light;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.devices.Thermostat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class AutomationEngineTest {
+    private EventSystem eventSystem;
+    private AutomationEngine engine;
+    private ConcurrentLight light;
+
+    /**
+     * Counts its executions; runs whenever triggered
+     */
+    private static class CountingRule implements ConcurrentRule {
+        final String name;
+        final List<RuleTrigger> triggers;
+        final AtomicInteger executions = new AtomicInteger();
+        DeviceSelector inputs = DeviceSelector.ALL;
+        DeviceSelector outputs;
+        boolean changeDriven;
+        int priority = 1;
+        long budgetMillis = 1000;
+        Consumer<List<SmartDevice>> action = devices -> { };
+        volatile List<SmartDevice> lastDevices;
+        Set<String> emits = Set.of();
+        volatile Emitter emitter;
+
+        CountingRule(String name, RuleTrigger... triggers) {
+            this.name = name;
+            this.triggers = List.of(triggers);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean shouldExecute() {
+            return true;
+        }
+
+        @Override
+        public void execute(List<SmartDevice> devices) {
+            lastDevices = devices;
+            executions.incrementAndGet();
+            action.accept(devices);
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public List<RuleTrigger> getTriggers() {
+            return triggers;
+        }
+
+        @Override
+        public DeviceSelector getInputs() {
+            return inputs;
+        }
+
+        @Override
+        public DeviceSelector getOutputs() {
+            return outputs != null ? outputs : inputs;
+        }
+
+        @Override
+        public boolean isChangeDriven() {
+            return changeDriven;
+        }
+
+        @Override
+        public long getTimeBudgetMillis() {
+            return budgetMillis;
+        }
+
+        @Override
+        public Set<String> getEmits() {
+            return emits;
+        }
+
+        @Override
+        public void setEmitter(Emitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        eventSystem = new EventSystem(2);
+        eventSystem.start();
+        light = new ConcurrentLight("HallLight");
+        engine = new AutomationEngine(() -> List.of(light), Clock.systemDefaultZone());
+        engine.attach(eventSystem);
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.stop();
+        eventSystem.stop();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean(), "Condition not met within 5s");
+    }
+
+    private static Event motion(String camera) {
+        return new Event(EventType.MOTION_DETECTED, camera, new EventPayload.Motion(camera, "Porch", 0L));
+    }
+
+    @Test
+    void testMotionEventTriggersSecurityRuleWithoutPolling() throws Exception {
+        engine.addRule(new SecurityRule("Security Response"));
+        engine.start();
+        Thread.sleep(50);
+        assertFalse(light.isOn(), "Nothing runs until an event arrives");
+
+        long start = System.nanoTime();
+        eventSystem.publishEvent(motion("PorchCam"));
+        waitFor(light::isOn);
+        long reactionMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(reactionMillis < 1_000, "Reacted in " + reactionMillis + " ms, well before any sweep");
+        assertTrue(engine.getStatus().contains("Fallback sweep: off"));
+        assertTrue(engine.getStatus().contains("1 executions"));
+    }
+
+    @Test
+    void testOnlyAffectedRulesAreEvaluated() throws Exception {
+        CountingRule porch = new CountingRule("porch", RuleTrigger.on(EventType.MOTION_DETECTED, "PorchCam"));
+        CountingRule anyMotion = new CountingRule("motion", RuleTrigger.on(EventType.MOTION_DETECTED));
+        CountingRule temperature = new CountingRule("temperature", RuleTrigger.on(EventType.TEMPERATURE_ALERT));
+        CountingRule untriggered = new CountingRule("untriggered");
+        engine.addRule(porch);
+        engine.addRule(anyMotion);
+        engine.addRule(temperature);
+        engine.addRule(untriggered);
+        engine.start();
+
+        eventSystem.publishEvent(motion("GarageCam"));
+        waitFor(() -> anyMotion.executions.get() == 1);
+        eventSystem.publishEvent(motion("PorchCam"));
+        waitFor(() -> porch.executions.get() == 1 && anyMotion.executions.get() == 2);
+
+        Thread.sleep(100);
+        assertEquals(1, porch.executions.get());
+        assertEquals(0, temperature.executions.get());
+        assertEquals(0, untriggered.executions.get(), "No sweep configured");
+    }
+
+    @Test
+    void testTimedTriggersAndFallbackSweep() throws Exception {
+        CountingRule periodic = new CountingRule("periodic", RuleTrigger.every(Duration.ofMillis(20)));
+        CountingRule untriggered = new CountingRule("untriggered");
+        engine.addRule(periodic);
+        engine.addRule(untriggered);
+        engine.setFallbackSweep(Duration.ofMillis(50));
+        engine.start();
+
+        waitFor(() -> periodic.executions.get() >= 3);
+        waitFor(() -> untriggered.executions.get() >= 2);
+
+        engine.setFallbackSweep(null);
+        Thread.sleep(100);
+        int swept = untriggered.executions.get();
+        Thread.sleep(150);
+        assertEquals(swept, untriggered.executions.get(), "Sweep is off again");
+    }
+
+    @Test
+    void testBurstIsCoalesced() throws Exception {
+        CountingRule rule = new CountingRule("motion", RuleTrigger.on(EventType.MOTION_DETECTED));
+        engine.addRule(rule);
+        engine.start();
+
+        for (int i = 0; i < 500; i++) {
+            eventSystem.publishEvent(motion("Cam" + i));
+        }
+        waitFor(() -> engine.getStatus().contains("500 event triggered"));
+        Thread.sleep(100);
+        int executions = rule.executions.get();
+        assertTrue(executions >= 1 && executions <= 500, "Executions: " + executions);
+    }
+
+    @Test
+    void testRulesOnlySeeTheirInputs() {
+        Thermostat thermostat = new Thermostat("LivingThermo");
+        Light hallLight = new Light("HallLight");
+        List<SmartDevice> devices = List.of(thermostat, hallLight, light);
+        AutomationEngine sweepOnly = new AutomationEngine(() -> devices, Clock.systemDefaultZone());
+        CountingRule thermostats = new CountingRule("thermostats");
+        thermostats.inputs = DeviceSelector.types(Thermostat.class);
+        CountingRule lights = new CountingRule("lights");
+        lights.inputs = new DeviceSelector(Set.of(ConcurrentLight.class), Set.of("HallLight"));
+        CountingRule everything = new CountingRule("everything");
+        sweepOnly.addRule(thermostats);
+        sweepOnly.addRule(lights);
+        sweepOnly.addRule(everything);
+
+        sweepOnly.evaluateNow();
+        assertEquals(List.of(thermostat), thermostats.lastDevices);
+        assertEquals(List.of(hallLight, light), lights.lastDevices);
+        assertEquals(devices, everything.lastDevices);
+        sweepOnly.stop();
+    }
+
+    @Test
+    void testChangeDrivenRuleRunsOnlyAfterItsInputsChange() throws Exception {
+        Thermostat thermostat = new Thermostat("LivingThermo");
+        Light hallLight = new Light("HallLight");
+        List<SmartDevice> devices = new CopyOnWriteArrayList<>(List.of(thermostat, hallLight));
+        AutomationEngine sweepOnly = new AutomationEngine(() -> devices, Clock.systemDefaultZone());
+        CountingRule comfort = new CountingRule("comfort");
+        comfort.inputs = DeviceSelector.types(Thermostat.class);
+        comfort.changeDriven = true;
+        sweepOnly.addRule(comfort);
+
+        sweepOnly.evaluateNow();
+        sweepOnly.evaluateNow();
+        assertEquals(1, comfort.executions.get(), "Nothing changed since the first run");
+
+        hallLight.turnOn();
+        sweepOnly.evaluateNow();
+        assertEquals(1, comfort.executions.get(), "The light is not an input");
+
+        thermostat.setTemperature(25);
+        sweepOnly.evaluateNow();
+        assertEquals(2, comfort.executions.get());
+
+        Thermostat bedroom = new Thermostat("BedroomThermo");
+        devices.add(bedroom);
+        sweepOnly.evaluateNow();
+        assertEquals(3, comfort.executions.get(), "A new input device counts as a change");
+        assertEquals(List.of(thermostat, bedroom), comfort.lastDevices);
+        assertTrue(sweepOnly.getStatus().contains("2 evaluations skipped"));
+        sweepOnly.stop();
+    }
+
+    @Test
+    void testUptimeIsNotAChangeForChangeDrivenRules() throws Exception {
+        ConcurrentThermostat thermostat = new ConcurrentThermostat("LivingThermo");
+        ConcurrentLight porch = new ConcurrentLight("PorchLight");
+        AutomationEngine sweepOnly = new AutomationEngine(() -> List.of(thermostat, porch), Clock.systemDefaultZone());
+        CountingRule comfort = new CountingRule("comfort");
+        comfort.changeDriven = true;
+        sweepOnly.addRule(comfort);
+
+        sweepOnly.evaluateNow();
+        // Long enough for the uptime in getStatus() to move
+        sleep(250);
+        sweepOnly.evaluateNow();
+        assertEquals(1, comfort.executions.get(), "Only the uptime moved");
+
+        porch.setBrightness(40);
+        sweepOnly.evaluateNow();
+        assertEquals(2, comfort.executions.get());
+
+        thermostat.setTemperature(25);
+        sweepOnly.evaluateNow();
+        assertEquals(3, comfort.executions.get());
+        assertTrue(sweepOnly.getStatus().contains("1 evaluations skipped"), sweepOnly.getStatus());
+        sweepOnly.stop();
+    }
+
+    @Test
+    void testDeviceEventsMarkChangeDrivenReaders() throws Exception {
+        CountingRule comfort = new CountingRule("comfort", RuleTrigger.on(EventType.DEVICE_STATE_CHANGED));
+        comfort.inputs = DeviceSelector.devices("HallLight");
+        comfort.changeDriven = true;
+        engine.addRule(comfort);
+        engine.start();
+
+        eventSystem.publishEvent(new Event(EventType.DEVICE_STATE_CHANGED, "HallLight",
+                new EventPayload.StateChange("HallLight", "ConcurrentLight", "ON", 1, 0L)));
+        waitFor(() -> comfort.executions.get() == 1);
+        assertEquals(List.of(light), comfort.lastDevices);
+
+        // Triggered by a device it does not read: evaluated, but skipped
+        eventSystem.publishEvent(new Event(EventType.DEVICE_STATE_CHANGED, "PorchLight",
+                new EventPayload.StateChange("PorchLight", "ConcurrentLight", "ON", 1, 0L)));
+        waitFor(() -> engine.getStatus().contains("1 evaluations skipped"));
+        assertEquals(1, comfort.executions.get());
+    }
+
+    @Test
+    void testRulesWritingDifferentDevicesRunInParallel() {
+        int ruleCount = 8;
+        List<SmartDevice> lights = new ArrayList<>();
+        for (int i = 0; i < ruleCount; i++) {
+            lights.add(new ConcurrentLight("Light-" + i));
+        }
+        AutomationEngine sweepOnly = new AutomationEngine(() -> lights, Clock.systemDefaultZone());
+        for (int i = 0; i < ruleCount; i++) {
+            CountingRule rule = new CountingRule("rule-" + i);
+            rule.inputs = DeviceSelector.devices("Light-" + i);
+            rule.action = devices -> sleep(100);
+            sweepOnly.addRule(rule);
+        }
+
+        long start = System.nanoTime();
+        sweepOnly.evaluateNow();
+        long parallelMillis = (System.nanoTime() - start) / 1_000_000;
+        double speedup = ruleCount * 100.0 / parallelMillis;
+        System.out.printf("%d disjoint rules of 100 ms in %d ms, speedup %.1fx%n", ruleCount, parallelMillis, speedup);
+        assertTrue(speedup > 3, "Speedup " + speedup);
+        assertTrue(sweepOnly.getStatus().contains("1 rounds, 0 write conflicts"));
+        sweepOnly.stop();
+    }
+
+    @Test
+    void testWriteConflictsResolvedByPriority() throws Exception {
+        ConcurrentLight porch = new ConcurrentLight("PorchLight");
+        for (AutomationEngine.ConflictPolicy policy : AutomationEngine.ConflictPolicy.values()) {
+            for (int repeat = 0; repeat < 10; repeat++) {
+                AutomationEngine sweepOnly = new AutomationEngine(() -> List.of(porch), Clock.systemDefaultZone());
+                sweepOnly.setConflictPolicy(policy);
+                List<String> order = new CopyOnWriteArrayList<>();
+
+                // Registered first, so only priority can put it behind
+                CountingRule dim = new CountingRule("dim");
+                dim.inputs = DeviceSelector.devices("PorchLight");
+                dim.action = devices -> {
+                    order.add("dim");
+                    setBrightness(porch, 10);
+                };
+                CountingRule bright = new CountingRule("bright");
+                bright.inputs = DeviceSelector.devices("PorchLight");
+                bright.priority = 10;
+                bright.action = devices -> {
+                    sleep(5);
+                    order.add("bright");
+                    setBrightness(porch, 100);
+                };
+                sweepOnly.addRule(dim);
+                sweepOnly.addRule(bright);
+
+                sweepOnly.evaluateNow();
+                if (policy == AutomationEngine.ConflictPolicy.RETRY) {
+                    assertEquals(List.of("bright", "dim"), order, "Loser runs after the winner");
+                    assertEquals(10, porch.getBrightness());
+                } else {
+                    assertEquals(List.of("bright"), order, "Loser is dropped");
+                    assertEquals(100, porch.getBrightness());
+                }
+                assertTrue(sweepOnly.getStatus().contains("1 write conflicts"));
+                sweepOnly.stop();
+            }
+        }
+    }
+
+    @Test
+    void testPerRuleStats() {
+        ConcurrentLight porch = new ConcurrentLight("PorchLight");
+        AutomationEngine sweepOnly = new AutomationEngine(() -> List.of(light, porch), Clock.systemDefaultZone());
+        CountingRule toggle = new CountingRule("toggle");
+        toggle.inputs = DeviceSelector.devices("PorchLight");
+        toggle.action = devices -> {
+            sleep(2);
+            if (porch.isOn()) porch.turnOff(); else porch.turnOn();
+        };
+        CountingRule failing = new CountingRule("failing");
+        failing.inputs = DeviceSelector.devices("HallLight");
+        failing.action = devices -> {
+            throw new IllegalStateException("broken");
+        };
+        sweepOnly.addRule(toggle);
+        sweepOnly.addRule(failing);
+
+        for (int i = 0; i < 5; i++) {
+            sweepOnly.evaluateNow();
+        }
+
+        List<AutomationEngine.RuleStats> stats = sweepOnly.getRuleStats();
+        assertEquals("toggle", stats.get(0).name(), "slowest rule first");
+        AutomationEngine.RuleStats toggled = stats.get(0);
+        assertEquals(5, toggled.executions());
+        assertEquals(0, toggled.failures());
+        assertEquals(5, toggled.devicesTouched());
+        assertEquals(5, toggled.latency().count());
+        assertTrue(toggled.latency().max() >= 2_000_000);
+        AutomationEngine.RuleStats failed = stats.get(1);
+        assertEquals(5, failed.executions());
+        assertEquals(5, failed.failures());
+        assertEquals(0, failed.devicesTouched());
+        assertTrue(sweepOnly.getStatus().contains("toggle"));
+        sweepOnly.stop();
+    }
+
+    @Test
+    void testSlowRuleThatChangesNothingTouchesNoDevices() {
+        AutomationEngine sweepOnly = new AutomationEngine(() -> List.of(light), Clock.systemDefaultZone());
+        CountingRule idle = new CountingRule("idle");
+        // Slower than the resolution of the uptime in getStatus()
+        idle.action = devices -> sleep(150);
+        sweepOnly.addRule(idle);
+
+        sweepOnly.evaluateNow();
+        sweepOnly.evaluateNow();
+
+        AutomationEngine.RuleStats stats = find(sweepOnly, "idle");
+        assertEquals(2, stats.executions());
+        assertEquals(0, stats.devicesTouched());
+        sweepOnly.stop();
+    }
+
+    @Test
+    void testRunawayRuleIsCancelledAndQuarantined() throws Exception {
+        AutomationEngine sweepOnly = new AutomationEngine(() -> List.of(light), Clock.systemDefaultZone());
+        ConcurrentLight porch = new ConcurrentLight("PorchLight");
+        CountingRule runaway = new CountingRule("runaway");
+        runaway.budgetMillis = 50;
+        runaway.action = devices -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                sleep(5);
+            }
+        };
+        CountingRule healthy = new CountingRule("healthy");
+        healthy.inputs = DeviceSelector.devices("PorchLight");
+        sweepOnly.addRule(runaway);
+        sweepOnly.addRule(healthy);
+
+        for (int round = 1; round <= 3; round++) {
+            long start = System.nanoTime();
+            sweepOnly.evaluateNow();
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(millis < 500, "round waited " + millis + " ms for a 50 ms budget");
+            assertEquals(round, healthy.executions.get(), "other rules keep running");
+            // Until the interrupt gets through, the next sweep would hold the runaway back
+            waitFor(() -> sweepOnly.getStatus().contains("0 overran and still running"));
+        }
+
+        AutomationEngine.RuleStats stats = find(sweepOnly, "runaway");
+        assertEquals(3, stats.overruns());
+        assertTrue(stats.quarantined());
+        assertTrue(sweepOnly.getStatus().contains("3 overruns, 1 quarantined now"));
+
+        // Quarantined: skipped until released
+        sweepOnly.evaluateNow();
+        assertEquals(3, runaway.executions.get());
+        assertFalse(sweepOnly.releaseQuarantine("healthy"), "not quarantined");
+        assertTrue(sweepOnly.setTimeBudget("runaway", Duration.ofMillis(20)));
+        assertTrue(sweepOnly.releaseQuarantine("RUNAWAY"));
+        runaway.action = devices -> { };
+        sweepOnly.evaluateNow();
+        assertEquals(4, runaway.executions.get());
+        stats = find(sweepOnly, "runaway");
+        assertFalse(stats.quarantined());
+        assertEquals(20, stats.budgetMillis());
+        assertThrows(IllegalArgumentException.class, () -> sweepOnly.setTimeBudget("runaway", Duration.ZERO));
+        sweepOnly.stop();
+    }
+
+    @Test
+    void testOverrunningRuleKeepsItsDevicesUntilItStops() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountingRule stubborn = new CountingRule("stubborn");
+        stubborn.priority = 10;
+        stubborn.budgetMillis = 50;
+        stubborn.action = devices -> {
+            // Ignores its interrupt
+            while (true) {
+                try {
+                    release.await();
+                    return;
+                } catch (InterruptedException ignored) {
+                }
+            }
+        };
+        CountingRule dimmer = new CountingRule("dimmer");
+        dimmer.inputs = DeviceSelector.devices("HallLight");
+        dimmer.action = devices -> setBrightness(light, 30);
+        engine.addRule(stubborn);
+        engine.addRule(dimmer);
+        engine.start();
+
+        // The dimmer loses the first round, then waits for the stubborn rule to really stop
+        engine.evaluateNow();
+        assertEquals(0, dimmer.executions.get(), "the overrunning rule still holds the light");
+        assertTrue(engine.getStatus().contains("1 overran and still running, 1 evaluations held behind them"),
+                engine.getStatus());
+        engine.evaluateNow();
+        assertEquals(0, dimmer.executions.get());
+        assertEquals(1, stubborn.executions.get(), "not started again while still running");
+
+        release.countDown();
+        waitFor(() -> dimmer.executions.get() == 1);
+        assertEquals(30, light.getBrightness());
+        waitFor(() -> engine.getStatus().contains("0 overran and still running"));
+    }
+
+    @Test
+    void testSnapshotRulesSeeOneStateAndApplyInBatch() {
+        ConcurrentLight porch = new ConcurrentLight("PorchLight");
+        ConcurrentLight garden = new ConcurrentLight("GardenLight");
+        Thermostat thermostat = new Thermostat("LivingThermo");
+        thermostat.turnOn();
+        thermostat.setTemperature(30);
+        AutomationEngine sweepOnly = new AutomationEngine(() -> List.of(light, porch, garden, thermostat),
+                Clock.systemDefaultZone());
+
+        // Turns the porch light on; reads only the porch
+        AtomicInteger porchSeenOn = new AtomicInteger(-1);
+        SnapshotRule porchOn = snapshotRule("porchOn", DeviceSelector.devices("PorchLight"), (devices, actions) -> {
+            assertEquals(1, devices.size());
+            assertEquals(-1, devices.indexOf("GardenLight"), "outside the rule's inputs");
+            porchSeenOn.set(devices.isOn(0) ? 1 : 0);
+            actions.turnOn(devices.indexOf("PorchLight"));
+        });
+        // Follows the porch light; runs in the same round since it writes another device
+        AtomicInteger gardenSawPorch = new AtomicInteger(-1);
+        SnapshotRule follow = snapshotRule("follow", DeviceSelector.devices("PorchLight", "GardenLight"),
+                (devices, actions) -> {
+                    int porchIndex = devices.indexOf("PorchLight");
+                    gardenSawPorch.set(devices.isOn(porchIndex) ? 1 : 0);
+                    if (devices.isOn(porchIndex)) {
+                        actions.turnOn(devices.indexOf("GardenLight"));
+                    }
+                    // Not among its outputs: refused
+                    actions.turnOff(porchIndex);
+                }, DeviceSelector.devices("GardenLight"));
+        sweepOnly.addRule(porchOn);
+        sweepOnly.addRule(follow);
+        sweepOnly.addRule(new TemperatureRule("Comfort", 22, 2));
+
+        sweepOnly.evaluateNow();
+        assertEquals(0, porchSeenOn.get());
+        assertEquals(0, gardenSawPorch.get(), "both rules read the state from the start of the round");
+        assertTrue(porch.isOn(), "the refused turnOff was not applied");
+        assertFalse(garden.isOn());
+        assertEquals(22, thermostat.getTemperature());
+        assertTrue(sweepOnly.getStatus().contains("1 taken, 2 actions applied in batches, 1 refused"),
+                sweepOnly.getStatus());
+        assertEquals(1, find(sweepOnly, "porchOn").devicesTouched());
+        assertEquals(1, find(sweepOnly, "Comfort").devicesTouched());
+
+        // Next pass sees the applied state
+        sweepOnly.evaluateNow();
+        assertEquals(1, gardenSawPorch.get());
+        assertTrue(garden.isOn());
+        sweepOnly.stop();
+    }
+
+    @Test
+    void testDerivedEventsChainRulesInOnePass() throws Exception {
+        ConcurrentLight porch = new ConcurrentLight("PorchLight");
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        CountingRule notify = new CountingRule("notify", RuleTrigger.derived("all-lights-on"));
+        notify.inputs = DeviceSelector.devices("HallLight");
+        notify.action = devices -> order.add("notify");
+
+        CountingRule allLights = new CountingRule("all-lights", RuleTrigger.derived("porch-lit"));
+        allLights.inputs = DeviceSelector.types(ConcurrentLight.class);
+        allLights.emits = Set.of("all-lights-on");
+        allLights.action = devices -> {
+            order.add("all-lights");
+            devices.forEach(SmartDevice::turnOn);
+            allLights.emitter.emit("all-lights-on", Map.of("count", devices.size()));
+        };
+
+        CountingRule intruder = new CountingRule("intruder", RuleTrigger.on(EventType.MOTION_DETECTED));
+        intruder.inputs = DeviceSelector.devices("PorchLight");
+        intruder.priority = 10;
+        intruder.emits = Set.of("porch-lit");
+        intruder.action = devices -> {
+            order.add("intruder");
+            porch.turnOn();
+            intruder.emitter.emit("porch-lit", Map.of());
+        };
+
+        // Registered consumers first: the graph, not the order of addRule, decides
+        AutomationEngine sweepOnly = new AutomationEngine(() -> List.of(porch, light), Clock.systemDefaultZone());
+        sweepOnly.addRule(notify);
+        sweepOnly.addRule(allLights);
+        sweepOnly.addRule(intruder);
+        assertEquals(List.of("all-lights"), sweepOnly.getDependencies().get("intruder"));
+        assertEquals(List.of("notify"), sweepOnly.getDependencies().get("all-lights"));
+
+        sweepOnly.evaluateNow();
+        assertEquals(List.of("intruder", "all-lights", "notify"), order, "upstream rules run first");
+        assertEquals(1, notify.executions.get());
+        assertEquals(1, allLights.executions.get());
+        assertTrue(light.isOn());
+        assertTrue(sweepOnly.getStatus().contains(
+                "Chaining: 2 derived events, 2 chained evaluations, 3 deferred behind upstream rules"),
+                sweepOnly.getStatus());
+        sweepOnly.stop();
+
+        // Event driven, without any sweep: the whole chain follows one motion event
+        light.turnOff();
+        porch.turnOff();
+        order.clear();
+        List<Event> derived = new CopyOnWriteArrayList<>();
+        eventSystem.subscribe(EventType.RULE_DERIVED, new EventListener() {
+            public void onEvent(Event event) {
+                derived.add(event);
+            }
+        });
+        engine.stop();
+        engine = new AutomationEngine(() -> List.of(porch, light), Clock.systemDefaultZone());
+        engine.attach(eventSystem);
+        engine.addRule(intruder);
+        engine.addRule(allLights);
+        engine.addRule(notify);
+        engine.start();
+        eventSystem.publishEvent(motion("PorchCam"));
+        waitFor(() -> order.size() == 3);
+        assertEquals(List.of("intruder", "all-lights", "notify"), order);
+        assertTrue(light.isOn());
+        waitFor(() -> derived.size() == 2);
+        // Published in chain order, but a shared event system may deliver them in either order
+        Map<String, Event> bySource = new HashMap<>();
+        derived.forEach(event -> bySource.put(event.getSource(), event));
+        assertEquals(Set.of("intruder", "all-lights"), bySource.keySet());
+        assertEquals(2, bySource.get("all-lights").getData().get("count"));
+    }
+
+    @Test
+    void testDependencyGraphIsCheckedAtRegistration() {
+        CountingRule a = new CountingRule("a", RuleTrigger.derived("y"));
+        a.emits = Set.of("x");
+        CountingRule b = new CountingRule("b", RuleTrigger.derived("x"));
+        b.emits = Set.of("y");
+        engine.addRule(a);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> engine.addRule(b));
+        assertTrue(e.getMessage().contains("a -> b -> a"), e.getMessage());
+
+        CountingRule self = new CountingRule("self", RuleTrigger.derived("z"));
+        self.emits = Set.of("z");
+        assertThrows(IllegalArgumentException.class, () -> engine.addRule(self));
+        assertEquals(1, engine.getRuleStats().size(), "rejected rules are not added");
+
+        engine.setMaxFanOut(2);
+        CountingRule producer = new CountingRule("producer");
+        producer.emits = Set.of("p");
+        engine.addRule(producer);
+        engine.addRule(new CountingRule("c1", RuleTrigger.derived("p")));
+        engine.addRule(new CountingRule("c2", RuleTrigger.derived("p")));
+        e = assertThrows(IllegalArgumentException.class,
+                () -> engine.addRule(new CountingRule("c3", RuleTrigger.derived("p"))));
+        assertTrue(e.getMessage().contains("producer would trigger 3 rules"), e.getMessage());
+        assertEquals(List.of("c1", "c2"), engine.getDependencies().get("producer"));
+
+        // Events a rule did not declare are refused at run time
+        CountingRule sneaky = new CountingRule("sneaky");
+        sneaky.action = devices -> sneaky.emitter.emit("p", Map.of());
+        engine.addRule(sneaky);
+        engine.evaluateNow();
+        assertTrue(engine.getStatus().contains("0 derived events"), engine.getStatus());
+        assertTrue(engine.getStatus().contains("1 refused (undeclared)"), engine.getStatus());
+    }
+
+    private static SnapshotRule snapshotRule(String name, DeviceSelector inputs,
+                                             BiConsumer<DeviceSnapshot, ActionBatch> body) {
+        return snapshotRule(name, inputs, body, inputs);
+    }
+
+    private static SnapshotRule snapshotRule(String name, DeviceSelector inputs,
+                                             BiConsumer<DeviceSnapshot, ActionBatch> body, DeviceSelector outputs) {
+        return new SnapshotRule() {
+            public String getName() { return name; }
+            public boolean shouldExecute() { return true; }
+            public int getPriority() { return 1; }
+            public boolean isEnabled() { return true; }
+            public DeviceSelector getInputs() { return inputs; }
+            public DeviceSelector getOutputs() { return outputs; }
+
+            public void evaluate(DeviceSnapshot devices, ActionBatch actions) {
+                body.accept(devices, actions);
+            }
+        };
+    }
+
+    private static AutomationEngine.RuleStats find(AutomationEngine engine, String name) {
+        return engine.getRuleStats().stream()
+                .filter(stats -> stats.name().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void setBrightness(ConcurrentLight light, int level) {
+        try {
+            light.setBrightness(level);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -1,4 +1,171 @@
 package com.fatty.smarthome.concurrent.test.automation;
 
+import com.fatty.smarthome.concurrent.automation.TemperatureRule;
+import com.fatty.smarthome.concurrent.automation.ThermostatController;
+import com.fatty.smarthome.concurrent.automation.TimeBasedRule;
+import com.fatty.smarthome.concurrent.devices.ConcurrentThermostat;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.replay.VirtualClock;
+import com.fatty.smarthome.concurrent.scheduling.SchedulerService;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class ConcurrentRulesTest {
+
+    @Test
+    void testTimeBasedRuleRunsOncePerDay() {
+        long start = LocalDateTime.of(2024, 1, 1, 6, 59, 30).toInstant(ZoneOffset.UTC).toEpochMilli();
+        VirtualClock clock = new VirtualClock(start, ZoneOffset.UTC);
+        AtomicInteger runs = new AtomicInteger();
+        TimeBasedRule rule = new TimeBasedRule("Morning", LocalTime.of(7, 0), runs::incrementAndGet);
+        rule.setClock(clock);
+
+        // Polled within the window: only the first poll of the day runs it
+        assertTrue(rule.shouldExecute());
+        rule.execute(List.of());
+        clock.advanceTo(start + 60_000);
+        assertFalse(rule.shouldExecute(), "already ran today");
+
+        clock.advanceTo(start + 86_400_000);
+        assertTrue(rule.shouldExecute(), "runs again the next day");
+
+        // On a scheduler: exactly once per day
+        clock = new VirtualClock(start, ZoneOffset.UTC);
+        TimeBasedRule scheduled = new TimeBasedRule("Evening", LocalTime.of(19, 0), runs::incrementAndGet);
+        SchedulerService scheduler = new SchedulerService("rules", clock, Runnable::run);
+        scheduled.schedule(scheduler);
+        runs.set(0);
+        for (long now = start; now <= start + 3 * 86_400_000L; now += 20_000) {
+            clock.advanceTo(now);
+            scheduler.advanceTo(now);
+        }
+        assertEquals(3, runs.get());
+        scheduler.close();
+    }
+
+    @Test
+    void testTimeBasedRuleAroundMidnight() {
+        long midnight = LocalDateTime.of(2024, 1, 2, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+        VirtualClock clock = new VirtualClock(midnight, ZoneOffset.UTC);
+        AtomicInteger runs = new AtomicInteger();
+        TimeBasedRule atMidnight = new TimeBasedRule("Midnight", LocalTime.MIDNIGHT, runs::incrementAndGet);
+        atMidnight.setClock(clock);
+        assertTrue(atMidnight.shouldExecute(), "due at exactly 00:00");
+        atMidnight.execute(List.of());
+        clock.advanceTo(midnight + 30_000);
+        assertFalse(atMidnight.shouldExecute(), "already ran for this midnight");
+        clock.advanceTo(midnight + 86_400_000L - 30_000);
+        assertTrue(atMidnight.shouldExecute(), "the next midnight's window opens the evening before");
+
+        // Run just before midnight: the window reaching into the next day does not run it again
+        clock = new VirtualClock(midnight - 60_000, ZoneOffset.UTC);
+        TimeBasedRule lateNight = new TimeBasedRule("LateNight", LocalTime.of(23, 59, 30), runs::incrementAndGet);
+        lateNight.setClock(clock);
+        assertTrue(lateNight.shouldExecute(), "due at 23:59");
+        clock.advanceTo(midnight - 20_000);
+        lateNight.execute(List.of());
+        clock.advanceTo(midnight + 15_000);
+        assertFalse(lateNight.shouldExecute(), "ran for yesterday's 23:59:30 already");
+        clock.advanceTo(midnight + 86_400_000L - 30_000);
+        assertTrue(lateNight.shouldExecute());
+        assertEquals(2, runs.get());
+    }
+
+    /**
+     * Runs a thermostat through a day of minute-by-minute drift under the rule
+     * @return setpoint writes, heating/cooling state changes and events published
+     */
+    private static long[] simulateDay(TemperatureRule rule, long seed) throws InterruptedException {
+        long start = LocalDateTime.of(2024, 1, 1, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+        VirtualClock clock = new VirtualClock(start, ZoneOffset.UTC);
+        rule.setClock(clock);
+        ConcurrentThermostat thermostat = new ConcurrentThermostat("Living", new Random(seed));
+        EventSystem events = new EventSystem(1);
+        events.start();
+        thermostat.setEventSystem(events);
+        thermostat.turnOn();
+
+        long stateChanges = 0;
+        String state = "IDLE";
+        for (int minute = 1; minute <= 24 * 60; minute++) {
+            clock.advanceTo(start + minute * 60_000L);
+            thermostat.simulateTemperatureDrift();
+            rule.execute(List.of(thermostat));
+            String now = thermostat.isHeating() ? "HEATING" : thermostat.isCooling() ? "COOLING" : "IDLE";
+            if (!now.equals(state)) stateChanges++;
+            state = now;
+        }
+        assertTrue(events.awaitIdle(5, TimeUnit.SECONDS));
+        long published = events.getMetricsSnapshot().totalPublished();
+        events.stop();
+        return new long[] { rule.getController().getChangeCount(), stateChanges, published };
+    }
+
+    @Test
+    void testThermostatControlReducesChangesOverADay() throws InterruptedException {
+        long[] immediate = new long[3];
+        long[] controlled = new long[3];
+        for (long seed = 1; seed <= 3; seed++) {
+            TemperatureRule naive = new TemperatureRule("Naive", 22,
+                    new ThermostatController(ThermostatController.Settings.immediate(1)));
+            TemperatureRule rule = new TemperatureRule("Comfort", 22,
+                    new ThermostatController(ThermostatController.Settings.hysteresis(1)));
+            long[] a = simulateDay(naive, seed);
+            long[] b = simulateDay(rule, seed);
+            immediate[0] += a[0];
+            immediate[1] += a[1];
+            immediate[2] += a[2];
+            controlled[0] += b[0];
+            controlled[1] += b[1];
+            controlled[2] += b[2];
+            if (seed == 3) System.out.println(rule.getController().getStatistics());
+        }
+        System.out.printf("Setpoint writes %d -> %d, heating/cooling changes %d -> %d, events %d -> %d%n",
+                immediate[0], controlled[0], immediate[1], controlled[1], immediate[2], controlled[2]);
+
+        assertTrue(controlled[0] * 3 < immediate[0], "far fewer writes");
+        assertTrue(controlled[1] * 2 < immediate[1], "far fewer state changes");
+        assertTrue(controlled[2] * 2 < immediate[2], "far fewer events");
+        // One correction per dwell at most
+        assertTrue(controlled[0] <= 3 * 24 * 60 / 15 + 3);
+    }
+
+    @Test
+    void testThermostatControllerSettings() {
+        ThermostatController controller = new ThermostatController(
+                new ThermostatController.Settings(1, Duration.ofMinutes(10), Duration.ofMinutes(2), 2));
+        controller.configure("Bedroom", ThermostatController.Settings.immediate(0));
+
+        // Inside the deadband nothing happens; outside it moves at most maxStep
+        assertEquals(ThermostatController.NO_CHANGE, controller.decide("Hall", 21, 22, 0));
+        assertEquals(20, controller.decide("Hall", 18, 22, 0));
+        assertEquals(ThermostatController.Mode.HEATING, controller.getMode("Hall"));
+        assertEquals(ThermostatController.NO_CHANGE, controller.decide("Hall", 20, 22, 60_000), "rate limited");
+        assertEquals(22, controller.decide("Hall", 20, 22, 120_000));
+
+        // Target reached: idle for the dwell time even if it drifts away again
+        assertEquals(ThermostatController.NO_CHANGE, controller.decide("Hall", 22, 22, 180_000));
+        assertEquals(ThermostatController.Mode.IDLE, controller.getMode("Hall"));
+        assertEquals(ThermostatController.NO_CHANGE, controller.decide("Hall", 25, 22, 240_000));
+        assertEquals(23, controller.decide("Hall", 25, 22, 180_000 + 600_000));
+        assertEquals(ThermostatController.Mode.COOLING, controller.getMode("Hall"));
+
+        // Per-thermostat settings
+        assertEquals(23, controller.decide("Bedroom", 22, 23, 0));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new ThermostatController.Settings(-1, Duration.ZERO, Duration.ZERO, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ThermostatController.Settings(1, Duration.ofMinutes(-1), Duration.ZERO, 0));
+    }
 }
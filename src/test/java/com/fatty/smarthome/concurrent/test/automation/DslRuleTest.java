@@ -0,0 +1,171 @@
+package com.fatty.smarthome.concurrent.test.automation;
+
+import com.fatty.smarthome.concurrent.automation.ConcurrentRule;
+import com.fatty.smarthome.concurrent.automation.DeviceSelector;
+import com.fatty.smarthome.concurrent.automation.SecurityRule;
+import com.fatty.smarthome.concurrent.automation.dsl.DslRule;
+import com.fatty.smarthome.concurrent.automation.dsl.RuleParser;
+import com.fatty.smarthome.concurrent.automation.dsl.RuleSyntax;
+import com.fatty.smarthome.concurrent.devices.ConcurrentLight;
+import com.fatty.smarthome.devices.Light;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.devices.Thermostat;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DslRuleTest {
+
+    @Test
+    void testParse() {
+        RuleSyntax.Rule rule = RuleParser.parse(
+                "WHEN Kitchen_Thermostat.temperature > 26 and (Hall_Light is off or not Fan.brightness <= 10) "
+                        + "then Kitchen_Fan on, \"Hall Lamp\".brightness = 40");
+
+        RuleSyntax.And and = assertInstanceOf(RuleSyntax.And.class, rule.condition());
+        assertEquals(new RuleSyntax.Compare("Kitchen_Thermostat", "temperature", RuleSyntax.Operator.GREATER, 26),
+                and.operands().get(0));
+        RuleSyntax.Or or = assertInstanceOf(RuleSyntax.Or.class, and.operands().get(1));
+        assertEquals(new RuleSyntax.IsOn("Hall_Light", false), or.operands().get(0));
+        assertInstanceOf(RuleSyntax.Not.class, or.operands().get(1));
+
+        assertEquals(List.of(
+                new RuleSyntax.Action("Kitchen_Fan", RuleSyntax.Command.ON, null, 0),
+                new RuleSyntax.Action("Hall Lamp", RuleSyntax.Command.SET, "brightness", 40)), rule.actions());
+        assertEquals(Set.of("Kitchen_Thermostat", "Hall_Light", "Fan"), rule.condition().devices());
+        assertEquals("Kitchen_Thermostat.temperature > 26 and (Hall_Light is off or not Fan.brightness <= 10)",
+                rule.conditionText());
+        assertEquals("Kitchen_Fan on, \"Hall Lamp\".brightness = 40", rule.actionText());
+
+        for (String invalid : List.of(
+                "Kitchen_Fan on",
+                "when T.temperature > 26",
+                "when T.humidity > 26 then F on",
+                "when T.temperature >> 26 then F on",
+                "when T.temperature > hot then F on",
+                "when T is dim then F on",
+                "when T.temperature > 26 then F.target = 20",
+                "when (T is on then F on",
+                "when T is on then F on extra")) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> RuleParser.parse(invalid), invalid);
+            assertTrue(e.getMessage().contains("column"), e.getMessage());
+        }
+    }
+
+    @Test
+    void testRuleRunsActionsWhenConditionBecomesTrue() {
+        Thermostat thermostat = new Thermostat("Kitchen_Thermostat");
+        Light fan = new Light("Kitchen_Fan");
+        ConcurrentLight lamp = new ConcurrentLight("Hall_Lamp");
+        List<SmartDevice> devices = List.of(thermostat, fan, lamp);
+
+        DslRule rule = new DslRule("CoolKitchen",
+                "when Kitchen_Thermostat.temperature > 26 and Kitchen_Fan is off then Kitchen_Fan on, Hall_Lamp.brightness = 40");
+        assertEquals(DeviceSelector.devices("Kitchen_Thermostat", "Kitchen_Fan", "Hall_Lamp"), rule.getInputs());
+        assertEquals(DeviceSelector.devices("Kitchen_Fan", "Hall_Lamp"), rule.getOutputs());
+        assertEquals(4, rule.getTriggers().size(), "state changes and temperature alerts of both condition devices");
+
+        thermostat.setTemperature(24);
+        rule.execute(devices);
+        assertFalse(fan.isOn());
+
+        thermostat.setTemperature(28);
+        rule.execute(devices);
+        assertTrue(fan.isOn());
+        assertEquals(40, lamp.getBrightness());
+
+        // Fan switched off by hand while still hot: the condition holds again, but it never cleared
+        fan.turnOff();
+        thermostat.setTemperature(29);
+        rule.execute(devices);
+        assertTrue(rule.test(devices));
+        assertFalse(fan.isOn());
+
+        thermostat.setTemperature(22);
+        rule.execute(devices);
+        thermostat.setTemperature(27);
+        rule.execute(devices);
+        assertTrue(fan.isOn());
+
+        // Relinked against a new device list
+        Thermostat other = new Thermostat("Kitchen_Thermostat");
+        other.setTemperature(20);
+        assertFalse(rule.test(List.of(other, fan, lamp)));
+        assertFalse(rule.test(List.of(fan)), "missing devices never match");
+    }
+
+    @Test
+    void testFromStored() {
+        DslRule legacy = DslRule.fromStored("Legacy", "Kitchen_Thermostat", "temperature > 26", "Kitchen_Fan", "on");
+        assertEquals("when Kitchen_Thermostat.temperature > 26 then Kitchen_Fan on", legacy.getSource());
+
+        DslRule full = DslRule.fromStored("Full", "T", "T.temperature >= 30 or L is on", "F", "F off, L off");
+        assertEquals("when T.temperature >= 30 or L is on then F off, L off", full.getSource());
+    }
+
+    /**
+     * Prints the cost of a compiled rule next to the same rule written by hand; run with -Dbenchmarks=true
+     */
+    @Test
+    @Tag("benchmark")
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void testBenchmarkCompiledRuleAgainstHandWrittenRule() throws Exception {
+        List<SmartDevice> devices = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            devices.add(new Light("Light_" + i));
+        }
+        Thermostat thermostat = new Thermostat("Kitchen_Thermostat");
+        Light fan = new Light("Kitchen_Fan");
+        devices.add(thermostat);
+        devices.add(fan);
+        fan.turnOn();
+
+        DslRule compiled = new DslRule("Compiled",
+                "when Kitchen_Thermostat.temperature > 26 and Kitchen_Fan is off then Kitchen_Fan on");
+        // The best a hand-written rule can do: hold its two devices directly
+        ConcurrentRule handWritten = new ConcurrentRule() {
+            public String getName() { return "HandWritten"; }
+            public boolean shouldExecute() { return true; }
+            public int getPriority() { return 3; }
+            public boolean isEnabled() { return true; }
+
+            public void execute(List<SmartDevice> devices) {
+                if (thermostat.getTemperature() > 26 && !fan.isOn()) {
+                    fan.turnOn();
+                }
+            }
+        };
+        // A third kind of rule through time() keeps it from inlining either rule and folding it away
+        time(new SecurityRule("Warmup"), devices, thermostat, 100_000);
+
+        int iterations = 2_000_000;
+        long compiledNanos = 0;
+        long handNanos = 0;
+        for (int round = 0; round < 3; round++) {
+            compiledNanos = time(compiled, devices, thermostat, iterations);
+            handNanos = time(handWritten, devices, thermostat, iterations);
+        }
+
+        System.out.printf("Rule evaluation over %d devices: compiled %.1f ns, hand-written %.1f ns%n",
+                devices.size(), (double) compiledNanos / iterations, (double) handNanos / iterations);
+        assertTrue(fan.isOn());
+    }
+
+    private static long time(ConcurrentRule rule, List<SmartDevice> devices, Thermostat thermostat,
+                             int iterations) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            // The fan stays on, so neither rule acts; only the cost of evaluating is measured
+            thermostat.setTemperature(26 + (i & 1));
+            rule.execute(devices);
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,383 @@
+package com.fatty.smarthome.concurrent.test.automation;
+
+import com.fatty.smarthome.concurrent.automation.AutomationEngine;
+import com.fatty.smarthome.concurrent.automation.rete.Activation;
+import com.fatty.smarthome.concurrent.automation.rete.ReteNetwork;
+import com.fatty.smarthome.concurrent.automation.rete.ReteRuleSet;
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.core.AutomationRuleConfig;
+import com.fatty.smarthome.devices.Light;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.devices.Thermostat;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReteNetworkTest {
+    private static final Clock MIDNIGHT = Clock.fixed(Instant.parse("2024-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+    /**
+     * Records activations as they come out of the network
+     */
+    private static class Agenda implements ReteNetwork.Listener {
+        final Set<Activation> active = new HashSet<>();
+        int activated;
+        int deactivated;
+
+        @Override
+        public void onActivated(Activation activation) {
+            assertTrue(active.add(activation), "Activated twice: " + activation);
+            activated++;
+        }
+
+        @Override
+        public void onDeactivated(Activation activation) {
+            assertTrue(active.remove(activation), "Deactivated while inactive: " + activation);
+            deactivated++;
+        }
+    }
+
+    /**
+     * Device facts for brute force evaluation
+     */
+    private record Fact(boolean on, Integer temperature) {
+    }
+
+    private static AutomationRuleConfig rule(String name, List<String> targets, String... conditions) {
+        AutomationRuleConfig config = new AutomationRuleConfig(name, "CONDITIONAL");
+        List<AutomationRuleConfig.Condition> list = new ArrayList<>();
+        for (int i = 0; i < conditions.length; i += 3) {
+            list.add(new AutomationRuleConfig.Condition(conditions[i], conditions[i + 1], conditions[i + 2]));
+        }
+        config.setConditions(list);
+        config.setTargetDevices(targets);
+        return config;
+    }
+
+    private static boolean bruteForce(AutomationRuleConfig config, String device, Fact fact, LocalTime time) {
+        if (config.getTargetDevices() != null && !config.getTargetDevices().contains(device)) return false;
+        int minute = time.getHour() * 60 + time.getMinute();
+        for (AutomationRuleConfig.Condition condition : config.getConditions()) {
+            int actual;
+            int value;
+            switch (condition.getType()) {
+                case "DEVICE_STATE" -> {
+                    actual = fact.on() ? 1 : 0;
+                    value = condition.getValue().equals("ON") ? 1 : 0;
+                }
+                case "TEMPERATURE" -> {
+                    if (fact.temperature() == null) return false;
+                    actual = fact.temperature();
+                    value = Integer.parseInt(condition.getValue());
+                }
+                default -> {
+                    LocalTime t = LocalTime.parse(condition.getValue());
+                    actual = minute;
+                    value = t.getHour() * 60 + t.getMinute();
+                }
+            }
+            boolean holds = switch (condition.getOperator()) {
+                case "EQUAL" -> actual == value;
+                case "GREATER_THAN" -> actual > value;
+                default -> actual < value;
+            };
+            if (!holds) return false;
+        }
+        return true;
+    }
+
+    @Test
+    void testSharedTestsAndIncrementalActivations() {
+        ReteNetwork network = new ReteNetwork(MIDNIGHT);
+        Agenda agenda = new Agenda();
+        network.addListener(agenda);
+
+        network.addRule(rule("cool-living", List.of("LivingThermo"),
+                "TEMPERATURE", "GREATER_THAN", "25", "DEVICE_STATE", "EQUAL", "ON"));
+        // Same tests in another order: shares the whole chain
+        network.addRule(rule("cool-any", null,
+                "DEVICE_STATE", "EQUAL", "ON", "TEMPERATURE", "GREATER_THAN", "25"));
+        network.addRule(rule("heat-any", null,
+                "DEVICE_STATE", "EQUAL", "ON", "TEMPERATURE", "LESS_THAN", "18"));
+        assertEquals(3, network.getAlphaNodeCount());
+        assertEquals(3, network.getBetaNodeCount(), "state=ON is joined once for all three rules");
+
+        network.updateDevice("LivingThermo", true, 22);
+        network.updateDevice("BedroomThermo", true, 27);
+        network.updateDevice("HallLight", true, null);
+        assertEquals(Set.of(new Activation("cool-any", "BedroomThermo")), agenda.active);
+
+        network.updateDevice("LivingThermo", true, 26);
+        assertEquals(Set.of(new Activation("cool-any", "BedroomThermo"),
+                new Activation("cool-any", "LivingThermo"),
+                new Activation("cool-living", "LivingThermo")), agenda.active);
+
+        network.updateDevice("LivingThermo", true, 30);
+        assertEquals(3, agenda.activated, "Moving above the threshold changes nothing");
+
+        network.updateDevice("LivingThermo", false, 30);
+        network.updateDevice("BedroomThermo", true, 15);
+        assertEquals(Set.of(new Activation("heat-any", "BedroomThermo")), agenda.active);
+        assertEquals(List.of("BedroomThermo"), network.getActivations("heat-any"));
+        assertTrue(network.isActivated("heat-any", "BedroomThermo"));
+    }
+
+    @Test
+    void testTimeConditionsGateActivations() {
+        ReteNetwork network = new ReteNetwork(MIDNIGHT);
+        Agenda agenda = new Agenda();
+        network.addListener(agenda);
+        network.updateDevice("PorchLight", false, null);
+        network.updateDevice("HallLight", false, null);
+
+        network.addRule(rule("evening-porch", List.of("PorchLight", "Missing"),
+                "TIME", "GREATER_THAN", "18:00", "DEVICE_STATE", "EQUAL", "OFF"));
+        network.addRule(rule("at-seven", null, "TIME", "EQUAL", "19:00"));
+        assertTrue(agenda.active.isEmpty());
+
+        network.setTime(LocalTime.of(19, 0));
+        assertEquals(Set.of(new Activation("evening-porch", "PorchLight"),
+                new Activation("at-seven", "PorchLight"),
+                new Activation("at-seven", "HallLight")), agenda.active);
+
+        network.setTime(LocalTime.of(19, 1));
+        network.updateDevice("PorchLight", true, null);
+        assertTrue(agenda.active.isEmpty());
+
+        network.updateDevice("PorchLight", false, null);
+        assertEquals(Set.of(new Activation("evening-porch", "PorchLight")), agenda.active);
+        network.setTime(LocalTime.of(7, 0));
+        assertTrue(agenda.active.isEmpty());
+    }
+
+    @Test
+    void testRemovingRulesAndDevices() {
+        ReteNetwork network = new ReteNetwork(MIDNIGHT);
+        Agenda agenda = new Agenda();
+        network.addListener(agenda);
+        network.updateDevice("Thermo", true, 30);
+
+        network.addRule(rule("hot", null, "TEMPERATURE", "GREATER_THAN", "25"));
+        network.addRule(rule("hot-on", null, "TEMPERATURE", "GREATER_THAN", "25", "DEVICE_STATE", "EQUAL", "ON"));
+        assertEquals(2, agenda.active.size(), "Rules added after facts see them");
+
+        assertTrue(network.removeRule("hot-on"));
+        assertEquals(Set.of(new Activation("hot", "Thermo")), agenda.active);
+        assertEquals(1, network.getAlphaNodeCount());
+        assertEquals(1, network.getBetaNodeCount());
+
+        network.removeDevice("Thermo");
+        assertTrue(agenda.active.isEmpty());
+        network.updateDevice("Thermo", true, 26);
+        assertEquals(Set.of(new Activation("hot", "Thermo")), agenda.active);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> network.addRule(rule("bad", null, "TEMPERATURE", "GREATER_THAN", "warm")));
+        assertThrows(IllegalArgumentException.class,
+                () -> network.addRule(rule("bad", null, "DEVICE_STATE", "LESS_THAN", "ON")));
+        assertThrows(IllegalArgumentException.class, () -> network.addRule(rule("hot", null)));
+        assertEquals(1, network.getRuleCount());
+    }
+
+    @Test
+    void testMatchesBruteForceUnderRandomChanges() {
+        Random random = new Random(42);
+        int deviceCount = 300;
+        List<AutomationRuleConfig> rules = randomRules(random, 200, deviceCount);
+        ReteNetwork network = new ReteNetwork(MIDNIGHT);
+        Agenda agenda = new Agenda();
+        network.addListener(agenda);
+        rules.forEach(network::addRule);
+
+        Map<String, Fact> facts = new HashMap<>();
+        LocalTime time = LocalTime.MIDNIGHT;
+        for (int step = 0; step < 20_000; step++) {
+            String device = "dev-" + random.nextInt(deviceCount);
+            if (random.nextInt(100) == 0) {
+                time = LocalTime.of(random.nextInt(24), random.nextInt(60));
+                network.setTime(time);
+            } else if (random.nextInt(50) == 0) {
+                facts.remove(device);
+                network.removeDevice(device);
+            } else {
+                Fact fact = new Fact(random.nextBoolean(),
+                        device.hashCode() % 2 == 0 ? 10 + random.nextInt(25) : null);
+                facts.put(device, fact);
+                network.updateDevice(device, fact.on(), fact.temperature());
+            }
+        }
+
+        Set<Activation> expected = new HashSet<>();
+        for (AutomationRuleConfig rule : rules) {
+            for (Map.Entry<String, Fact> fact : facts.entrySet()) {
+                if (bruteForce(rule, fact.getKey(), fact.getValue(), time)) {
+                    expected.add(new Activation(rule.getRuleName(), fact.getKey()));
+                }
+            }
+        }
+        assertEquals(expected, agenda.active);
+        assertFalse(expected.isEmpty());
+    }
+
+    @Test
+    void testRuleSetRunsActionsInTheEngine() throws Exception {
+        Thermostat kitchen = new Thermostat("Kitchen_Thermostat");
+        Thermostat bedroom = new Thermostat("Bedroom_Thermostat");
+        Light hall = new Light("Hall_Light");
+        List<SmartDevice> devices = List.of(kitchen, bedroom, hall);
+        kitchen.turnOn();
+        bedroom.turnOn();
+        hall.turnOn();
+
+        AutomationRuleConfig tooWarm = rule("too-warm", List.of("Kitchen_Thermostat", "Bedroom_Thermostat"),
+                "TEMPERATURE", "GREATER_THAN", "26", "DEVICE_STATE", "EQUAL", "ON");
+        tooWarm.setActions(List.of("SET_TEMPERATURE 21"));
+        AutomationRuleConfig lightsOut = rule("lights-out", null,
+                "TIME", "GREATER_THAN", "22:00", "DEVICE_STATE", "EQUAL", "ON");
+        lightsOut.setActions(List.of("TURN_OFF"));
+        ReteRuleSet rules = new ReteRuleSet("StoredRules", List.of(tooWarm, lightsOut));
+
+        Clock evening = Clock.fixed(Instant.parse("2024-01-01T21:00:00Z"), ZoneOffset.UTC);
+        AutomationEngine engine = new AutomationEngine(() -> devices, evening);
+        engine.addRule(rules);
+        kitchen.setTemperature(28);
+        engine.evaluateNow();
+        assertEquals(21, kitchen.getTemperature());
+        assertTrue(hall.isOn(), "not late enough yet");
+
+        // Only devices named by events are fed into the network between sweeps
+        bedroom.setTemperature(30);
+        kitchen.setTemperature(29);
+        rules.onTrigger(new Event(EventType.TEMPERATURE_ALERT, "Kitchen_Thermostat", "temperature", 29));
+        rules.execute(devices);
+        assertEquals(21, kitchen.getTemperature());
+        assertEquals(30, bedroom.getTemperature());
+
+        rules.setClock(Clock.fixed(Instant.parse("2024-01-01T23:00:00Z"), ZoneOffset.UTC));
+        rules.execute(devices);
+        assertEquals(21, bedroom.getTemperature());
+        assertFalse(hall.isOn());
+        assertFalse(kitchen.isOn());
+        engine.stop();
+
+        AutomationRuleConfig broken = rule("broken", null, "DEVICE_STATE", "EQUAL", "ON");
+        broken.setActions(List.of("SET_TEMPERATURE warm"));
+        assertThrows(IllegalArgumentException.class, () -> new ReteRuleSet("Broken", List.of(broken)));
+    }
+
+    /**
+     * Takes several seconds; run with -Dbenchmarks=true
+     */
+    @Test
+    @Tag("benchmark")
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void testBenchmarkTenThousandRulesHundredThousandDevices() {
+        Random random = new Random(7);
+        int deviceCount = 100_000;
+        List<AutomationRuleConfig> rules = randomRules(random, 10_000, deviceCount);
+        ReteNetwork network = new ReteNetwork(MIDNIGHT);
+        long[] changes = new long[1];
+        network.addListener(new ReteNetwork.Listener() {
+            @Override
+            public void onActivated(Activation activation) {
+                changes[0]++;
+            }
+
+            @Override
+            public void onDeactivated(Activation activation) {
+                changes[0]++;
+            }
+        });
+
+        long start = System.nanoTime();
+        rules.forEach(network::addRule);
+        long compileMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Fact[] facts = new Fact[deviceCount];
+        start = System.nanoTime();
+        for (int i = 0; i < deviceCount; i++) {
+            facts[i] = new Fact(random.nextBoolean(), i % 2 == 0 ? 10 + random.nextInt(25) : null);
+            network.updateDevice("dev-" + i, facts[i].on(), facts[i].temperature());
+        }
+        long loadMillis = (System.nanoTime() - start) / 1_000_000;
+
+        int updates = 200_000;
+        start = System.nanoTime();
+        for (int u = 0; u < updates; u++) {
+            int i = random.nextInt(deviceCount);
+            Fact old = facts[i];
+            facts[i] = old.temperature() == null
+                    ? new Fact(!old.on(), null)
+                    : new Fact(old.on(), Math.max(5, Math.min(40, old.temperature() + random.nextInt(3) - 1)));
+            network.updateDevice("dev-" + i, facts[i].on(), facts[i].temperature());
+        }
+        long updateNanos = System.nanoTime() - start;
+
+        // What every device change would cost when re-testing all rules against their devices
+        start = System.nanoTime();
+        int naiveMatches = 0;
+        for (AutomationRuleConfig rule : rules) {
+            if (rule.getTargetDevices() == null) continue;
+            for (String device : new HashSet<>(rule.getTargetDevices())) {
+                int i = Integer.parseInt(device.substring(4));
+                if (bruteForce(rule, device, facts[i], LocalTime.MIDNIGHT)) naiveMatches++;
+            }
+        }
+        long sweepNanos = System.nanoTime() - start;
+
+        int activeMatches = 0;
+        for (AutomationRuleConfig rule : rules) {
+            if (rule.getTargetDevices() != null) {
+                activeMatches += network.getActivations(rule.getRuleName()).size();
+            }
+        }
+        assertEquals(naiveMatches, activeMatches, "Network agrees with brute force for targeted rules");
+
+        System.out.printf("Rete 10k rules x 100k devices: compile %d ms, load %d ms, " +
+                        "%d updates at %.2f us each (%d activation changes), one naive sweep %.2f ms%n",
+                compileMillis, loadMillis, updates, updateNanos / 1000.0 / updates, changes[0],
+                sweepNanos / 1e6);
+        System.out.println(network.getStatistics());
+        assertTrue(network.getAlphaNodeCount() < 200, "Tests are shared across rules");
+    }
+
+    /**
+     * Rules over a few shared state / temperature / time tests, most aimed at a handful of devices
+     */
+    private static List<AutomationRuleConfig> randomRules(Random random, int count, int deviceCount) {
+        String[] operators = {"EQUAL", "GREATER_THAN", "LESS_THAN"};
+        List<AutomationRuleConfig> rules = new ArrayList<>();
+        for (int r = 0; r < count; r++) {
+            List<String> conditions = new ArrayList<>();
+            if (random.nextInt(3) > 0) {
+                conditions.addAll(List.of("DEVICE_STATE", "EQUAL", random.nextBoolean() ? "ON" : "OFF"));
+            }
+            if (random.nextInt(3) > 0) {
+                conditions.addAll(List.of("TEMPERATURE", operators[random.nextInt(3)],
+                        String.valueOf(15 + random.nextInt(15))));
+            }
+            if (random.nextInt(5) == 0) {
+                conditions.addAll(List.of("TIME", operators[1 + random.nextInt(2)],
+                        String.format("%02d:00", random.nextInt(24))));
+            }
+            List<String> targets = null;
+            if (random.nextInt(20) > 0) {
+                targets = new ArrayList<>();
+                for (int t = 0; t < 10; t++) {
+                    targets.add("dev-" + random.nextInt(deviceCount));
+                }
+            }
+            rules.add(rule("rule-" + r, targets, conditions.toArray(new String[0])));
+        }
+        return rules;
+    }
+}
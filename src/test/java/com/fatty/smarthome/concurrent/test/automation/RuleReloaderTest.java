@@ -0,0 +1,165 @@
+package com.fatty.smarthome.concurrent.test.automation;
+
+import com.fatty.smarthome.concurrent.automation.AutomationEngine;
+import com.fatty.smarthome.concurrent.automation.SecurityRule;
+import com.fatty.smarthome.concurrent.automation.dsl.RuleReloader;
+import com.fatty.smarthome.core.DatabaseService;
+import com.fatty.smarthome.devices.Light;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.devices.Thermostat;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RuleReloaderTest {
+
+    /**
+     * Rules in memory, versioned like the automation_rules table
+     */
+    private static class MemorySource implements RuleReloader.Source {
+        final List<DatabaseService.StoredRule> rows = new CopyOnWriteArrayList<>();
+        final AtomicLong version = new AtomicLong();
+
+        void put(String name, String triggerDevice, String condition, String actionDevice, String action) {
+            rows.removeIf(row -> row.getRuleName().equals(name));
+            rows.add(new DatabaseService.StoredRule(name, triggerDevice, condition, actionDevice, action));
+            version.incrementAndGet();
+        }
+
+        void remove(String name) {
+            rows.removeIf(row -> row.getRuleName().equals(name));
+            version.incrementAndGet();
+        }
+
+        public long version() {
+            return version.get();
+        }
+
+        public List<DatabaseService.StoredRule> load() {
+            return List.copyOf(rows);
+        }
+    }
+
+    private static List<String> ruleNames(AutomationEngine engine) {
+        return engine.getRuleStats().stream().map(AutomationEngine.RuleStats::name).sorted().toList();
+    }
+
+    private static AutomationEngine.RuleStats stats(AutomationEngine engine, String name) {
+        return engine.getRuleStats().stream().filter(stats -> stats.name().equals(name)).findFirst().orElseThrow();
+    }
+
+    @Test
+    void testReloadAppliesOnlyWhatChanged() throws Exception {
+        Thermostat thermostat = new Thermostat("Kitchen_Thermostat");
+        Light fan = new Light("Kitchen_Fan");
+        Light hall = new Light("Hall_Light");
+        AutomationEngine engine = new AutomationEngine(() -> List.of(thermostat, fan, hall), Clock.systemDefaultZone());
+        MemorySource source = new MemorySource();
+        RuleReloader reloader = new RuleReloader(engine, source);
+
+        source.put("CoolKitchen", "Kitchen_Thermostat", "temperature > 26", "Kitchen_Fan", "on");
+        source.put("HallOff", "Hall_Light", "Hall_Light is on", "Hall_Light", "off");
+        RuleReloader.Result first = reloader.reloadIfChanged();
+        assertEquals(2, first.added());
+        assertEquals(List.of("CoolKitchen", "HallOff"), ruleNames(engine));
+        assertNull(reloader.reloadIfChanged(), "version did not move");
+
+        thermostat.setTemperature(28);
+        engine.evaluateNow();
+        assertTrue(fan.isOn());
+        long tableVersion = engine.getRuleTableVersion();
+
+        // One changed, one new: a single swap, and the unchanged rule keeps its state
+        source.put("HallOff", "Hall_Light", "Hall_Light is on and Kitchen_Fan is on", "Hall_Light", "off");
+        source.put("FanOff", "Kitchen_Thermostat", "temperature < 20", "Kitchen_Fan", "off");
+        RuleReloader.Result update = reloader.reloadIfChanged();
+        assertEquals(1, update.added());
+        assertEquals(1, update.changed());
+        assertEquals(1, update.unchanged());
+        assertEquals(tableVersion + 1, engine.getRuleTableVersion());
+        assertEquals(List.of("CoolKitchen", "FanOff", "HallOff"), ruleNames(engine));
+        assertEquals(1, stats(engine, "CoolKitchen").executions());
+        assertEquals(0, stats(engine, "HallOff").executions(), "the changed rule is a new one");
+
+        // Removed rows leave the engine; invalid rows are skipped
+        source.remove("CoolKitchen");
+        source.put("Broken", "Kitchen_Fan", "Kitchen_Fan is dim", "Kitchen_Fan", "on");
+        RuleReloader.Result removal = reloader.reloadIfChanged();
+        assertEquals(1, removal.removed());
+        assertEquals(1, removal.rejected());
+        assertEquals(List.of("FanOff", "HallOff"), ruleNames(engine));
+        assertEquals(List.of("FanOff", "HallOff"), reloader.getLoadedRules());
+
+        // Rules added elsewhere are left alone
+        engine.addRule(new SecurityRule("Security"));
+        source.remove("FanOff");
+        reloader.reloadIfChanged();
+        assertEquals(List.of("HallOff", "Security"), ruleNames(engine));
+        assertTrue(engine.getStatus().contains("3 rules retired"), engine.getStatus());
+        engine.stop();
+    }
+
+    @Test
+    void testThousandsOfRulesReloadWhileEvaluating() throws Exception {
+        int ruleCount = 2000;
+        List<SmartDevice> lights = new ArrayList<>();
+        MemorySource source = new MemorySource();
+        for (int i = 0; i < ruleCount; i++) {
+            lights.add(new Light("Light_" + i));
+            source.put("Rule_" + i, "Light_" + i, "Light_" + i + " is off", "Light_" + i, "on");
+        }
+        AutomationEngine engine = new AutomationEngine(() -> lights, Clock.systemDefaultZone());
+        RuleReloader reloader = new RuleReloader(engine, source);
+        RuleReloader.Result initial = reloader.reloadIfChanged();
+        assertEquals(ruleCount, initial.added());
+
+        // Evaluation keeps going while the rule table is swapped under it
+        AtomicBoolean stop = new AtomicBoolean(false);
+        AtomicLong passes = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread evaluator = new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    engine.evaluateNow();
+                    passes.incrementAndGet();
+                    lights.forEach(SmartDevice::turnOff);
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        evaluator.start();
+
+        int updates = 20;
+        long slowest = 0;
+        long passesBefore = passes.get();
+        for (int u = 0; u < updates; u++) {
+            int i = u * 97 % ruleCount;
+            source.put("Rule_" + i, "Light_" + i, "Light_" + i + " is off and Light_0 is off", "Light_" + i, "on");
+            RuleReloader.Result result = reloader.reloadIfChanged();
+            assertEquals(1, result.changed());
+            assertEquals(ruleCount - 1, result.unchanged());
+            slowest = Math.max(slowest, result.nanos());
+            Thread.sleep(5);
+        }
+        stop.set(true);
+        evaluator.join(10_000);
+
+        System.out.printf("%d rules: initial load %.1f ms, one-rule update at most %.2f ms, %d passes meanwhile%n",
+                ruleCount, initial.nanos() / 1e6, slowest / 1e6, passes.get() - passesBefore);
+        assertNull(failure.get(), () -> "evaluation failed: " + failure.get());
+        assertTrue(passes.get() > passesBefore, "evaluation did not pause");
+        assertEquals(ruleCount, engine.getRuleStats().size());
+        assertEquals(updates + 1, engine.getRuleTableVersion());
+        assertTrue(slowest < 1_000_000_000L, "update took " + slowest / 1e6 + " ms");
+        engine.stop();
+    }
+}
@@ -0,0 +1,202 @@
+package com.fatty.smarthome.concurrent.test.bridge;
+
+import com.fatty.smarthome.concurrent.bridge.EventBridge;
+import com.fatty.smarthome.concurrent.events.BatchEventListener;
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventListener;
+import com.fatty.smarthome.concurrent.events.EventPayload;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.events.EventType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two event systems in one JVM stand in for two processes
+ */
+public class EventBridgeTest {
+    private EventSystem gui;
+    private EventSystem cli;
+    private final List<EventBridge> bridges = new ArrayList<>();
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Collects events, one by one or in batches
+     */
+    private static class Recorder implements EventListener, BatchEventListener {
+        final List<Event> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onEvent(Event event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onEvents(List<Event> batch) {
+            events.addAll(batch);
+        }
+
+        @Override
+        public boolean accepts(Event event) {
+            return true;
+        }
+
+        @Override
+        public String getName() {
+            return "Recorder";
+        }
+
+        @Override
+        public int getMaxBatchSize() {
+            // Buffer (10 batches) holds a whole 5000 event burst even when the recorder lags
+            return 1000;
+        }
+
+        long count(EventType type) {
+            return events.stream().filter(e -> e.getType() == type).count();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        gui = new EventSystem(2);
+        cli = new EventSystem(2);
+        gui.start();
+        cli.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        bridges.forEach(EventBridge::close);
+        gui.stop();
+        cli.stop();
+    }
+
+    private EventBridge bridge(EventSystem eventSystem, String node) {
+        EventBridge bridge = new EventBridge(eventSystem, node);
+        bridges.add(bridge);
+        return bridge;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean(), "Condition not met within 10s");
+    }
+
+    private static Event motion(String camera) {
+        return new Event(EventType.MOTION_DETECTED, camera, new EventPayload.Motion(camera, "Hall", 42L));
+    }
+
+    @Test
+    void testEventsCrossBothWaysOverUnixSocket() throws Exception {
+        Recorder guiEvents = new Recorder();
+        Recorder cliEvents = new Recorder();
+        gui.subscribeToAll(guiEvents);
+        cli.subscribeToAll(cliEvents);
+
+        SocketAddress address = UnixDomainSocketAddress.of(tempDir.resolve("bridge.sock"));
+        bridge(gui, "gui").listen(address);
+        EventBridge cliBridge = bridge(cli, "cli");
+        cliBridge.connect(address);
+        waitFor(() -> cliBridge.getPeerStats().get(0).connected());
+
+        cli.publishEvent(motion("FrontCam"));
+        waitFor(() -> guiEvents.count(EventType.MOTION_DETECTED) == 1);
+        Event received = guiEvents.events.get(0);
+        assertEquals("FrontCam", received.getSource());
+        assertEquals(new EventPayload.Motion("FrontCam", "Hall", 42L), received.getPayload());
+        assertEquals("cli", received.getOrigin(), "bridged events are tagged with the node they came from");
+        assertNull(cliEvents.events.get(0).getOrigin());
+
+        gui.publishEvent(new Event(EventType.USER_COMMAND, "GUI", "command", "lights off"));
+        waitFor(() -> cliEvents.count(EventType.USER_COMMAND) == 1);
+        assertEquals("lights off", cliEvents.events.stream()
+                .filter(e -> e.getType() == EventType.USER_COMMAND).findFirst().orElseThrow()
+                .getData().get("command"));
+
+        // Derived events stay local, and nothing bounces back to where it came from
+        gui.publishEvent(new Event(EventType.AUTOMATION_TRIGGERED, "Rule", "rule", "x"));
+        Thread.sleep(200);
+        assertEquals(0, cliEvents.count(EventType.AUTOMATION_TRIGGERED));
+        assertEquals(1, cliEvents.count(EventType.MOTION_DETECTED));
+        assertEquals(1, guiEvents.count(EventType.USER_COMMAND));
+    }
+
+    @Test
+    void testBurstIsBatchedOverTcp() throws Exception {
+        Recorder guiEvents = new Recorder();
+        gui.subscribeBatch(EventType.TEMPERATURE_ALERT, guiEvents);
+
+        SocketAddress bound = bridge(gui, "gui").listen(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        EventBridge cliBridge = bridge(cli, "cli");
+        cliBridge.connect(bound);
+        waitFor(() -> cliBridge.getPeerStats().get(0).connected());
+
+        int events = 5_000;
+        for (int i = 0; i < events; i++) {
+            cli.publishEvent(new Event(EventType.TEMPERATURE_ALERT, "Thermo",
+                    new EventPayload.Temperature("Thermo", 20 + i % 10, 20, "HIGH", i)));
+        }
+        waitFor(() -> guiEvents.events.size() == events);
+        EventBridge.PeerStats stats = cliBridge.getPeerStats().get(0);
+        assertEquals(events, stats.sent());
+        assertEquals(0, stats.dropped());
+    }
+
+    @Test
+    void testReconnectsAndDeliversQueuedEvents() throws Exception {
+        Recorder guiEvents = new Recorder();
+        gui.subscribe(EventType.MOTION_DETECTED, guiEvents);
+        SocketAddress address = UnixDomainSocketAddress.of(tempDir.resolve("late.sock"));
+
+        // Connect before anyone listens; events wait in the peer queue
+        EventBridge cliBridge = new EventBridge(cli, "cli", EnumSet.of(EventType.MOTION_DETECTED), 100);
+        bridges.add(cliBridge);
+        cliBridge.connect(address);
+        cli.publishEvent(motion("EarlyCam"));
+        waitFor(() -> cliBridge.getPeerStats().get(0).queued() == 1);
+
+        EventBridge first = new EventBridge(gui, "gui");
+        first.listen(address);
+        waitFor(() -> guiEvents.events.size() == 1);
+
+        // The listener restarts; the client notices and comes back
+        first.close();
+        waitFor(() -> !cliBridge.getPeerStats().get(0).connected());
+        bridge(gui, "gui-restarted").listen(address);
+        waitFor(() -> cliBridge.getPeerStats().get(0).connected());
+
+        cli.publishEvent(motion("LateCam"));
+        waitFor(() -> guiEvents.events.size() == 2);
+        assertEquals("LateCam", guiEvents.events.get(1).getSource());
+        assertTrue(cliBridge.getPeerStats().get(0).reconnects() >= 1);
+        assertTrue(cliBridge.getStatistics().contains("(gui-restarted)"));
+    }
+
+    @Test
+    void testAddressParsing() throws IOException {
+        assertInstanceOf(InetSocketAddress.class, EventBridge.address("7070"));
+        assertInstanceOf(UnixDomainSocketAddress.class, EventBridge.address(tempDir.resolve("x.sock").toString()));
+    }
+}
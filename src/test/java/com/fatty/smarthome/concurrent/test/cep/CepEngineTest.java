@@ -0,0 +1,187 @@
+package com.fatty.smarthome.concurrent.test.cep;
+
+import com.fatty.smarthome.concurrent.automation.SecurityRule;
+import com.fatty.smarthome.concurrent.cep.CepEngine;
+import com.fatty.smarthome.concurrent.cep.Pattern;
+import com.fatty.smarthome.concurrent.cep.PatternMatch;
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventFilter;
+import com.fatty.smarthome.concurrent.events.EventPayload;
+import com.fatty.smarthome.concurrent.events.EventType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CepEngineTest {
+    private static final long MINUTE = 60_000;
+
+    private static Event motion(String camera, long timestamp) {
+        return new Event(EventType.MOTION_DETECTED, camera,
+                new EventPayload.Motion(camera, "Outside", timestamp), timestamp);
+    }
+
+    private static Event temperatureAlert(String thermostat, int value, long timestamp) {
+        return new Event(EventType.TEMPERATURE_ALERT, thermostat,
+                new EventPayload.Temperature(thermostat, value, value, "HIGH", timestamp), timestamp);
+    }
+
+    private static Event stateChange(String device, long timestamp) {
+        return new Event(EventType.DEVICE_STATE_CHANGED, device,
+                new EventPayload.StateChange(device, "Thermostat", "NORMAL", 1, timestamp), timestamp);
+    }
+
+    private static Event malfunction(String device, long timestamp) {
+        return new Event(EventType.DEVICE_MALFUNCTION, device,
+                new EventPayload.StateChange(device, "Light", "MALFUNCTION", 1, timestamp), timestamp);
+    }
+
+    private static final Pattern FRONT_THEN_BACK =
+            Pattern.begin("front", EventType.MOTION_DETECTED, EventFilter.source("FrontDoorCam"))
+                    .followedBy("back", EventType.MOTION_DETECTED, EventFilter.source("BackyardCam"))
+                    .within(Duration.ofSeconds(10));
+
+    @Test
+    void testSequenceWithinWindow() {
+        CepEngine engine = new CepEngine("test");
+        List<PatternMatch> matches = new CopyOnWriteArrayList<>();
+        engine.register("intrusion", FRONT_THEN_BACK, matches::add);
+
+        engine.onEvent(motion("FrontDoorCam", 0));
+        engine.onEvent(motion("GarageCam", 2_000));
+        engine.onEvent(motion("BackyardCam", 15_000));
+        assertTrue(matches.isEmpty(), "Backyard motion came too late");
+        assertEquals(0, engine.getPartialMatchCount(), "Expired run is dropped");
+
+        engine.onEvent(motion("FrontDoorCam", 20_000));
+        engine.onEvent(motion("FrontDoorCam", 22_000));
+        engine.onEvent(motion("BackyardCam", 29_000));
+        assertEquals(1, matches.size());
+        PatternMatch match = matches.get(0);
+        assertEquals(22_000, match.startMillis(), "Latest front door motion is kept");
+        assertEquals(29_000, match.endMillis());
+        assertEquals(List.of("FrontDoorCam", "BackyardCam"),
+                match.events().stream().map(Event::getSource).toList());
+
+        engine.onEvent(motion("BackyardCam", 30_000));
+        assertEquals(1, matches.size(), "Match consumed its partial state");
+    }
+
+    @Test
+    void testAbsenceFiresWhenWindowPasses() {
+        CepEngine engine = new CepEngine("test");
+        List<PatternMatch> matches = new CopyOnWriteArrayList<>();
+        engine.register("overheating",
+                Pattern.begin("alert", EventType.TEMPERATURE_ALERT)
+                        .where(e -> ((Number) e.getData().get("temperature")).intValue() > 28)
+                        .notFollowedBy("recovered", EventType.DEVICE_STATE_CHANGED)
+                        .within(Duration.ofMinutes(5))
+                        .perSource(),
+                matches::add);
+
+        engine.onEvent(temperatureAlert("LivingRoom", 31, 0));
+        engine.onEvent(temperatureAlert("LivingRoom", 32, MINUTE));
+        engine.onEvent(temperatureAlert("Bedroom", 30, MINUTE));
+        engine.onEvent(temperatureAlert("Kitchen", 20, MINUTE));
+        assertEquals(2, engine.getPartialMatchCount(), "One run per overheating thermostat");
+        engine.onEvent(stateChange("Bedroom", 3 * MINUTE));
+        assertEquals(1, engine.getPartialMatchCount());
+
+        engine.advanceTo(5 * MINUTE);
+        assertEquals(1, matches.size());
+        PatternMatch match = matches.get(0);
+        assertEquals("LivingRoom", match.partition());
+        assertEquals(0, match.startMillis(), "The clock runs from the first alert");
+        assertEquals(5 * MINUTE, match.endMillis());
+
+        engine.advanceTo(60 * MINUTE);
+        assertEquals(1, matches.size(), "Recovered and too cold thermostats never match");
+        assertEquals(0, engine.getPartialMatchCount());
+    }
+
+    @Test
+    void testRepetitionPerSource() {
+        CepEngine engine = new CepEngine("test");
+        List<PatternMatch> matches = new CopyOnWriteArrayList<>();
+        engine.register("flaky",
+                Pattern.begin("malfunction", EventType.DEVICE_MALFUNCTION).times(3)
+                        .within(Duration.ofHours(1))
+                        .perSource(),
+                matches::add);
+
+        engine.onEvent(malfunction("HallLight", 0));
+        engine.onEvent(malfunction("PorchLight", 10 * MINUTE));
+        engine.onEvent(malfunction("HallLight", 50 * MINUTE));
+        engine.onEvent(malfunction("HallLight", 70 * MINUTE));
+        assertTrue(matches.isEmpty(), "First malfunction is more than an hour before the third");
+
+        engine.onEvent(malfunction("PorchLight", 75 * MINUTE));
+        engine.onEvent(malfunction("HallLight", 80 * MINUTE));
+        assertEquals(1, matches.size());
+        assertEquals("HallLight", matches.get(0).partition());
+        assertEquals(50 * MINUTE, matches.get(0).startMillis());
+        assertEquals(3, matches.get(0).events().size());
+    }
+
+    @Test
+    void testManyPatternsKeepOnlyPartialState() {
+        CepEngine engine = new CepEngine("test");
+        List<PatternMatch> matches = new CopyOnWriteArrayList<>();
+        int zones = 2000;
+        for (int i = 0; i < zones; i++) {
+            engine.register("zone-" + i,
+                    Pattern.begin("a", EventType.MOTION_DETECTED, EventFilter.source("CamA-" + i))
+                            .followedBy("b", EventType.MOTION_DETECTED, EventFilter.source("CamB-" + i))
+                            .within(Duration.ofSeconds(10)),
+                    matches::add);
+        }
+
+        long time = 0;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < zones; i++) {
+                engine.onEvent(motion("CamA-" + i, time++));
+            }
+            // Every run is still one per pattern, however many events arrived
+            assertTrue(engine.getPartialMatchCount() <= zones);
+        }
+        for (int i = 0; i < zones; i += 2) {
+            engine.onEvent(motion("CamB-" + i, time));
+        }
+        assertEquals(zones / 2, matches.size());
+
+        engine.advanceTo(time + 10_000);
+        assertEquals(0, engine.getPartialMatchCount(), "Unmatched runs expire");
+        assertTrue(engine.unregister("zone-0"));
+        assertEquals(zones - 1, engine.getPatternCount());
+    }
+
+    @Test
+    void testSecurityRuleTriggersOnPattern() {
+        CepEngine engine = new CepEngine("test");
+        SecurityRule rule = new SecurityRule("Intrusion");
+        rule.triggerOn(engine, FRONT_THEN_BACK);
+
+        engine.onEvent(motion("BackyardCam", 0));
+        assertFalse(rule.shouldExecute(), "Backyard alone is not an intrusion");
+
+        engine.onEvent(motion("FrontDoorCam", 1_000));
+        engine.onEvent(motion("BackyardCam", 4_000));
+        assertTrue(rule.shouldExecute());
+        assertTrue(engine.getStatistics().contains("matches: 1"));
+    }
+
+    @Test
+    void testInvalidPatterns() {
+        CepEngine engine = new CepEngine("test");
+        Pattern open = Pattern.begin("alert", EventType.TEMPERATURE_ALERT)
+                .notFollowedBy("recovered", EventType.DEVICE_STATE_CHANGED);
+        assertThrows(IllegalArgumentException.class, () -> engine.register("open", open, m -> { }));
+        assertThrows(IllegalArgumentException.class, () -> open.times(2));
+
+        engine.register("intrusion", FRONT_THEN_BACK, m -> { });
+        assertThrows(IllegalArgumentException.class, () -> engine.register("intrusion", FRONT_THEN_BACK, m -> { }));
+    }
+}
@@ -0,0 +1,161 @@
+package com.fatty.smarthome.concurrent.test.devices;
+
+import com.fatty.smarthome.concurrent.devices.ConcurrentLight;
+import com.fatty.smarthome.concurrent.devices.ConcurrentThermostat;
+import com.fatty.smarthome.concurrent.devices.DeviceTransaction;
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventListener;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.core.DatabaseService;
+import com.fatty.smarthome.devices.Light;
+import com.fatty.smarthome.devices.SmartDevice;
+import com.fatty.smarthome.util.SmartHomeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeviceTransactionTest {
+
+    private static Map<String, SmartDevice> devices(SmartDevice... devices) {
+        Map<String, SmartDevice> byName = new ConcurrentHashMap<>();
+        for (SmartDevice device : devices) {
+            byName.put(device.getName(), device);
+        }
+        return byName;
+    }
+
+    @Test
+    void testSceneIsOneSaveAndOneEvent() throws Exception {
+        EventSystem eventSystem = new EventSystem(2);
+        eventSystem.start();
+        List<Event> events = new CopyOnWriteArrayList<>();
+        eventSystem.subscribeToAll(new EventListener() {
+            public void onEvent(Event event) {
+                events.add(event);
+            }
+        });
+
+        Map<String, SmartDevice> home = new ConcurrentHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            ConcurrentLight light = new ConcurrentLight("Light-" + i);
+            light.setEventSystem(eventSystem);
+            home.put(light.getName(), light);
+        }
+        ConcurrentThermostat thermostat = new ConcurrentThermostat("Thermo");
+        thermostat.setEventSystem(eventSystem);
+        home.put(thermostat.getName(), thermostat);
+
+        AtomicInteger saves = new AtomicInteger();
+        List<SmartDevice> saved = new ArrayList<>();
+        List<DatabaseService.EventLog> logged = new ArrayList<>();
+        DeviceTransaction scene = new DeviceTransaction("Evening", name -> Optional.ofNullable(home.get(name)),
+                (changed, entries) -> {
+                    saves.incrementAndGet();
+                    saved.addAll(changed);
+                    logged.addAll(entries);
+                }).publishTo(eventSystem);
+        for (int i = 0; i < 500; i++) {
+            scene.turnOn("Light-" + i).setBrightness("Light-" + i, 40);
+        }
+        scene.setTemperature("Thermo", 20);
+
+        DeviceTransaction.Result result = scene.commit();
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+
+        assertEquals(1001, result.commands());
+        assertEquals(501, result.changedDevices().size());
+        assertEquals(1, saves.get(), "one commit for the whole scene");
+        assertEquals(501, saved.size());
+        assertEquals(501, logged.size());
+        assertEquals("OFF, 100%", logged.get(0).getOldValue());
+        assertEquals("ON, 40%", logged.get(0).getNewValue());
+        assertEquals(40, ((ConcurrentLight) home.get("Light-7")).getBrightness());
+        assertEquals(20, thermostat.getTemperature());
+
+        assertEquals(1, events.size(), "one aggregated event: " + events);
+        Event event = events.get(0);
+        assertEquals(EventType.SCENE_APPLIED, event.getType());
+        assertEquals(501, ((List<?>) event.getData().get("devices")).size());
+        System.out.println("500 device scene: " + result.format());
+
+        // Devices publish their own events again outside the transaction
+        home.get("Light-0").turnOff();
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(2, events.size());
+        assertThrows(IllegalStateException.class, scene::commit);
+        eventSystem.stop();
+    }
+
+    @Test
+    void testInvalidCommandChangesNothing() {
+        ConcurrentLight light = new ConcurrentLight("Hall");
+        ConcurrentThermostat thermostat = new ConcurrentThermostat("Thermo");
+        Map<String, SmartDevice> home = devices(light, thermostat);
+        AtomicInteger saves = new AtomicInteger();
+
+        DeviceTransaction scene = new DeviceTransaction("Broken", name -> Optional.ofNullable(home.get(name)),
+                (changed, entries) -> saves.incrementAndGet())
+                .turnOn("Hall")
+                .setTemperature("Thermo", 45)
+                .setBrightness("Thermo", 10)
+                .turnOn("Garage");
+
+        SmartHomeException e = assertThrows(SmartHomeException.class, scene::commit);
+        assertTrue(e.getMessage().contains("Thermo SET_TEMPERATURE"), e.getMessage());
+        assertTrue(e.getMessage().contains("Thermo SET_BRIGHTNESS"), e.getMessage());
+        assertTrue(e.getMessage().contains("Garage TURN_ON: device not found"), e.getMessage());
+        assertFalse(light.isOn(), "validated before anything was applied");
+        assertEquals(21, thermostat.getTemperature());
+        assertEquals(0, saves.get());
+    }
+
+    @Test
+    void testFailuresRollBack() {
+        ConcurrentLight hall = new ConcurrentLight("Hall");
+        ConcurrentThermostat thermostat = new ConcurrentThermostat("Thermo");
+        thermostat.turnOn();
+        Light broken = new Light("Broken") {
+            @Override
+            public void turnOn() {
+                throw new IllegalStateException("relay stuck");
+            }
+        };
+        Map<String, SmartDevice> home = devices(hall, thermostat, broken);
+
+        // A command fails midway: the devices changed before it are restored
+        DeviceTransaction failing = new DeviceTransaction("Morning", name -> Optional.ofNullable(home.get(name)), null)
+                .turnOn("Hall")
+                .setBrightness("Hall", 30)
+                .setTemperature("Thermo", 25)
+                .turnOff("Thermo")
+                .turnOn("Broken");
+        SmartHomeException e = assertThrows(SmartHomeException.class, failing::commit);
+        assertTrue(e.getMessage().contains("relay stuck"), e.getMessage());
+        assertFalse(hall.isOn());
+        assertEquals(100, hall.getBrightness());
+        assertTrue(thermostat.isOn());
+        assertEquals(21, thermostat.getTemperature());
+
+        // The database refuses the save: same
+        DeviceTransaction unsaved = new DeviceTransaction("Night", name -> Optional.ofNullable(home.get(name)),
+                (changed, entries) -> {
+                    throw new SmartHomeException("database is locked");
+                })
+                .turnOn("Hall")
+                .setTemperature("Thermo", 18);
+        e = assertThrows(SmartHomeException.class, unsaved::commit);
+        assertTrue(e.getMessage().contains("could not be saved"), e.getMessage());
+        assertFalse(hall.isOn());
+        assertEquals(21, thermostat.getTemperature());
+    }
+}
@@ -0,0 +1,154 @@
+package com.fatty.smarthome.concurrent.test.events;
+
+import com.fatty.smarthome.concurrent.events.DatabaseEventLogListener;
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventPayload;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.core.DatabaseService;
+import com.fatty.smarthome.util.SQLiteConnector;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class DatabaseEventLogListenerTest {
+
+    /**
+     * Points SQLiteConnector at a fresh database in dir; skips the test without the SQLite driver
+     */
+    private static DatabaseService scratchDatabase(Path dir) throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            assumeTrue(false, "sqlite-jdbc is not on the classpath");
+        }
+        System.setProperty(SQLiteConnector.URL_PROPERTY, "jdbc:sqlite:" + dir.resolve("events.db"));
+        SQLiteConnector.createAllTables();
+        return DatabaseService.getInstance();
+    }
+
+    private static long countLogRows() throws SQLException {
+        try (Connection conn = SQLiteConnector.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM event_logs")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static List<Event> motionEvents(int count) {
+        List<Event> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(new Event(EventType.MOTION_DETECTED, "Cam" + (i % 10),
+                    new EventPayload.Motion("Cam" + (i % 10), "Porch", 0L)));
+        }
+        return events;
+    }
+
+    @Test
+    void testBatchIsWrittenToTheDatabase(@TempDir Path dir) throws Exception {
+        try {
+            DatabaseEventLogListener listener = new DatabaseEventLogListener(scratchDatabase(dir));
+            listener.onEvents(motionEvents(500));
+            assertEquals(500, countLogRows());
+            DatabaseService.EventLog latest = DatabaseService.getInstance().readEventLogs().get(0);
+            assertEquals("MOTION_DETECTED", latest.getAction());
+            assertEquals("MOTION Porch", latest.getNewValue());
+        } finally {
+            System.clearProperty(SQLiteConnector.URL_PROPERTY);
+        }
+    }
+
+    /**
+     * One commit per row against one commit per batch; run with -Dbenchmarks=true
+     */
+    @Test
+    @Tag("benchmark")
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void testBenchmarkBatchedAgainstPerRowWrites(@TempDir Path dir) throws Exception {
+        try {
+            DatabaseService db = scratchDatabase(dir);
+            int rows = 2000;
+            List<DatabaseService.EventLog> entries = motionEvents(rows).stream()
+                    .map(DatabaseEventLogListener::toLogEntry).toList();
+
+            long start = System.nanoTime();
+            for (DatabaseService.EventLog entry : entries) {
+                db.logAction(entry.getDeviceName(), entry.getAction(), entry.getOldValue(), entry.getNewValue());
+            }
+            long perRowNanos = System.nanoTime() - start;
+
+            // The listener's default batch size
+            DatabaseEventLogListener listener = new DatabaseEventLogListener(db);
+            List<Event> events = motionEvents(rows);
+            start = System.nanoTime();
+            for (int from = 0; from < rows; from += listener.getMaxBatchSize()) {
+                listener.onEvents(events.subList(from, Math.min(rows, from + listener.getMaxBatchSize())));
+            }
+            long batchedNanos = System.nanoTime() - start;
+
+            assertEquals(2L * rows, countLogRows());
+            System.out.printf("event_logs writes: per row %.0f rows/s, batches of %d %.0f rows/s (%.1fx)%n",
+                    rows / (perRowNanos / 1e9), listener.getMaxBatchSize(), rows / (batchedNanos / 1e9),
+                    (double) perRowNanos / batchedNanos);
+        } finally {
+            System.clearProperty(SQLiteConnector.URL_PROPERTY);
+        }
+    }
+
+    @Test
+    void testEventsMapOntoLogColumns() {
+        long at = 1_700_000_000_123L;
+        Event temperature = new Event(EventType.TEMPERATURE_ALERT, "Kitchen",
+                new EventPayload.Temperature("Kitchen", 31, 27, "HIGH", at), at);
+        DatabaseService.EventLog entry = DatabaseEventLogListener.toLogEntry(temperature);
+        assertEquals("Kitchen", entry.getDeviceName());
+        assertEquals("TEMPERATURE_ALERT", entry.getAction());
+        assertEquals("27°C", entry.getOldValue());
+        assertEquals("31°C (HIGH)", entry.getNewValue());
+        // The row keeps the time of the event, not the time the batch is written
+        assertEquals(at, entry.getTimestamp().getTime());
+
+        Event state = new Event(EventType.DEVICE_STATE_CHANGED, "Hall",
+                new EventPayload.StateChange("Hall", "ConcurrentLight", "ON", 1, at), at);
+        entry = DatabaseEventLogListener.toLogEntry(state);
+        assertNull(entry.getOldValue());
+        assertEquals("ON", entry.getNewValue());
+
+        Event brightness = new Event(EventType.DEVICE_STATE_CHANGED, "Hall",
+                new EventPayload.Brightness("Hall", 20, 80, at), at);
+        entry = DatabaseEventLogListener.toLogEntry(brightness);
+        assertEquals("20%", entry.getOldValue());
+        assertEquals("80%", entry.getNewValue());
+
+        Event power = new Event(EventType.POWER_THRESHOLD_EXCEEDED, "PowerMonitor",
+                new EventPayload.Power(1234.5, 1000, List.of("Heater")), at);
+        assertEquals("1234.5W > 1000W", DatabaseEventLogListener.toLogEntry(power).getNewValue());
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.GERMANY);
+            assertEquals("1234.5W > 1000W", DatabaseEventLogListener.toLogEntry(power).getNewValue(),
+                    "rows read the same whatever the locale");
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+
+        Event command = new Event(EventType.USER_COMMAND, "cli", "command", "on");
+        entry = DatabaseEventLogListener.toLogEntry(command);
+        assertEquals("cli", entry.getDeviceName());
+        assertEquals("{command=on}", entry.getNewValue());
+        assertEquals(command.getTimestampMillis(), entry.getTimestamp().getTime());
+    }
+}
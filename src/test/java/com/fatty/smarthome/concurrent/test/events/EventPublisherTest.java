@@ -0,0 +1,189 @@
+package com.fatty.smarthome.concurrent.test.events;
+
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventFilter;
+import com.fatty.smarthome.concurrent.events.EventPublisher;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.events.EventType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventPublisherTest {
+    private EventSystem eventSystem;
+
+    /**
+     * Subscriber that records what it gets and only requests when told to
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<Event> {
+        final List<Event> received = new CopyOnWriteArrayList<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Event item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            terminated.countDown();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        eventSystem = new EventSystem(3);
+        eventSystem.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventSystem.stop();
+    }
+
+    private void publish(EventType type, String source, int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            eventSystem.publishEvent(new Event(type, source, "i", i));
+        }
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), "Condition not met within 5s");
+    }
+
+    @Test
+    void testDemandLimitsDeliveryAndFiltersApply() throws InterruptedException {
+        EventPublisher publisher = eventSystem.publisher(EventFilter.sourcePrefix("Kitchen"), 100,
+                EventPublisher.Overflow.DROP, EventType.DEVICE_STATE_CHANGED);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        publish(EventType.DEVICE_STATE_CHANGED, "KitchenLight", 10);
+        publish(EventType.DEVICE_STATE_CHANGED, "Garage", 5);
+        publish(EventType.MOTION_DETECTED, "KitchenCam", 5);
+
+        Thread.sleep(50);
+        assertTrue(subscriber.received.isEmpty(), "Nothing without demand");
+
+        subscriber.subscription.request(3);
+        waitFor(() -> subscriber.received.size() == 3);
+        Thread.sleep(50);
+        assertEquals(3, subscriber.received.size());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        waitFor(() -> subscriber.received.size() == 10);
+        assertTrue(subscriber.received.stream().allMatch(e -> e.getSource().equals("KitchenLight")));
+
+        publisher.close();
+        assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+        assertNull(subscriber.error.get());
+    }
+
+    @Test
+    void testSlowSubscriberIsBufferedOrCancelled() throws InterruptedException {
+        EventPublisher dropping = eventSystem.publisher(EventFilter.ALL, 5, EventPublisher.Overflow.DROP);
+        EventPublisher cancelling = eventSystem.publisher(EventFilter.ALL, 5, EventPublisher.Overflow.CANCEL);
+        EventPublisher roomy = eventSystem.publisher(EventFilter.ALL, 100, EventPublisher.Overflow.CANCEL);
+        RecordingSubscriber buffered = new RecordingSubscriber();
+        RecordingSubscriber cut = new RecordingSubscriber();
+        RecordingSubscriber fast = new RecordingSubscriber();
+        dropping.subscribe(buffered);
+        cancelling.subscribe(cut);
+        roomy.subscribe(fast);
+        fast.subscription.request(Long.MAX_VALUE);
+
+        publish(EventType.USER_COMMAND, "Panel", 20);
+
+        waitFor(() -> fast.received.size() == 20);
+        assertTrue(cut.terminated.await(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, cut.error.get());
+        assertEquals(0, cancelling.getSubscriberCount(), "Slow subscriber was cut off");
+        assertEquals(1, roomy.getSubscriberCount());
+
+        buffered.subscription.request(Long.MAX_VALUE);
+        waitFor(() -> buffered.received.size() == 5);
+        assertTrue(dropping.getStatistics().contains("dropped: 15"));
+    }
+
+    @Test
+    void testEventsArriveInPublishOrder() throws InterruptedException {
+        // One keyed lane: the event system itself dispatches in publish order
+        EventSystem serial = new EventSystem(1, 1);
+        serial.start();
+        try {
+            EventPublisher publisher = serial.publisher(EventFilter.ALL, 1000, EventPublisher.Overflow.CANCEL,
+                    EventType.USER_COMMAND);
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            publisher.subscribe(subscriber);
+            subscriber.subscription.request(Long.MAX_VALUE);
+
+            for (int i = 0; i < 500; i++) {
+                serial.publishEvent(new Event(EventType.USER_COMMAND, "Panel", "i", i));
+            }
+            assertTrue(serial.awaitIdle(5, TimeUnit.SECONDS));
+            waitFor(() -> subscriber.received.size() == 500);
+            for (int i = 0; i < 500; i++) {
+                assertEquals(i, subscriber.received.get(i).getData().get("i"));
+            }
+            publisher.close();
+        } finally {
+            serial.stop();
+        }
+    }
+
+    @Test
+    void testCloseStillDrainsBufferedEventsOnRequest() throws InterruptedException {
+        EventPublisher publisher = eventSystem.publisher(EventFilter.ALL, 10, EventPublisher.Overflow.DROP,
+                EventType.USER_COMMAND);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        publish(EventType.USER_COMMAND, "Panel", 3);
+
+        publisher.close();
+        assertEquals(1, subscriber.terminated.getCount(), "completes only after the buffer is drained");
+        subscriber.subscription.request(10);
+        assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+        assertEquals(3, subscriber.received.size());
+        assertNull(subscriber.error.get());
+    }
+
+    @Test
+    void testInvalidRequestSignalsError() throws InterruptedException {
+        EventPublisher publisher = eventSystem.publisher(EventFilter.ALL, 10, EventPublisher.Overflow.DROP);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, subscriber.error.get());
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+}
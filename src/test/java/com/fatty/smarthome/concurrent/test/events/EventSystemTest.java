@@ -1,4 +1,515 @@
 package com.fatty.smarthome.concurrent.test.events;
 
+import com.fatty.smarthome.concurrent.events.BatchEventListener;
+import com.fatty.smarthome.concurrent.events.DeadLetterQueue;
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventFilter;
+import com.fatty.smarthome.concurrent.events.EventListener;
+import com.fatty.smarthome.concurrent.events.EventMetrics;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.events.EventType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class EventSystemTest {
+    private EventSystem eventSystem;
+
+    @BeforeEach
+    void setUp() {
+        eventSystem = new EventSystem(3);
+        eventSystem.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventSystem.stop();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), "Condition not met within 5s");
+    }
+
+    @Test
+    void testBatchListenerReceivesFilteredBatches() throws InterruptedException {
+        List<List<Event>> batches = new CopyOnWriteArrayList<>();
+        BatchEventListener listener = new BatchEventListener() {
+            @Override
+            public void onEvents(List<Event> events) {
+                batches.add(events);
+            }
+
+            @Override
+            public boolean accepts(Event event) {
+                return event.getSource().startsWith("Kitchen");
+            }
+
+            @Override
+            public int getMaxBatchSize() {
+                return 10;
+            }
+        };
+        eventSystem.subscribeBatch(EventType.USER_COMMAND, listener);
+
+        for (int i = 0; i < 25; i++) {
+            eventSystem.publishEvent(new Event(EventType.USER_COMMAND, "Kitchen" + i, "i", i));
+            eventSystem.publishEvent(new Event(EventType.USER_COMMAND, "Garage" + i, "i", i));
+        }
+
+        waitFor(() -> batches.stream().mapToInt(List::size).sum() == 25);
+        assertTrue(batches.stream().allMatch(b -> !b.isEmpty() && b.size() <= 10));
+        assertTrue(batches.stream().flatMap(List::stream)
+                .allMatch(e -> e.getSource().startsWith("Kitchen")));
+    }
+
+    @Test
+    void testFailingBatchListenerIsIsolated() throws InterruptedException {
+        AtomicInteger received = new AtomicInteger();
+        eventSystem.subscribeBatch(EventType.MOTION_DETECTED, events -> {
+            throw new IllegalStateException("boom");
+        });
+        eventSystem.subscribeBatch(EventType.MOTION_DETECTED, events -> received.addAndGet(events.size()));
+
+        for (int i = 0; i < 5; i++) {
+            eventSystem.publishEvent(new Event(EventType.MOTION_DETECTED, "Cam", "i", i));
+        }
+
+        waitFor(() -> received.get() == 5);
+    }
+
+    @Test
+    void testMetricsCountPublishedDeliveredAndListenerLatency() throws InterruptedException {
+        eventSystem.subscribe(EventType.USER_COMMAND, new EventListener() {
+            @Override
+            public void onEvent(Event event) {
+                if (event.getSource().equals("Bad")) {
+                    throw new IllegalStateException("boom");
+                }
+            }
+
+            @Override
+            public String getName() {
+                return "CommandListener";
+            }
+        });
+
+        for (int i = 0; i < 20; i++) {
+            eventSystem.publishEvent(new Event(EventType.USER_COMMAND, i == 0 ? "Bad" : "Panel", "i", i));
+        }
+        eventSystem.publishEvent(new Event(EventType.AUTOMATION_TRIGGERED, "Test", "i", 0));
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+
+        EventMetrics.Snapshot snapshot = eventSystem.getMetricsSnapshot();
+        EventMetrics.TypeSnapshot commands = snapshot.types().get(EventType.USER_COMMAND);
+        assertEquals(20, commands.published());
+        assertEquals(20, commands.delivered());
+        assertEquals(0, commands.dropped());
+        assertEquals(20, commands.residence().count());
+        assertEquals(21, snapshot.totalPublished());
+
+        EventMetrics.ListenerSnapshot listener = snapshot.listeners().get(0);
+        assertEquals("CommandListener", listener.name());
+        assertEquals(20, listener.execution().count(), "no retries unless the listener asks for them");
+        assertEquals(1, listener.failures());
+        assertEquals(0, listener.retries());
+        assertEquals(1, listener.deadLettered());
+        assertTrue(eventSystem.getStatistics().contains("CommandListener"));
+
+        eventSystem.clearStatistics();
+        assertEquals(0, eventSystem.getMetricsSnapshot().totalPublished());
+    }
+
+    @Test
+    void testKeyedLanesKeepPerSourceOrder() throws InterruptedException {
+        EventSystem keyed = new EventSystem(3, 4);
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        keyed.subscribe(EventType.DEVICE_STATE_CHANGED, event -> {
+            if ((int) event.getData().get("i") % 7 == 0) {
+                Thread.yield();
+            }
+            seen.computeIfAbsent(event.getSource(), s -> new CopyOnWriteArrayList<>())
+                    .add((int) event.getData().get("i"));
+        });
+        keyed.start();
+        try {
+            for (int i = 0; i < 400; i++) {
+                keyed.publishEvent(new Event(EventType.DEVICE_STATE_CHANGED, "Device" + (i % 8), "i", i));
+            }
+            assertTrue(keyed.awaitIdle(5, TimeUnit.SECONDS));
+
+            assertEquals(8, seen.size());
+            for (List<Integer> values : seen.values()) {
+                assertEquals(50, values.size());
+                for (int j = 1; j < values.size(); j++) {
+                    assertTrue(values.get(j - 1) < values.get(j), "Out of order: " + values);
+                }
+            }
+            assertEquals(400, keyed.getLaneStats().stream().mapToLong(EventSystem.LaneStats::processed).sum());
+        } finally {
+            keyed.stop();
+        }
+    }
+
+    @Test
+    void testHotSourceIsReported() throws InterruptedException {
+        EventSystem keyed = new EventSystem(3, 4);
+        keyed.start();
+        try {
+            for (int i = 0; i < 5000; i++) {
+                String source = i % 10 == 0 ? "Device" + i : "ChattySensor";
+                keyed.publishEvent(new Event(EventType.DEVICE_STATE_CHANGED, source, "i", i));
+            }
+            assertTrue(keyed.awaitIdle(5, TimeUnit.SECONDS));
+
+            assertTrue(keyed.getLaneImbalance() > 2.0);
+            assertTrue(keyed.getLaneStats().stream()
+                    .anyMatch(lane -> lane.hot() && lane.topSource().equals("ChattySensor")));
+            assertTrue(keyed.getStatistics().contains("ChattySensor"));
+        } finally {
+            keyed.stop();
+        }
+    }
+
+    @Test
+    void testFilteredSubscriptionsOnlyReachMatchingListeners() throws InterruptedException {
+        AtomicInteger invocations = new AtomicInteger();
+        Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            String name = "Device" + i;
+            eventSystem.subscribe(EventType.DEVICE_STATE_CHANGED, EventFilter.source(name), event -> {
+                invocations.incrementAndGet();
+                hits.computeIfAbsent(name, n -> new AtomicInteger()).incrementAndGet();
+            });
+        }
+        eventSystem.subscribe(EventType.DEVICE_STATE_CHANGED, EventFilter.sourcePrefix("Kitchen"), event -> {
+            invocations.incrementAndGet();
+            hits.computeIfAbsent("Kitchen*", n -> new AtomicInteger()).incrementAndGet();
+        });
+        eventSystem.subscribe(EventType.DEVICE_STATE_CHANGED, EventFilter.payload("newState", "ON"), event -> {
+            invocations.incrementAndGet();
+            hits.computeIfAbsent("ON", n -> new AtomicInteger()).incrementAndGet();
+        });
+        eventSystem.subscribe(EventType.DEVICE_STATE_CHANGED,
+                EventFilter.sourcePrefix("Kitchen").withPayload("newState", "OFF"), event -> {
+                    invocations.incrementAndGet();
+                    hits.computeIfAbsent("Kitchen OFF", n -> new AtomicInteger()).incrementAndGet();
+                });
+
+        eventSystem.publishEvent(new Event(EventType.DEVICE_STATE_CHANGED, "Device42", "newState", "OFF"));
+        eventSystem.publishEvent(new Event(EventType.DEVICE_STATE_CHANGED, "KitchenLight", "newState", "ON"));
+        eventSystem.publishEvent(new Event(EventType.DEVICE_STATE_CHANGED, "KitchenFan", "newState", "OFF"));
+        eventSystem.publishEvent(new Event(EventType.DEVICE_STATE_CHANGED, "Garage", "newState", "OFF"));
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+
+        assertEquals(1, hits.get("Device42").get());
+        assertEquals(2, hits.get("Kitchen*").get());
+        assertEquals(1, hits.get("ON").get());
+        assertEquals(1, hits.get("Kitchen OFF").get());
+        assertEquals(5, invocations.get(), "Only matching listeners are dispatched");
+    }
+
+    @Test
+    void testOverlappingSubscriptionsDeliverOnce() throws InterruptedException {
+        List<String> received = new CopyOnWriteArrayList<>();
+        EventListener listener = event -> received.add(event.getSource());
+        eventSystem.subscribe(EventType.DEVICE_STATE_CHANGED, listener);
+        eventSystem.subscribe(EventType.DEVICE_STATE_CHANGED, EventFilter.source("KitchenLight"), listener);
+        eventSystem.subscribe(EventType.DEVICE_STATE_CHANGED, EventFilter.sourcePrefix("Kitchen"), listener);
+        eventSystem.subscribe(EventType.DEVICE_STATE_CHANGED, EventFilter.sourcePrefix("KitchenL"), listener);
+        eventSystem.subscribe(EventType.DEVICE_STATE_CHANGED, EventFilter.payload("newState", "ON"), listener);
+
+        eventSystem.publishEvent(new Event(EventType.DEVICE_STATE_CHANGED, "KitchenLight", "newState", "ON"));
+        eventSystem.publishEvent(new Event(EventType.DEVICE_STATE_CHANGED, "KitchenFan", "newState", "OFF"));
+        eventSystem.publishEvent(new Event(EventType.DEVICE_STATE_CHANGED, "Garage", "newState", "ON"));
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+
+        assertEquals(3, received.size(), "Each event reaches the listener once: " + received);
+        assertEquals(Set.of("KitchenLight", "KitchenFan", "Garage"), Set.copyOf(received));
+    }
+
+    @Test
+    void testAcceptsIsHonoured() throws InterruptedException {
+        List<String> received = new CopyOnWriteArrayList<>();
+        eventSystem.subscribe(EventType.USER_COMMAND, new EventListener() {
+            @Override
+            public void onEvent(Event event) {
+                received.add(event.getSource());
+            }
+
+            @Override
+            public boolean accepts(Event event) {
+                return !event.getSource().equals("Ignored");
+            }
+        });
+
+        eventSystem.publishEvent(new Event(EventType.USER_COMMAND, "Ignored", "i", 1));
+        eventSystem.publishEvent(new Event(EventType.USER_COMMAND, "Panel", "i", 2));
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("Panel"), received);
+    }
+
+    @Test
+    void testPublishedBatchWaitsForRoomInsteadOfDropping() throws InterruptedException {
+        CountDownLatch unblock = new CountDownLatch(1);
+        AtomicInteger routed = new AtomicInteger();
+        eventSystem.subscribe(EventType.USER_COMMAND, new EventListener() {
+            @Override
+            public void onEvent(Event event) {
+            }
+
+            @Override
+            public boolean accepts(Event event) {
+                // Runs on the processors: holding it stalls dispatch
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                routed.incrementAndGet();
+                return true;
+            }
+        });
+
+        List<Event> batch = new ArrayList<>();
+        // More than the queue and the processors can hold
+        for (int i = 0; i < 5000; i++) {
+            batch.add(new Event(EventType.USER_COMMAND, "Peer", "i", i));
+        }
+        Thread publisher = new Thread(() -> eventSystem.publishEvents(batch));
+        publisher.start();
+        publisher.join(500);
+        assertTrue(publisher.isAlive(), "the batch is held back while the queue is full");
+
+        unblock.countDown();
+        publisher.join(5000);
+        assertFalse(publisher.isAlive());
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(5000, routed.get());
+        assertEquals(0, eventSystem.getMetricsSnapshot().totalDropped());
+    }
+
+    @Test
+    void testBatchListenerHoldsBackBurstsAndCountsDrops() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger received = new AtomicInteger();
+        eventSystem.subscribeBatch(EventType.POWER_THRESHOLD_EXCEEDED, new BatchEventListener() {
+            @Override
+            public void onEvents(List<Event> events) {
+                try {
+                    gate.await();
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.addAndGet(events.size());
+            }
+
+            @Override
+            public String getName() {
+                return "SlowWriter";
+            }
+
+            @Override
+            public int getMaxBatchSize() {
+                return 100;
+            }
+        });
+
+        // Stalled: the buffer (1000) fills up, after one wait the rest is dropped at once
+        long start = System.nanoTime();
+        for (int i = 0; i < 1200; i++) {
+            eventSystem.publishEvent(new Event(EventType.POWER_THRESHOLD_EXCEEDED, "Meter", "i", i));
+        }
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "dispatch waited on every drop");
+        EventMetrics.ListenerSnapshot writer = eventSystem.getMetricsSnapshot().listeners().get(0);
+        assertEquals("SlowWriter", writer.name());
+        long rejected = writer.rejected();
+        assertTrue(rejected > 0 && rejected <= 200, "rejected " + rejected);
+
+        // Slow but alive: a burst much larger than the buffer waits for it instead of being lost
+        gate.countDown();
+        waitFor(() -> received.get() == 1200 - rejected);
+        for (int i = 0; i < 5000; i++) {
+            eventSystem.publishEvent(new Event(EventType.POWER_THRESHOLD_EXCEEDED, "Meter", "i", i));
+        }
+        waitFor(() -> received.get() == 6200 - rejected);
+        assertEquals(rejected, eventSystem.getMetricsSnapshot().listeners().get(0).rejected());
+    }
+
+    @Test
+    void testSlowListenerIsCancelledWithoutDelayingOthers() throws InterruptedException {
+        AtomicInteger interrupted = new AtomicInteger();
+        List<Long> fastLatencies = new CopyOnWriteArrayList<>();
+        eventSystem.subscribe(EventType.MOTION_DETECTED, new EventListener() {
+            @Override
+            public void onEvent(Event event) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                }
+            }
+
+            @Override
+            public long getTimeoutMillis() {
+                return 100;
+            }
+        });
+        eventSystem.subscribe(EventType.MOTION_DETECTED,
+                event -> fastLatencies.add((System.nanoTime() - event.getNanoTime()) / 1_000_000));
+
+        for (int i = 0; i < 5; i++) {
+            eventSystem.publishEvent(new Event(EventType.MOTION_DETECTED, "Cam" + i, "i", i));
+        }
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+
+        assertEquals(5, fastLatencies.size());
+        assertTrue(fastLatencies.stream().allMatch(ms -> ms < 100), "Fast listener waited: " + fastLatencies);
+        // Delivery is settled at the timeout; the interrupted listener notices shortly after
+        waitFor(() -> interrupted.get() == 5);
+
+        List<DeadLetterQueue.DeadLetter> letters = eventSystem.getDeadLetters();
+        assertEquals(5, letters.size());
+        assertTrue(letters.stream().allMatch(l -> l.reason() == DeadLetterQueue.Reason.TIMED_OUT));
+    }
+
+    @Test
+    void testListenerIgnoringInterruptsKeepsItsSlots() throws InterruptedException {
+        CountDownLatch unblock = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        AtomicInteger calls = new AtomicInteger();
+        eventSystem.subscribe(EventType.MOTION_DETECTED, new EventListener() {
+            @Override
+            public void onEvent(Event event) {
+                calls.incrementAndGet();
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                // Hung, as in uninterruptible I/O
+                while (true) {
+                    try {
+                        unblock.await();
+                        break;
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                running.decrementAndGet();
+            }
+
+            @Override
+            public int getMaxInFlight() {
+                return 2;
+            }
+
+            @Override
+            public long getTimeoutMillis() {
+                return 50;
+            }
+        });
+
+        for (int i = 0; i < 6; i++) {
+            eventSystem.publishEvent(new Event(EventType.MOTION_DETECTED, "Cam" + i, "i", i));
+        }
+        waitFor(() -> eventSystem.getDeadLetters().size() == 2);
+        Thread.sleep(300);
+        assertEquals(2, calls.get(), "timed-out deliveries still hold their slots");
+        assertEquals(2, running.get());
+
+        unblock.countDown();
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+        waitFor(() -> calls.get() == 6);
+        assertEquals(2, mostRunning.get());
+    }
+
+    @Test
+    void testFailedDeliveriesAreRetriedThenDeadLetteredAndReplayable() throws InterruptedException {
+        AtomicBoolean healthy = new AtomicBoolean(false);
+        AtomicInteger attempts = new AtomicInteger();
+        List<Object> delivered = new CopyOnWriteArrayList<>();
+        eventSystem.subscribe(EventType.USER_COMMAND, new EventListener() {
+            @Override
+            public void onEvent(Event event) {
+                attempts.incrementAndGet();
+                if (!healthy.get()) {
+                    throw new IllegalStateException("database down");
+                }
+                delivered.add(event.getData().get("i"));
+            }
+
+            @Override
+            public int getMaxRetries() {
+                return 2;
+            }
+
+            @Override
+            public long getRetryBackoffMillis() {
+                return 10;
+            }
+        });
+
+        eventSystem.publishEvent(new Event(EventType.USER_COMMAND, "Panel", "i", 1));
+        eventSystem.publishEvent(new Event(EventType.USER_COMMAND, "Panel", "i", 2));
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+
+        assertEquals(6, attempts.get(), "Two events, three attempts each");
+        List<DeadLetterQueue.DeadLetter> letters = eventSystem.getDeadLetters();
+        assertEquals(2, letters.size());
+        assertEquals(DeadLetterQueue.Reason.FAILED, letters.get(0).reason());
+        assertEquals(3, letters.get(0).attempts());
+        assertTrue(letters.get(0).error().contains("database down"));
+
+        healthy.set(true);
+        assertTrue(eventSystem.replayDeadLetter(letters.get(1).id()));
+        assertFalse(eventSystem.replayDeadLetter(letters.get(1).id()));
+        assertEquals(1, eventSystem.replayDeadLetters());
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+
+        assertEquals(2, delivered.size());
+        assertTrue(delivered.containsAll(List.of(1, 2)));
+        assertTrue(eventSystem.getDeadLetters().isEmpty());
+    }
+
+    @Test
+    void testDeadLettersOfUnsubscribedListenersAreDropped() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        EventListener failing = event -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("offline");
+        };
+        eventSystem.subscribe(EventType.USER_COMMAND, failing);
+        eventSystem.publishEvent(new Event(EventType.USER_COMMAND, "Panel", "i", 1));
+        eventSystem.publishEvent(new Event(EventType.USER_COMMAND, "Panel", "i", 2));
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(2, attempts.get());
+        List<DeadLetterQueue.DeadLetter> letters = eventSystem.getDeadLetters();
+        assertEquals(2, letters.size());
+
+        eventSystem.unsubscribe(failing);
+        assertFalse(eventSystem.replayDeadLetter(letters.get(0).id()));
+        assertEquals(0, eventSystem.replayDeadLetters());
+        assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+
+        assertEquals(2, attempts.get(), "nothing is delivered to a listener that left");
+        assertTrue(eventSystem.getDeadLetters().isEmpty());
+        assertTrue(eventSystem.getMetricsSnapshot().listeners().isEmpty(), "the listener is not registered again");
+    }
 }
@@ -0,0 +1,72 @@
+package com.fatty.smarthome.concurrent.test.events;
+
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventCodec;
+import com.fatty.smarthome.concurrent.events.EventPayload;
+import com.fatty.smarthome.concurrent.events.EventType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventTest {
+
+    @Test
+    void testSequenceIsMonotonic() {
+        Event first = new Event(EventType.USER_COMMAND, "cli", "cmd", "on");
+        Event second = new Event(EventType.USER_COMMAND, "cli", "cmd", "off");
+
+        assertTrue(second.getSequence() > first.getSequence());
+        assertNotEquals(first, second);
+        assertNotEquals(first.getEventId(), second.getEventId());
+    }
+
+    @Test
+    void testTypedPayloadMapView() {
+        Event event = new Event(EventType.MOTION_DETECTED, "FrontDoorCam",
+                new EventPayload.Motion("FrontDoorCam", "FrontDoor", 42L));
+
+        assertTrue(event.hasPayload());
+        assertEquals("FrontDoor", event.getPayload(EventPayload.Motion.class).location());
+        assertNull(event.getPayload(EventPayload.Power.class));
+
+        Map<String, Object> data = event.getData();
+        assertEquals("FrontDoorCam", data.get("camera"));
+        assertEquals(42L, event.getDataValue("timestamp", Long.class));
+        // Lazy view is built once and reused
+        assertSame(data, event.getData());
+        assertThrows(UnsupportedOperationException.class, () -> data.put("x", 1));
+    }
+
+    @Test
+    void testMapConstructorStillCopiesInput() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("error", "Device not responding");
+        Event event = new Event(EventType.DEVICE_MALFUNCTION, "Light1", data);
+        data.put("error", "changed");
+
+        assertFalse(event.hasPayload());
+        assertEquals("Device not responding", event.getData().get("error"));
+    }
+
+    @Test
+    void testDevicePayloadsSurviveEncoding() throws IOException {
+        List<Event> events = List.of(
+                new Event(EventType.DEVICE_STATE_CHANGED, "Hall", new EventPayload.Brightness("Hall", 20, 80, 1L)),
+                new Event(EventType.DEVICE_STATE_CHANGED, "Cam", new EventPayload.Recording("Cam", "RECORDING_STARTED", 3, 2L)),
+                new Event(EventType.DEVICE_MALFUNCTION, "Fan", new EventPayload.Malfunction("Fan", "ConcurrentLight", "Device not responding", 3L)));
+
+        for (Event event : events) {
+            Event decoded = EventCodec.decode(EventCodec.encode(event));
+            assertEquals(event.getPayload(), decoded.getPayload());
+            assertEquals(event.getData(), decoded.getData());
+        }
+        // Same keys the map based events used
+        assertEquals("Device not responding", events.get(2).getData().get("error"));
+        assertEquals(80, events.get(0).getData().get("newBrightness"));
+    }
+}
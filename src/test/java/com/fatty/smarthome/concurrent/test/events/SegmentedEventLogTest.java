@@ -0,0 +1,195 @@
+package com.fatty.smarthome.concurrent.test.events;
+
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventPayload;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.concurrent.events.SegmentedEventLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class SegmentedEventLogTest {
+    @TempDir
+    Path dir;
+
+    private static Event motion(int i) {
+        return new Event(EventType.MOTION_DETECTED, "Cam" + i,
+                new EventPayload.Motion("Cam" + i, "Room" + i, i));
+    }
+
+    private static void appendAll(SegmentedEventLog log, int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            assertTrue(log.append(motion(i)));
+        }
+        assertTrue(log.awaitWritten(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testReplayFromOffsetAcrossSegments() throws Exception {
+        try (SegmentedEventLog log = new SegmentedEventLog(dir, 4096, 0, 0)) {
+            appendAll(log, 1000);
+
+            assertTrue(log.getSegmentCount() > 1, "Expected the log to roll");
+            assertEquals(1000, log.getNextOffset());
+
+            List<SegmentedEventLog.LoggedEvent> replayed = new ArrayList<>();
+            long next = log.replay(500, replayed::add);
+
+            assertEquals(500, replayed.size());
+            assertEquals(1000, next);
+            for (int i = 0; i < replayed.size(); i++) {
+                assertEquals(500 + i, replayed.get(i).offset());
+                assertEquals("Cam" + (500 + i), replayed.get(i).event().getSource());
+            }
+            assertEquals("Room700", replayed.get(200).event()
+                    .getPayload(EventPayload.Motion.class).location());
+
+            assertEquals(10, log.read(990, 50).size());
+        }
+    }
+
+    @Test
+    void testReplayFromTimestamp() throws Exception {
+        try (SegmentedEventLog log = new SegmentedEventLog(dir, 4096, 0, 0)) {
+            appendAll(log, 100);
+            Thread.sleep(20);
+            long cutoff = System.currentTimeMillis();
+            Thread.sleep(5);
+            appendAll(log, 50);
+
+            List<SegmentedEventLog.LoggedEvent> replayed = new ArrayList<>();
+            log.replayFromTimestamp(cutoff, replayed::add);
+            assertEquals(50, replayed.size());
+            assertEquals(100, replayed.get(0).offset());
+        }
+    }
+
+    @Test
+    void testReopenTruncatesTornTail() throws Exception {
+        try (SegmentedEventLog log = new SegmentedEventLog(dir)) {
+            appendAll(log, 10);
+        }
+
+        // Simulate a crash halfway through writing the last record
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.filter(p -> p.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        try (SegmentedEventLog log = new SegmentedEventLog(dir)) {
+            assertEquals(9, log.getNextOffset());
+            appendAll(log, 1);
+
+            List<SegmentedEventLog.LoggedEvent> replayed = new ArrayList<>();
+            log.replay(0, replayed::add);
+            assertEquals(10, replayed.size());
+            assertEquals(9, replayed.get(9).offset());
+        }
+    }
+
+    /**
+     * Offset at which a 1 KB segment log rolls for motion(0), motion(1), ...
+     */
+    private long firstRoll() throws Exception {
+        try (SegmentedEventLog probe = new SegmentedEventLog(dir.resolve("probe"), 1024, 0, 0)) {
+            appendAll(probe, 100);
+            try (Stream<Path> files = Files.list(dir.resolve("probe"))) {
+                return files.map(p -> p.getFileName().toString())
+                        .filter(name -> name.endsWith(".log"))
+                        .mapToLong(name -> Long.parseLong(name.substring(0, name.length() - 4)))
+                        .filter(base -> base > 0)
+                        .min().orElseThrow();
+            }
+        }
+    }
+
+    @Test
+    void testFailedRollKeepsLogWritable() throws Exception {
+        long rollAt = firstRoll();
+        Path logDir = dir.resolve("log");
+        try (SegmentedEventLog log = new SegmentedEventLog(logDir, 1024, 0, 0)) {
+            for (int i = 0; i < rollAt; i++) {
+                assertTrue(log.append(motion(i)));
+            }
+            assertTrue(log.awaitWritten(5, TimeUnit.SECONDS));
+            // A directory where the next segment should go makes the roll fail
+            Path blocker = Files.createDirectory(logDir.resolve(String.format("%020d.log", rollAt)));
+            assertTrue(log.append(motion(1000)));
+            assertTrue(log.awaitWritten(5, TimeUnit.SECONDS));
+            assertEquals(1, log.getDroppedCount());
+
+            Files.delete(blocker);
+            for (int i = (int) rollAt; i < 100; i++) {
+                assertTrue(log.append(motion(i)));
+            }
+            assertTrue(log.awaitWritten(5, TimeUnit.SECONDS));
+
+            List<SegmentedEventLog.LoggedEvent> replayed = new ArrayList<>();
+            assertEquals(100, log.replay(0, replayed::add));
+            for (int i = 0; i < replayed.size(); i++) {
+                assertEquals(i, replayed.get(i).offset());
+                assertEquals("Cam" + i, replayed.get(i).event().getSource());
+            }
+        }
+    }
+
+    @Test
+    void testFailedWriteDoesNotSkipOffsets() throws Exception {
+        Path full = Path.of("/dev/full");
+        assumeTrue(Files.exists(full), "needs /dev/full to make writes fail");
+
+        long rollAt = firstRoll();
+
+        Path logDir = dir.resolve("log");
+        try (SegmentedEventLog log = new SegmentedEventLog(logDir, 1024, 0, 0)) {
+            for (int i = 0; i < rollAt; i++) {
+                assertTrue(log.append(motion(i)));
+            }
+            assertTrue(log.awaitWritten(5, TimeUnit.SECONDS));
+            // The next segment is a device that refuses every write
+            Files.createSymbolicLink(logDir.resolve(String.format("%020d.log", rollAt)), full);
+            for (int i = (int) rollAt; i < 100; i++) {
+                assertTrue(log.append(motion(i)));
+            }
+            assertTrue(log.awaitWritten(5, TimeUnit.SECONDS));
+
+            assertEquals(rollAt, log.getNextOffset(), "offsets of failed writes are handed out again");
+            assertEquals(100 - rollAt, log.getDroppedCount());
+            List<SegmentedEventLog.LoggedEvent> replayed = new ArrayList<>();
+            assertEquals(rollAt, log.replay(0, replayed::add));
+            for (int i = 0; i < replayed.size(); i++) {
+                assertEquals(i, replayed.get(i).offset());
+            }
+        }
+    }
+
+    @Test
+    void testSizeRetentionDropsOldSegments() throws IOException, InterruptedException {
+        try (SegmentedEventLog log = new SegmentedEventLog(dir, 2048, 8192, 0)) {
+            appendAll(log, 2000);
+
+            assertTrue(log.getSizeBytes() <= 8192 + 2048);
+            assertTrue(log.getFirstOffset() > 0);
+
+            List<SegmentedEventLog.LoggedEvent> replayed = new ArrayList<>();
+            log.replay(0, replayed::add);
+            assertEquals(log.getFirstOffset(), replayed.get(0).offset());
+            assertEquals(1999, replayed.get(replayed.size() - 1).offset());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.fatty.smarthome.concurrent.test.monitoring;
+
+import com.fatty.smarthome.concurrent.monitoring.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 10_000; v++) {
+            histogram.record(v * 1_000);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10_000, snapshot.count());
+        assertEquals(10_000_000, snapshot.max());
+        assertEquals(5_000_500, snapshot.mean());
+        assertEquals(5_000_000, snapshot.p50(), 5_000_000 * 0.07);
+        assertEquals(9_900_000, snapshot.p99(), 9_900_000 * 0.07);
+        assertEquals(9_990_000, snapshot.p999(), 9_990_000 * 0.07);
+        assertTrue(snapshot.p999() <= snapshot.max());
+    }
+
+    @Test
+    void testSmallValuesAreExactAndResetClears() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(3);
+        histogram.record(-5);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(3, snapshot.p50());
+        assertEquals(3, snapshot.max());
+
+        histogram.reset();
+        assertEquals(LatencyHistogram.Snapshot.EMPTY, histogram.snapshot());
+        assertEquals("no samples", histogram.snapshot().format());
+    }
+}
@@ -1,4 +1,38 @@
 package com.fatty.smarthome.concurrent.test.monitoring;
 
+import com.fatty.smarthome.concurrent.monitoring.PowerMonitoringService;
+import com.fatty.smarthome.concurrent.replay.VirtualClock;
+import com.fatty.smarthome.concurrent.scheduling.ScheduledTask;
+import com.fatty.smarthome.concurrent.scheduling.SchedulerService;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class PowerMonitoringServiceTest {
+
+    @Test
+    void testPowerSavingWindowWrapsMidnight() {
+        long start = LocalDateTime.of(2024, 1, 1, 12, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+        VirtualClock clock = new VirtualClock(start, ZoneOffset.UTC);
+        SchedulerService timers = new SchedulerService("power", clock, Runnable::run);
+        PowerMonitoringService service = new PowerMonitoringService(null, null, timers);
+
+        ScheduledTask task = service.schedulePowerSavingMode(22, 6, 300);
+        // 22:00 through 05:00, each hour once, then 22:00 the next evening
+        for (int hour : new int[]{22, 23, 0, 1, 2, 3, 4, 5, 22}) {
+            int fireHour = LocalDateTime.ofInstant(Instant.ofEpochMilli(task.getNextFireMillis()), ZoneOffset.UTC).getHour();
+            assertEquals(hour, fireHour);
+            clock.advanceTo(task.getNextFireMillis());
+            timers.advanceTo(task.getNextFireMillis());
+        }
+        assertEquals(9, task.getFireCount());
+
+        assertThrows(IllegalArgumentException.class, () -> service.schedulePowerSavingMode(5, 5, 300));
+        service.stopMonitoring();
+        timers.close();
+    }
 }
@@ -0,0 +1,87 @@
+package com.fatty.smarthome.concurrent.test.replay;
+
+import com.fatty.smarthome.concurrent.automation.SecurityRule;
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventPayload;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.concurrent.replay.IncidentReplay;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IncidentReplayTest {
+    private static final long START = 1_700_000_000_000L;
+
+    /**
+     * Two hours of recording: temperature every minute, one motion event and the light it switched on
+     */
+    private static List<Event> recording() {
+        List<Event> events = new ArrayList<>();
+        for (int minute = 0; minute < 120; minute++) {
+            long t = START + minute * 60_000L;
+            events.add(new Event(EventType.TEMPERATURE_ALERT, "MainThermostat",
+                    new EventPayload.Temperature("MainThermostat", 29, 28, "TOO_HOT", t), t));
+            if (minute == 90) {
+                events.add(new Event(EventType.MOTION_DETECTED, "FrontDoorCam",
+                        new EventPayload.Motion("FrontDoorCam", "FrontDoor", t), t));
+                events.add(new Event(EventType.DEVICE_STATE_CHANGED, "HallLight",
+                        new EventPayload.StateChange("HallLight", "ConcurrentLight", "ON", 1, t + 10), t + 10));
+            }
+        }
+        return events;
+    }
+
+    private static IncidentReplay replay(boolean withSecurityRule) {
+        return new IncidentReplay(List.of(), (eventSystem, engine, devices) -> {
+            if (withSecurityRule) {
+                SecurityRule rule = new SecurityRule("Security Response");
+                engine.addRule(rule);
+                eventSystem.subscribe(EventType.MOTION_DETECTED, event -> rule.triggerMotion());
+            }
+        });
+    }
+
+    @Test
+    void testReplayReproducesRecordedOutcome() throws Exception {
+        IncidentReplay.Result result = replay(true).run(recording());
+
+        assertEquals(3, result.getReplayedStates().size(), "Devices inferred from the recording");
+        assertTrue(result.getDifferences().isEmpty(), result.getSummary());
+        assertTrue(result.getReplayedStates().get("HallLight").on());
+        assertTrue(result.getVirtualMillis() >= 119 * 60_000L);
+        assertTrue(result.getEvaluations() > 1400, "Engine evaluated every 5 virtual seconds");
+        assertTrue(result.getWallMillis() < result.getVirtualMillis() / 100, "Must be much faster than real time");
+    }
+
+    @Test
+    void testDiffBetweenRuleSets() throws Exception {
+        IncidentReplay.Result withRule = replay(true).run(recording());
+        IncidentReplay.Result withoutRule = replay(false).run(recording());
+
+        assertFalse(withoutRule.getDifferences().isEmpty(), "HallLight stays off without the rule");
+        assertTrue(withRule.diff(withoutRule).stream()
+                .anyMatch(d -> d.device().equals("HallLight") && d.field().equals("on")));
+    }
+
+    @Test
+    void testMotionTimeoutRunsInVirtualTime() throws Exception {
+        // Motion twice, a minute apart: the first has cleared by the second in recorded time
+        List<Event> events = new ArrayList<>();
+        for (long t : new long[]{START, START + 60_000L}) {
+            events.add(new Event(EventType.MOTION_DETECTED, "FrontDoorCam",
+                    new EventPayload.Motion("FrontDoorCam", "FrontDoor", t), t));
+        }
+        AtomicInteger motions = new AtomicInteger();
+        IncidentReplay replay = new IncidentReplay(List.of(), (eventSystem, engine, devices) ->
+                eventSystem.subscribe(EventType.MOTION_DETECTED, event -> motions.incrementAndGet()));
+
+        IncidentReplay.Result result = replay.run(events);
+
+        assertEquals(2, motions.get(), "second motion is a new detection");
+        assertTrue(result.getWallMillis() < 5000, "timeout must not wait for wall time");
+    }
+}
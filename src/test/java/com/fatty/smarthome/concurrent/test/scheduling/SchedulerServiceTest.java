@@ -0,0 +1,172 @@
+package com.fatty.smarthome.concurrent.test.scheduling;
+
+import com.fatty.smarthome.concurrent.replay.VirtualClock;
+import com.fatty.smarthome.concurrent.scheduling.Schedule;
+import com.fatty.smarthome.concurrent.scheduling.ScheduledTask;
+import com.fatty.smarthome.concurrent.scheduling.SchedulerService;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchedulerServiceTest {
+    private static final ZoneId UTC = ZoneOffset.UTC;
+    // Monday 2024-01-01 00:00 UTC
+    private static final long START = LocalDateTime.of(2024, 1, 1, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    @Test
+    void testCronExpressions() {
+        long next = Schedule.cron("30 7 * * *").nextAfter(START, UTC);
+        assertEquals(LocalDateTime.of(2024, 1, 1, 7, 30), time(next));
+
+        // Every 15 minutes during 9-10 on weekdays: from Friday evening the next is Monday 9:00
+        Schedule workHours = Schedule.cron("*/15 9-10 * * 1-5");
+        long friday = LocalDateTime.of(2024, 1, 5, 18, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+        next = workHours.nextAfter(friday, UTC);
+        assertEquals(LocalDateTime.of(2024, 1, 8, 9, 0), time(next));
+        assertEquals(LocalDateTime.of(2024, 1, 8, 9, 15), time(workHours.nextAfter(next, UTC)));
+
+        // Both day fields restricted: either matches (the 13th, or any Friday)
+        Schedule either = Schedule.cron("0 0 13 * 5");
+        assertEquals(LocalDateTime.of(2024, 1, 5, 0, 0), time(either.nextAfter(START, UTC)));
+        long saturday = LocalDateTime.of(2024, 1, 6, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+        assertEquals(LocalDateTime.of(2024, 1, 12, 0, 0), time(either.nextAfter(saturday, UTC)));
+
+        // 7 is Sunday too; 30 February never comes
+        assertEquals(LocalDateTime.of(2024, 1, 7, 6, 0), time(Schedule.cron("0 6 * * 7").nextAfter(START, UTC)));
+        assertEquals(-1, Schedule.cron("0 0 30 2 *").nextAfter(START, UTC));
+
+        assertThrows(IllegalArgumentException.class, () -> Schedule.cron("* * *"));
+        assertThrows(IllegalArgumentException.class, () -> Schedule.cron("60 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> Schedule.cron("*/0 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> Schedule.cron("a * * * *"));
+    }
+
+    @Test
+    void testEachOccurrenceFiresExactlyOnce() {
+        VirtualClock clock = new VirtualClock(START, UTC);
+        SchedulerService scheduler = new SchedulerService("test", clock, Runnable::run);
+
+        List<Schedule> schedules = List.of(
+                Schedule.every(Duration.ofSeconds(7)),
+                Schedule.daily(LocalTime.of(7, 30)),
+                Schedule.cron("*/15 9-10 * * 1-5"),
+                Schedule.at(Instant.ofEpochMilli(START + Duration.ofHours(30).toMillis() + 5)));
+        List<List<Long>> fired = new ArrayList<>();
+        for (Schedule schedule : schedules) {
+            List<Long> times = new ArrayList<>();
+            fired.add(times);
+            scheduler.schedule(schedule.toString(), schedule, () -> times.add(clock.millis()));
+        }
+
+        // Uneven steps, some much longer than the wheel's span, across three days
+        long end = START + Duration.ofDays(3).toMillis();
+        Random random = new Random(42);
+        long now = START;
+        while (now < end) {
+            now = Math.min(end, now + 1 + random.nextInt(random.nextBoolean() ? 50 : 400_000));
+            clock.advanceTo(now);
+            scheduler.advanceTo(now);
+        }
+
+        for (int i = 0; i < schedules.size(); i++) {
+            List<Long> expected = new ArrayList<>();
+            for (long t = schedules.get(i).nextAfter(START, UTC); t >= 0 && t <= end; t = schedules.get(i).nextAfter(t, UTC)) {
+                expected.add(t);
+            }
+            List<Long> times = fired.get(i);
+            assertEquals(expected.size(), times.size(), schedules.get(i) + " fired " + times.size() + " times");
+            for (int j = 0; j < times.size(); j++) {
+                assertTrue(times.get(j) >= expected.get(j), "occurrence fired early");
+                assertTrue(j == 0 || times.get(j) >= times.get(j - 1), "occurrences out of order");
+            }
+        }
+        assertEquals(3 * 86400 / 7, fired.get(0).size());
+        assertEquals(3, fired.get(1).size());
+        assertEquals(3 * 8, fired.get(2).size());
+        assertEquals(1, fired.get(3).size());
+        assertEquals(3, scheduler.getScheduledCount(), "the one-shot is done, the rest recur");
+        scheduler.close();
+    }
+
+    @Test
+    void testHundredThousandSchedules() {
+        VirtualClock clock = new VirtualClock(START, UTC);
+        SchedulerService scheduler = new SchedulerService("load", clock, Runnable::run);
+        int count = 100_000;
+        AtomicIntegerArray fires = new AtomicIntegerArray(count);
+        Random random = new Random(7);
+
+        ScheduledTask[] tasks = new ScheduledTask[count];
+        long insertStart = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            LocalTime at = LocalTime.ofSecondOfDay(random.nextInt(86400));
+            tasks[i] = scheduler.schedule("task-" + i, Schedule.daily(at), () -> fires.incrementAndGet(index));
+        }
+        long insertNanos = System.nanoTime() - insertStart;
+
+        long cancelStart = System.nanoTime();
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(tasks[i].cancel());
+        }
+        long cancelNanos = System.nanoTime() - cancelStart;
+        assertFalse(tasks[0].cancel(), "cancelled twice");
+        assertEquals(count / 2, scheduler.getScheduledCount());
+
+        // One day in one-minute steps
+        for (long now = START; now < START + Duration.ofDays(1).toMillis(); now += 60_000) {
+            clock.advanceTo(now + 60_000);
+            scheduler.advanceTo(now + 60_000);
+        }
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i % 2 == 0 ? 0 : 1, fires.get(i), "task-" + i);
+        }
+        assertEquals(count / 2, scheduler.getScheduledCount(), "each daily task is queued for tomorrow");
+        System.out.printf("100k schedules: %.0f ns/insert, %.0f ns/cancel%n",
+                (double) insertNanos / count, (double) cancelNanos / (count / 2));
+        System.out.println(scheduler.getStatistics());
+        scheduler.close();
+    }
+
+    @Test
+    void testDriverFiresOnTime() throws InterruptedException {
+        SchedulerService scheduler = new SchedulerService("driver");
+        scheduler.start();
+        CountDownLatch once = new CountDownLatch(1);
+        CountDownLatch periodic = new CountDownLatch(3);
+        long start = System.currentTimeMillis();
+
+        scheduler.schedule("once", Schedule.at(Instant.ofEpochMilli(start + 50)), once::countDown);
+        ScheduledTask every = scheduler.schedule("every", Schedule.every(Duration.ofMillis(20)), periodic::countDown);
+        ScheduledTask cancelled = scheduler.schedule("cancelled", Schedule.at(Instant.ofEpochMilli(start + 30)),
+                () -> fail("cancelled task ran"));
+        cancelled.cancel();
+
+        assertTrue(once.await(2, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        assertTrue(periodic.await(2, TimeUnit.SECONDS));
+        every.cancel();
+        assertTrue(every.isDone());
+        assertEquals(-1, every.getNextFireMillis());
+        assertEquals(0, cancelled.getFireCount());
+        scheduler.close();
+    }
+
+    private static LocalDateTime time(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), UTC);
+    }
+}
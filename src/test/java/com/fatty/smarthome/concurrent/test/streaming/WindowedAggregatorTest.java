@@ -0,0 +1,172 @@
+package com.fatty.smarthome.concurrent.test.streaming;
+
+import com.fatty.smarthome.concurrent.events.Event;
+import com.fatty.smarthome.concurrent.events.EventListener;
+import com.fatty.smarthome.concurrent.events.EventPayload;
+import com.fatty.smarthome.concurrent.events.EventSystem;
+import com.fatty.smarthome.concurrent.events.EventType;
+import com.fatty.smarthome.concurrent.streaming.WindowSpec;
+import com.fatty.smarthome.concurrent.streaming.WindowedAggregator;
+import com.fatty.smarthome.concurrent.streaming.WindowedAggregator.WindowResult;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WindowedAggregatorTest {
+    private static final long MINUTE = 60_000;
+
+    private static Event motion(String camera, long timestamp) {
+        return new Event(EventType.MOTION_DETECTED, camera,
+                new EventPayload.Motion(camera, "Hall", timestamp), timestamp);
+    }
+
+    private static Event temperature(String thermostat, int value, long timestamp) {
+        return new Event(EventType.TEMPERATURE_ALERT, thermostat,
+                new EventPayload.Temperature(thermostat, value, value, "HIGH", timestamp), timestamp);
+    }
+
+    @Test
+    void testTumblingCountsPerCamera() {
+        WindowedAggregator aggregator = new WindowedAggregator("motion-per-minute",
+                WindowSpec.tumbling(Duration.ofMinutes(1)), null, 0);
+
+        aggregator.onEvent(motion("FrontCam", 0));
+        aggregator.onEvent(motion("FrontCam", 10_000));
+        aggregator.onEvent(motion("BackCam", 30_000));
+        aggregator.onEvent(motion("FrontCam", 59_999));
+        assertNull(aggregator.getLatest(EventType.MOTION_DETECTED, "FrontCam"), "Window still open");
+        assertEquals(3, aggregator.getOpen(EventType.MOTION_DETECTED, "FrontCam").count());
+
+        aggregator.onEvent(motion("FrontCam", MINUTE + 5_000));
+        WindowResult front = aggregator.getLatest(EventType.MOTION_DETECTED, "FrontCam");
+        WindowResult back = aggregator.getLatest(EventType.MOTION_DETECTED, "BackCam");
+        assertEquals(3, front.count());
+        assertEquals(0, front.windowStart());
+        assertEquals(MINUTE, front.windowEnd());
+        assertEquals(1, back.count());
+
+        // Idle stream: advancing time closes the second minute, skipping the quiet stretch after it
+        aggregator.advanceTo(10 * MINUTE);
+        front = aggregator.getLatest(EventType.MOTION_DETECTED, "FrontCam");
+        assertEquals(1, front.count());
+        assertEquals(MINUTE, front.windowStart());
+        assertEquals(1, aggregator.getLatest(EventType.MOTION_DETECTED, "BackCam").count(), "No new BackCam window");
+    }
+
+    @Test
+    void testSlidingAverageTemperature() {
+        WindowedAggregator aggregator = new WindowedAggregator("temp-3m",
+                WindowSpec.sliding(Duration.ofMinutes(3), Duration.ofMinutes(1)), "temperature", 0);
+
+        aggregator.onEvent(temperature("Thermo", 20, 0));
+        aggregator.onEvent(temperature("Thermo", 22, MINUTE));
+        aggregator.onEvent(temperature("Thermo", 24, 2 * MINUTE));
+        aggregator.onEvent(temperature("Thermo", 30, 3 * MINUTE));
+
+        WindowResult result = aggregator.getLatest(EventType.TEMPERATURE_ALERT, "Thermo");
+        assertEquals(0, result.windowStart());
+        assertEquals(3 * MINUTE, result.windowEnd());
+        assertEquals(3, result.count());
+        assertEquals(22.0, result.average(), 0.001);
+
+        aggregator.advanceTo(4 * MINUTE);
+        result = aggregator.getLatest(EventType.TEMPERATURE_ALERT, "Thermo");
+        assertEquals(MINUTE, result.windowStart());
+        assertEquals(3, result.count());
+        assertEquals(76.0, result.sum(), 0.001);
+
+        // The last reading ages out of the window one slide at a time
+        aggregator.advanceTo(6 * MINUTE);
+        result = aggregator.getLatest(EventType.TEMPERATURE_ALERT, "Thermo");
+        assertEquals(3 * MINUTE, result.windowStart());
+        assertEquals(1, result.count());
+        assertEquals(30.0, result.average(), 0.001);
+    }
+
+    @Test
+    void testSessionsCloseAfterGap() {
+        WindowedAggregator aggregator = new WindowedAggregator("motion-bursts",
+                WindowSpec.session(Duration.ofSeconds(30)), null, 0);
+
+        aggregator.onEvent(motion("FrontCam", 0));
+        aggregator.onEvent(motion("FrontCam", 20_000));
+        aggregator.onEvent(motion("FrontCam", 45_000));
+        aggregator.onEvent(motion("BackCam", 50_000));
+        assertNull(aggregator.getLatest(EventType.MOTION_DETECTED, "FrontCam"));
+
+        // FrontCam quiet for more than the gap
+        aggregator.onEvent(motion("BackCam", 76_000));
+        WindowResult burst = aggregator.getLatest(EventType.MOTION_DETECTED, "FrontCam");
+        assertEquals(3, burst.count());
+        assertEquals(0, burst.windowStart());
+        assertEquals(75_000, burst.windowEnd());
+        assertNull(aggregator.getLatest(EventType.MOTION_DETECTED, "BackCam"), "BackCam session still active");
+
+        // A new event after the gap starts a fresh session for the same camera
+        aggregator.onEvent(motion("BackCam", 200_000));
+        assertEquals(2, aggregator.getLatest(EventType.MOTION_DETECTED, "BackCam").count());
+        assertEquals(1, aggregator.getOpen(EventType.MOTION_DETECTED, "BackCam").count());
+    }
+
+    @Test
+    void testAllowedLatenessAndLateEvents() {
+        WindowedAggregator aggregator = new WindowedAggregator("motion-per-minute",
+                WindowSpec.tumbling(Duration.ofMinutes(1)), null, 30_000);
+
+        aggregator.onEvent(motion("FrontCam", 10_000));
+        aggregator.onEvent(motion("FrontCam", MINUTE + 10_000));
+        // Out of order but within the allowed lateness: still counted in the first minute
+        aggregator.onEvent(motion("FrontCam", 50_000));
+        assertNull(aggregator.getLatest(EventType.MOTION_DETECTED, "FrontCam"));
+
+        aggregator.onEvent(motion("FrontCam", MINUTE + 40_000));
+        assertEquals(2, aggregator.getLatest(EventType.MOTION_DETECTED, "FrontCam").count());
+
+        aggregator.onEvent(motion("FrontCam", 55_000));
+        assertEquals(1, aggregator.getLateEvents());
+        assertEquals(2, aggregator.getLatest(EventType.MOTION_DETECTED, "FrontCam").count(), "Closed window unchanged");
+    }
+
+    @Test
+    void testResultsArePublishedAsEvents() throws InterruptedException {
+        EventSystem eventSystem = new EventSystem(2);
+        eventSystem.start();
+        try {
+            List<Event> results = new CopyOnWriteArrayList<>();
+            eventSystem.subscribe(EventType.WINDOW_AGGREGATE, new EventListener() {
+                @Override
+                public void onEvent(Event event) {
+                    results.add(event);
+                }
+
+                @Override
+                public String getName() {
+                    return "ResultCollector";
+                }
+            });
+
+            WindowedAggregator aggregator = new WindowedAggregator("motion-per-minute",
+                    WindowSpec.tumbling(Duration.ofMinutes(1)), null, 0);
+            aggregator.setResultSink(eventSystem);
+            aggregator.onEvent(motion("FrontCam", 0));
+            aggregator.onEvent(motion("BackCam", 1_000));
+            aggregator.onEvent(motion("FrontCam", 2_000));
+            aggregator.advanceTo(MINUTE);
+
+            assertTrue(eventSystem.awaitIdle(5, TimeUnit.SECONDS));
+            assertEquals(2, results.size());
+            Event front = results.stream().filter(e -> e.getSource().equals("FrontCam")).findFirst().orElseThrow();
+            assertEquals(2L, front.getData().get("count"));
+            assertEquals("MOTION_DETECTED", front.getData().get("type"));
+            assertEquals("motion-per-minute", front.getData().get("aggregator"));
+            assertTrue(aggregator.getStatistics().contains("Windows closed: 1"));
+        } finally {
+            eventSystem.stop();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.fatty.smarthome.core.test;
+
+import com.fatty.smarthome.core.ChangeSet;
+import com.fatty.smarthome.core.DatabaseService;
+import com.fatty.smarthome.core.LightAutomationRule;
+import com.fatty.smarthome.devices.Light;
+import com.fatty.smarthome.devices.SecurityCamera;
+import com.fatty.smarthome.devices.SmartDevice;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChangeSetTest {
+
+    @Test
+    void testOnlyChangedDevicesAreCollected() {
+        Light off = new Light("Hall");
+        Light on = new Light("Kitchen");
+        on.turnOn();
+        SecurityCamera camera = new SecurityCamera("Door");
+
+        ChangeSet changes = ChangeSet.visit(List.of(off, on, camera), new LightAutomationRule());
+
+        assertEquals(1, changes.size());
+        assertEquals(3, changes.getVisited());
+        ChangeSet.Change change = changes.getChanges().get(0);
+        assertSame(off, change.device());
+        assertEquals("Hall is OFF", change.before());
+        assertEquals("Hall is ON", change.after());
+
+        List<DatabaseService.EventLog> logs = changes.toEventLogs("AUTOMATION");
+        assertEquals(1, logs.size());
+        assertEquals("Hall", logs.get(0).getDeviceName());
+        assertEquals("Hall is OFF", logs.get(0).getOldValue());
+
+        // Nothing left to change the second time
+        assertTrue(ChangeSet.visit(List.of(off, on, camera), new LightAutomationRule()).isEmpty());
+    }
+
+    @Test
+    void testLargeFleetIsVisitedInParallelPartitions() {
+        List<SmartDevice> devices = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            Light light = new Light("Light-" + i);
+            if (i % 4 == 0) light.turnOn();
+            devices.add(light);
+        }
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        LightAutomationRule lights = new LightAutomationRule();
+
+        long start = System.nanoTime();
+        ChangeSet changes = ChangeSet.visit(devices, device -> {
+            threads.add(Thread.currentThread().getName());
+            lights.visit(device);
+        });
+        long nanos = System.nanoTime() - start;
+
+        assertEquals(7_500, changes.size());
+        assertTrue(devices.stream().allMatch(SmartDevice::isOn));
+        // Changes come back in device list order whatever partition found them
+        List<ChangeSet.Change> list = changes.getChanges();
+        assertEquals("Light-1", list.get(0).device().getName());
+        assertEquals("Light-9999", list.get(list.size() - 1).device().getName());
+        System.out.printf("%s in %.1f ms on %d threads%n", changes, nanos / 1e6, threads.size());
+    }
+}